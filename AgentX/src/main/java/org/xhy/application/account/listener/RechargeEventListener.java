@@ -9,6 +9,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.xhy.application.account.service.AccountAppService;
 import org.xhy.domain.order.constant.OrderType;
 import org.xhy.domain.order.event.PurchaseSuccessEvent;
+import org.xhy.infrastructure.config.AsyncConfig;
 import org.xhy.interfaces.dto.account.request.RechargeRequest;
 
 /** 余额充值事件监听器 监听购买成功事件，处理余额充值类型的订单 */
@@ -27,7 +28,7 @@ public class RechargeEventListener {
      * 
      * @param event 购买成功事件 */
     @EventListener
-    @Async
+    @Async(AsyncConfig.BILLING_EXECUTOR)
     public void handlePurchaseSuccess(PurchaseSuccessEvent event) {
         try {
             // 只处理充值订单
@@ -123,7 +123,7 @@ public class AdminLLMAppService {
     /** 获取支持的协议列表
      * @return 协议列表 */
     public List<ProviderProtocol> getProviderProtocols() {
-        return Arrays.asList(ProviderProtocol.values());
+        return llmDomainService.getProviderProtocols();
     }
 
     /** 获取官方模型列表
@@ -0,0 +1,53 @@
+package org.xhy.application.conversation.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/** 对话延迟指标 记录首字节时间（准备事件实际写出到客户端）、准备耗时与首Token时间（首个模型Token发出），用于评估并发负载下的对话启动延迟
+ *
+ * 以 Micrometer 计时器注册，发布 p50/p95/p99 分位，可通过 /actuator/metrics/chat.ttfb 等查看。 */
+@Component
+public class ChatLatencyMetrics {
+
+    private final Timer timeToFirstByte;
+    private final Timer timeToFirstToken;
+    private final Timer preparation;
+
+    public ChatLatencyMetrics(MeterRegistry meterRegistry) {
+        this.timeToFirstByte = timer(meterRegistry, "chat.ttfb", "SSE连接建立到准备事件写出的时间");
+        this.timeToFirstToken = timer(meterRegistry, "chat.ttft", "会话注册到首个模型Token发出的时间");
+        this.preparation = timer(meterRegistry, "chat.prepare", "对话环境准备耗时");
+    }
+
+    public void recordTimeToFirstByte(long latencyMs) {
+        timeToFirstByte.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordTimeToFirstToken(long latencyMs) {
+        timeToFirstToken.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordPreparation(long latencyMs) {
+        preparation.record(latencyMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Timer getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public Timer getTimeToFirstToken() {
+        return timeToFirstToken;
+    }
+
+    public Timer getPreparation() {
+        return preparation;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String description) {
+        return Timer.builder(name).description(description).publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,51 @@
+package org.xhy.application.conversation.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.auth.UserContext;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/** 对话准备执行器 在独立线程池中执行对话环境准备（会话、Agent、工具、模型、高可用选择、上下文、RAG检索等）， 使SSE连接可以立即返回给客户端而不占用Servlet线程
+ *
+ * 准备任务使用 chat-io 线程池，满载时拒绝；准备阶段内部的并发查询使用单独的 chat-lookup 线程池，满载时由调用线程执行。 */
+@Component
+public class ChatPreparationExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatPreparationExecutor.class);
+
+    private final Executor executor;
+    private final Executor lookupExecutor;
+
+    public ChatPreparationExecutor(ExecutorRegistry executorRegistry) {
+        this.executor = executorRegistry.get(WorkloadType.CHAT_IO);
+        this.lookupExecutor = executorRegistry.get(WorkloadType.CHAT_LOOKUP);
+    }
+
+    /** 提交对话准备任务，任务线程中会设置用户上下文
+     *
+     * @param userId 用户ID
+     * @param task 准备任务
+     * @throws RejectedExecutionException 线程池已满时抛出 */
+    public void execute(String userId, Runnable task) {
+        executor.execute(() -> {
+            UserContext.setCurrentUserId(userId);
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("对话准备任务执行异常: userId={}", userId, e);
+            } finally {
+                UserContext.clear();
+            }
+        });
+    }
+
+    /** 获取准备阶段并发查询使用的线程池，队列满时由调用线程执行 */
+    public Executor getLookupExecutor() {
+        return lookupExecutor;
+    }
+}
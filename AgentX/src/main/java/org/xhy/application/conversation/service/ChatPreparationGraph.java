@@ -0,0 +1,88 @@
+package org.xhy.application.conversation.service;
+
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** 请求级别的依赖图 用于对话环境准备时并发执行互不依赖的查询
+ *
+ * 每个节点按名称记忆化，同一请求内重复获取同名节点只会执行一次；所有等待共享同一个请求截止时间， 超时后取消未完成的节点。准备耗时由最长的依赖链决定，而不是所有查询耗时之和。 */
+public class ChatPreparationGraph {
+
+    private final Executor executor;
+    private final long deadlineNanos;
+    private final Map<String, CompletableFuture<?>> nodes = new ConcurrentHashMap<>();
+
+    /** @param executor 执行查询的线程池
+     * @param timeoutMillis 整个请求的准备超时时间(毫秒) */
+    public ChatPreparationGraph(Executor executor, long timeoutMillis) {
+        this.executor = executor;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /** 无依赖节点，立即提交执行 */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> node(String name, Supplier<T> supplier) {
+        return (CompletableFuture<T>) nodes.computeIfAbsent(name,
+                key -> CompletableFuture.supplyAsync(supplier, executor));
+    }
+
+    /** 依赖单个节点的节点，上游完成后执行 */
+    @SuppressWarnings("unchecked")
+    public <A, T> CompletableFuture<T> then(String name, CompletableFuture<A> dependency, Function<A, T> function) {
+        return (CompletableFuture<T>) nodes.computeIfAbsent(name,
+                key -> dependency.thenApplyAsync(function, executor));
+    }
+
+    /** 依赖两个节点的节点，两个上游都完成后执行 */
+    @SuppressWarnings("unchecked")
+    public <A, B, T> CompletableFuture<T> combine(String name, CompletableFuture<A> first, CompletableFuture<B> second,
+            BiFunction<A, B, T> function) {
+        return (CompletableFuture<T>) nodes.computeIfAbsent(name,
+                key -> first.thenCombineAsync(second, function, executor));
+    }
+
+    /** 在请求截止时间内等待节点结果，节点异常原样抛出
+     *
+     * @throws BusinessException 超过截止时间时抛出 */
+    public <T> T await(CompletableFuture<T> future) {
+        long remaining = deadlineNanos - System.nanoTime();
+        try {
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancelAll();
+            throw new BusinessException("对话环境准备超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new BusinessException("对话环境准备被中断");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /** 取消所有未完成的节点 */
+    public void cancelAll() {
+        nodes.values().forEach(future -> future.cancel(true));
+    }
+
+    private RuntimeException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new BusinessException("对话环境准备失败: " + cause.getMessage(), cause);
+    }
+}
@@ -4,12 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+import org.xhy.infrastructure.session.ChatSessionRegistry;
 import org.xhy.infrastructure.transport.SseEmitterUtils;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-/** 聊天会话管理器 负责管理正在进行的对话会话，支持会话中断功能 */
+/** 聊天会话管理器 负责管理正在进行的对话会话，支持会话中断功能
+ *
+ * SSE连接保存在本节点，会话归属登记到 {@link ChatSessionRegistry}，中断请求落在其他节点时由注册表转发给归属节点。 */
 @Component
 public class ChatSessionManager {
 
@@ -20,12 +24,16 @@ public class ChatSessionManager {
         private final String sessionId;
         private final SseEmitter emitter;
         private final AtomicBoolean interrupted;
+        private final AtomicBoolean firstTokenSent;
+        private final StreamCancellationToken cancellationToken;
         private final long startTime;
 
         public SessionInfo(String sessionId, SseEmitter emitter) {
             this.sessionId = sessionId;
             this.emitter = emitter;
             this.interrupted = new AtomicBoolean(false);
+            this.firstTokenSent = new AtomicBoolean(false);
+            this.cancellationToken = new StreamCancellationToken();
             this.startTime = System.currentTimeMillis();
         }
 
@@ -48,17 +56,37 @@ public class ChatSessionManager {
         public long getStartTime() {
             return startTime;
         }
+
+        public StreamCancellationToken getCancellationToken() {
+            return cancellationToken;
+        }
+
+        /** 标记首个Token已发送
+         * @return 是否为首次标记 */
+        public boolean markFirstToken() {
+            return firstTokenSent.compareAndSet(false, true);
+        }
     }
 
     // 使用sessionId作为key，存储正在进行的对话会话
     private final ConcurrentHashMap<String, SessionInfo> activeSessions = new ConcurrentHashMap<>();
 
+    private final ChatLatencyMetrics chatLatencyMetrics;
+    private final ChatSessionRegistry chatSessionRegistry;
+
+    public ChatSessionManager(ChatLatencyMetrics chatLatencyMetrics, ChatSessionRegistry chatSessionRegistry) {
+        this.chatLatencyMetrics = chatLatencyMetrics;
+        this.chatSessionRegistry = chatSessionRegistry;
+        chatSessionRegistry.setLocalInterruptHandler(this::interruptLocalSession);
+    }
+
     /** 注册一个新的对话会话
      * @param sessionId 会话ID
      * @param emitter SSE发送器 */
     public void registerSession(String sessionId, SseEmitter emitter) {
         SessionInfo sessionInfo = new SessionInfo(sessionId, emitter);
         activeSessions.put(sessionId, sessionInfo);
+        chatSessionRegistry.register(sessionId);
         logger.info("注册对话会话: sessionId={}", sessionId);
 
         // 设置SSE完成和超时回调，自动清理会话
@@ -67,12 +95,15 @@ public class ChatSessionManager {
             logger.info("对话会话完成: sessionId={}", sessionId);
         });
 
+        // 客户端超时或断开时同样取消上游流，避免继续消耗Token
         emitter.onTimeout(() -> {
+            sessionInfo.getCancellationToken().cancel();
             removeSession(sessionId);
             logger.warn("对话会话超时: sessionId={}", sessionId);
         });
 
         emitter.onError((throwable) -> {
+            sessionInfo.getCancellationToken().cancel();
             removeSession(sessionId);
             logger.error("对话会话错误: sessionId={}, error={}", sessionId, throwable.getMessage());
         });
@@ -83,18 +114,32 @@ public class ChatSessionManager {
     public void removeSession(String sessionId) {
         SessionInfo removed = activeSessions.remove(sessionId);
         if (removed != null) {
+            chatSessionRegistry.unregister(sessionId);
             long duration = System.currentTimeMillis() - removed.getStartTime();
             logger.info("移除对话会话: sessionId={}, 持续时间={}ms", sessionId, duration);
         }
     }
 
-    /** 中断指定的对话会话
+    /** 中断指定的对话会话，会话不在本节点时转发给归属节点
      * @param sessionId 会话ID
      * @return 是否成功中断（true表示会话存在且成功中断，false表示会话不存在） */
     public boolean interruptSession(String sessionId) {
+        if (interruptLocalSession(sessionId)) {
+            return true;
+        }
+        boolean interrupted = chatSessionRegistry.interruptRemote(sessionId);
+        if (!interrupted) {
+            logger.warn("尝试中断不存在的会话: sessionId={}", sessionId);
+        }
+        return interrupted;
+    }
+
+    /** 中断本节点上的对话会话
+     * @param sessionId 会话ID
+     * @return 会话是否在本节点且已中断 */
+    private boolean interruptLocalSession(String sessionId) {
         SessionInfo sessionInfo = activeSessions.get(sessionId);
         if (sessionInfo == null) {
-            logger.warn("尝试中断不存在的会话: sessionId={}", sessionId);
             return false;
         }
 
@@ -103,7 +148,13 @@ public class ChatSessionManager {
         logger.info("设置会话中断标志: sessionId={}", sessionId);
 
         // 先从活跃会话中移除，避免重复处理
-        activeSessions.remove(sessionId);
+        if (!activeSessions.remove(sessionId, sessionInfo)) {
+            return false;
+        }
+        chatSessionRegistry.unregister(sessionId);
+
+        // 取消上游模型流：关闭HTTP响应流、阻止后续工具轮次并触发已消耗Token的结算
+        sessionInfo.getCancellationToken().cancel();
 
         try {
             SseEmitter emitter = sessionInfo.getEmitter();
@@ -123,6 +174,25 @@ public class ChatSessionManager {
         }
     }
 
+    /** 记录会话的首个Token，用于统计首Token时间（从会话注册开始计算）
+     * @param sessionId 会话ID */
+    public void markFirstToken(String sessionId) {
+        SessionInfo sessionInfo = activeSessions.get(sessionId);
+        if (sessionInfo != null && sessionInfo.markFirstToken()) {
+            long ttft = System.currentTimeMillis() - sessionInfo.getStartTime();
+            chatLatencyMetrics.recordTimeToFirstToken(ttft);
+            logger.debug("会话首Token: sessionId={}, ttft={}ms", sessionId, ttft);
+        }
+    }
+
+    /** 获取会话的流式取消令牌，消息处理器在发起模型请求前登记取消动作
+     * @param sessionId 会话ID
+     * @return 取消令牌，会话不存在时为null */
+    public StreamCancellationToken getCancellationToken(String sessionId) {
+        SessionInfo sessionInfo = activeSessions.get(sessionId);
+        return sessionInfo != null ? sessionInfo.getCancellationToken() : null;
+    }
+
     /** 检查会话是否已被中断
      * @param sessionId 会话ID
      * @return true表示已中断，false表示未中断或会话不存在 */
@@ -137,6 +207,15 @@ public class ChatSessionManager {
         return activeSessions.size();
     }
 
+    /** 检查会话是否在指定时间之后开始了新一轮对话
+     * @param sessionId 会话ID
+     * @param timestamp 时间戳(毫秒)
+     * @return 本节点上存在该会话且开始时间晚于timestamp */
+    public boolean hasSessionStartedAfter(String sessionId, long timestamp) {
+        SessionInfo sessionInfo = activeSessions.get(sessionId);
+        return sessionInfo != null && sessionInfo.getStartTime() >= timestamp;
+    }
+
     /** 检查会话是否存在
      * @param sessionId 会话ID
      * @return 会话是否存在 */
@@ -0,0 +1,210 @@
+package org.xhy.application.conversation.service;
+
+import cn.hutool.core.bean.BeanUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.application.conversation.service.handler.context.ChatContext;
+import org.xhy.domain.conversation.constant.MessageType;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.conversation.service.ContextDomainService;
+import org.xhy.domain.conversation.service.MessageDomainService;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.domain.shared.enums.TokenOverflowStrategyEnum;
+import org.xhy.domain.agent.model.LLMModelConfig;
+import org.xhy.domain.token.model.TokenMessage;
+import org.xhy.domain.token.model.TokenProcessResult;
+import org.xhy.domain.token.model.config.TokenOverflowConfig;
+import org.xhy.domain.token.service.TokenDomainService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.ManagedExecutor;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/** 上下文后台摘要器
+ *
+ * 一轮对话结束后在后台为会话上下文生成滚动摘要：把超出阈值的早期消息（包括旧摘要）合并为新的摘要消息，并从活跃消息中移除已被摘要覆盖的消息。
+ * 请求路径只读取当前最新的摘要和尚未摘要的原始消息，不再同步调用大模型。同一会话同时只有一个摘要任务，执行期间的新触发会在结束后补跑一次。
+ * 摘要期间上下文被请求路径改写（新一轮对话、滑动窗口重置等）时放弃本次结果，由下一轮对话结束后重新触发。 */
+@Component
+public class ContextSummarizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextSummarizer.class);
+
+    private final ContextDomainService contextDomainService;
+    private final MessageDomainService messageDomainService;
+    private final TokenDomainService tokenDomainService;
+    private final ChatSessionManager chatSessionManager;
+
+    private final ManagedExecutor executor;
+
+    /** 正在摘要的会话，值表示执行期间是否有新的触发 */
+    private final ConcurrentHashMap<String, AtomicBoolean> inFlight = new ConcurrentHashMap<>();
+
+    public ContextSummarizer(ContextDomainService contextDomainService, MessageDomainService messageDomainService,
+            TokenDomainService tokenDomainService, ChatSessionManager chatSessionManager,
+            ExecutorRegistry executorRegistry) {
+        this.contextDomainService = contextDomainService;
+        this.messageDomainService = messageDomainService;
+        this.tokenDomainService = tokenDomainService;
+        this.chatSessionManager = chatSessionManager;
+        this.executor = executorRegistry.get(WorkloadType.CONTEXT_SUMMARY);
+    }
+
+    /** 一轮对话结束后调用，摘要策略下按需提交后台摘要任务
+     * @param chatContext 对话环境 */
+    public void scheduleIfNeeded(ChatContext chatContext) {
+        LLMModelConfig llmModelConfig = chatContext.getLlmModelConfig();
+        if (llmModelConfig == null || llmModelConfig.getStrategyType() != TokenOverflowStrategyEnum.SUMMARIZE) {
+            return;
+        }
+        schedule(chatContext.getSessionId(), buildTokenOverflowConfig(chatContext));
+    }
+
+    /** 提交会话的摘要任务，已有任务在执行时只标记补跑
+     * @param sessionId 会话ID
+     * @param tokenOverflowConfig Token策略配置 */
+    public void schedule(String sessionId, TokenOverflowConfig tokenOverflowConfig) {
+        AtomicBoolean rerun = new AtomicBoolean(false);
+        AtomicBoolean existing = inFlight.putIfAbsent(sessionId, rerun);
+        if (existing != null) {
+            existing.set(true);
+            return;
+        }
+        try {
+            long triggeredAt = System.currentTimeMillis();
+            executor.execute(() -> run(sessionId, tokenOverflowConfig, rerun, triggeredAt));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sessionId, rerun);
+            logger.warn("摘要任务队列已满，跳过本次摘要: sessionId={}", sessionId);
+        }
+    }
+
+    /** 根据对话环境构造Token策略配置
+     * @param chatContext 对话环境
+     * @return Token策略配置 */
+    public static TokenOverflowConfig buildTokenOverflowConfig(ChatContext chatContext) {
+        LLMModelConfig llmModelConfig = chatContext.getLlmModelConfig();
+        ProviderEntity provider = chatContext.getProvider();
+
+        TokenOverflowConfig tokenOverflowConfig = new TokenOverflowConfig();
+        tokenOverflowConfig.setStrategyType(llmModelConfig.getStrategyType());
+        tokenOverflowConfig.setMaxTokens(llmModelConfig.getMaxTokens());
+        tokenOverflowConfig.setSummaryThreshold(llmModelConfig.getSummaryThreshold());
+        tokenOverflowConfig.setReserveRatio(llmModelConfig.getReserveRatio());
+
+        org.xhy.domain.llm.model.config.ProviderConfig providerConfig = provider.getConfig();
+        tokenOverflowConfig.setProviderConfig(new ProviderConfig(providerConfig.getApiKey(),
+                providerConfig.getBaseUrl(), chatContext.getModel().getModelId(), provider.getProtocol()));
+        return tokenOverflowConfig;
+    }
+
+    /** 当前正在摘要的会话数 */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void run(String sessionId, TokenOverflowConfig tokenOverflowConfig, AtomicBoolean rerun,
+            long triggeredAt) {
+        try {
+            long since = triggeredAt;
+            do {
+                rerun.set(false);
+                summarize(sessionId, tokenOverflowConfig, since);
+                since = System.currentTimeMillis();
+            } while (rerun.get());
+        } catch (Exception e) {
+            logger.error("生成上下文摘要失败: sessionId={}, error={}", sessionId, e.getMessage(), e);
+        } finally {
+            inFlight.remove(sessionId, rerun);
+        }
+    }
+
+    /** 为会话生成一次滚动摘要 */
+    void summarize(String sessionId, TokenOverflowConfig tokenOverflowConfig, long triggeredAt) {
+        ContextEntity contextEntity = contextDomainService.findBySessionId(sessionId);
+        if (contextEntity == null || contextEntity.getActiveMessages() == null
+                || contextEntity.getActiveMessages().isEmpty()) {
+            return;
+        }
+
+        List<MessageEntity> messageEntities = messageDomainService.listByIds(contextEntity.getActiveMessages());
+        List<TokenMessage> tokenMessages = tokenizeMessage(messageEntities);
+        TokenProcessResult plan = tokenDomainService.processMessages(tokenMessages, tokenOverflowConfig);
+        if (!plan.isProcessed() || plan.getMessagesToSummarize() == null || plan.getMessagesToSummarize().isEmpty()) {
+            return;
+        }
+
+        // 触发后会话又开始了新一轮对话时延后，避免与请求路径同时改写上下文；该轮对话结束后会再次触发
+        if (chatSessionManager.hasSessionStartedAfter(sessionId, triggeredAt)) {
+            logger.debug("会话存在进行中的对话，延后摘要: sessionId={}", sessionId);
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        TokenMessage summary = tokenDomainService.generateSummary(plan.getMessagesToSummarize(), tokenOverflowConfig,
+                tokenMessages);
+
+        // 摘要期间开始了新一轮对话时放弃，避免覆盖请求路径对窗口的修改
+        if (chatSessionManager.hasSessionStartedAfter(sessionId, triggeredAt)) {
+            logger.debug("摘要期间会话开始了新的对话，放弃本次摘要: sessionId={}", sessionId);
+            return;
+        }
+
+        MessageEntity summaryEntity = summaryMessageToEntity(summary, sessionId);
+        messageDomainService.saveMessage(Collections.singletonList(summaryEntity));
+
+        // 基于读取时的窗口移除被摘要覆盖的消息，仅当窗口自读取后未被改写时写入
+        Set<String> coveredIds = plan.getMessagesToSummarize().stream().map(TokenMessage::getId)
+                .collect(Collectors.toSet());
+        List<String> activeMessages = new ArrayList<>();
+        activeMessages.add(summaryEntity.getId());
+        contextEntity.getActiveMessages().stream().filter(id -> id != null && !coveredIds.contains(id))
+                .forEach(activeMessages::add);
+        contextEntity.setActiveMessages(activeMessages);
+        contextEntity.setSummary(summary.getContent());
+        contextEntity.setSummaryMessageId(summaryEntity.getId());
+        if (!contextDomainService.updateIfUnchanged(contextEntity)) {
+            logger.debug("摘要期间上下文已被改写，放弃本次摘要: sessionId={}", sessionId);
+            return;
+        }
+
+        logger.info("上下文摘要已更新: sessionId={}, 覆盖消息数={}, 耗时={}ms", sessionId, coveredIds.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /** 消息实体转换为token消息 */
+    private List<TokenMessage> tokenizeMessage(List<MessageEntity> messageEntities) {
+        return messageEntities.stream().sorted(Comparator.comparing(MessageEntity::getCreatedAt)).map(message -> {
+            TokenMessage tokenMessage = new TokenMessage();
+            tokenMessage.setId(message.getId());
+            tokenMessage.setRole(message.getRole().name());
+            tokenMessage.setContent(message.getContent());
+            tokenMessage.setTokenCount(message.getTokenCount());
+            tokenMessage.setBodyTokenCount(message.getBodyTokenCount());
+            tokenMessage.setCreatedAt(message.getCreatedAt());
+            return tokenMessage;
+        }).collect(Collectors.toList());
+    }
+
+    private MessageEntity summaryMessageToEntity(TokenMessage tokenMessage, String sessionId) {
+        MessageEntity messageEntity = new MessageEntity();
+        BeanUtil.copyProperties(tokenMessage, messageEntity);
+        messageEntity.setRole(Role.fromCode(tokenMessage.getRole()));
+        messageEntity.setSessionId(sessionId);
+        messageEntity.setMessageType(MessageType.TEXT);
+        return messageEntity;
+    }
+}
@@ -1,12 +1,14 @@
 package org.xhy.application.conversation.service;
 
-import cn.hutool.core.bean.BeanUtil;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.service.tool.ToolExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.xhy.application.conversation.assembler.MessageAssembler;
+import org.xhy.application.conversation.dto.AgentChatResponse;
 import org.xhy.application.conversation.dto.AgentPreviewRequest;
 import org.xhy.application.conversation.dto.ChatRequest;
 import org.xhy.application.conversation.dto.ChatResponse;
@@ -17,6 +19,8 @@ import org.xhy.application.rag.dto.RagSearchRequest;
 import org.xhy.application.rag.dto.RagStreamChatRequest;
 import org.xhy.interfaces.dto.agent.request.WidgetChatRequest;
 import org.xhy.application.conversation.service.message.AbstractMessageHandler;
+import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
+import org.xhy.application.conversation.service.handler.context.AgentPromptTemplates;
 import org.xhy.application.conversation.service.message.preview.PreviewMessageHandler;
 import org.xhy.domain.conversation.constant.MessageType;
 import org.xhy.domain.user.service.UserSettingsDomainService;
@@ -32,6 +36,7 @@ import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.handler.MessageHandlerFactory;
 import org.xhy.domain.conversation.constant.Role;
 import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.ContextSnapshot;
 import org.xhy.domain.conversation.model.MessageEntity;
 import org.xhy.domain.conversation.model.SessionEntity;
 import org.xhy.domain.conversation.service.ContextDomainService;
@@ -44,6 +49,7 @@ import org.xhy.domain.llm.model.HighAvailabilityResult;
 import org.xhy.domain.llm.service.HighAvailabilityDomainService;
 import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.shared.enums.TokenOverflowStrategyEnum;
+import org.xhy.domain.token.model.TokenIndex;
 import org.xhy.domain.token.model.TokenMessage;
 import org.xhy.domain.token.model.TokenProcessResult;
 import org.xhy.domain.token.model.config.TokenOverflowConfig;
@@ -52,7 +58,8 @@ import org.xhy.domain.tool.model.UserToolEntity;
 import org.xhy.domain.tool.service.ToolDomainService;
 import org.xhy.domain.tool.service.UserToolDomainService;
 import org.xhy.infrastructure.exception.BusinessException;
-import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.exception.InsufficientBalanceException;
+import org.xhy.infrastructure.exception.RateLimitException;
 import org.xhy.infrastructure.transport.MessageTransport;
 import org.xhy.infrastructure.transport.MessageTransportFactory;
 
@@ -60,7 +67,12 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /** 对话应用服务，用于适配域层的对话服务 */
@@ -69,6 +81,9 @@ public class ConversationAppService {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversationAppService.class);
 
+    /** 对话环境准备的请求级超时时间(毫秒) */
+    private static final long PREPARATION_TIMEOUT_MILLIS = 30000L;
+
     private final ConversationDomainService conversationDomainService;
     private final SessionDomainService sessionDomainService;
     private final AgentDomainService agentDomainService;
@@ -87,6 +102,10 @@ public class ConversationAppService {
     private final HighAvailabilityDomainService highAvailabilityDomainService;
     private final RagSessionManager ragSessionManager;
     private final ChatSessionManager chatSessionManager;
+    private final ChatPreparationExecutor chatPreparationExecutor;
+    private final ChatLatencyMetrics chatLatencyMetrics;
+    private final ContextSummarizer contextSummarizer;
+    private final BuiltInToolRegistry builtInToolRegistry;
 
     public ConversationAppService(ConversationDomainService conversationDomainService,
             SessionDomainService sessionDomainService, AgentDomainService agentDomainService,
@@ -96,7 +115,9 @@ public class ConversationAppService {
             MessageTransportFactory transportFactory, UserToolDomainService toolDomainService,
             UserSettingsDomainService userSettingsDomainService, PreviewMessageHandler previewMessageHandler,
             HighAvailabilityDomainService highAvailabilityDomainService, RagSessionManager ragSessionManager,
-            ChatSessionManager chatSessionManager) {
+            ChatSessionManager chatSessionManager, ChatPreparationExecutor chatPreparationExecutor,
+            ChatLatencyMetrics chatLatencyMetrics, ContextSummarizer contextSummarizer,
+            BuiltInToolRegistry builtInToolRegistry) {
         this.conversationDomainService = conversationDomainService;
         this.sessionDomainService = sessionDomainService;
         this.agentDomainService = agentDomainService;
@@ -113,6 +134,10 @@ public class ConversationAppService {
         this.highAvailabilityDomainService = highAvailabilityDomainService;
         this.ragSessionManager = ragSessionManager;
         this.chatSessionManager = chatSessionManager;
+        this.chatPreparationExecutor = chatPreparationExecutor;
+        this.chatLatencyMetrics = chatLatencyMetrics;
+        this.contextSummarizer = contextSummarizer;
+        this.builtInToolRegistry = builtInToolRegistry;
     }
 
     /** 获取会话中的消息列表
@@ -133,28 +158,16 @@ public class ConversationAppService {
     }
 
     /** 对话方法 - 统一入口，支持根据请求类型自动选择处理器
+     *
+     * SSE连接立即返回，对话环境准备与模型调用在对话准备线程池中执行
      *
      * @param chatRequest 聊天请求
      * @param userId 用户ID
      * @return SSE发射器 */
     public SseEmitter chat(ChatRequest chatRequest, String userId) {
-        // 1. 根据请求类型准备对话环境
-        ChatContext environment = prepareEnvironmentByRequestType(chatRequest, userId);
-
-        // 2. 获取传输方式 (当前仅支持SSE，将来支持WebSocket)
-        MessageTransport<SseEmitter> transport = transportFactory
-                .getTransport(MessageTransportFactory.TRANSPORT_TYPE_SSE);
-
-        // 3. 根据请求类型获取适合的消息处理器
-        AbstractMessageHandler handler = messageHandlerFactory.getHandler(chatRequest);
-
-        // 4. 处理对话
-        SseEmitter emitter = handler.chat(environment, transport);
-
-        // 5. 注册会话到会话管理器（支持中断功能）
-        chatSessionManager.registerSession(chatRequest.getSessionId(), emitter);
-
-        return emitter;
+        return startStreamingChat(chatRequest.getSessionId(), userId,
+                () -> prepareEnvironmentByRequestType(chatRequest, userId),
+                environment -> messageHandlerFactory.getHandler(chatRequest));
     }
 
     /** 对话处理（支持指定模型）- 用于外部API
@@ -164,21 +177,81 @@ public class ConversationAppService {
      * @param modelId 指定的模型ID（可选，为null时使用Agent绑定的模型）
      * @return SSE发射器 */
     public SseEmitter chatWithModel(ChatRequest chatRequest, String userId, String modelId) {
-        // 1. 准备对话环境（支持指定模型）
-        ChatContext environment = prepareEnvironmentWithModel(chatRequest, userId, modelId);
+        return startStreamingChat(chatRequest.getSessionId(), userId,
+                () -> prepareEnvironmentWithModel(chatRequest, userId, modelId),
+                environment -> messageHandlerFactory.getHandler(environment.getAgent()));
+    }
+
+    /** 分阶段启动流式对话：先建立并注册SSE连接、发送准备事件，再异步准备环境并开始对话
+     *
+     * @param sessionId 会话ID
+     * @param userId 用户ID
+     * @param preparation 对话环境准备阶段
+     * @param handlerSelector 消息处理器选择
+     * @return SSE发射器 */
+    private SseEmitter startStreamingChat(String sessionId, String userId, Supplier<ChatContext> preparation,
+            Function<ChatContext, AbstractMessageHandler> handlerSelector) {
+        long startTime = System.currentTimeMillis();
 
-        // 2. 获取传输方式 (当前仅支持SSE，将来支持WebSocket)
+        // 1. 获取传输方式并立即创建连接 (当前仅支持SSE，将来支持WebSocket)
         MessageTransport<SseEmitter> transport = transportFactory
                 .getTransport(MessageTransportFactory.TRANSPORT_TYPE_SSE);
-
-        // 3. 获取适合的消息处理器 (根据agent类型)
-        AbstractMessageHandler handler = messageHandlerFactory.getHandler(environment.getAgent());
-
-        // 4. 处理对话
-        SseEmitter emitter = handler.chat(environment, transport);
-
-        // 5. 注册会话到会话管理器（支持中断功能）
-        chatSessionManager.registerSession(chatRequest.getSessionId(), emitter);
+        SseEmitter emitter = transport.createConnection(AbstractMessageHandler.CONNECTION_TIMEOUT);
+
+        // 2. 注册会话到会话管理器（支持中断功能，准备阶段也可中断）
+        chatSessionManager.registerSession(sessionId, emitter);
+
+        // 3. 发送准备事件，连接返回前只是缓冲，实际写出时记录首字节时间
+        transport.onFirstByte(emitter,
+                () -> chatLatencyMetrics.recordTimeToFirstByte(System.currentTimeMillis() - startTime));
+        transport.sendMessage(emitter, AgentChatResponse.build("", MessageType.PREPARING));
+
+        // 4. 异步准备环境并处理对话
+        try {
+            chatPreparationExecutor.execute(userId, () -> {
+                ChatContext environment = null;
+                try {
+                    environment = preparation.get();
+                    chatLatencyMetrics.recordPreparation(System.currentTimeMillis() - startTime);
+
+                    // 准备期间会话已被中断或连接已关闭
+                    if (!chatSessionManager.hasSession(sessionId)) {
+                        logger.info("对话准备完成时会话已结束，跳过模型调用: sessionId={}", sessionId);
+                        environment.releaseProviderLease();
+                        return;
+                    }
+
+                    AbstractMessageHandler handler = handlerSelector.apply(environment);
+                    handler.chat(environment, transport, emitter);
+                } catch (InsufficientBalanceException e) {
+                    // 余额不足提示已在处理器中发送
+                    if (environment != null) {
+                        environment.releaseProviderLease();
+                    }
+                    transport.completeConnection(emitter);
+                } catch (RateLimitException e) {
+                    // 模型并发已满属于正常的过载保护，不按故障记录
+                    if (environment != null) {
+                        environment.releaseProviderLease();
+                    }
+                    logger.warn("模型并发已满，拒绝对话: sessionId={}, userId={}, 原因: {}", sessionId, userId,
+                            e.getMessage());
+                    transport.sendEndMessage(emitter,
+                            AgentChatResponse.buildEndMessage(e.getMessage(), MessageType.RATE_LIMITED));
+                } catch (Exception e) {
+                    if (environment != null) {
+                        environment.releaseProviderLease();
+                    }
+                    logger.error("对话准备失败: sessionId={}, userId={}", sessionId, userId, e);
+                    transport.sendEndMessage(emitter,
+                            AgentChatResponse.buildEndMessage(e.getMessage(), MessageType.TEXT));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("对话准备线程池已满，拒绝请求: sessionId={}", sessionId);
+            transport.sendEndMessage(emitter,
+                    AgentChatResponse.buildEndMessage("系统繁忙，请稍后重试", MessageType.RATE_LIMITED));
+        }
 
         return emitter;
     }
@@ -201,8 +274,12 @@ public class ConversationAppService {
         // 3. 获取适合的消息处理器
         AbstractMessageHandler handler = messageHandlerFactory.getHandler(environment.getAgent());
 
-        // 4. 处理对话
-        return handler.chat(environment, transport);
+        // 4. 处理对话，同步调用返回时已结束
+        try {
+            return handler.chat(environment, transport);
+        } finally {
+            environment.releaseProviderLease();
+        }
     }
 
     /** 准备对话环境
@@ -215,42 +292,71 @@ public class ConversationAppService {
     }
 
     /** 准备对话环境（支持指定模型）- 用于外部API
+     *
+     * 互不依赖的查询通过请求级依赖图并发执行，准备耗时取决于最长的依赖链：
+     * 会话 -> 工作区 -> 模型 -> 高可用选择；会话 -> Agent -> 工具；降级链与上下文历史在请求开始时即并发加载
      *
      * @param chatRequest 聊天请求
      * @param userId 用户ID
      * @param modelId 指定的模型ID（可选，为null时使用Agent绑定的模型）
      * @return 对话环境 */
-    private ChatContext prepareEnvironmentWithModel(ChatRequest chatRequest, String userId, String modelId) {
-        // 1. 获取会话和Agent信息
+    ChatContext prepareEnvironmentWithModel(ChatRequest chatRequest, String userId, String modelId) {
         String sessionId = chatRequest.getSessionId();
-        SessionEntity session = sessionDomainService.getSession(sessionId, userId);
-        String agentId = session.getAgentId();
-        AgentEntity agent = getAgentWithValidation(agentId, userId);
-
-        // 2. 获取工具配置
-        List<String> mcpServerNames = getMcpServerNames(agent.getToolIds(), userId);
-
-        // 3. 获取模型配置
-        AgentWorkspaceEntity workspace = agentWorkspaceDomainService.getWorkspace(agentId, userId);
-        LLMModelConfig llmModelConfig = workspace.getLlmModelConfig();
-        ModelEntity model = getModelForChat(llmModelConfig, modelId, userId);
-
-        // 4. 获取高可用服务商信息
-        List<String> fallbackChain = userSettingsDomainService.getUserFallbackChain(userId);
-        HighAvailabilityResult result = highAvailabilityDomainService.selectBestProvider(model, userId, sessionId,
-                fallbackChain);
-        ProviderEntity originalProvider = llmDomainService.getProvider(model.getProviderId());
-        ProviderEntity provider = result.getProvider();
-        ModelEntity selectedModel = result.getModel();
-        String instanceId = result.getInstanceId();
-        provider.isActive();
-
-        // 5. 创建并配置环境对象
-        ChatContext chatContext = createChatContext(chatRequest, userId, agent, model, selectedModel, originalProvider,
-                provider, llmModelConfig, mcpServerNames, instanceId);
-        setupContextAndHistory(chatContext, chatRequest);
-
-        return chatContext;
+        ChatPreparationGraph graph = new ChatPreparationGraph(chatPreparationExecutor.getLookupExecutor(),
+                PREPARATION_TIMEOUT_MILLIS);
+
+        // 1. 无依赖的查询：会话、降级链、上下文
+        CompletableFuture<SessionEntity> sessionFuture = graph.node("session",
+                () -> sessionDomainService.getSession(sessionId, userId));
+        CompletableFuture<List<String>> fallbackChainFuture = graph.node("fallbackChain",
+                () -> userSettingsDomainService.getUserFallbackChain(userId));
+        CompletableFuture<ContextSnapshot> contextFuture = graph.node("context",
+                () -> contextDomainService.loadContextWithMessages(sessionId));
+
+        // 2. 依赖会话的查询：Agent及工具、工作区模型配置
+        CompletableFuture<AgentEntity> agentFuture = graph.then("agent", sessionFuture,
+                session -> getAgentWithValidation(session.getAgentId(), userId));
+        CompletableFuture<List<String>> mcpServerNamesFuture = graph.then("mcpServerNames", agentFuture,
+                agent -> getMcpServerNames(agent.getToolIds(), userId));
+        CompletableFuture<AgentWorkspaceEntity> workspaceFuture = graph.then("workspace", sessionFuture,
+                session -> agentWorkspaceDomainService.getWorkspace(session.getAgentId(), userId));
+        CompletableFuture<ModelEntity> modelFuture = graph.then("model", workspaceFuture,
+                workspace -> getModelForChat(workspace.getLlmModelConfig(), modelId, userId));
+
+        // 3. 依赖模型的查询：原始服务商、高可用服务商选择
+        CompletableFuture<ProviderEntity> originalProviderFuture = graph.then("originalProvider", modelFuture,
+                model -> llmDomainService.getProvider(model.getProviderId()));
+        CompletableFuture<HighAvailabilityResult> highAvailabilityFuture = graph.combine("highAvailability",
+                modelFuture, fallbackChainFuture,
+                (model, fallbackChain) -> highAvailabilityDomainService.selectBestProvider(model, userId, sessionId,
+                        fallbackChain));
+
+        try {
+            // 4. 汇总结果
+            AgentEntity agent = graph.await(agentFuture);
+            List<String> mcpServerNames = graph.await(mcpServerNamesFuture);
+            LLMModelConfig llmModelConfig = graph.await(workspaceFuture).getLlmModelConfig();
+            ModelEntity model = graph.await(modelFuture);
+            ProviderEntity originalProvider = graph.await(originalProviderFuture);
+            HighAvailabilityResult result = graph.await(highAvailabilityFuture);
+            ProviderEntity provider = result.getProvider();
+            ModelEntity selectedModel = result.getModel();
+            String instanceId = result.getInstanceId();
+            provider.isActive();
+
+            // 5. 创建并配置环境对象
+            ChatContext chatContext = createChatContext(chatRequest, userId, agent, model, selectedModel,
+                    originalProvider, provider, llmModelConfig, mcpServerNames, instanceId);
+            chatContext.setProviderLease(result.getLease());
+            chatContext.setFallbackChain(graph.await(fallbackChainFuture));
+            setupContextAndHistory(chatContext, chatRequest, graph.await(contextFuture));
+
+            return chatContext;
+        } catch (RuntimeException e) {
+            // 其他分支失败时高可用选择可能已完成或仍在进行，完成后归还名额
+            highAvailabilityFuture.thenAccept(HighAvailabilityResult::release);
+            throw e;
+        }
     }
 
     /** 获取Agent并进行验证 */
@@ -320,24 +426,23 @@ public class ConversationAppService {
 
     /** 设置上下文和历史消息
      *
-     * @param environment 对话环境 */
-    private void setupContextAndHistory(ChatContext environment, ChatRequest chatRequest) {
+     * @param environment 对话环境
+     * @param chatRequest 聊天请求
+     * @param contextSnapshot 已加载的上下文及活跃消息(包括摘要)，不存在时为null */
+    private void setupContextAndHistory(ChatContext environment, ChatRequest chatRequest,
+            ContextSnapshot contextSnapshot) {
         String sessionId = environment.getSessionId();
+        ContextEntity contextEntity;
+        List<MessageEntity> messageEntities;
 
-        // 获取上下文
-        ContextEntity contextEntity = contextDomainService.findBySessionId(sessionId);
-        List<MessageEntity> messageEntities = new ArrayList<>();
-
-        if (contextEntity != null) {
-            // 获取活跃消息(包括摘要)
-            List<String> activeMessageIds = contextEntity.getActiveMessages();
-            messageEntities = messageDomainService.listByIds(activeMessageIds);
-
+        if (contextSnapshot != null) {
             // 应用Token溢出策略, 上下文历史消息以token策略返回的为准
-            messageEntities = applyTokenOverflowStrategy(environment, contextEntity, messageEntities);
+            contextEntity = contextSnapshot.getContext();
+            messageEntities = applyTokenOverflowStrategy(environment, contextEntity, contextSnapshot);
         } else {
             contextEntity = new ContextEntity();
             contextEntity.setSessionId(sessionId);
+            messageEntities = new ArrayList<>();
         }
 
         // 特殊处理当前对话的文件，因为在后续的对话中无法发送文件
@@ -354,86 +459,89 @@ public class ConversationAppService {
     }
 
     /** 应用Token溢出策略，返回处理后的历史消息
+     *
+     * 摘要策略下不在请求路径生成摘要：直接使用后台摘要器产出的最新摘要加上尚未摘要的原始消息，超出阈值时提交后台摘要任务。
      *
      * @param environment 对话环境
      * @param contextEntity 上下文实体
-     * @param messageEntities 消息实体列表 */
+     * @param contextSnapshot 上下文快照，提供活跃消息及其本体Token总数 */
     private List<MessageEntity> applyTokenOverflowStrategy(ChatContext environment, ContextEntity contextEntity,
-            List<MessageEntity> messageEntities) {
-
-        LLMModelConfig llmModelConfig = environment.getLlmModelConfig();
-        ProviderEntity provider = environment.getProvider();
+            ContextSnapshot contextSnapshot) {
+        List<MessageEntity> messageEntities = contextSnapshot.getMessages();
 
         // 处理Token溢出
-        TokenOverflowStrategyEnum strategyType = llmModelConfig.getStrategyType();
-
-        // Token处理
-        List<TokenMessage> tokenMessages = tokenizeMessage(messageEntities);
+        TokenOverflowStrategyEnum strategyType = environment.getLlmModelConfig().getStrategyType();
 
         // 构造Token配置
-        TokenOverflowConfig tokenOverflowConfig = new TokenOverflowConfig();
-        tokenOverflowConfig.setStrategyType(strategyType);
-        tokenOverflowConfig.setMaxTokens(llmModelConfig.getMaxTokens());
-        tokenOverflowConfig.setSummaryThreshold(llmModelConfig.getSummaryThreshold());
-        tokenOverflowConfig.setReserveRatio(llmModelConfig.getReserveRatio());
+        TokenOverflowConfig tokenOverflowConfig = ContextSummarizer.buildTokenOverflowConfig(environment);
 
-        // 设置提供商配置
-        org.xhy.domain.llm.model.config.ProviderConfig providerConfig = provider.getConfig();
-        tokenOverflowConfig.setProviderConfig(new ProviderConfig(providerConfig.getApiKey(),
-                providerConfig.getBaseUrl(), environment.getModel().getModelId(), provider.getProtocol()));
+        if (strategyType == TokenOverflowStrategyEnum.SLIDING_WINDOW) {
+            String model = tokenOverflowConfig.getProviderConfig().getModel();
+            int promptTokens = tokenDomainService.countPromptTokens(buildSystemPrompt(environment.getAgent()), null,
+                    environment.getUserMessage(), model);
 
-        // 处理Token
-        TokenProcessResult result = tokenDomainService.processMessages(tokenMessages, tokenOverflowConfig);
-        List<TokenMessage> retainedMessages = new ArrayList<>(tokenMessages);
-        TokenMessage newSummaryMessage = null;
-        // 更新上下文
-        if (result.isProcessed()) {
-            retainedMessages = result.getRetainedMessages();
-            // 统一对 活跃消息进行时间升序排序
-            List<String> retainedMessageIds = retainedMessages.stream()
-                    .sorted(Comparator.comparing(TokenMessage::getCreatedAt)).map(TokenMessage::getId)
-                    .collect(Collectors.toList());
-            if (strategyType == TokenOverflowStrategyEnum.SUMMARIZE
-                    && retainedMessages.get(0).getRole().equals(Role.SUMMARY.name())) {
-                newSummaryMessage = retainedMessages.get(0);
-                contextEntity.setSummary(newSummaryMessage.getContent());
+            // 历史消息加上系统提示词和用户消息未超出预留缓冲以下的窗口时直接使用缓存的Token总数判定，无需逐条转换消息
+            if (isWithinReserve(contextSnapshot, promptTokens, tokenOverflowConfig)) {
+                return messageEntities.stream().filter(message -> !message.isSummaryMessage())
+                        .collect(Collectors.toList());
+            }
+
+            // 接近上限时再计入内置工具定义，按发送前的完整请求裁剪窗口
+            Map<ToolSpecification, ToolExecutor> builtInTools = builtInToolRegistry
+                    .createToolsForAgent(environment.getAgent());
+            tokenOverflowConfig
+                    .setReservedTokens(promptTokens + tokenDomainService.countToolTokens(builtInTools.keySet(), model));
+        }
+
+        // Token处理：使用缓存中维护的Token索引，消息已按对话顺序排列并带有前缀和，无需逐条转换和排序
+        TokenIndex tokenIndex = contextSnapshot.getTokenIndex();
+
+        if (strategyType == TokenOverflowStrategyEnum.SUMMARIZE) {
+            // 后台摘要落后（如摘要任务失败或排队）时补提交一次，本次请求仍使用原始消息
+            if (tokenDomainService.needsProcessing(tokenIndex, tokenOverflowConfig)) {
+                contextSummarizer.schedule(environment.getSessionId(), tokenOverflowConfig);
             }
+            return messageEntities.stream().sorted(Comparator.comparing(MessageEntity::getCreatedAt))
+                    .collect(Collectors.toList());
+        }
 
-            contextEntity.setActiveMessages(retainedMessageIds);
+        // 处理Token
+        TokenProcessResult result = tokenDomainService.processMessages(tokenIndex, tokenOverflowConfig);
+        if (!result.isProcessed()) {
+            return messageEntities.stream().filter(message -> !message.isSummaryMessage())
+                    .collect(Collectors.toList());
         }
+        // 更新上下文，保留的消息是索引的后缀，已按时间升序排列
+        List<TokenMessage> retainedMessages = result.getRetainedMessages();
+        contextEntity.setActiveMessages(
+                retainedMessages.stream().map(TokenMessage::getId).collect(Collectors.toList()));
         Set<String> retainedMessageIdSet = retainedMessages.stream().map(TokenMessage::getId)
                 .collect(Collectors.toSet());
         // 从messageEntity中过滤出保留的消息，防止Entity字段丢失
-        List<MessageEntity> newHistoryMessages = messageEntities.stream()
+        return messageEntities.stream()
                 .filter(message -> retainedMessageIdSet.contains(message.getId()) && !message.isSummaryMessage())
                 .collect(Collectors.toList());
-        if (newSummaryMessage != null) {
-            newHistoryMessages.add(0, this.summaryMessageToEntity(newSummaryMessage, environment.getSessionId()));
-        }
-        return newHistoryMessages;
     }
 
-    /** 消息实体转换为token消息 */
-    private List<TokenMessage> tokenizeMessage(List<MessageEntity> messageEntities) {
-        return messageEntities.stream().map(message -> {
-            TokenMessage tokenMessage = new TokenMessage();
-            tokenMessage.setId(message.getId());
-            tokenMessage.setRole(message.getRole().name());
-            tokenMessage.setContent(message.getContent());
-            tokenMessage.setTokenCount(message.getTokenCount());
-            tokenMessage.setBodyTokenCount(message.getBodyTokenCount());
-            tokenMessage.setCreatedAt(message.getCreatedAt());
-            return tokenMessage;
-        }).collect(Collectors.toList());
+    /** 判断历史消息和每轮固定部分是否在扣除预留缓冲后的窗口内，存在未记录Token数的消息时需逐条计算 */
+    private boolean isWithinReserve(ContextSnapshot contextSnapshot, int promptTokens,
+            TokenOverflowConfig tokenOverflowConfig) {
+        if (tokenOverflowConfig.getMaxTokens() == null || contextSnapshot.getTokenIndex().getMissingCount() > 0) {
+            return false;
+        }
+        int maxTokens = tokenOverflowConfig.getMaxTokens();
+        Double reserveRatio = tokenOverflowConfig.getReserveRatio();
+        int available = maxTokens - (int) (maxTokens * (reserveRatio != null ? reserveRatio : 0.1));
+        return contextSnapshot.getTotalBodyTokenCount() + promptTokens <= available;
     }
 
-    private MessageEntity summaryMessageToEntity(TokenMessage tokenMessage, String sessionId) {
-        MessageEntity messageEntity = new MessageEntity();
-        BeanUtil.copyProperties(tokenMessage, messageEntity);
-        messageEntity.setRole(Role.fromCode(tokenMessage.getRole()));
-        messageEntity.setSessionId(sessionId);
-        messageEntity.setMessageType(MessageType.TEXT);
-        return messageEntity;
+    /** 与消息处理器发送的系统提示词一致：Agent系统提示词加上工具预设参数 */
+    private String buildSystemPrompt(AgentEntity agent) {
+        Map<String, Map<String, Map<String, String>>> toolPresetParams = agent.getToolPresetParams();
+        String presetToolPrompt = toolPresetParams != null
+                ? AgentPromptTemplates.generatePresetToolPrompt(toolPresetParams)
+                : "";
+        return agent.getSystemPrompt() + "\n" + presetToolPrompt;
     }
 
     /** Agent预览功能 - 无需保存会话的对话体验
@@ -594,7 +702,12 @@ public class ConversationAppService {
         AbstractMessageHandler handler = messageHandlerFactory.getHandler(environment.getAgent(), widgetEntity);
 
         // 4. 处理对话
-        return handler.chat(environment, transport);
+        try {
+            return handler.chat(environment, transport);
+        } catch (RuntimeException e) {
+            environment.releaseProviderLease();
+            throw e;
+        }
     }
 
     /** Widget聊天方法 - 同步响应
@@ -616,8 +729,12 @@ public class ConversationAppService {
         // 3. 获取适合的消息处理器（传入widget参数以支持类型选择）
         AbstractMessageHandler handler = messageHandlerFactory.getHandler(environment.getAgent(), widgetEntity);
 
-        // 4. 处理对话
-        return handler.chat(environment, transport);
+        // 4. 处理对话，同步调用返回时已结束
+        try {
+            return handler.chat(environment, transport);
+        } finally {
+            environment.releaseProviderLease();
+        }
     }
 
     /** 准备Widget对话环境
@@ -663,6 +780,8 @@ public class ConversationAppService {
         // 7. 创建并配置环境对象
         ChatContext chatContext = createWidgetChatContext(widgetChatRequest, agent, selectedModel, provider,
                 llmModelConfig, mcpServerNames, instanceId, publicId, creatorUserId);
+        chatContext.setProviderLease(result.getLease());
+        chatContext.setFallbackChain(fallbackChain);
         setupWidgetContextAndHistory(chatContext, widgetChatRequest);
 
         return chatContext;
@@ -694,13 +813,14 @@ public class ConversationAppService {
         String sessionId = environment.getSessionId();
 
         // 获取或创建匿名会话的上下文
-        ContextEntity contextEntity = contextDomainService.findBySessionId(sessionId);
+        ContextSnapshot contextSnapshot = contextDomainService.loadContextWithMessages(sessionId);
+        ContextEntity contextEntity;
         List<MessageEntity> messageEntities = new ArrayList<>();
 
-        if (contextEntity != null) {
+        if (contextSnapshot != null) {
             // 获取活跃消息
-            List<String> activeMessageIds = contextEntity.getActiveMessages();
-            messageEntities = messageDomainService.listByIds(activeMessageIds);
+            contextEntity = contextSnapshot.getContext();
+            messageEntities = contextSnapshot.getMessages();
 
             // 对于Widget聊天，暂不应用复杂的Token溢出策略，使用简单的窗口限制
             if (messageEntities.size() > 20) { // 限制历史消息数量
@@ -779,11 +899,13 @@ public class ConversationAppService {
     private RagChatContext prepareRagEnvironment(RagChatRequest ragRequest, String userId) {
         // 1. 获取会话上下文和历史消息
         String sessionId = ragRequest.getSessionId();
-        ContextEntity contextEntity = contextDomainService.findBySessionId(sessionId);
+        ContextSnapshot contextSnapshot = contextDomainService.loadContextWithMessages(sessionId);
+        ContextEntity contextEntity;
         List<MessageEntity> messageHistory = new ArrayList<>();
 
-        if (contextEntity != null && contextEntity.getActiveMessages() != null) {
-            messageHistory = messageDomainService.listByIds(contextEntity.getActiveMessages());
+        if (contextSnapshot != null) {
+            contextEntity = contextSnapshot.getContext();
+            messageHistory = contextSnapshot.getMessages();
         } else {
             contextEntity = new ContextEntity();
             contextEntity.setSessionId(sessionId);
@@ -815,6 +937,7 @@ public class ConversationAppService {
         ragContext.setModel(selectedModel);
         ragContext.setProvider(provider);
         ragContext.setInstanceId(result.getInstanceId());
+        ragContext.setProviderLease(result.getLease());
         ragContext.setContextEntity(contextEntity);
         ragContext.setMessageHistory(messageHistory);
         ragContext.setStreaming(true);
@@ -890,6 +1013,7 @@ public class ConversationAppService {
         ragContext.setProvider(provider);
         ragContext.setLlmModelConfig(llmModelConfig);
         ragContext.setInstanceId(instanceId);
+        ragContext.setProviderLease(result.getLease());
         ragContext.setRagSearchRequest(ragSearchRequest);
         ragContext.setUserRagId(null); // Widget RAG使用数据集ID，不使用userRagId
         ragContext.setFileUrls(widgetChatRequest.getFileUrls());
@@ -1,8 +1,8 @@
 package org.xhy.application.conversation.service.handler.context;
 
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /** 提示词模板 集中管理各种场景的提示词 */
 public class AgentPromptTemplates {
@@ -31,7 +31,8 @@ public class AgentPromptTemplates {
 
         // 确保 toolPresetParams 不为 null 且不为空
         if (toolPresetParams != null && !toolPresetParams.isEmpty()) {
-            Set<String> presetToolNames = new HashSet<>();
+            // 按名称排序，相同配置生成相同的提示词，保证系统提示词前缀稳定
+            Set<String> presetToolNames = new TreeSet<>();
 
             // 遍历 mcpServerName 层 (例如 "surge")
             for (Map.Entry<String, Map<String, Map<String, String>>> entry1 : toolPresetParams.entrySet()) {
@@ -12,6 +12,7 @@ import org.xhy.domain.agent.model.LLMModelConfig;
 import org.xhy.domain.conversation.constant.Role;
 import org.xhy.domain.conversation.model.ContextEntity;
 import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.highavailability.balancer.InFlightLease;
 import org.xhy.domain.llm.model.ModelEntity;
 import org.xhy.domain.llm.model.ProviderEntity;
 import org.xhy.domain.trace.model.TraceContext;
@@ -63,6 +64,12 @@ public class ChatContext {
     /** 高可用实例ID */
     private String instanceId;
 
+    /** 当前实例占用的本地负载均衡进行中请求名额，可为null，对话结束或切换实例时归还 */
+    private InFlightLease providerLease;
+
+    /** 用户降级链，首Token前调用失败时按顺序切换 */
+    private List<String> fallbackChain;
+
     /** 是否流式响应 */
     private boolean streaming = true;
 
@@ -187,6 +194,29 @@ public class ChatContext {
         this.instanceId = instanceId;
     }
 
+    public InFlightLease getProviderLease() {
+        return providerLease;
+    }
+
+    public void setProviderLease(InFlightLease providerLease) {
+        this.providerLease = providerLease;
+    }
+
+    /** 归还当前实例的进行中请求名额，可重复调用 */
+    public void releaseProviderLease() {
+        if (providerLease != null) {
+            providerLease.release();
+        }
+    }
+
+    public List<String> getFallbackChain() {
+        return fallbackChain;
+    }
+
+    public void setFallbackChain(List<String> fallbackChain) {
+        this.fallbackChain = fallbackChain;
+    }
+
     public boolean isStreaming() {
         return streaming;
     }
@@ -29,6 +29,8 @@ public class TracingChatContext extends ChatContext {
         tracingContext.setMcpServerNames(chatContext.getMcpServerNames());
         tracingContext.setFileUrls(chatContext.getFileUrls());
         tracingContext.setInstanceId(chatContext.getInstanceId());
+        tracingContext.setProviderLease(chatContext.getProviderLease());
+        tracingContext.setFallbackChain(chatContext.getFallbackChain());
         tracingContext.setStreaming(chatContext.isStreaming());
 
         return tracingContext;
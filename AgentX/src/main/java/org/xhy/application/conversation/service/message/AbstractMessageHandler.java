@@ -4,6 +4,7 @@ import cn.hutool.core.collection.CollectionUtil;
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
 import dev.langchain4j.agent.tool.ToolSpecification;
 import dev.langchain4j.data.message.*;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
@@ -19,13 +20,14 @@ import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.message.Agent;
 import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
 import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.application.conversation.service.ContextSummarizer;
 import org.xhy.domain.agent.model.AgentEntity;
 import org.xhy.domain.conversation.constant.MessageType;
 import org.xhy.domain.conversation.constant.Role;
-import org.xhy.domain.conversation.model.ContextEntity;
 import org.xhy.domain.conversation.model.MessageEntity;
 import org.xhy.domain.conversation.service.MessageDomainService;
 import org.xhy.domain.conversation.service.SessionDomainService;
+import org.xhy.domain.conversation.service.TurnWriteBuffer;
 import org.xhy.domain.llm.model.HighAvailabilityResult;
 import org.xhy.domain.llm.model.ModelEntity;
 import org.xhy.domain.llm.model.ProviderEntity;
@@ -33,9 +35,15 @@ import org.xhy.domain.llm.service.HighAvailabilityDomainService;
 import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.xhy.domain.user.service.AccountDomainService;
+import org.xhy.domain.token.service.TokenEstimator;
 import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.exception.RateLimitException;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
+import org.xhy.infrastructure.llm.PromptCacheUsage;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+import org.xhy.infrastructure.llm.bulkhead.AdaptiveBulkhead;
 import org.xhy.infrastructure.transport.MessageTransport;
+import org.xhy.infrastructure.transport.StreamMessageWriter;
 import org.xhy.infrastructure.transport.SseEmitterUtils;
 import org.xhy.application.billing.service.BillingService;
 import org.xhy.application.billing.dto.RuleContext;
@@ -46,6 +54,9 @@ import org.xhy.domain.user.model.AccountEntity;
 import org.xhy.domain.trace.constant.ExecutionPhase;
 import org.xhy.domain.trace.model.ModelCallInfo;
 import org.xhy.domain.trace.model.ToolCallInfo;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.llm.hedging.RequestHedger;
 import dev.langchain4j.service.tool.ToolExecution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +65,10 @@ import javax.annotation.Nullable;
 import java.math.BigDecimal;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -63,7 +78,7 @@ public abstract class AbstractMessageHandler {
     private static final Logger logger = LoggerFactory.getLogger(AbstractMessageHandler.class);
 
     /** 连接超时时间（毫秒） */
-    protected static final long CONNECTION_TIMEOUT = 3000000L;
+    public static final long CONNECTION_TIMEOUT = 3000000L;
 
     protected final LLMServiceFactory llmServiceFactory;
     protected final MessageDomainService messageDomainService;
@@ -75,11 +90,20 @@ public abstract class AbstractMessageHandler {
     protected final BillingService billingService;
     protected final AccountDomainService accountDomainService;
     protected final ChatSessionManager chatSessionManager;
+    protected final ContextSummarizer contextSummarizer;
+    protected final ProviderFailover providerFailover;
+    protected final RequestHedger requestHedger;
+
+    /** 会话命名等不阻塞对话的后台模型调用 */
+    protected final Executor backgroundExecutor;
+
     public AbstractMessageHandler(LLMServiceFactory llmServiceFactory, MessageDomainService messageDomainService,
             HighAvailabilityDomainService highAvailabilityDomainService, SessionDomainService sessionDomainService,
             UserSettingsDomainService userSettingsDomainService, LLMDomainService llmDomainService,
             BuiltInToolRegistry builtInToolRegistry, BillingService billingService,
-            AccountDomainService accountDomainService, ChatSessionManager chatSessionManager) {
+            AccountDomainService accountDomainService, ChatSessionManager chatSessionManager,
+            ContextSummarizer contextSummarizer, ProviderFailover providerFailover, RequestHedger requestHedger,
+            ExecutorRegistry executorRegistry) {
         this.llmServiceFactory = llmServiceFactory;
         this.messageDomainService = messageDomainService;
         this.highAvailabilityDomainService = highAvailabilityDomainService;
@@ -90,6 +114,10 @@ public abstract class AbstractMessageHandler {
         this.billingService = billingService;
         this.accountDomainService = accountDomainService;
         this.chatSessionManager = chatSessionManager;
+        this.contextSummarizer = contextSummarizer;
+        this.providerFailover = providerFailover;
+        this.requestHedger = requestHedger;
+        this.backgroundExecutor = executorRegistry.get(WorkloadType.BACKGROUND_LLM);
     }
 
     /** 处理对话的模板方法
@@ -102,6 +130,17 @@ public abstract class AbstractMessageHandler {
         // 1. 创建连接
         T connection = transport.createConnection(CONNECTION_TIMEOUT);
 
+        return chat(chatContext, transport, connection);
+    }
+
+    /** 在已建立的连接上处理对话，用于连接先行返回、环境异步准备的场景
+     *
+     * @param chatContext 对话环境
+     * @param transport 消息传输实现
+     * @param connection 已创建的连接对象
+     * @return 连接对象
+     * @param <T> 连接类型 */
+    public <T> T chat(ChatContext chatContext, MessageTransport<T> transport, T connection) {
         // 2. 调用对话开始钩子
         onChatStart(chatContext);
 
@@ -197,15 +236,51 @@ public abstract class AbstractMessageHandler {
             MessageEntity userEntity, MessageEntity llmEntity, MessageWindowChatMemory memory,
             ToolProvider toolProvider) {
 
-        // 获取流式LLM客户端
-        StreamingChatModel streamingClient = llmServiceFactory.getStreamingClient(chatContext.getProvider(),
-                chatContext.getModel());
+        // 获取隔离舱许可，上游并发已满时在保存消息前快速拒绝
+        AdaptiveBulkhead.Permit permit = acquirePermit(chatContext);
+
+        try {
+            // 获取流式LLM客户端
+            StreamingChatModel streamingClient = llmServiceFactory.getStreamingClient(chatContext.getProvider(),
+                    chatContext.getModel());
+
+            // 创建流式Agent，流结束时归还许可
+            Agent agent = BulkheadTokenStream.guard(
+                    buildStreamingAgent(streamingClient, memory, toolProvider, chatContext.getAgent()), permit);
+
+            // 使用现有的流式处理逻辑
+            processChat(agent, connection, transport, chatContext, userEntity, llmEntity);
+        } catch (RuntimeException e) {
+            permit.release(e);
+            chatContext.releaseProviderLease();
+            throw e;
+        }
+    }
 
-        // 创建流式Agent
-        Agent agent = buildStreamingAgent(streamingClient, memory, toolProvider, chatContext.getAgent());
+    /** 获取当前模型的隔离舱许可
+     *
+     * 被拒绝时结束追踪并抛出异常，由调用方向客户端发送结束消息
+     * @throws RateLimitException 排队已满或等待超时 */
+    protected AdaptiveBulkhead.Permit acquirePermit(ChatContext chatContext) {
+        try {
+            return llmServiceFactory.acquirePermit(chatContext.getProvider(), chatContext.getModel());
+        } catch (RateLimitException e) {
+            chatContext.releaseProviderLease();
+            onChatError(chatContext, ExecutionPhase.MODEL_CALL, e);
+            onChatCompleted(chatContext, false, e.getMessage());
+            throw e;
+        }
+    }
 
-        // 使用现有的流式处理逻辑
-        processChat(agent, connection, transport, chatContext, userEntity, llmEntity);
+    /** 切换到新选择的实例，归还原实例的进行中请求名额
+     * @param chatContext 对话环境
+     * @param selected 新选择的实例 */
+    protected void switchProvider(ChatContext chatContext, HighAvailabilityResult selected) {
+        chatContext.releaseProviderLease();
+        chatContext.setModel(selected.getModel());
+        chatContext.setProvider(selected.getProvider());
+        chatContext.setInstanceId(selected.getInstanceId());
+        chatContext.setProviderLease(selected.getLease());
     }
 
     /** 同步聊天处理 */
@@ -216,19 +291,43 @@ public abstract class AbstractMessageHandler {
         // 1. 获取同步LLM客户端
         ChatModel syncClient = llmServiceFactory.getStrandClient(chatContext.getProvider(), chatContext.getModel());
 
-        // 2. 保存用户消息和摘要
-        this.saveMessageAndUpdateContext(chatContext, userEntity);
+        // 2. 用户消息和摘要写入本轮的写入缓冲，与回复一起提交
+        TurnWriteBuffer turn = messageDomainService.beginTurn(chatContext.getContextEntity());
+        this.saveMessageAndUpdateContext(chatContext, userEntity, turn);
 
         // 3. 记录调用开始时间
         long startTime = System.currentTimeMillis();
 
+        // 对冲请求选中的备选实例，无论哪一方生效都在调用结束后归还名额
+        AtomicReference<HighAvailabilityResult> hedgeTarget = new AtomicReference<>();
         try {
 
             List<ChatMessage> messages = memory.messages();
             messages.add(new UserMessage(chatContext.getUserMessage()));
 
-            // 4. 构建同步Agent并调用
-            ChatResponse chatResponse = syncClient.chat(messages);
+            // 4. 调用模型，主调用过慢时向降级链中的备选模型发出对冲请求，先返回的结果生效
+            RequestHedger.Outcome<ChatResponse> outcome = requestHedger.execute(chatContext.getModel().getId(),
+                    () -> syncClient.chat(messages), () -> {
+                        HighAvailabilityResult alternative = selectHedgeTarget(chatContext.getFallbackChain(),
+                                chatContext.getUserId(), chatContext.getProvider(), chatContext.getModel());
+                        if (alternative == null) {
+                            return null;
+                        }
+                        hedgeTarget.set(alternative);
+                        ChatModel hedgeClient = llmServiceFactory.getStrandClient(alternative.getProvider(),
+                                alternative.getModel());
+                        return () -> hedgeClient.chat(messages);
+                    });
+            ChatResponse chatResponse = outcome.getValue();
+            if (outcome.isHedgeWon()) {
+                // 对冲请求生效时按实际响应的模型上报和计费，被取消的主调用不计费
+                HighAvailabilityResult winner = hedgeTarget.get();
+                logger.info("对冲请求先于主调用返回 - 会话: {}, 原模型: {}, 生效模型: {}", chatContext.getSessionId(),
+                        chatContext.getModel().getId(), winner.getModel().getId());
+                switchProvider(chatContext, winner);
+                llmEntity.setModel(winner.getModel().getModelId());
+                llmEntity.setProvider(winner.getProvider().getId());
+            }
 
             // 5. 处理响应 - 设置消息token
             this.setMessageTokenCount(chatContext.getMessageHistory(), userEntity, llmEntity, chatResponse);
@@ -238,10 +337,10 @@ public abstract class AbstractMessageHandler {
                     System.currentTimeMillis() - startTime, true);
             onModelCallCompleted(chatContext, chatResponse, modelCallInfo);
 
-            // 7. 保存消息
-            messageDomainService.updateMessage(userEntity);
-            messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(llmEntity),
-                    chatContext.getContextEntity());
+            // 7. 在一个事务中提交本轮消息
+            turn.update(userEntity);
+            turn.append(llmEntity);
+            messageDomainService.commitTurn(turn);
 
             // 8. 发送完整响应
             AgentChatResponse response = new AgentChatResponse(chatResponse.aiMessage().text(), true);
@@ -249,18 +348,20 @@ public abstract class AbstractMessageHandler {
             transport.sendEndMessage(connection, response);
 
             // 9. 上报调用成功结果
-            long latency = System.currentTimeMillis() - startTime;
+            long latency = outcome.getLatencyMs() >= 0 ? outcome.getLatencyMs()
+                    : System.currentTimeMillis() - startTime;
             highAvailabilityDomainService.reportCallResult(chatContext.getInstanceId(), chatContext.getModel().getId(),
                     true, latency, null);
 
             // 10. 执行模型调用计费
-            performBillingWithErrorHandling(chatContext, chatResponse.tokenUsage().inputTokenCount(),
-                    chatResponse.tokenUsage().outputTokenCount(), transport, connection);
+            performBillingWithErrorHandling(chatContext, chatResponse, transport, connection);
 
             // 11. 调用对话完成钩子
             onChatCompleted(chatContext, true, null);
 
         } catch (Exception e) {
+            commitTurnSafely(chatContext, turn);
+
             // 直接发送错误消息
             AgentChatResponse errorResponse = AgentChatResponse.buildEndMessage(e.getMessage(), MessageType.TEXT);
             transport.sendMessage(connection, errorResponse);
@@ -272,47 +373,134 @@ public abstract class AbstractMessageHandler {
             // 调用错误处理钩子
             onChatError(chatContext, ExecutionPhase.MODEL_CALL, e);
             onChatCompleted(chatContext, false, e.getMessage());
+        } finally {
+            chatContext.releaseProviderLease();
+            HighAvailabilityResult hedge = hedgeTarget.get();
+            if (hedge != null) {
+                hedge.release();
+            }
         }
     }
 
-    /** 保存用户、摘要消息记录和更新活跃消息
+    /** 将用户、摘要消息记录和活跃消息写入本轮的写入缓冲
      * @param chatContext 对话环境
-     * @param userEntity 此次的用户消息 */
-    private void saveMessageAndUpdateContext(ChatContext chatContext, MessageEntity userEntity) {
+     * @param userEntity 此次的用户消息
+     * @param turn 本轮对话的写入缓冲 */
+    private void saveMessageAndUpdateContext(ChatContext chatContext, MessageEntity userEntity,
+            TurnWriteBuffer turn) {
         MessageEntity summary = this.getSummaryFromHistory(chatContext.getMessageHistory());
-        ContextEntity contextEntity = chatContext.getContextEntity();
-        if (summary != null) {
-            // 不重置 created_at 字段
-            messageDomainService.saveMessage(Collections.singletonList(summary));
+        if (summary != null && summary.getId() == null) {
+            // 不重置 created_at 字段；已持久化的摘要（由后台摘要器生成）无需再次保存
+            turn.save(summary);
         }
         List<String> activeMessages = chatContext.getMessageHistory().stream().filter(Objects::nonNull)
                 .sorted(Comparator.comparing(MessageEntity::getCreatedAt)).map(MessageEntity::getId)
                 .collect(Collectors.toList());
-        contextEntity.setActiveMessages(activeMessages);
+        turn.resetWindow(activeMessages);
         // 保存用户消息
-        messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(userEntity), contextEntity);
+        turn.append(userEntity);
+    }
+
+    /** 提交本轮对话的写入，失败时只记录错误，未提交的写入保留在写入日志中，重启后恢复
+     * @param chatContext 对话环境
+     * @param turn 本轮对话的写入缓冲 */
+    protected void commitTurnSafely(ChatContext chatContext, TurnWriteBuffer turn) {
+        try {
+            messageDomainService.commitTurn(turn);
+        } catch (Exception e) {
+            logger.error("保存本轮对话消息失败 - 会话: {}, 错误: {}", chatContext.getSessionId(), e.getMessage(), e);
+        }
     }
 
     /** 子类实现具体的聊天处理逻辑 */
     protected <T> void processChat(Agent agent, T connection, MessageTransport<T> transport, ChatContext chatContext,
             MessageEntity userEntity, MessageEntity llmEntity) {
 
-        // 保存用户消息和摘要
-        this.saveMessageAndUpdateContext(chatContext, userEntity);
+        // 用户消息和摘要、工具调用消息、回复先写入本轮的写入缓冲，对话结束时一次提交
+        TurnWriteBuffer turn = messageDomainService.beginTurn(chatContext.getContextEntity());
+        this.saveMessageAndUpdateContext(chatContext, userEntity, turn);
 
         AtomicReference<StringBuilder> messageBuilder = new AtomicReference<>(new StringBuilder());
-        TokenStream tokenStream = agent.chat(chatContext.getUserMessage());
-
-        // 记录调用开始时间
-        long startTime = System.currentTimeMillis();
+        // 当前段落是否已出现非空白内容，避免每个Token都对累计内容做 toString().trim()
+        AtomicBoolean hasVisibleContent = new AtomicBoolean(false);
+        // 本轮对话累计输出（含工具调用前的段落），中断时用于结算
+        StringBuilder consumedOutput = new StringBuilder();
+        // 计费只结算一次：正常完成或中断二选一
+        AtomicBoolean settled = new AtomicBoolean(false);
+        // 首Token时间只上报一次，工具调用后的段落不计入
+        AtomicBoolean firstTokenReported = new AtomicBoolean(false);
+        StreamMessageWriter streamWriter = transport.createStreamWriter(connection, MessageType.TEXT);
+
+        // 记录调用开始时间，故障转移后为当前尝试的开始时间
+        AtomicLong attemptStartTime = new AtomicLong(System.currentTimeMillis());
+
+        // 会话被中断时关闭上游流并按已消耗Token结算
+        StreamCancellationToken cancellationToken = chatSessionManager
+                .getCancellationToken(chatContext.getSessionId());
+
+        // 服务商开始响应前失败时，按降级链切换到下一个模型重新发起，用户只看到一条回复
+        Set<String> attemptedModelIds = new HashSet<>();
+        attemptedModelIds.add(chatContext.getModel().getId());
+        TokenStream tokenStream = providerFailover.wrap(agent.chat(chatContext.getUserMessage()), cancellationToken,
+                failure -> {
+                    // 跳过并发已满的候选，不在故障转移时排队
+                    HighAvailabilityResult next;
+                    AdaptiveBulkhead.Permit permit;
+                    do {
+                        next = providerFailover.next(chatContext, attemptedModelIds);
+                        if (next == null) {
+                            return null;
+                        }
+                        permit = llmServiceFactory.tryAcquirePermit(next.getProvider(), next.getModel());
+                        if (permit == null) {
+                            next.release();
+                            attemptedModelIds.add(next.getModel().getId());
+                        }
+                    } while (permit == null);
+                    long now = System.currentTimeMillis();
+                    highAvailabilityDomainService.reportCallResult(chatContext.getInstanceId(),
+                            chatContext.getModel().getId(), false, now - attemptStartTime.get(), failure.getMessage());
+                    logger.warn("模型调用在响应前失败，切换模型 - 会话: {}, 原模型: {}, 新模型: {}, 错误: {}",
+                            chatContext.getSessionId(), chatContext.getModel().getId(), next.getModel().getId(),
+                            failure.getMessage());
+
+                    attemptedModelIds.add(next.getModel().getId());
+                    switchProvider(chatContext, next);
+                    llmEntity.setModel(next.getModel().getModelId());
+                    llmEntity.setProvider(next.getProvider().getId());
+                    attemptStartTime.set(now);
+                    try {
+                        return BulkheadTokenStream.guard(buildFailoverAgent(chatContext), permit)
+                                .chat(chatContext.getUserMessage());
+                    } catch (RuntimeException e) {
+                        permit.release(e);
+                        throw e;
+                    }
+                });
+        Runnable settleOnCancel = () -> {
+            if (settled.compareAndSet(false, true)) {
+                chatContext.releaseProviderLease();
+                settleInterruptedChat(chatContext, turn, llmEntity, messageBuilder.get().toString(),
+                        consumedOutput.toString(), transport, connection);
+            }
+        };
+        if (cancellationToken != null) {
+            cancellationToken.onCancel(settleOnCancel);
+        }
 
         tokenStream.onError(throwable -> {
+            if (settled.get()) {
+                return;
+            }
+            chatContext.releaseProviderLease();
+            streamWriter.flush();
+            commitTurnSafely(chatContext, turn);
             // 直接发送错误消息，transport内部处理连接异常
             transport.sendMessage(connection,
                     AgentChatResponse.buildEndMessage(throwable.getMessage(), MessageType.TEXT));
 
             // 上报调用失败结果
-            long latency = System.currentTimeMillis() - startTime;
+            long latency = System.currentTimeMillis() - attemptStartTime.get();
             highAvailabilityDomainService.reportCallResult(chatContext.getInstanceId(), chatContext.getModel().getId(),
                     false, latency, throwable.getMessage());
 
@@ -324,30 +512,47 @@ public abstract class AbstractMessageHandler {
         // 部分响应处理
         tokenStream.onPartialResponse(reply -> {
             messageBuilder.get().append(reply);
+            consumedOutput.append(reply);
             // 删除换行后消息为空字符串
-            if (messageBuilder.get().toString().trim().isEmpty()) {
-                return;
+            if (!hasVisibleContent.get()) {
+                if (reply.isBlank()) {
+                    return;
+                }
+                hasVisibleContent.set(true);
+                chatSessionManager.markFirstToken(chatContext.getSessionId());
+                if (firstTokenReported.compareAndSet(false, true)) {
+                    highAvailabilityDomainService.reportFirstToken(chatContext.getModel().getId(),
+                            System.currentTimeMillis() - attemptStartTime.get());
+                }
             }
 
-            // 直接发送消息，transport内部处理连接异常
-            transport.sendMessage(connection, AgentChatResponse.build(reply, MessageType.TEXT));
+            // 交由传输层发送，SSE下会合并相邻Token
+            streamWriter.write(reply);
         });
 
         // 完整响应处理
         tokenStream.onCompleteResponse(chatResponse -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (cancellationToken != null) {
+                cancellationToken.removeOnCancel(settleOnCancel);
+            }
+            chatContext.releaseProviderLease();
+            streamWriter.flush();
 
             this.setMessageTokenCount(chatContext.getMessageHistory(), userEntity, llmEntity, chatResponse);
 
-            messageDomainService.updateMessage(userEntity);
-            // 保存AI消息
-            messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(llmEntity),
-                    chatContext.getContextEntity());
+            // 在一个事务中提交本轮消息
+            turn.update(userEntity);
+            turn.append(llmEntity);
+            messageDomainService.commitTurn(turn);
 
             // 发送结束消息
             transport.sendEndMessage(connection, AgentChatResponse.buildEndMessage(MessageType.TEXT));
 
             // 上报调用成功结果
-            long latency = System.currentTimeMillis() - startTime;
+            long latency = System.currentTimeMillis() - attemptStartTime.get();
             highAvailabilityDomainService.reportCallResult(chatContext.getInstanceId(), chatContext.getModel().getId(),
                     true, latency, null);
 
@@ -356,12 +561,14 @@ public abstract class AbstractMessageHandler {
             onModelCallCompleted(chatContext, chatResponse, modelCallInfo);
 
             // 执行模型调用计费
-            performBillingWithErrorHandling(chatContext, chatResponse.tokenUsage().inputTokenCount(),
-                    chatResponse.tokenUsage().outputTokenCount(), transport, connection);
+            performBillingWithErrorHandling(chatContext, chatResponse, transport, connection);
 
             // 调用对话完成钩子
             onChatCompleted(chatContext, true, null);
 
+            // 摘要策略下在后台滚动生成摘要，不占用下一次请求的时间
+            contextSummarizer.scheduleIfNeeded(chatContext);
+
             smartRenameSession(chatContext);
         });
 
@@ -372,19 +579,19 @@ public abstract class AbstractMessageHandler {
 
         // 工具执行处理
         tokenStream.onToolExecuted(toolExecution -> {
+            streamWriter.flush();
             if (!messageBuilder.get().isEmpty()) {
                 transport.sendMessage(connection, AgentChatResponse.buildEndMessage(MessageType.TEXT));
                 llmEntity.setContent(messageBuilder.get().toString());
-                messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(llmEntity),
-                        chatContext.getContextEntity());
+                turn.append(llmEntity);
                 messageBuilder.set(new StringBuilder());
+                hasVisibleContent.set(false);
             }
             String message = "执行工具：" + toolExecution.request().name();
             MessageEntity toolMessage = createLlmMessage(chatContext);
             toolMessage.setMessageType(MessageType.TOOL_CALL);
             toolMessage.setContent(message);
-            messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(toolMessage),
-                    chatContext.getContextEntity());
+            turn.append(toolMessage);
 
             // 直接发送工具调用消息
             transport.sendMessage(connection, AgentChatResponse.buildEndMessage(message, MessageType.TOOL_CALL));
@@ -394,8 +601,53 @@ public abstract class AbstractMessageHandler {
             onToolCallCompleted(chatContext, toolCallInfo);
         });
 
-        // 启动流处理
-        tokenStream.start();
+        // 启动流处理，绑定取消令牌使HTTP层（包括工具调用后的后续轮次）可被中止
+        StreamCancellationToken.runWith(cancellationToken, tokenStream::start);
+    }
+
+    /** 结算被中断的对话：保存已生成的部分回复，并按已消耗的Token计费
+     *
+     * 流被取消后服务商不会返回用量，输入按历史消息与用户消息估算，输出按已接收的内容估算。
+     * @param chatContext 聊天上下文
+     * @param turn 本轮对话的写入缓冲
+     * @param llmEntity LLM消息实体
+     * @param partialContent 当前段落已生成的内容
+     * @param consumedOutput 本轮累计接收的输出
+     * @param transport 消息传输
+     * @param connection 连接对象 */
+    protected <T> void settleInterruptedChat(ChatContext chatContext, TurnWriteBuffer turn, MessageEntity llmEntity,
+            String partialContent, String consumedOutput, MessageTransport<T> transport, T connection) {
+        try {
+            if (!partialContent.isBlank()) {
+                int partialTokens = TokenEstimator.estimate(partialContent);
+                llmEntity.setContent(partialContent);
+                llmEntity.setTokenCount(partialTokens);
+                llmEntity.setBodyTokenCount(partialTokens);
+                turn.append(llmEntity);
+            }
+            commitTurnSafely(chatContext, turn);
+
+            int inputTokens = estimateInputTokens(chatContext);
+            int outputTokens = TokenEstimator.estimate(consumedOutput);
+            logger.info("对话已中断，按已消耗Token结算 - 会话: {}, 输入Token: {}, 输出Token: {}", chatContext.getSessionId(),
+                    inputTokens, outputTokens);
+            performBillingWithErrorHandling(chatContext, inputTokens, outputTokens, transport, connection);
+        } catch (Exception e) {
+            logger.error("中断结算失败 - 会话: {}, 错误: {}", chatContext.getSessionId(), e.getMessage(), e);
+        }
+        onChatCompleted(chatContext, false, "对话已中断");
+    }
+
+    /** 估算本次请求的输入Token：历史消息本体Token之和加上用户消息 */
+    private int estimateInputTokens(ChatContext chatContext) {
+        int total = TokenEstimator.estimate(chatContext.getUserMessage());
+        if (CollectionUtil.isNotEmpty(chatContext.getMessageHistory())) {
+            for (MessageEntity message : chatContext.getMessageHistory()) {
+                Integer bodyTokens = message.getBodyTokenCount();
+                total += bodyTokens != null ? bodyTokens : TokenEstimator.estimate(message.getContent());
+            }
+        }
+        return total;
     }
 
     @Nullable
@@ -421,8 +673,10 @@ public abstract class AbstractMessageHandler {
         if (CollectionUtil.isNotEmpty(historyMessages)) {
             bodyTokenSum = historyMessages.stream().mapToInt(MessageEntity::getBodyTokenCount).sum();
         }
-        userEntity.setTokenCount(chatResponse.tokenUsage().inputTokenCount());
-        userEntity.setBodyTokenCount(chatResponse.tokenUsage().inputTokenCount() - bodyTokenSum);
+        PromptCacheUsage inputUsage = PromptCacheUsage.of(chatResponse.tokenUsage());
+        userEntity.setTokenCount(inputUsage.getInputTokens());
+        userEntity.setBodyTokenCount(inputUsage.getInputTokens() - bodyTokenSum);
+        userEntity.setCachedTokenCount(inputUsage.getCachedInputTokens());
     }
 
     /** 初始化内存 */
@@ -431,6 +685,17 @@ public abstract class AbstractMessageHandler {
                 .build();
     }
 
+    /** 为故障转移切换后的模型重新构建流式Agent
+     *
+     * 失败的尝试已把用户消息写入原内存，这里用新的内存重新加载历史消息 */
+    protected Agent buildFailoverAgent(ChatContext chatContext) {
+        MessageWindowChatMemory memory = initMemory();
+        buildHistoryMessage(chatContext, memory);
+        StreamingChatModel streamingClient = llmServiceFactory.getStreamingClient(chatContext.getProvider(),
+                chatContext.getModel());
+        return buildStreamingAgent(streamingClient, memory, provideTools(chatContext), chatContext.getAgent());
+    }
+
     /** 构建流式Agent */
     protected Agent buildStreamingAgent(StreamingChatModel model, MessageWindowChatMemory memory,
             ToolProvider toolProvider, AgentEntity agent) {
@@ -478,10 +743,6 @@ public abstract class AbstractMessageHandler {
         // String summary = chatContext.getContextEntity().getSummary();
         String summary = Optional.ofNullable(this.getSummaryFromHistory(chatContext.getMessageHistory()))
                 .map(MessageEntity::getContent).orElse("");
-        if (StringUtils.isNotEmpty(summary)) {
-            // 添加为AI消息，但明确标识这是摘要
-            memory.add(new AiMessage(summary));
-        }
 
         String presetToolPrompt = "";
         // 设置预先工具设置的参数到系统提示词中
@@ -490,8 +751,24 @@ public abstract class AbstractMessageHandler {
             presetToolPrompt = AgentPromptTemplates.generatePresetToolPrompt(toolPresetParams);
         }
 
-        memory.add(new SystemMessage(chatContext.getAgent().getSystemPrompt() + "\n" + presetToolPrompt));
-        List<MessageEntity> messageHistory = chatContext.getMessageHistory();
+        appendHistoryMessages(memory, chatContext.getAgent().getSystemPrompt() + "\n" + presetToolPrompt, summary,
+                chatContext.getMessageHistory());
+    }
+
+    /** 按内容的稳定程度排列消息：系统提示词（随Agent配置变化）、摘要（压缩上下文时变化）、历史消息（每轮追加）
+     *
+     * 工具定义由客户端排在所有消息之前，这样多轮请求共享尽量长的相同前缀，可以命中服务商的提示词缓存
+     * @param memory 聊天内存
+     * @param systemPrompt 系统提示词
+     * @param summary 历史摘要，可为空
+     * @param messageHistory 历史消息 */
+    protected static void appendHistoryMessages(ChatMemory memory, String systemPrompt, String summary,
+            List<MessageEntity> messageHistory) {
+        memory.add(new SystemMessage(systemPrompt));
+        if (StringUtils.isNotEmpty(summary)) {
+            // 添加为AI消息，但明确标识这是摘要
+            memory.add(new AiMessage(summary));
+        }
         for (MessageEntity messageEntity : messageHistory) {
             // 注意不要重复发送摘要消息
             if (messageEntity.isUserMessage()) {
@@ -510,9 +787,31 @@ public abstract class AbstractMessageHandler {
         }
     }
 
-    // 智能重命名会话
+    /** 选择对冲请求的目标：降级链中由负载均衡选出的其他实例，跳过与主调用是同一服务商同一模型部署的候选
+     *
+     * 备选实例不改写会话亲和，对冲失败的一方不应影响下一轮的选择
+     *
+     * @return 服务商选择结果，调用方用完后须归还进行中请求名额；没有其他实例时返回null */
+    private HighAvailabilityResult selectHedgeTarget(List<String> fallbackChain, String userId,
+            ProviderEntity primaryProvider, ModelEntity primaryModel) {
+        Set<String> excludedModelIds = new HashSet<>();
+        excludedModelIds.add(primaryModel.getId());
+        while (true) {
+            HighAvailabilityResult alternative = providerFailover.select(fallbackChain, userId, null,
+                    excludedModelIds);
+            if (alternative == null
+                    || !Objects.equals(alternative.getProvider().getId(), primaryProvider.getId())
+                    || !Objects.equals(alternative.getModel().getModelEndpoint(), primaryModel.getModelEndpoint())) {
+                return alternative;
+            }
+            alternative.release();
+            excludedModelIds.add(alternative.getModel().getId());
+        }
+    }
+
+    // 智能重命名会话，后台线程池满载时放弃本次命名
     protected void smartRenameSession(ChatContext chatContext) {
-        Thread thread = new Thread(() -> {
+        Runnable renameTask = () -> {
             // 获取会话 id
             String sessionId = chatContext.getSessionId();
             // 是否是首次对话
@@ -526,22 +825,51 @@ public abstract class AbstractMessageHandler {
                 // 4. 获取用户降级配置
                 List<String> fallbackChain = userSettingsDomainService.getUserFallbackChain(userId);
 
-                // 5. 获取服务商信息（支持高可用、会话亲和性和降级）
-                HighAvailabilityResult result = highAvailabilityDomainService.selectBestProvider(model, userId,
-                        sessionId, fallbackChain);
-                ProviderEntity provider = result.getProvider();
-                ModelEntity selectedModel = result.getModel();
-                ChatModel strandClient = llmServiceFactory.getStrandClient(provider, selectedModel);
-                ArrayList<ChatMessage> chatMessages = new ArrayList<>();
-                chatMessages.add(new SystemMessage(AgentPromptTemplates.getStartConversationPrompt()));
-                chatMessages.add(new UserMessage(chatContext.getUserMessage()));
-                ChatResponse chat = strandClient.chat(chatMessages);
-                String sessionTitle = chat.aiMessage().text();
-                sessionDomainService.updateSession(chatContext.getSessionId(), userId, sessionTitle);
+                // 5. 获取服务商信息（支持高可用和降级），命名使用默认模型，不参与也不改写对话的会话亲和
+                HighAvailabilityResult result = highAvailabilityDomainService.selectBestProvider(model, userId, null,
+                        fallbackChain);
+                AtomicReference<HighAvailabilityResult> hedgeTarget = new AtomicReference<>();
+                try {
+                    ProviderEntity provider = result.getProvider();
+                    ModelEntity selectedModel = result.getModel();
+                    ChatModel strandClient = requestHedger.hedged(selectedModel.getId(),
+                            llmServiceFactory.getStrandClient(provider, selectedModel), () -> {
+                                HighAvailabilityResult alternative = selectHedgeTarget(fallbackChain, userId,
+                                        provider, selectedModel);
+                                if (alternative == null) {
+                                    return null;
+                                }
+                                hedgeTarget.set(alternative);
+                                return llmServiceFactory.getStrandClient(alternative.getProvider(),
+                                        alternative.getModel());
+                            });
+                    ArrayList<ChatMessage> chatMessages = new ArrayList<>();
+                    chatMessages.add(new SystemMessage(AgentPromptTemplates.getStartConversationPrompt()));
+                    chatMessages.add(new UserMessage(chatContext.getUserMessage()));
+                    ChatResponse chat = strandClient.chat(chatMessages);
+                    String sessionTitle = chat.aiMessage().text();
+                    sessionDomainService.updateSession(chatContext.getSessionId(), userId, sessionTitle);
+                } finally {
+                    result.release();
+                    HighAvailabilityResult hedge = hedgeTarget.get();
+                    if (hedge != null) {
+                        hedge.release();
+                    }
+                }
 
             }
-        });
-        thread.start();
+        };
+        try {
+            backgroundExecutor.execute(() -> {
+                try {
+                    renameTask.run();
+                } catch (Exception e) {
+                    logger.warn("智能重命名会话失败: sessionId={}, error={}", chatContext.getSessionId(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("后台线程池已满，跳过智能重命名会话: sessionId={}", chatContext.getSessionId());
+        }
     }
 
     /** 创建计费上下文
@@ -550,13 +878,16 @@ public abstract class AbstractMessageHandler {
      * @param inputTokens 输入Token数量
      * @param outputTokens 输出Token数量
      * @return 计费上下文 */
-    private RuleContext createBillingContext(ChatContext chatContext, Integer inputTokens, Integer outputTokens) {
+    private RuleContext createBillingContext(ChatContext chatContext, PromptCacheUsage inputUsage,
+            Integer outputTokens) {
         String requestId = generateRequestId(chatContext.getSessionId(), chatContext.getUserId());
 
         return RuleContext.builder().type(BillingType.MODEL_USAGE.getCode())
                 .serviceId(chatContext.getModel().getId().toString()) // 使用模型表主键ID
-                .usageData(Map.of(UsageDataKeys.INPUT_TOKENS, inputTokens != null ? inputTokens : 0,
-                        UsageDataKeys.OUTPUT_TOKENS, outputTokens != null ? outputTokens : 0))
+                .usageData(Map.of(UsageDataKeys.INPUT_TOKENS, inputUsage.getInputTokens(),
+                        UsageDataKeys.OUTPUT_TOKENS, outputTokens != null ? outputTokens : 0,
+                        UsageDataKeys.CACHED_INPUT_TOKENS, inputUsage.getCachedInputTokens(),
+                        UsageDataKeys.CACHE_WRITE_INPUT_TOKENS, inputUsage.getCacheWriteTokens()))
                 .requestId(requestId).userId(chatContext.getUserId()) // 添加用户ID
                 .build();
     }
@@ -580,15 +911,34 @@ public abstract class AbstractMessageHandler {
      * @param connection 连接对象 */
     protected <T> void performBillingWithErrorHandling(ChatContext chatContext, Integer inputTokens,
             Integer outputTokens, MessageTransport<T> transport, T connection) {
+        performBillingWithErrorHandling(chatContext, PromptCacheUsage.uncached(inputTokens), outputTokens, transport,
+                connection);
+    }
+
+    /** 按模型响应的用量执行计费，命中和写入提示词缓存的输入Token按各自单价计费
+     *
+     * @param chatContext 聊天上下文
+     * @param chatResponse 模型响应
+     * @param transport 消息传输
+     * @param connection 连接对象 */
+    protected <T> void performBillingWithErrorHandling(ChatContext chatContext, ChatResponse chatResponse,
+            MessageTransport<T> transport, T connection) {
+        performBillingWithErrorHandling(chatContext, PromptCacheUsage.of(chatResponse.tokenUsage()),
+                chatResponse.tokenUsage().outputTokenCount(), transport, connection);
+    }
+
+    private <T> void performBillingWithErrorHandling(ChatContext chatContext, PromptCacheUsage inputUsage,
+            Integer outputTokens, MessageTransport<T> transport, T connection) {
         try {
             // 创建计费上下文
-            RuleContext billingContext = createBillingContext(chatContext, inputTokens, outputTokens);
+            RuleContext billingContext = createBillingContext(chatContext, inputUsage, outputTokens);
 
             // 执行计费
             billingService.charge(billingContext);
 
-            logger.info("模型调用计费成功 - 用户: {}, 模型: {}, 输入Token: {}, 输出Token: {}, 费用已扣除", chatContext.getUserId(),
-                    chatContext.getModel().getId(), inputTokens, outputTokens);
+            logger.info("模型调用计费成功 - 用户: {}, 模型: {}, 输入Token: {}(缓存命中: {}), 输出Token: {}, 费用已扣除",
+                    chatContext.getUserId(), chatContext.getModel().getId(), inputUsage.getInputTokens(),
+                    inputUsage.getCachedInputTokens(), outputTokens);
 
         } catch (InsufficientBalanceException e) {
             // 余额不足异常处理
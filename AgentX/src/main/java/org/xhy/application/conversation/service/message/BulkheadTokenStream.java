@@ -0,0 +1,152 @@
+package org.xhy.application.conversation.service.message;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.ToolExecution;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+import org.xhy.infrastructure.llm.bulkhead.AdaptiveBulkhead;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/** 持有隔离舱许可的TokenStream
+ *
+ * 收到首个响应时记录延迟样本，流完成、出错或被取消时归还许可。一轮对话（包括工具调用后的后续轮次）只占用一个许可。 */
+public class BulkheadTokenStream implements TokenStream {
+
+    private final TokenStream delegate;
+    private final AdaptiveBulkhead.Permit permit;
+    private final Runnable cancelAction;
+
+    /** 启动时绑定的取消令牌 */
+    private volatile StreamCancellationToken token;
+
+    private boolean completeHandlerSet;
+    private boolean errorHandlerSet;
+
+    public BulkheadTokenStream(TokenStream delegate, AdaptiveBulkhead.Permit permit) {
+        this.delegate = delegate;
+        this.permit = permit;
+        this.cancelAction = permit::abandon;
+    }
+
+    /** 为Agent的每次调用加上许可，调用失败时立即归还 */
+    public static Agent guard(Agent agent, AdaptiveBulkhead.Permit permit) {
+        return message -> {
+            try {
+                return new BulkheadTokenStream(agent.chat(message), permit);
+            } catch (RuntimeException e) {
+                permit.release(e);
+                throw e;
+            }
+        };
+    }
+
+    @Override
+    public TokenStream onPartialResponse(Consumer<String> partialResponseHandler) {
+        delegate.onPartialResponse(reply -> {
+            permit.markFirstResponse();
+            partialResponseHandler.accept(reply);
+        });
+        return this;
+    }
+
+    @Override
+    public TokenStream onPartialReasoning(Consumer<String> partialReasoningHandler) {
+        delegate.onPartialReasoning(reasoning -> {
+            permit.markFirstResponse();
+            partialReasoningHandler.accept(reasoning);
+        });
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteReasoning(Consumer<String> completeReasoningHandler) {
+        delegate.onCompleteReasoning(completeReasoningHandler);
+        return this;
+    }
+
+    @Override
+    public TokenStream onReasoningDetected(BiFunction<String, Object, Boolean> reasoningDetector, String s) {
+        delegate.onReasoningDetected(reasoningDetector, s);
+        return this;
+    }
+
+    @Override
+    public TokenStream onRetrieved(Consumer<List<Content>> retrievedHandler) {
+        delegate.onRetrieved(retrievedHandler);
+        return this;
+    }
+
+    @Override
+    public TokenStream onToolExecuted(Consumer<ToolExecution> toolExecutedHandler) {
+        delegate.onToolExecuted(toolExecution -> {
+            permit.markFirstResponse();
+            toolExecutedHandler.accept(toolExecution);
+        });
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteResponse(Consumer<ChatResponse> completeResponseHandler) {
+        completeHandlerSet = true;
+        delegate.onCompleteResponse(response -> {
+            release(null);
+            completeResponseHandler.accept(response);
+        });
+        return this;
+    }
+
+    @Override
+    public TokenStream onError(Consumer<Throwable> errorHandler) {
+        errorHandlerSet = true;
+        delegate.onError(throwable -> {
+            release(throwable);
+            errorHandler.accept(throwable);
+        });
+        return this;
+    }
+
+    @Override
+    public TokenStream ignoreErrors() {
+        return onError(throwable -> {
+        });
+    }
+
+    @Override
+    public void start() {
+        if (!completeHandlerSet) {
+            onCompleteResponse(response -> {
+            });
+        }
+        if (!errorHandlerSet) {
+            ignoreErrors();
+        }
+        // 流被取消时不会再有完成或错误回调，取消时归还许可
+        token = StreamCancellationToken.current();
+        if (token != null) {
+            token.onCancel(cancelAction);
+        }
+        try {
+            delegate.start();
+        } catch (RuntimeException e) {
+            release(e);
+            throw e;
+        }
+    }
+
+    /** @param failure 流出错的异常，流正常完成时为null */
+    private void release(Throwable failure) {
+        if (failure == null) {
+            permit.release();
+        } else {
+            permit.release(failure);
+        }
+        StreamCancellationToken bound = token;
+        if (bound != null) {
+            bound.removeOnCancel(cancelAction);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.xhy.application.conversation.service.message;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.ToolExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.infrastructure.exception.BusinessException;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/** 支持故障转移的TokenStream
+ *
+ * 每次尝试绑定独立的取消令牌。尝试在服务商开始响应之前失败（返回错误、连接失败、超时没有任何事件）时，
+ * 放弃该尝试并向 {@link AttemptSource} 申请下一次尝试，调用方注册的回调只会收到最终那次尝试的事件。
+ * 服务商一旦开始输出（收到任何流式事件、Token或工具调用），该尝试即被采用，之后的失败照常交给错误回调，
+ * 避免重复输出和重复执行工具。申请下一次尝试需要查询模型和选择服务商，交给单独的线程池执行，不占用失败回调所在的响应读取线程或超时检测线程。 */
+public class FailoverTokenStream implements TokenStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(FailoverTokenStream.class);
+
+    /** 下一次尝试的来源 */
+    public interface AttemptSource {
+
+        /** @param failure 上一次尝试的失败原因
+         * @return 下一次尝试的TokenStream；没有可用的候选时返回null */
+        TokenStream next(Throwable failure);
+    }
+
+    private final TokenStream first;
+    private final AttemptSource attemptSource;
+    private final StreamCancellationToken sessionToken;
+    private final ScheduledExecutorService watchdog;
+    private final Executor attemptExecutor;
+    private final long firstResponseTimeoutMs;
+
+    private Consumer<String> partialResponseHandler;
+    private Consumer<String> partialReasoningHandler;
+    private Consumer<String> completeReasoningHandler;
+    private Consumer<List<Content>> retrievedHandler;
+    private Consumer<ToolExecution> toolExecutedHandler;
+    private Consumer<ChatResponse> completeResponseHandler;
+    private Consumer<Throwable> errorHandler;
+    private BiFunction<String, Object, Boolean> reasoningDetector;
+    private String reasoningDetectorArgument;
+
+    /** @param first 首次尝试
+     * @param attemptSource 下一次尝试的来源
+     * @param sessionToken 会话的取消令牌，取消时一并取消当前尝试，可为null
+     * @param watchdog 首次响应超时检测的调度器
+     * @param attemptExecutor 申请并发起下一次尝试的线程池
+     * @param firstResponseTimeoutMs 等待首个流式事件的超时时间(毫秒)，0表示不限制 */
+    public FailoverTokenStream(TokenStream first, AttemptSource attemptSource, StreamCancellationToken sessionToken,
+            ScheduledExecutorService watchdog, Executor attemptExecutor, long firstResponseTimeoutMs) {
+        this.first = first;
+        this.attemptSource = attemptSource;
+        this.sessionToken = sessionToken;
+        this.watchdog = watchdog;
+        this.attemptExecutor = attemptExecutor;
+        this.firstResponseTimeoutMs = firstResponseTimeoutMs;
+    }
+
+    @Override
+    public TokenStream onPartialResponse(Consumer<String> partialResponseHandler) {
+        this.partialResponseHandler = partialResponseHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onPartialReasoning(Consumer<String> partialReasoningHandler) {
+        this.partialReasoningHandler = partialReasoningHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteReasoning(Consumer<String> completeReasoningHandler) {
+        this.completeReasoningHandler = completeReasoningHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onReasoningDetected(BiFunction<String, Object, Boolean> reasoningDetector, String s) {
+        this.reasoningDetector = reasoningDetector;
+        this.reasoningDetectorArgument = s;
+        return this;
+    }
+
+    @Override
+    public TokenStream onRetrieved(Consumer<List<Content>> retrievedHandler) {
+        this.retrievedHandler = retrievedHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onToolExecuted(Consumer<ToolExecution> toolExecutedHandler) {
+        this.toolExecutedHandler = toolExecutedHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteResponse(Consumer<ChatResponse> completeResponseHandler) {
+        this.completeResponseHandler = completeResponseHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream ignoreErrors() {
+        this.errorHandler = null;
+        return this;
+    }
+
+    @Override
+    public void start() {
+        launch(first);
+    }
+
+    private void launch(TokenStream stream) {
+        Attempt attempt = new Attempt();
+        if (sessionToken != null) {
+            sessionToken.onCancel(attempt.cancelAction);
+        }
+
+        if (reasoningDetector != null) {
+            stream.onReasoningDetected(reasoningDetector, reasoningDetectorArgument);
+        }
+        stream.onPartialResponse(reply -> {
+            if (attempt.commit() && partialResponseHandler != null) {
+                partialResponseHandler.accept(reply);
+            }
+        });
+        if (partialReasoningHandler != null) {
+            stream.onPartialReasoning(reasoning -> {
+                if (attempt.commit()) {
+                    partialReasoningHandler.accept(reasoning);
+                }
+            });
+        }
+        if (completeReasoningHandler != null) {
+            stream.onCompleteReasoning(reasoning -> {
+                if (attempt.commit()) {
+                    completeReasoningHandler.accept(reasoning);
+                }
+            });
+        }
+        if (retrievedHandler != null) {
+            stream.onRetrieved(contents -> {
+                if (attempt.commit()) {
+                    retrievedHandler.accept(contents);
+                }
+            });
+        }
+        stream.onToolExecuted(toolExecution -> {
+            if (attempt.commit() && toolExecutedHandler != null) {
+                toolExecutedHandler.accept(toolExecution);
+            }
+        });
+        stream.onCompleteResponse(response -> {
+            if (attempt.commit() && attempt.close() && completeResponseHandler != null) {
+                completeResponseHandler.accept(response);
+            }
+        });
+        stream.onError(throwable -> fail(attempt, throwable));
+
+        if (firstResponseTimeoutMs > 0) {
+            attempt.timeout = watchdog.schedule(() -> {
+                if (!attempt.token.hasResponded()) {
+                    fail(attempt, new BusinessException("等待模型响应超时(" + firstResponseTimeoutMs + "ms)"));
+                }
+            }, firstResponseTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        StreamCancellationToken.runWith(attempt.token, stream::start);
+    }
+
+    private void fail(Attempt attempt, Throwable throwable) {
+        if (!attempt.token.hasResponded() && attempt.abandon()) {
+            // 服务商尚未开始响应：关闭本次请求，尝试下一个候选
+            attempt.token.cancel();
+            try {
+                attemptExecutor.execute(() -> failover(throwable));
+            } catch (RejectedExecutionException e) {
+                logger.warn("故障转移线程池已满，放弃切换: {}", throwable.getMessage());
+                deliverError(throwable);
+            }
+            return;
+        }
+        if (attempt.close()) {
+            deliverError(throwable);
+        }
+    }
+
+    private void failover(Throwable throwable) {
+        TokenStream next = null;
+        try {
+            next = attemptSource.next(throwable);
+        } catch (Exception e) {
+            logger.warn("准备故障转移尝试失败: {}", e.getMessage());
+        }
+        if (next != null) {
+            launch(next);
+            return;
+        }
+        deliverError(throwable);
+    }
+
+    private void deliverError(Throwable throwable) {
+        if (errorHandler != null) {
+            errorHandler.accept(throwable);
+        }
+    }
+
+    /** 单次尝试的状态：等待响应 -> 已采用 -> 已结束，或 等待响应 -> 已放弃 */
+    private final class Attempt {
+
+        private static final int PENDING = 0;
+        private static final int STREAMING = 1;
+        private static final int ABANDONED = 2;
+        private static final int CLOSED = 3;
+
+        private final StreamCancellationToken token = new StreamCancellationToken();
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final Runnable cancelAction = token::cancel;
+        private volatile ScheduledFuture<?> timeout;
+
+        /** 采用本次尝试
+         * @return 本次尝试是否仍在进行且已被采用 */
+        boolean commit() {
+            if (state.compareAndSet(PENDING, STREAMING)) {
+                cancelTimeout();
+                return true;
+            }
+            return state.get() == STREAMING;
+        }
+
+        /** 放弃尚未开始响应的尝试 */
+        boolean abandon() {
+            if (state.compareAndSet(PENDING, ABANDONED)) {
+                release();
+                return true;
+            }
+            return false;
+        }
+
+        /** 结束已采用或尚未开始响应的尝试，只有第一次调用返回true */
+        boolean close() {
+            if (state.compareAndSet(STREAMING, CLOSED) || state.compareAndSet(PENDING, CLOSED)) {
+                release();
+                return true;
+            }
+            return false;
+        }
+
+        private void release() {
+            cancelTimeout();
+            if (sessionToken != null) {
+                sessionToken.removeOnCancel(cancelAction);
+            }
+        }
+
+        private void cancelTimeout() {
+            ScheduledFuture<?> future = timeout;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
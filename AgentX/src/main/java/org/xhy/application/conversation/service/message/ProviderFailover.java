@@ -0,0 +1,116 @@
+package org.xhy.application.conversation.service.message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import dev.langchain4j.service.TokenStream;
+import org.xhy.application.conversation.service.handler.context.ChatContext;
+import org.xhy.domain.llm.model.HighAvailabilityResult;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.service.HighAvailabilityDomainService;
+import org.xhy.domain.llm.service.LLMDomainService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.ManagedExecutor;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.StreamFailoverProperties;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+/** 流式对话的服务商故障转移
+ *
+ * 首Token之前调用失败（连接失败、返回错误、握手后迟迟没有输出）时，按用户降级链选择下一个尚未尝试过的模型，
+ * 由消息处理器在同一轮对话中重新发起，用户只看到一条回复。首Token之后的失败不做转移，避免重复输出。 */
+@Component
+public class ProviderFailover {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderFailover.class);
+
+    private final StreamFailoverProperties properties;
+    private final LLMDomainService llmDomainService;
+    private final HighAvailabilityDomainService highAvailabilityDomainService;
+
+    /** 首Token超时检测 */
+    private final ScheduledExecutorService watchdog;
+
+    /** 申请并发起下一次尝试，与对话准备共用线程池 */
+    private final ManagedExecutor attemptExecutor;
+
+    public ProviderFailover(StreamFailoverProperties properties, LLMDomainService llmDomainService,
+            HighAvailabilityDomainService highAvailabilityDomainService, ExecutorRegistry executorRegistry) {
+        this.properties = properties;
+        this.llmDomainService = llmDomainService;
+        this.highAvailabilityDomainService = highAvailabilityDomainService;
+        this.watchdog = executorRegistry.getScheduler();
+        this.attemptExecutor = executorRegistry.get(WorkloadType.CHAT_IO);
+    }
+
+    /** 选择下一个尝试的模型
+     *
+     * @param chatContext 对话环境
+     * @param attemptedModelIds 本轮已尝试过的模型ID
+     * @return 服务商选择结果；已达最大尝试次数或降级链已用尽时返回null */
+    public HighAvailabilityResult next(ChatContext chatContext, Set<String> attemptedModelIds) {
+        if (!properties.isEnabled() || attemptedModelIds.size() >= properties.getMaxAttempts()) {
+            return null;
+        }
+        return select(chatContext.getFallbackChain(), chatContext.getUserId(), chatContext.getSessionId(),
+                attemptedModelIds);
+    }
+
+    /** 按降级链顺序选择第一个可用且未被排除的模型
+     *
+     * @param fallbackChain 降级链
+     * @param userId 用户ID
+     * @param sessionId 会话ID
+     * @param excludedModelIds 排除的模型ID
+     * @return 服务商选择结果，调用方用完后须归还进行中请求名额；降级链为空或已用尽时返回null */
+    public HighAvailabilityResult select(List<String> fallbackChain, String userId, String sessionId,
+            Set<String> excludedModelIds) {
+        if (fallbackChain == null) {
+            return null;
+        }
+        for (String modelId : fallbackChain) {
+            if (excludedModelIds.contains(modelId)) {
+                continue;
+            }
+            try {
+                ModelEntity model = llmDomainService.findModelById(modelId);
+                if (model == null || !Boolean.TRUE.equals(model.getStatus())) {
+                    continue;
+                }
+                HighAvailabilityResult result = highAvailabilityDomainService.selectBestProvider(model, userId,
+                        sessionId, null);
+                if (result == null) {
+                    continue;
+                }
+                if (result.getProvider() == null || excludedModelIds.contains(result.getModel().getId())
+                        || !Boolean.TRUE.equals(result.getProvider().getStatus())) {
+                    result.release();
+                    continue;
+                }
+                return result;
+            } catch (Exception e) {
+                logger.warn("降级链候选模型不可用: modelId={}, 错误: {}", modelId, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /** 为流式调用加上故障转移，在对话线程上调用，下一次尝试沿用该线程的用户、追踪等上下文
+     *
+     * @param first 首次尝试的TokenStream
+     * @param sessionToken 会话的取消令牌，可为null
+     * @param attemptSource 下一次尝试的来源
+     * @return 未启用故障转移时原样返回 */
+    public TokenStream wrap(TokenStream first, StreamCancellationToken sessionToken,
+            FailoverTokenStream.AttemptSource attemptSource) {
+        if (!properties.isEnabled()) {
+            return first;
+        }
+        return new FailoverTokenStream(first, attemptSource, sessionToken, watchdog,
+                attemptExecutor.withCurrentContext(), properties.getFirstTokenTimeoutMs());
+    }
+}
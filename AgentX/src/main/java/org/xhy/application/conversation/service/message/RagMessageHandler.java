@@ -11,23 +11,33 @@ import org.xhy.application.conversation.dto.AgentChatResponse;
 import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
 import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.application.conversation.service.ContextSummarizer;
 import org.xhy.application.conversation.service.message.rag.RagChatContext;
 import org.xhy.application.conversation.service.message.rag.RagRetrievalResult;
 import org.xhy.application.conversation.dto.RagRetrievalDocumentDTO;
 import org.xhy.application.rag.dto.DocumentUnitDTO;
 import org.xhy.application.rag.service.search.RAGSearchAppService;
 import org.xhy.domain.agent.model.AgentEntity;
+import org.xhy.domain.agent.model.LLMModelConfig;
 import org.xhy.domain.conversation.constant.MessageType;
 import org.xhy.domain.conversation.model.MessageEntity;
 import org.xhy.domain.conversation.service.MessageDomainService;
 import org.xhy.domain.conversation.service.SessionDomainService;
+import org.xhy.domain.conversation.service.TurnWriteBuffer;
 import org.xhy.domain.llm.service.HighAvailabilityDomainService;
 import org.xhy.domain.llm.service.LLMDomainService;
+import org.xhy.domain.token.service.TokenDomainService;
 import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.xhy.domain.user.service.AccountDomainService;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
+import org.xhy.infrastructure.llm.PromptCacheUsage;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+import org.xhy.infrastructure.llm.bulkhead.AdaptiveBulkhead;
 import org.xhy.infrastructure.transport.MessageTransport;
+import org.xhy.infrastructure.transport.StreamMessageWriter;
 import org.xhy.application.billing.service.BillingService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.llm.hedging.RequestHedger;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +45,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /** RAG专用的消息处理器 继承AbstractMessageHandler，添加RAG检索和问答的特定逻辑 */
@@ -49,27 +60,29 @@ public class RagMessageHandler extends AbstractMessageHandler {
             4.  ** 拒绝机制 **：如果<context>中完全没有任何与问题相关的信息，或者问题超出了提供的文档范围，你必须明确且礼貌地告知用户“根据提供的资料，我无法找到相关信息来回答这个问题。” 严禁编造答案（即防止幻觉）。
             5.  ** 格式与结构 **：在可能的情况下，使用清晰、有条理的方式组织答案（如分点、列表或简短的段落）。如果答案涉及多个方面，请合理地进行分点说明。
 
-            context为：${context}
-
-            请现在开始处理用户的问题。
+            <context>随用户的问题一起提供。请现在开始处理用户的问题。
                 """;
 
     private static final Logger logger = LoggerFactory.getLogger(RagMessageHandler.class);
 
     private final RAGSearchAppService ragSearchAppService;
     private final ObjectMapper objectMapper;
+    private final TokenDomainService tokenDomainService;
 
     public RagMessageHandler(LLMServiceFactory llmServiceFactory, MessageDomainService messageDomainService,
             HighAvailabilityDomainService highAvailabilityDomainService, SessionDomainService sessionDomainService,
             UserSettingsDomainService userSettingsDomainService, LLMDomainService llmDomainService,
             BuiltInToolRegistry builtInToolRegistry, BillingService billingService,
             AccountDomainService accountDomainService, ChatSessionManager chatSessionManager,
-            RAGSearchAppService ragSearchAppService, ObjectMapper objectMapper) {
+            ContextSummarizer contextSummarizer, ProviderFailover providerFailover, RequestHedger requestHedger,
+            ExecutorRegistry executorRegistry, RAGSearchAppService ragSearchAppService, ObjectMapper objectMapper,
+            TokenDomainService tokenDomainService) {
         super(llmServiceFactory, messageDomainService, highAvailabilityDomainService, sessionDomainService,
                 userSettingsDomainService, llmDomainService, builtInToolRegistry, billingService, accountDomainService,
-                chatSessionManager);
+                chatSessionManager, contextSummarizer, providerFailover, requestHedger, executorRegistry);
         this.ragSearchAppService = ragSearchAppService;
         this.objectMapper = objectMapper;
+        this.tokenDomainService = tokenDomainService;
     }
 
     /** 重写流式聊天处理，添加RAG检索逻辑 */
@@ -98,6 +111,7 @@ public class RagMessageHandler extends AbstractMessageHandler {
                     toolProvider);
 
         } catch (Exception e) {
+            ragContext.releaseProviderLease();
             logger.error("RAG流式处理失败", e);
             AgentChatResponse errorResponse = AgentChatResponse.buildEndMessage("处理过程中发生错误: " + e.getMessage(),
                     MessageType.TEXT);
@@ -170,35 +184,62 @@ public class RagMessageHandler extends AbstractMessageHandler {
             MessageTransport<T> transport, MessageEntity userEntity, MessageEntity llmEntity,
             MessageWindowChatMemory memory, ToolProvider toolProvider) {
 
-        // 发送回答生成开始信号
-        transport.sendMessage(connection, AgentChatResponse.build("开始生成回答...", MessageType.RAG_ANSWER_START));
-
-        // 保存用户消息
-        messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(userEntity),
-                ragContext.getContextEntity());
-
-        // 获取流式LLM客户端
-        StreamingChatModel streamingClient = llmServiceFactory.getStreamingClient(ragContext.getProvider(),
-                ragContext.getModel());
+        // 获取隔离舱许可，上游并发已满时在写入消息前快速拒绝
+        AdaptiveBulkhead.Permit permit = acquirePermit(ragContext);
 
-        // 创建RAG专用的流式Agent
-        Agent agent = buildRagStreamingAgent(streamingClient, memory, toolProvider, ragContext.getAgent(),
-                retrievalResult.getRetrievedDocuments());
-
-        // 启动流式处理
-        processRagChat(agent, connection, transport, ragContext, userEntity, llmEntity, ragContext.getUserMessage());
+        try {
+            // 发送回答生成开始信号
+            transport.sendMessage(connection, AgentChatResponse.build("开始生成回答...", MessageType.RAG_ANSWER_START));
+
+            // 用户消息和回复先写入本轮的写入缓冲，回答结束时一次提交
+            TurnWriteBuffer turn = messageDomainService.beginTurn(ragContext.getContextEntity());
+            turn.append(userEntity);
+
+            // 获取流式LLM客户端
+            StreamingChatModel streamingClient = llmServiceFactory.getStreamingClient(ragContext.getProvider(),
+                    ragContext.getModel());
+
+            // 创建RAG专用的流式Agent，流结束时归还许可
+            Agent agent = BulkheadTokenStream.guard(
+                    buildRagStreamingAgent(streamingClient, memory, toolProvider, ragContext.getAgent()), permit);
+
+            // 启动流式处理，检索结果随用户问题发送，系统提示词保持不变以命中提示词缓存
+            processRagChat(agent, connection, transport, ragContext, turn, userEntity, llmEntity,
+                    buildRagUserMessage(ragContext.getUserMessage(),
+                            fitDocumentsToBudget(ragContext, retrievalResult.getRetrievedDocuments())));
+        } catch (RuntimeException e) {
+            permit.release(e);
+            ragContext.releaseProviderLease();
+            throw e;
+        }
     }
 
     /** RAG专用的聊天处理逻辑 */
     private <T> void processRagChat(Agent agent, T connection, MessageTransport<T> transport, RagChatContext ragContext,
-            MessageEntity userEntity, MessageEntity llmEntity, String ragPrompt) {
+            TurnWriteBuffer turn, MessageEntity userEntity, MessageEntity llmEntity, String ragPrompt) {
 
         AtomicReference<StringBuilder> messageBuilder = new AtomicReference<>(new StringBuilder());
+        StreamMessageWriter answerWriter = transport.createStreamWriter(connection, MessageType.RAG_ANSWER_PROGRESS);
         TokenStream tokenStream = agent.chat(ragPrompt);
 
         // 记录调用开始时间
         long startTime = System.currentTimeMillis();
 
+        // 会话被中断时关闭上游流并按已消耗Token结算，与正常完成二选一
+        AtomicBoolean settled = new AtomicBoolean(false);
+        StreamCancellationToken cancellationToken = chatSessionManager.getCancellationToken(ragContext.getSessionId());
+        Runnable settleOnCancel = () -> {
+            if (settled.compareAndSet(false, true)) {
+                ragContext.releaseProviderLease();
+                String partialContent = messageBuilder.get().toString();
+                settleInterruptedChat(ragContext, turn, llmEntity, partialContent, partialContent, transport,
+                        connection);
+            }
+        };
+        if (cancellationToken != null) {
+            cancellationToken.onCancel(settleOnCancel);
+        }
+
         // 思维链状态跟踪
         final boolean[] thinkingStarted = {false};
         final boolean[] thinkingEnded = {false};
@@ -206,6 +247,12 @@ public class RagMessageHandler extends AbstractMessageHandler {
 
         // 错误处理
         tokenStream.onError(throwable -> {
+            if (settled.get()) {
+                return;
+            }
+            ragContext.releaseProviderLease();
+            answerWriter.flush();
+            commitTurnSafely(ragContext, turn);
             transport.sendMessage(connection,
                     AgentChatResponse.buildEndMessage(throwable.getMessage(), MessageType.TEXT));
 
@@ -232,7 +279,8 @@ public class RagMessageHandler extends AbstractMessageHandler {
             }
 
             messageBuilder.get().append(fragment);
-            transport.sendMessage(connection, AgentChatResponse.build(fragment, MessageType.RAG_ANSWER_PROGRESS));
+            chatSessionManager.markFirstToken(ragContext.getSessionId());
+            answerWriter.write(fragment);
         });
 
         // 思维链处理
@@ -247,11 +295,19 @@ public class RagMessageHandler extends AbstractMessageHandler {
 
         // 完整响应处理
         tokenStream.onCompleteResponse(chatResponse -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (cancellationToken != null) {
+                cancellationToken.removeOnCancel(settleOnCancel);
+            }
+            ragContext.releaseProviderLease();
+            answerWriter.flush();
             this.setMessageTokenCount(ragContext.getMessageHistory(), userEntity, llmEntity, chatResponse);
 
-            messageDomainService.updateMessage(userEntity);
-            messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(llmEntity),
-                    ragContext.getContextEntity());
+            turn.update(userEntity);
+            turn.append(llmEntity);
+            messageDomainService.commitTurn(turn);
 
             // 发送RAG回答结束信号
             transport.sendMessage(connection, AgentChatResponse.buildEndMessage("回答生成完成", MessageType.RAG_ANSWER_END));
@@ -262,14 +318,15 @@ public class RagMessageHandler extends AbstractMessageHandler {
                     true, latency, null);
 
             // 执行模型调用计费
-            performBillingWithErrorHandling(ragContext, chatResponse.tokenUsage().inputTokenCount(),
-                    chatResponse.tokenUsage().outputTokenCount(), transport, connection);
+            performBillingWithErrorHandling(ragContext, chatResponse, transport, connection);
+
+            contextSummarizer.scheduleIfNeeded(ragContext);
 
             smartRenameSession(ragContext);
         });
 
-        // 启动流处理
-        tokenStream.start();
+        // 启动流处理，绑定取消令牌使HTTP层可被中止
+        StreamCancellationToken.runWith(cancellationToken, tokenStream::start);
     }
 
     /** 将DocumentUnitDTO转换为轻量级展示DTO */
@@ -327,16 +384,48 @@ public class RagMessageHandler extends AbstractMessageHandler {
                 context.toString(), question);
     }
 
+    /** 构建RAG用户消息，检索到的文档放在用户问题之前
+     * @param question 用户问题
+     * @param documentUnitDTOS 检索到的文档
+     * @return 用户消息 */
+    private String buildRagUserMessage(String question, List<DocumentUnitDTO> documentUnitDTOS) {
+        return "<context>\n" + documentUnitDTOS + "\n</context>\n\n" + question;
+    }
+
+    /** 按模型配置的Token上限裁剪检索结果，检索结果按相关度排序，超出时丢弃排在后面的文档，避免请求被服务商拒绝
+     * @param ragContext RAG聊天上下文
+     * @param documents 检索到的文档
+     * @return 放入上下文的文档 */
+    private List<DocumentUnitDTO> fitDocumentsToBudget(RagChatContext ragContext, List<DocumentUnitDTO> documents) {
+        LLMModelConfig llmModelConfig = ragContext.getLlmModelConfig();
+        if (documents == null || documents.isEmpty() || llmModelConfig == null
+                || llmModelConfig.getMaxTokens() == null) {
+            return documents;
+        }
+        String model = ragContext.getModel().getModelId();
+        int maxTokens = llmModelConfig.getMaxTokens();
+        Double reserveRatio = llmModelConfig.getReserveRatio();
+        int budget = maxTokens - (int) (maxTokens * (reserveRatio != null ? reserveRatio : 0.1))
+                - tokenDomainService.countPromptTokens(ragSystemPrompt, null, ragContext.getUserMessage(), model);
+        List<String> contents = documents.stream().map(DocumentUnitDTO::getContent).toList();
+        int fitCount = tokenDomainService.countWithinBudget(contents, Math.max(budget, 0), model);
+        if (fitCount < documents.size()) {
+            logger.info("检索结果超出Token上限，保留前 {}/{} 个文档 - 会话: {}", fitCount, documents.size(),
+                    ragContext.getSessionId());
+        }
+        return documents.subList(0, fitCount);
+    }
+
     /** 构建RAG专用的流式Agent */
     private Agent buildRagStreamingAgent(StreamingChatModel model, MessageWindowChatMemory memory,
-            ToolProvider toolProvider, AgentEntity agent, List<DocumentUnitDTO> documentUnitDTOS) {
+            ToolProvider toolProvider, AgentEntity agent) {
 
         // 为RAG对话添加专用的系统提示词
         MessageWindowChatMemory ragMemory = MessageWindowChatMemory.builder().maxMessages(1000)
                 .chatMemoryStore(new InMemoryChatMemoryStore()).build();
 
-        // 添加RAG专用系统提示词
-        ragMemory.add(new SystemMessage(ragSystemPrompt.replace("${context}", documentUnitDTOS.toString())));
+        // 添加RAG专用系统提示词，不含检索结果，多轮对话间保持不变
+        ragMemory.add(new SystemMessage(ragSystemPrompt));
 
         return buildStreamingAgent(model, ragMemory, toolProvider, agent);
     }
@@ -354,7 +443,9 @@ public class RagMessageHandler extends AbstractMessageHandler {
             bodyTokenSum = historyMessages.stream().filter(java.util.Objects::nonNull)
                     .mapToInt(MessageEntity::getBodyTokenCount).sum();
         }
-        userEntity.setTokenCount(chatResponse.tokenUsage().inputTokenCount());
-        userEntity.setBodyTokenCount(chatResponse.tokenUsage().inputTokenCount() - bodyTokenSum);
+        PromptCacheUsage inputUsage = PromptCacheUsage.of(chatResponse.tokenUsage());
+        userEntity.setTokenCount(inputUsage.getInputTokens());
+        userEntity.setBodyTokenCount(inputUsage.getInputTokens() - bodyTokenSum);
+        userEntity.setCachedTokenCount(inputUsage.getCachedInputTokens());
     }
 }
\ No newline at end of file
@@ -8,7 +8,9 @@ import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.handler.context.TracingChatContext;
 import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
 import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.application.conversation.service.ContextSummarizer;
 import org.xhy.application.trace.collector.TraceCollector;
+import org.xhy.application.trace.collector.TraceContextHolder;
 import org.xhy.domain.agent.model.AgentEntity;
 import org.xhy.domain.conversation.constant.MessageType;
 import org.xhy.domain.conversation.model.MessageEntity;
@@ -23,6 +25,8 @@ import org.xhy.domain.trace.model.TraceContext;
 import org.xhy.domain.user.service.AccountDomainService;
 import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.llm.hedging.RequestHedger;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
@@ -36,33 +40,24 @@ import java.util.function.Consumer;
 
 /** 带追踪功能的消息处理器基类 在关键节点集成链路追踪逻辑
  * 
- * 线程上下文传递说明： - 使用 InheritableThreadLocal 将追踪上下文传递到子线程 - 适用于直接创建子线程的场景（如 tokenStream 回调）
- * 
- * 重要警告 - 线程池环境： 如果项目中引入了线程池（如 @Async、ThreadPoolExecutor、CompletableFuture 等）， InheritableThreadLocal 会导致线程复用时的上下文污染问题。
- * 
- * 线程池场景解决方案： 请使用阿里巴巴的 TransmittableThreadLocal (TTL) 替代： 1. 添加依赖：com.alibaba:transmittable-thread-local 2. 将
- * InheritableThreadLocal 替换为 TransmittableThreadLocal 3. 使用 TtlExecutors.getTtlExecutor() 包装线程池
- * 参考文档：https://github.com/alibaba/transmittable-thread-local
- *
- * 但是目前使用了 langchan4j 的 tokenStream，内置的线程池，不方便改，就算了 */
+ * 线程上下文传递说明： - 追踪上下文保存在 {@link TraceContextHolder}，直接创建的子线程（如 tokenStream 回调）通过 InheritableThreadLocal 继承
+ * - ExecutorRegistry 管理的线程池在提交任务时由 TraceContextPropagator 传递并在任务结束后还原，线程复用不会串用上下文 */
 public abstract class TracingMessageHandler extends AbstractMessageHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(TracingMessageHandler.class);
 
     protected final TraceCollector traceCollector;
 
-    /** 当前请求的追踪上下文 - 使用InheritableThreadLocal支持子线程继承 */
-    private static final InheritableThreadLocal<TraceContext> currentTraceContext = new InheritableThreadLocal<>();
-
     public TracingMessageHandler(LLMServiceFactory llmServiceFactory, MessageDomainService messageDomainService,
             HighAvailabilityDomainService highAvailabilityDomainService, SessionDomainService sessionDomainService,
             UserSettingsDomainService userSettingsDomainService, LLMDomainService llmDomainService,
             BuiltInToolRegistry builtInToolRegistry, BillingService billingService,
             AccountDomainService accountDomainService, ChatSessionManager chatSessionManager,
-            TraceCollector traceCollector) {
+            ContextSummarizer contextSummarizer, ProviderFailover providerFailover, RequestHedger requestHedger,
+            ExecutorRegistry executorRegistry, TraceCollector traceCollector) {
         super(llmServiceFactory, messageDomainService, highAvailabilityDomainService, sessionDomainService,
                 userSettingsDomainService, llmDomainService, builtInToolRegistry, billingService, accountDomainService,
-                chatSessionManager);
+                chatSessionManager, contextSummarizer, providerFailover, requestHedger, executorRegistry);
         this.traceCollector = traceCollector;
     }
 
@@ -75,8 +70,8 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
                     chatContext.getSessionId(), chatContext.getAgent().getId(), chatContext.getUserMessage(),
                     MessageType.TEXT.name());
 
-            // 将追踪上下文保存到InheritableThreadLocal中
-            currentTraceContext.set(traceContext);
+            // 将追踪上下文保存到当前线程
+            TraceContextHolder.set(traceContext);
 
             // 如果chatContext是TracingChatContext，设置追踪上下文
             if (chatContext instanceof TracingChatContext) {
@@ -151,11 +146,11 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
                 logger.warn("完成对话追踪失败: {}", e.getMessage());
             } finally {
                 // 清理ThreadLocal，防止内存泄漏
-                currentTraceContext.remove();
+                TraceContextHolder.clear();
             }
         } else {
             // 即使没有追踪上下文，也要清理ThreadLocal
-            currentTraceContext.remove();
+            TraceContextHolder.clear();
         }
     }
 
@@ -182,7 +177,7 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
      * 
      * @return 追踪上下文，可能为null */
     protected TraceContext getCurrentTraceContext() {
-        return currentTraceContext.get();
+        return TraceContextHolder.get();
     }
 
     /** 将ChatContext包装为TracingChatContext
@@ -252,14 +247,14 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
             Consumer<ChatResponse> wrappedHandler = response -> {
                 // 在回调开始时设置 TraceContext
                 if (capturedTraceContext != null) {
-                    currentTraceContext.set(capturedTraceContext);
+                    TraceContextHolder.set(capturedTraceContext);
                 }
                 try {
                     // 调用原始处理器
                     responseHandler.accept(response);
                 } finally {
                     // 清理 ThreadLocal
-                    currentTraceContext.remove();
+                    TraceContextHolder.clear();
                 }
             };
 
@@ -287,12 +282,12 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
             // 类似的包装逻辑
             Consumer<ToolExecution> wrappedHandler = toolExecution -> {
                 if (capturedTraceContext != null) {
-                    currentTraceContext.set(capturedTraceContext);
+                    TraceContextHolder.set(capturedTraceContext);
                 }
                 try {
                     toolExecutionHandler.accept(toolExecution);
                 } finally {
-                    currentTraceContext.remove();
+                    TraceContextHolder.clear();
                 }
             };
 
@@ -303,12 +298,12 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
         public TokenStream onError(Consumer<Throwable> errorHandler) {
             Consumer<Throwable> wrappedHandler = throwable -> {
                 if (capturedTraceContext != null) {
-                    currentTraceContext.set(capturedTraceContext);
+                    TraceContextHolder.set(capturedTraceContext);
                 }
                 try {
                     errorHandler.accept(throwable);
                 } finally {
-                    currentTraceContext.remove();
+                    TraceContextHolder.clear();
                 }
             };
 
@@ -324,12 +319,12 @@ public abstract class TracingMessageHandler extends AbstractMessageHandler {
         public TokenStream onPartialResponse(Consumer<String> partialResponseHandler) {
             Consumer<String> wrappedHandler = partialResponse -> {
                 if (capturedTraceContext != null) {
-                    currentTraceContext.set(capturedTraceContext);
+                    TraceContextHolder.set(capturedTraceContext);
                 }
                 try {
                     partialResponseHandler.accept(partialResponse);
                 } finally {
-                    currentTraceContext.remove();
+                    TraceContextHolder.clear();
                 }
             };
 
@@ -7,8 +7,10 @@ import org.slf4j.LoggerFactory;
 import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.message.AbstractMessageHandler;
 import org.xhy.application.conversation.service.message.TracingMessageHandler;
+import org.xhy.application.conversation.service.message.ProviderFailover;
 import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
 import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.application.conversation.service.ContextSummarizer;
 import org.xhy.application.trace.collector.TraceCollector;
 import org.xhy.domain.conversation.service.MessageDomainService;
 import org.xhy.domain.conversation.service.SessionDomainService;
@@ -18,6 +20,8 @@ import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
 import org.xhy.application.billing.service.BillingService;
 import org.xhy.domain.user.service.AccountDomainService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.llm.hedging.RequestHedger;
 
 /** Agent消息处理器 用于支持工具调用的对话模式 实现任务拆分、执行和结果汇总的工作流 使用事件驱动架构进行状态转换 */
 @Component(value = "agentMessageHandler")
@@ -31,10 +35,12 @@ public class AgentMessageHandler extends TracingMessageHandler {
             UserSettingsDomainService userSettingsDomainService, LLMDomainService llmDomainService,
             BuiltInToolRegistry builtInToolRegistry, BillingService billingService,
             AccountDomainService accountDomainService, ChatSessionManager chatSessionManager,
-            TraceCollector traceCollector, AgentToolManager agentToolManager) {
+            ContextSummarizer contextSummarizer, ProviderFailover providerFailover, RequestHedger requestHedger,
+            ExecutorRegistry executorRegistry, TraceCollector traceCollector, AgentToolManager agentToolManager) {
         super(llmServiceFactory, messageDomainService, highAvailabilityDomainService, sessionDomainService,
                 userSettingsDomainService, llmDomainService, builtInToolRegistry, billingService, accountDomainService,
-                chatSessionManager, traceCollector);
+                chatSessionManager, contextSummarizer, providerFailover, requestHedger, executorRegistry,
+                traceCollector);
         this.agentToolManager = agentToolManager;
     }
 
@@ -41,7 +41,8 @@ public class AgentToolManager {
 
         List<McpClient> mcpClients = new ArrayList<>();
 
-        for (String mcpServerName : mcpServerNames) {
+        // 按服务名排序，使每轮请求中的工具定义顺序一致，便于服务商缓存提示词前缀
+        for (String mcpServerName : mcpServerNames.stream().sorted().toList()) {
             String sseUrl = mcpUrlProviderService.getMcpToolUrl(mcpServerName, userId);
             McpTransport transport = new HttpMcpTransport.Builder().sseUrl(sseUrl).logRequests(true).logResponses(true)
                     .timeout(Duration.ofHours(1)).build();
@@ -115,7 +115,12 @@ public class BuiltInToolRegistry {
         }
 
         logger.info("为Agent {} 创建了 {} 个内置工具", agent.getId(), allTools.size());
-        return allTools;
+
+        // 按工具名排序，使每轮请求中的工具定义顺序一致，便于服务商缓存提示词前缀
+        Map<ToolSpecification, ToolExecutor> sortedTools = new LinkedHashMap<>();
+        allTools.entrySet().stream().sorted(Comparator.comparing(entry -> entry.getKey().name()))
+                .forEach(entry -> sortedTools.put(entry.getKey(), entry.getValue()));
+        return sortedTools;
     }
 
     /** 获取所有已注册的工具提供者
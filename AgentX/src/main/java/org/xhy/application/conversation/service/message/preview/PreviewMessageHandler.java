@@ -8,8 +8,10 @@ import org.xhy.application.conversation.service.handler.context.ChatContext;
 import org.xhy.application.conversation.service.message.AbstractMessageHandler;
 import org.xhy.application.conversation.service.message.Agent;
 import org.xhy.application.conversation.service.message.agent.AgentToolManager;
+import org.xhy.application.conversation.service.message.ProviderFailover;
 import org.xhy.application.conversation.service.message.builtin.BuiltInToolRegistry;
 import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.application.conversation.service.ContextSummarizer;
 import org.xhy.domain.conversation.constant.MessageType;
 import org.xhy.domain.conversation.model.MessageEntity;
 import org.xhy.domain.conversation.service.MessageDomainService;
@@ -19,10 +21,14 @@ import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.user.service.UserSettingsDomainService;
 import org.xhy.infrastructure.llm.LLMServiceFactory;
 import org.xhy.infrastructure.transport.MessageTransport;
+import org.xhy.infrastructure.transport.StreamMessageWriter;
 import org.xhy.application.billing.service.BillingService;
 import org.xhy.domain.user.service.AccountDomainService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.llm.hedging.RequestHedger;
 
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /** 预览消息处理器 专门用于Agent预览功能，不会保存消息到数据库 */
@@ -36,10 +42,11 @@ public class PreviewMessageHandler extends AbstractMessageHandler {
             UserSettingsDomainService userSettingsDomainService, LLMDomainService llmDomainService,
             BuiltInToolRegistry builtInToolRegistry, BillingService billingService,
             AccountDomainService accountDomainService, ChatSessionManager chatSessionManager,
-            AgentToolManager agentToolManager) {
+            ContextSummarizer contextSummarizer, ProviderFailover providerFailover, RequestHedger requestHedger,
+            ExecutorRegistry executorRegistry, AgentToolManager agentToolManager) {
         super(llmServiceFactory, messageDomainService, highAvailabilityDomainService, sessionDomainService,
                 userSettingsDomainService, llmDomainService, builtInToolRegistry, billingService, accountDomainService,
-                chatSessionManager);
+                chatSessionManager, contextSummarizer, providerFailover, requestHedger, executorRegistry);
         this.agentToolManager = agentToolManager;
     }
 
@@ -55,10 +62,13 @@ public class PreviewMessageHandler extends AbstractMessageHandler {
             MessageEntity userEntity, MessageEntity llmEntity) {
 
         AtomicReference<StringBuilder> messageBuilder = new AtomicReference<>(new StringBuilder());
+        AtomicBoolean hasVisibleContent = new AtomicBoolean(false);
+        StreamMessageWriter streamWriter = transport.createStreamWriter(connection, MessageType.TEXT);
 
         TokenStream tokenStream = agent.chat(chatContext.getUserMessage());
 
         tokenStream.onError(throwable -> {
+            streamWriter.flush();
             transport.sendMessage(connection,
                     AgentChatResponse.buildEndMessage(throwable.getMessage(), MessageType.TEXT));
         });
@@ -67,29 +77,34 @@ public class PreviewMessageHandler extends AbstractMessageHandler {
         tokenStream.onPartialResponse(reply -> {
             messageBuilder.get().append(reply);
             // 删除换行后消息为空字符串
-            if (messageBuilder.get().toString().trim().isEmpty()) {
-                return;
+            if (!hasVisibleContent.get()) {
+                if (reply.isBlank()) {
+                    return;
+                }
+                hasVisibleContent.set(true);
             }
-            transport.sendMessage(connection, AgentChatResponse.build(reply, MessageType.TEXT));
+            streamWriter.write(reply);
         });
 
         // 完整响应处理
         tokenStream.onCompleteResponse(chatResponse -> {
+            streamWriter.flush();
             // 发送结束消息
             transport.sendEndMessage(connection, AgentChatResponse.buildEndMessage(MessageType.TEXT));
 
             // 执行模型调用计费
-            performBillingWithErrorHandling(chatContext, chatResponse.tokenUsage().inputTokenCount(),
-                    chatResponse.tokenUsage().outputTokenCount(), transport, connection);
+            performBillingWithErrorHandling(chatContext, chatResponse, transport, connection);
         });
 
         // 工具执行处理
         tokenStream.onToolExecuted(toolExecution -> {
+            streamWriter.flush();
             if (messageBuilder.get().length() > 0) {
                 transport.sendMessage(connection, AgentChatResponse.buildEndMessage(MessageType.TEXT));
                 llmEntity.setContent(messageBuilder.toString());
 
                 messageBuilder.set(new StringBuilder());
+                hasVisibleContent.set(false);
             }
             String message = "执行工具：" + toolExecution.request().name();
             MessageEntity toolMessage = createLlmMessage(chatContext);
@@ -11,6 +11,7 @@ import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.FileDetailEntity;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
 import org.xhy.domain.rag.repository.FileDetailRepository;
+import org.xhy.infrastructure.rag.memory.MemoryIndexManager;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -37,12 +38,15 @@ public class RagFileStorageStrategy implements FileStorageStrategy {
     private final FileDetailRepository fileDetailRepository;
     private final DocumentUnitRepository documentUnitRepository;
     private final EmbeddingStore<TextSegment> embeddingStore;
+    private final MemoryIndexManager memoryIndexManager;
 
     public RagFileStorageStrategy(FileDetailRepository fileDetailRepository,
-            DocumentUnitRepository documentUnitRepository, EmbeddingStore<TextSegment> embeddingStore) {
+            DocumentUnitRepository documentUnitRepository, EmbeddingStore<TextSegment> embeddingStore,
+            MemoryIndexManager memoryIndexManager) {
         this.fileDetailRepository = fileDetailRepository;
         this.documentUnitRepository = documentUnitRepository;
         this.embeddingStore = embeddingStore;
+        this.memoryIndexManager = memoryIndexManager;
     }
 
     @Override
@@ -111,6 +115,7 @@ public class RagFileStorageStrategy implements FileStorageStrategy {
 
         // 3. 删除向量存储中的数据
         embeddingStore.removeAll(metadataKey(MetadataConstant.FILE_ID).isIn(fileDetailEntity.getId()));
+        memoryIndexManager.invalidateDataset(fileDetailEntity.getDataSetId());
 
         return true;
     }
@@ -7,6 +7,7 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.xhy.domain.order.constant.OrderType;
 import org.xhy.domain.order.event.PurchaseSuccessEvent;
+import org.xhy.infrastructure.config.AsyncConfig;
 
 import java.util.Map;
 
@@ -22,7 +23,7 @@ public class ProductPurchaseEventListener {
      * 
      * @param event 购买成功事件 */
     @EventListener
-    @Async
+    @Async(AsyncConfig.BILLING_EXECUTOR)
     public void handlePurchaseSuccess(PurchaseSuccessEvent event) {
         try {
             // 只处理商品购买订单
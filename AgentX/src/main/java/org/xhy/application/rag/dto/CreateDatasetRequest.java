@@ -2,6 +2,7 @@ package org.xhy.application.rag.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.xhy.domain.rag.constant.VectorQuantization;
 
 /** 创建数据集请求
  * @author shilong.zang
@@ -21,6 +22,9 @@ public class CreateDatasetRequest {
     @Size(max = 1000, message = "数据集说明不能超过1000个字符")
     private String description;
 
+    /** 向量量化方式，为空时不量化 */
+    private VectorQuantization vectorQuantization;
+
     public String getName() {
         return name;
     }
@@ -44,4 +48,12 @@ public class CreateDatasetRequest {
     public void setDescription(String description) {
         this.description = description;
     }
+
+    public VectorQuantization getVectorQuantization() {
+        return vectorQuantization;
+    }
+
+    public void setVectorQuantization(VectorQuantization vectorQuantization) {
+        this.vectorQuantization = vectorQuantization;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.xhy.application.rag.dto;
 
 import java.time.LocalDateTime;
+import org.xhy.domain.rag.constant.VectorQuantization;
 
 /** RAG知识库数据集数据传输对象
  * @author shilong.zang
@@ -22,6 +23,9 @@ public class RagQaDatasetDTO {
     /** 数据集说明 */
     private String description;
 
+    /** 向量量化方式 */
+    private VectorQuantization vectorQuantization;
+
     /** 用户ID */
     private String userId;
 
@@ -105,4 +109,12 @@ public class RagQaDatasetDTO {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public VectorQuantization getVectorQuantization() {
+        return vectorQuantization;
+    }
+
+    public void setVectorQuantization(VectorQuantization vectorQuantization) {
+        this.vectorQuantization = vectorQuantization;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package org.xhy.application.trace.collector;
+
+import org.xhy.domain.trace.model.TraceContext;
+
+/** 当前线程的追踪上下文
+ *
+ * 使用 InheritableThreadLocal，直接创建的子线程（如 tokenStream 回调）自动继承；线程池中的任务由 {@link TraceContextPropagator} 在提交时传递。 */
+public final class TraceContextHolder {
+
+    private static final InheritableThreadLocal<TraceContext> CURRENT = new InheritableThreadLocal<>();
+
+    private TraceContextHolder() {
+    }
+
+    public static TraceContext get() {
+        return CURRENT.get();
+    }
+
+    public static void set(TraceContext traceContext) {
+        CURRENT.set(traceContext);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,37 @@
+package org.xhy.application.trace.collector;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.trace.model.TraceContext;
+import org.xhy.infrastructure.concurrent.TaskContextPropagator;
+
+/** 传递当前的追踪上下文，线程池中执行的工具调用、检索等仍记录到发起对话的执行链路 */
+@Component
+@Order(2)
+public class TraceContextPropagator implements TaskContextPropagator {
+
+    @Override
+    public Object capture() {
+        return TraceContextHolder.get();
+    }
+
+    @Override
+    public Object restore(Object captured) {
+        TraceContext previous = TraceContextHolder.get();
+        set((TraceContext) captured);
+        return previous;
+    }
+
+    @Override
+    public void reset(Object previous) {
+        set((TraceContext) previous);
+    }
+
+    private static void set(TraceContext traceContext) {
+        if (traceContext == null) {
+            TraceContextHolder.clear();
+        } else {
+            TraceContextHolder.set(traceContext);
+        }
+    }
+}
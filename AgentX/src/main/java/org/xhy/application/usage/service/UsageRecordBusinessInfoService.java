@@ -222,8 +222,15 @@ public class UsageRecordBusinessInfoService {
             BigDecimal inputCostPer1K = inputCostPerMillion.divide(new BigDecimal("1000"), 4, RoundingMode.HALF_UP);
             BigDecimal outputCostPer1K = outputCostPerMillion.divide(new BigDecimal("1000"), 4, RoundingMode.HALF_UP);
 
-            return String.format("输入 ¥%.4f/1K tokens，输出 ¥%.4f/1K tokens（基于每百万token ¥%.2f/¥%.2f计算）", inputCostPer1K,
-                    outputCostPer1K, inputCostPerMillion, outputCostPerMillion);
+            String rule = String.format("输入 ¥%.4f/1K tokens，输出 ¥%.4f/1K tokens（基于每百万token ¥%.2f/¥%.2f计算）",
+                    inputCostPer1K, outputCostPer1K, inputCostPerMillion, outputCostPerMillion);
+            Object cachedCostObj = pricingConfig.get("cached_input_cost_per_million");
+            if (cachedCostObj != null) {
+                BigDecimal cachedCostPer1K = new BigDecimal(cachedCostObj.toString()).divide(new BigDecimal("1000"), 4,
+                        RoundingMode.HALF_UP);
+                rule += String.format("，缓存命中输入 ¥%.4f/1K tokens", cachedCostPer1K);
+            }
+            return rule;
         }
 
         return "Token计费，详情请联系客服";
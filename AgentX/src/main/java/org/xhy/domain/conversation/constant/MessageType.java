@@ -5,6 +5,12 @@ public enum MessageType {
     /** 普通文本消息 */
     TEXT,
 
+    /** 对话环境准备中 */
+    PREPARING,
+
+    /** 服务繁忙（模型并发已满或排队超时）被拒绝，客户端可稍后重试 */
+    RATE_LIMITED,
+
     /** 工具调用消息 */
     TOOL_CALL,
 
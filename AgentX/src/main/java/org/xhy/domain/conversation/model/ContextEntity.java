@@ -1,5 +1,6 @@
 package org.xhy.domain.conversation.model;
 
+import com.baomidou.mybatisplus.annotation.FieldStrategy;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
@@ -24,14 +25,39 @@ public class ContextEntity extends BaseEntity {
     @TableField("session_id")
     private String sessionId;
 
-    /** 活跃消息ID列表 */
-    @TableField(value = "active_messages", typeHandler = ListConverter.class)
+    /** 活跃消息ID列表，由开头的摘要消息（如有）和上下文成员表中窗口内的记录组成 */
+    @TableField(exist = false)
     private List<String> activeMessages = new ArrayList<>();
 
+    /** 旧版活跃消息ID列表，仅用于迁移尚未迁移到上下文成员表的数据 */
+    @TableField(value = "active_messages", typeHandler = ListConverter.class, insertStrategy = FieldStrategy.NEVER,
+            updateStrategy = FieldStrategy.NEVER)
+    private List<String> legacyActiveMessages;
+
+    /** 活跃窗口起始序号 */
+    @TableField("window_start")
+    private Long windowStart;
+
+    /** 下一条追加消息的序号，为空表示尚未迁移 */
+    @TableField("next_ordinal")
+    private Long nextOrdinal;
+
+    /** 加载或写入时数据库中窗口内的成员（不含摘要消息），用于计算下次写入的增量，不可修改 */
+    @TableField(exist = false)
+    private List<String> persistedWindow;
+
     /** 历史消息摘要 */
     @TableField("summary")
     private String summary;
 
+    /** 位于活跃消息开头的摘要消息ID，单独存放，不属于上下文成员；活跃消息开头不是该消息时写入后清空 */
+    @TableField("summary_message_id")
+    private String summaryMessageId;
+
+    /** 上下文版本号，每次写入时更新，用于校验上下文缓存是否过期 */
+    @TableField("version")
+    private Long version;
+
     /** 无参构造函数 */
     public ContextEntity() {
     }
@@ -68,4 +94,52 @@ public class ContextEntity extends BaseEntity {
         this.summary = summary;
     }
 
+    public String getSummaryMessageId() {
+        return summaryMessageId;
+    }
+
+    public void setSummaryMessageId(String summaryMessageId) {
+        this.summaryMessageId = summaryMessageId;
+    }
+
+    public List<String> getLegacyActiveMessages() {
+        return legacyActiveMessages;
+    }
+
+    public void setLegacyActiveMessages(List<String> legacyActiveMessages) {
+        this.legacyActiveMessages = legacyActiveMessages;
+    }
+
+    public Long getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(Long windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public Long getNextOrdinal() {
+        return nextOrdinal;
+    }
+
+    public void setNextOrdinal(Long nextOrdinal) {
+        this.nextOrdinal = nextOrdinal;
+    }
+
+    public List<String> getPersistedWindow() {
+        return persistedWindow;
+    }
+
+    public void setPersistedWindow(List<String> persistedWindow) {
+        this.persistedWindow = persistedWindow;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package org.xhy.domain.conversation.model;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+/** 上下文成员实体类，按追加顺序记录上下文中的消息，记录写入后不再修改 */
+@TableName("context_messages")
+public class ContextMessageEntity {
+
+    /** 上下文ID */
+    @TableField("context_id")
+    private String contextId;
+
+    /** 消息在上下文中的序号 */
+    @TableField("ordinal")
+    private Long ordinal;
+
+    /** 消息ID */
+    @TableField("message_id")
+    private String messageId;
+
+    public ContextMessageEntity() {
+    }
+
+    public ContextMessageEntity(String contextId, Long ordinal, String messageId) {
+        this.contextId = contextId;
+        this.ordinal = ordinal;
+        this.messageId = messageId;
+    }
+
+    public String getContextId() {
+        return contextId;
+    }
+
+    public void setContextId(String contextId) {
+        this.contextId = contextId;
+    }
+
+    public Long getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(Long ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+}
@@ -0,0 +1,41 @@
+package org.xhy.domain.conversation.model;
+
+import org.xhy.domain.token.model.TokenIndex;
+
+import java.util.List;
+
+/** 会话上下文快照，包含上下文及其活跃消息，调用方可自由修改上下文、消息列表和消息实体而不影响缓存 */
+public class ContextSnapshot {
+
+    /** 上下文实体（副本） */
+    private final ContextEntity context;
+
+    /** 活跃消息（副本），顺序与上下文中的活跃消息ID一致 */
+    private final List<MessageEntity> messages;
+
+    /** 活跃消息的Token索引，按对话顺序排列，与缓存共享，只读 */
+    private final TokenIndex tokenIndex;
+
+    public ContextSnapshot(ContextEntity context, List<MessageEntity> messages, TokenIndex tokenIndex) {
+        this.context = context;
+        this.messages = messages;
+        this.tokenIndex = tokenIndex;
+    }
+
+    public ContextEntity getContext() {
+        return context;
+    }
+
+    public List<MessageEntity> getMessages() {
+        return messages;
+    }
+
+    public TokenIndex getTokenIndex() {
+        return tokenIndex;
+    }
+
+    /** 活跃消息的本体Token总数 */
+    public int getTotalBodyTokenCount() {
+        return tokenIndex.getTotalTokens();
+    }
+}
@@ -48,6 +48,10 @@ public class MessageEntity extends BaseEntity {
     @TableField("body_token_count")
     private Integer bodyTokenCount = 0;
 
+    /** 命中提示词缓存的输入Token数量，包含在Token数量中 */
+    @TableField("cached_token_count")
+    private Integer cachedTokenCount = 0;
+
     /** 服务提供商 */
     @TableField("provider")
     private String provider;
@@ -179,4 +183,12 @@ public class MessageEntity extends BaseEntity {
     public void setBodyTokenCount(Integer bodyTokenCount) {
         this.bodyTokenCount = bodyTokenCount;
     }
-}
\ No newline at end of file
+
+    public Integer getCachedTokenCount() {
+        return cachedTokenCount;
+    }
+
+    public void setCachedTokenCount(Integer cachedTokenCount) {
+        this.cachedTokenCount = cachedTokenCount;
+    }
+}
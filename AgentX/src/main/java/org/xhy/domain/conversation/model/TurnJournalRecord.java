@@ -0,0 +1,72 @@
+package org.xhy.domain.conversation.model;
+
+import java.util.List;
+
+/** 对话轮次写入日志中的一条记录，按写入缓冲区的操作顺序记录 */
+public class TurnJournalRecord {
+
+    /** 记录类型 */
+    public enum Type {
+        /** 设置活跃消息窗口 */
+        WINDOW,
+        /** 保存消息，不加入上下文 */
+        SAVE,
+        /** 保存消息并追加到上下文 */
+        APPEND,
+        /** 更新消息 */
+        UPDATE
+    }
+
+    private Type type;
+
+    /** 会话ID */
+    private String sessionId;
+
+    /** WINDOW记录的活跃消息ID */
+    private List<String> activeMessages;
+
+    /** SAVE、APPEND、UPDATE记录的消息 */
+    private MessageEntity message;
+
+    public TurnJournalRecord() {
+    }
+
+    public TurnJournalRecord(Type type, String sessionId, List<String> activeMessages, MessageEntity message) {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.activeMessages = activeMessages;
+        this.message = message;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public List<String> getActiveMessages() {
+        return activeMessages;
+    }
+
+    public void setActiveMessages(List<String> activeMessages) {
+        this.activeMessages = activeMessages;
+    }
+
+    public MessageEntity getMessage() {
+        return message;
+    }
+
+    public void setMessage(MessageEntity message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,32 @@
+package org.xhy.domain.conversation.repository;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.xhy.domain.conversation.model.ContextMessageEntity;
+import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
+
+import java.util.List;
+
+/** 上下文成员仓库接口 */
+@Mapper
+public interface ContextMessageRepository extends MyBatisPlusExtRepository<ContextMessageEntity> {
+
+    /** 按序号顺序查询 [fromOrdinal, toOrdinal) 范围内的消息ID */
+    @Select("SELECT message_id FROM context_messages WHERE context_id = #{contextId} "
+            + "AND ordinal >= #{fromOrdinal} AND ordinal < #{toOrdinal} ORDER BY ordinal")
+    List<String> selectMessageIds(@Param("contextId") String contextId, @Param("fromOrdinal") long fromOrdinal,
+            @Param("toOrdinal") long toOrdinal);
+
+    /** 一条多行INSERT写入多条成员，可与其他语句共用同一事务 */
+    @Insert({"<script>", "INSERT INTO context_messages (context_id, ordinal, message_id) VALUES ",
+            "<foreach collection='members' item='m' separator=','>", "(#{m.contextId}, #{m.ordinal}, #{m.messageId})",
+            "</foreach>", "</script>"})
+    int insertAll(@Param("members") List<ContextMessageEntity> members);
+
+    /** 删除序号小于 beforeOrdinal 的成员，即已移出窗口的成员 */
+    @Delete("DELETE FROM context_messages WHERE context_id = #{contextId} AND ordinal < #{beforeOrdinal}")
+    int deleteBefore(@Param("contextId") String contextId, @Param("beforeOrdinal") long beforeOrdinal);
+}
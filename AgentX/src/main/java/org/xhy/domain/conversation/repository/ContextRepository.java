@@ -1,11 +1,39 @@
 package org.xhy.domain.conversation.repository;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 import org.xhy.domain.conversation.model.ContextEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
 /** 上下文仓库接口 */
 @Mapper
 public interface ContextRepository extends MyBatisPlusExtRepository<ContextEntity> {
-}
\ No newline at end of file
+
+    /** 移动上下文窗口，仅当下一个序号仍为预期值时更新，避免并发写入占用相同的序号
+     * @return 更新的行数，为0表示已被其他写入抢先 */
+    @Update("UPDATE context SET window_start = #{windowStart}, next_ordinal = #{nextOrdinal}, summary = #{summary}, "
+            + "summary_message_id = #{summaryMessageId}, version = #{version}, updated_at = now() "
+            + "WHERE id = #{id} AND next_ordinal = #{expectedNextOrdinal}")
+    int advanceWindow(@Param("id") String id, @Param("expectedNextOrdinal") long expectedNextOrdinal,
+            @Param("windowStart") long windowStart, @Param("nextOrdinal") long nextOrdinal,
+            @Param("summary") String summary, @Param("summaryMessageId") String summaryMessageId,
+            @Param("version") long version);
+
+    /** 移动上下文窗口，仅当版本号和下一个序号都仍为读取时的值时更新，期间有任何写入都放弃
+     * @return 更新的行数，为0表示读取后已被其他写入修改 */
+    @Update("UPDATE context SET window_start = #{windowStart}, next_ordinal = #{nextOrdinal}, summary = #{summary}, "
+            + "summary_message_id = #{summaryMessageId}, version = #{version}, updated_at = now() "
+            + "WHERE id = #{id} AND next_ordinal = #{expectedNextOrdinal} "
+            + "AND version IS NOT DISTINCT FROM #{expectedVersion,jdbcType=BIGINT}")
+    int advanceWindowIfUnchanged(@Param("id") String id, @Param("expectedNextOrdinal") long expectedNextOrdinal,
+            @Param("expectedVersion") Long expectedVersion, @Param("windowStart") long windowStart,
+            @Param("nextOrdinal") long nextOrdinal, @Param("summary") String summary,
+            @Param("summaryMessageId") String summaryMessageId, @Param("version") long version);
+
+    /** 标记旧版上下文已迁移到上下文成员表，仅对尚未迁移的记录生效
+     * @return 更新的行数，为0表示已被其他节点迁移 */
+    @Update("UPDATE context SET window_start = 0, next_ordinal = #{nextOrdinal}, active_messages = NULL "
+            + "WHERE id = #{id} AND next_ordinal IS NULL")
+    int markMigrated(@Param("id") String id, @Param("nextOrdinal") long nextOrdinal);
+}
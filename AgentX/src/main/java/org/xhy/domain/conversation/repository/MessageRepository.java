@@ -1,11 +1,24 @@
 package org.xhy.domain.conversation.repository;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.xhy.domain.conversation.model.MessageEntity;
 import org.xhy.infrastructure.repository.MyBatisPlusExtRepository;
 
+import java.util.List;
+
 /** 消息仓库接口 */
 @Mapper
 public interface MessageRepository extends MyBatisPlusExtRepository<MessageEntity> {
-}
\ No newline at end of file
+
+    /** 一条多行INSERT写入多条消息，可与其他语句共用同一事务；ID和创建时间需由调用方设置 */
+    @Insert({"<script>",
+            "INSERT INTO messages (id, session_id, role, content, message_type, created_at, updated_at, token_count, ",
+            "body_token_count, cached_token_count, provider, model, metadata, file_urls) VALUES ",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.id}, #{m.sessionId}, #{m.role}, #{m.content}, #{m.messageType}, #{m.createdAt}, #{m.createdAt}, ",
+            "#{m.tokenCount}, #{m.bodyTokenCount}, #{m.cachedTokenCount}, #{m.provider}, #{m.model}, #{m.metadata}, ",
+            "#{m.fileUrls, typeHandler=org.xhy.infrastructure.converter.ListConverter})", "</foreach>", "</script>"})
+    int insertAll(@Param("messages") List<MessageEntity> messages);
+}
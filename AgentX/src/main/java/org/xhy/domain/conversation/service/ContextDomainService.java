@@ -1,26 +1,32 @@
 package org.xhy.domain.conversation.service;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.xhy.domain.conversation.model.ContextEntity;
-import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.domain.conversation.model.ContextSnapshot;
 import org.xhy.infrastructure.exception.BusinessException;
 
+import java.util.Collections;
+
 @Service
 public class ContextDomainService {
 
-    private final ContextRepository contextRepository;
+    private static final Logger logger = LoggerFactory.getLogger(ContextDomainService.class);
+
+    private final ContextWindowStore contextWindowStore;
 
-    public ContextDomainService(ContextRepository contextRepository) {
-        this.contextRepository = contextRepository;
+    private final ConversationContextCache conversationContextCache;
+
+    public ContextDomainService(ContextWindowStore contextWindowStore,
+            ConversationContextCache conversationContextCache) {
+        this.contextWindowStore = contextWindowStore;
+        this.conversationContextCache = conversationContextCache;
     }
 
     // 获取历史消息id
     public ContextEntity getBySessionId(String sessionId) {
-        LambdaQueryWrapper<ContextEntity> wrapper = Wrappers.<ContextEntity>lambdaQuery()
-                .eq(ContextEntity::getSessionId, sessionId).select();
-        ContextEntity contextEntity = contextRepository.selectOne(wrapper);
+        ContextEntity contextEntity = contextWindowStore.findBySessionId(sessionId);
         if (contextEntity == null) {
             throw new BusinessException("消息上下文不存在");
         }
@@ -28,17 +34,38 @@ public class ContextDomainService {
     }
 
     public ContextEntity findBySessionId(String sessionId) {
-        LambdaQueryWrapper<ContextEntity> wrapper = Wrappers.<ContextEntity>lambdaQuery()
-                .eq(ContextEntity::getSessionId, sessionId);
-        return contextRepository.selectOne(wrapper);
+        return contextWindowStore.findBySessionId(sessionId);
+    }
+
+    /** 加载会话上下文及其活跃消息，优先使用缓存
+     *
+     * @param sessionId 会话ID
+     * @return 上下文快照，上下文不存在时返回null */
+    public ContextSnapshot loadContextWithMessages(String sessionId) {
+        return conversationContextCache.load(sessionId);
     }
 
     public ContextEntity insertOrUpdate(ContextEntity contextEntity) {
         try {
-            contextRepository.insertOrUpdate(contextEntity);
-        } catch (Exception e) {
-            System.out.println(e);
+            contextWindowStore.save(contextEntity);
+            conversationContextCache.writeThrough(contextEntity, Collections.emptyList());
+        } catch (RuntimeException e) {
+            conversationContextCache.invalidate(contextEntity.getSessionId());
+            logger.error("保存会话上下文失败 - 会话: {}, 错误: {}", contextEntity.getSessionId(), e.getMessage(), e);
+            throw e;
         }
         return contextEntity;
     }
+
+    /** 仅当上下文自读取后没有被其他写入修改时保存
+     *
+     * @param contextEntity 通过 {@link #findBySessionId} 读取后修改的上下文
+     * @return 是否已写入，为false表示期间窗口已被改写，本次修改作废 */
+    public boolean updateIfUnchanged(ContextEntity contextEntity) {
+        if (!contextWindowStore.saveIfUnchanged(contextEntity)) {
+            return false;
+        }
+        conversationContextCache.writeThrough(contextEntity, Collections.emptyList());
+        return true;
+    }
 }
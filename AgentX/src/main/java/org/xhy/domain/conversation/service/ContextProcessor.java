@@ -65,7 +65,8 @@ public class ContextProcessor {
                 List<String> retainedMessageIds = retainedMessages.stream().map(TokenMessage::getId)
                         .collect(Collectors.toList());
 
-                if (strategyType == TokenOverflowStrategyEnum.SUMMARIZE) {
+                // 摘要由后台摘要器生成，这里只合并已有的摘要结果
+                if (strategyType == TokenOverflowStrategyEnum.SUMMARIZE && tokenProcessResult.getSummary() != null) {
                     String newSummary = tokenProcessResult.getSummary();
                     String oldSummary = contextEntity.getSummary();
                     contextEntity.setSummary(oldSummary + newSummary);
@@ -0,0 +1,254 @@
+package org.xhy.domain.conversation.service;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.ContextMessageEntity;
+import org.xhy.domain.conversation.repository.ContextMessageRepository;
+import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/** 上下文窗口存储
+ *
+ * 上下文中的消息按追加顺序写入上下文成员表，序号只增不改；活跃消息为 [window_start, next_ordinal) 范围内的成员。
+ * 追加消息只需插入新成员，滑动窗口截断只需移动 window_start 并删除移出窗口的成员，不再整体重写活跃消息列表。
+ * 摘要消息位于活跃消息开头，单独记录在 summary_message_id 中，滚动摘要只移动窗口起点并替换摘要消息，不重写成员。
+ * 其余无法表示为"截掉开头再追加"的窗口，将窗口整体移到末尾重新追加，原有成员随窗口起点移动被删除。 */
+@Component
+public class ContextWindowStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextWindowStore.class);
+
+    /** 并发写入冲突时的最大重试次数 */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ContextRepository contextRepository;
+
+    private final ContextMessageRepository contextMessageRepository;
+
+    public ContextWindowStore(ContextRepository contextRepository, ContextMessageRepository contextMessageRepository) {
+        this.contextRepository = contextRepository;
+        this.contextMessageRepository = contextMessageRepository;
+    }
+
+    /** 生成新的上下文版本号 */
+    public static long nextVersion() {
+        return IdWorker.getId();
+    }
+
+    /** 查询会话上下文并加载活跃消息，旧版数据在首次读取时迁移
+     *
+     * @param sessionId 会话ID
+     * @return 上下文，不存在时返回null */
+    public ContextEntity findBySessionId(String sessionId) {
+        ContextEntity context = contextRepository
+                .selectOne(Wrappers.<ContextEntity>lambdaQuery().eq(ContextEntity::getSessionId, sessionId));
+        if (context == null) {
+            return null;
+        }
+        if (context.getNextOrdinal() == null) {
+            migrateLegacy(context);
+        }
+        List<String> window = contextMessageRepository.selectMessageIds(context.getId(), context.getWindowStart(),
+                context.getNextOrdinal());
+        List<String> activeMessages = new ArrayList<>(window.size() + 1);
+        if (context.getSummaryMessageId() != null) {
+            activeMessages.add(context.getSummaryMessageId());
+        }
+        activeMessages.addAll(window);
+        context.setActiveMessages(activeMessages);
+        context.setPersistedWindow(Collections.unmodifiableList(new ArrayList<>(window)));
+        return context;
+    }
+
+    /** 保存上下文，按与上次读取或写入时窗口的差异追加成员并移动窗口
+     *
+     * 并发写入时以数据库中最新的窗口为基准重新计算，与原先整体覆盖一致，以最后一次写入的活跃消息为准
+     *
+     * @param context 上下文，写入后更新其版本号和窗口位置 */
+    public void save(ContextEntity context) {
+        List<String> target = members(context);
+        long version = nextVersion();
+
+        if (context.getId() == null) {
+            insert(context, target, version);
+            return;
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (context.getNextOrdinal() == null || context.getPersistedWindow() == null) {
+                if (!refresh(context)) {
+                    insert(context, target, version);
+                    return;
+                }
+            }
+
+            WindowChange change = WindowChange.between(context.getPersistedWindow(), target);
+            long expectedNextOrdinal = context.getNextOrdinal();
+            long windowStart = context.getWindowStart() + change.truncated;
+            long nextOrdinal = expectedNextOrdinal + change.appended.size();
+
+            // 先占用序号再写成员，写成员失败只会留下窗口内缺失的序号，读取时自然跳过
+            if (contextRepository.advanceWindow(context.getId(), expectedNextOrdinal, windowStart, nextOrdinal,
+                    context.getSummary(), context.getSummaryMessageId(), version) > 0) {
+                applied(context, target, change, windowStart, version);
+                return;
+            }
+
+            logger.debug("上下文窗口并发写入冲突，重新加载后重试 - 会话: {}", context.getSessionId());
+            context.setPersistedWindow(null);
+        }
+        throw new BusinessException("上下文并发更新冲突，请稍后重试");
+    }
+
+    /** 仅当上下文自读取后没有被其他写入修改时保存，冲突时不重试
+     *
+     * 用于基于较早读取的窗口计算结果的后台任务，期间请求路径追加、截断或重置过窗口时放弃本次写入
+     *
+     * @param context 通过 {@link #findBySessionId} 读取的上下文，写入后更新其版本号和窗口位置
+     * @return 是否已写入 */
+    public boolean saveIfUnchanged(ContextEntity context) {
+        if (context.getId() == null || context.getNextOrdinal() == null || context.getPersistedWindow() == null) {
+            return false;
+        }
+        List<String> target = members(context);
+        long version = nextVersion();
+
+        WindowChange change = WindowChange.between(context.getPersistedWindow(), target);
+        long expectedNextOrdinal = context.getNextOrdinal();
+        long windowStart = context.getWindowStart() + change.truncated;
+        long nextOrdinal = expectedNextOrdinal + change.appended.size();
+        if (contextRepository.advanceWindowIfUnchanged(context.getId(), expectedNextOrdinal, context.getVersion(),
+                windowStart, nextOrdinal, context.getSummary(), context.getSummaryMessageId(), version) == 0) {
+            return false;
+        }
+        applied(context, target, change, windowStart, version);
+        return true;
+    }
+
+    /** 活跃消息中属于上下文成员的部分：开头为实体记录的摘要消息时去掉摘要消息，否则清空摘要消息ID */
+    private static List<String> members(ContextEntity context) {
+        List<String> target = context.getActiveMessages().stream().filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        String summaryMessageId = context.getSummaryMessageId();
+        if (summaryMessageId != null && !target.isEmpty() && summaryMessageId.equals(target.get(0))) {
+            return target.subList(1, target.size());
+        }
+        context.setSummaryMessageId(null);
+        return target;
+    }
+
+    /** 窗口位置已更新后写入新成员、删除移出窗口的成员并同步实体 */
+    private void applied(ContextEntity context, List<String> target, WindowChange change, long windowStart,
+            long version) {
+        long expectedNextOrdinal = context.getNextOrdinal();
+        insertMembers(context.getId(), expectedNextOrdinal, change.appended);
+        if (change.truncated > 0) {
+            // 已移出窗口的成员不会再被读取；删除失败只留下多余的行，下次移动窗口时一并删除
+            try {
+                contextMessageRepository.deleteBefore(context.getId(), windowStart);
+            } catch (RuntimeException e) {
+                logger.warn("删除移出窗口的上下文成员失败 - 会话: {}, 错误: {}", context.getSessionId(), e.getMessage());
+            }
+        }
+        context.setWindowStart(windowStart);
+        context.setNextOrdinal(expectedNextOrdinal + change.appended.size());
+        context.setVersion(version);
+        context.setPersistedWindow(Collections.unmodifiableList(new ArrayList<>(target)));
+    }
+
+    /** 新建上下文 */
+    private void insert(ContextEntity context, List<String> target, long version) {
+        context.setWindowStart(0L);
+        context.setNextOrdinal((long) target.size());
+        context.setVersion(version);
+        contextRepository.insert(context);
+        insertMembers(context.getId(), 0, target);
+        context.setPersistedWindow(Collections.unmodifiableList(new ArrayList<>(target)));
+    }
+
+    /** 从数据库重新加载窗口位置和窗口内的消息作为写入基准
+     * @return 上下文是否仍然存在 */
+    private boolean refresh(ContextEntity context) {
+        ContextEntity latest = findBySessionId(context.getSessionId());
+        if (latest == null) {
+            context.setId(null);
+            return false;
+        }
+        context.setId(latest.getId());
+        context.setWindowStart(latest.getWindowStart());
+        context.setNextOrdinal(latest.getNextOrdinal());
+        context.setPersistedWindow(latest.getPersistedWindow());
+        return true;
+    }
+
+    /** 将旧版活跃消息JSON列表迁移为上下文成员，先标记迁移占用序号，再写入成员 */
+    private void migrateLegacy(ContextEntity context) {
+        List<String> legacy = context.getLegacyActiveMessages() == null
+                ? Collections.emptyList()
+                : context.getLegacyActiveMessages().stream().filter(Objects::nonNull).collect(Collectors.toList());
+        if (contextRepository.markMigrated(context.getId(), legacy.size()) > 0) {
+            insertMembers(context.getId(), 0, legacy);
+            logger.info("上下文已迁移到成员表 - 会话: {}, 消息数: {}", context.getSessionId(), legacy.size());
+            context.setWindowStart(0L);
+            context.setNextOrdinal((long) legacy.size());
+        } else {
+            ContextEntity migrated = contextRepository.selectById(context.getId());
+            context.setWindowStart(migrated.getWindowStart());
+            context.setNextOrdinal(migrated.getNextOrdinal());
+        }
+        context.setLegacyActiveMessages(null);
+    }
+
+    private void insertMembers(String contextId, long firstOrdinal, List<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        List<ContextMessageEntity> members = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            members.add(new ContextMessageEntity(contextId, firstOrdinal + i, messageIds.get(i)));
+        }
+        contextMessageRepository.insertAll(members);
+    }
+
+    /** 两个窗口之间的差异：新窗口 = 旧窗口截掉开头 truncated 条后追加 appended */
+    static final class WindowChange {
+
+        final int truncated;
+
+        final List<String> appended;
+
+        private WindowChange(int truncated, List<String> appended) {
+            this.truncated = truncated;
+            this.appended = appended;
+        }
+
+        static WindowChange between(List<String> persisted, List<String> target) {
+            int start = target.isEmpty() ? persisted.size() : persisted.indexOf(target.get(0));
+            if (start < 0 || !isSuffixPrefix(persisted, start, target)) {
+                // 无法由旧窗口的后缀延伸得到，整体重新追加
+                start = persisted.size();
+            }
+            int retained = persisted.size() - start;
+            return new WindowChange(start, target.subList(retained, target.size()));
+        }
+
+        /** 旧窗口从 start 开始的后缀是否为新窗口的前缀 */
+        private static boolean isSuffixPrefix(List<String> persisted, int start, List<String> target) {
+            int retained = persisted.size() - start;
+            if (retained > target.size()) {
+                return false;
+            }
+            return persisted.subList(start, persisted.size()).equals(target.subList(0, retained));
+        }
+    }
+}
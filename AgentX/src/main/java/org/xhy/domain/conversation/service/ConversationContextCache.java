@@ -0,0 +1,252 @@
+package org.xhy.domain.conversation.service;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.ContextSnapshot;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.domain.conversation.repository.MessageRepository;
+import org.xhy.domain.token.model.TokenIndex;
+import org.xhy.domain.token.model.TokenMessage;
+import org.xhy.infrastructure.config.ContextCacheProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/** 会话上下文缓存
+ *
+ * 按会话缓存上下文、活跃消息窗口及其Token索引（本体Token数的前缀和）。每轮对话写库后同步写入缓存（write-through），
+ * 下一轮只需查询上下文的版本号即可确认缓存有效，不再随历史消息增长重复加载整个消息窗口。
+ *
+ * 每次写上下文都会生成新的版本号，其他节点写入后本节点的版本号校验失败，自动从数据库重新加载。 */
+@Component
+public class ConversationContextCache {
+
+    private final ContextRepository contextRepository;
+
+    private final ContextWindowStore contextWindowStore;
+
+    private final MessageRepository messageRepository;
+
+    private final boolean enabled;
+
+    private final Cache<String, CachedContext> cache;
+
+    public ConversationContextCache(ContextRepository contextRepository, ContextWindowStore contextWindowStore,
+            MessageRepository messageRepository, ContextCacheProperties properties) {
+        this.contextRepository = contextRepository;
+        this.contextWindowStore = contextWindowStore;
+        this.messageRepository = messageRepository;
+        this.enabled = properties.isEnabled();
+        this.cache = CacheBuilder.newBuilder().maximumWeight(properties.getMaxCachedMessages())
+                .weigher((String sessionId, CachedContext cached) -> cached.messages.size() + 1)
+                .expireAfterAccess(properties.getExpireMinutes(), TimeUnit.MINUTES).build();
+    }
+
+    /** 加载会话上下文快照
+     *
+     * @param sessionId 会话ID
+     * @return 上下文快照，上下文不存在时返回null */
+    public ContextSnapshot load(String sessionId) {
+        if (!enabled) {
+            CachedContext loaded = loadFromDatabase(sessionId);
+            return loaded == null ? null : loaded.toSnapshot();
+        }
+
+        CachedContext cached = cache.getIfPresent(sessionId);
+        if (cached != null) {
+            ContextEntity current = contextRepository.selectOne(Wrappers.<ContextEntity>lambdaQuery()
+                    .select(ContextEntity::getId, ContextEntity::getVersion)
+                    .eq(ContextEntity::getSessionId, sessionId));
+            if (current == null) {
+                cache.invalidate(sessionId);
+                return null;
+            }
+            if (Objects.equals(current.getVersion(), cached.context.getVersion())) {
+                return cached.toSnapshot();
+            }
+        }
+
+        // 与并发的写入交错时可能放入较旧的版本，下一次版本号校验会发现并重新加载
+        CachedContext loaded = loadFromDatabase(sessionId);
+        if (loaded == null) {
+            cache.invalidate(sessionId);
+            return null;
+        }
+        cache.put(sessionId, loaded);
+        return loaded.toSnapshot();
+    }
+
+    /** 上下文写库后同步更新缓存
+     *
+     * 新的活跃消息只能由已缓存的消息和本次追加的消息组成，否则（如摘要器引入了新的摘要消息）放弃缓存等待下次重新加载
+     *
+     * @param context 已写库的上下文，版本号为本次写入的版本
+     * @param appendedMessages 本次新保存的消息 */
+    public void writeThrough(ContextEntity context, Collection<MessageEntity> appendedMessages) {
+        if (!enabled || context.getSessionId() == null) {
+            return;
+        }
+        cache.asMap().compute(context.getSessionId(), (sessionId, previous) -> {
+            Map<String, MessageEntity> known = new HashMap<>();
+            Set<String> knownIds = new HashSet<>();
+            if (previous != null) {
+                known.putAll(previous.messagesById);
+                knownIds.addAll(previous.context.getActiveMessages());
+            }
+            for (MessageEntity message : appendedMessages) {
+                known.put(message.getId(), copyMessage(message));
+                knownIds.add(message.getId());
+            }
+
+            List<MessageEntity> messages = new ArrayList<>();
+            for (String messageId : context.getActiveMessages()) {
+                if (!knownIds.contains(messageId)) {
+                    return null;
+                }
+                MessageEntity message = known.get(messageId);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return new CachedContext(copyContext(context), messages, extendIndex(previous, messages));
+        });
+    }
+
+    /** 消息更新后刷新缓存中对应的消息
+     *
+     * @param message 已更新的消息 */
+    public void refreshMessage(MessageEntity message) {
+        if (!enabled || message.getSessionId() == null) {
+            return;
+        }
+        cache.asMap().computeIfPresent(message.getSessionId(), (sessionId, previous) -> {
+            if (!previous.messagesById.containsKey(message.getId())) {
+                return previous;
+            }
+            MessageEntity updated = copyMessage(message);
+            List<MessageEntity> messages = previous.messages.stream()
+                    .map(cachedMessage -> cachedMessage.getId().equals(message.getId()) ? updated : cachedMessage)
+                    .collect(Collectors.toList());
+            return new CachedContext(previous.context, messages, TokenIndex.of(toTokenMessages(messages)));
+        });
+    }
+
+    /** 移除会话的缓存 */
+    public void invalidate(String sessionId) {
+        cache.invalidate(sessionId);
+    }
+
+    private CachedContext loadFromDatabase(String sessionId) {
+        ContextEntity context = contextWindowStore.findBySessionId(sessionId);
+        if (context == null) {
+            return null;
+        }
+        List<MessageEntity> messages = new ArrayList<>();
+        if (!context.getActiveMessages().isEmpty()) {
+            Map<String, MessageEntity> messagesById = messageRepository.selectByIds(context.getActiveMessages())
+                    .stream().collect(Collectors.toMap(MessageEntity::getId, Function.identity(), (a, b) -> a));
+            for (String messageId : context.getActiveMessages()) {
+                MessageEntity message = messagesById.get(messageId);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return new CachedContext(context, messages, TokenIndex.of(toTokenMessages(messages)));
+    }
+
+    /** 新的活跃消息为原活跃消息去掉最早的若干条再追加新消息时，在原索引上移动起点并追加，只计算新消息的前缀和；其余情形重建索引 */
+    private static TokenIndex extendIndex(CachedContext previous, List<MessageEntity> messages) {
+        if (previous == null || messages.isEmpty()) {
+            return TokenIndex.of(toTokenMessages(messages));
+        }
+        TokenIndex index = previous.tokenIndex;
+        int dropped = 0;
+        String firstId = messages.get(0).getId();
+        while (dropped < index.size() && !index.get(dropped).getId().equals(firstId)) {
+            dropped++;
+        }
+        int retained = index.size() - dropped;
+        if (retained > messages.size()) {
+            return TokenIndex.of(toTokenMessages(messages));
+        }
+        for (int i = 0; i < retained; i++) {
+            if (!index.get(dropped + i).getId().equals(messages.get(i).getId())) {
+                return TokenIndex.of(toTokenMessages(messages));
+            }
+        }
+        return index.slice(dropped).append(toTokenMessages(messages.subList(retained, messages.size())));
+    }
+
+    private static List<TokenMessage> toTokenMessages(List<MessageEntity> messages) {
+        List<TokenMessage> tokenMessages = new ArrayList<>(messages.size());
+        for (MessageEntity message : messages) {
+            TokenMessage tokenMessage = new TokenMessage();
+            tokenMessage.setId(message.getId());
+            tokenMessage.setRole(message.getRole().name());
+            tokenMessage.setContent(message.getContent());
+            tokenMessage.setTokenCount(message.getTokenCount());
+            tokenMessage.setBodyTokenCount(message.getBodyTokenCount());
+            tokenMessage.setCreatedAt(message.getCreatedAt());
+            tokenMessages.add(tokenMessage);
+        }
+        return tokenMessages;
+    }
+
+    private static ContextEntity copyContext(ContextEntity source) {
+        ContextEntity copy = new ContextEntity();
+        BeanUtils.copyProperties(source, copy);
+        copy.setActiveMessages(new ArrayList<>(source.getActiveMessages()));
+        return copy;
+    }
+
+    private static MessageEntity copyMessage(MessageEntity source) {
+        MessageEntity copy = new MessageEntity();
+        BeanUtils.copyProperties(source, copy);
+        copy.setFileUrls(source.getFileUrls() == null ? null : new ArrayList<>(source.getFileUrls()));
+        return copy;
+    }
+
+    /** 缓存项，创建后不再修改，更新时整体替换 */
+    private static final class CachedContext {
+
+        private final ContextEntity context;
+
+        private final List<MessageEntity> messages;
+
+        private final Map<String, MessageEntity> messagesById;
+
+        private final TokenIndex tokenIndex;
+
+        private CachedContext(ContextEntity context, List<MessageEntity> messages, TokenIndex tokenIndex) {
+            this.context = context;
+            this.messages = messages;
+            this.messagesById = messages.stream()
+                    .collect(Collectors.toMap(MessageEntity::getId, Function.identity(), (a, b) -> a));
+            this.tokenIndex = tokenIndex;
+        }
+
+        /** 上下文、消息列表和消息实体交给调用方修改，需复制；Token索引不可变，直接共享 */
+        private ContextSnapshot toSnapshot() {
+            List<MessageEntity> copies = new ArrayList<>(messages.size());
+            for (MessageEntity message : messages) {
+                copies.add(copyMessage(message));
+            }
+            return new ContextSnapshot(copyContext(context), copies, tokenIndex);
+        }
+    }
+}
@@ -16,9 +16,12 @@ public class ConversationDomainService {
 
     private final Logger logger = LoggerFactory.getLogger(ConversationDomainService.class);
     private final MessageRepository messageRepository;
+    private final ConversationContextCache conversationContextCache;
 
-    public ConversationDomainService(MessageRepository messageRepository) {
+    public ConversationDomainService(MessageRepository messageRepository,
+            ConversationContextCache conversationContextCache) {
         this.messageRepository = messageRepository;
+        this.conversationContextCache = conversationContextCache;
     }
 
     /** 获取会话中的消息列表
@@ -45,11 +48,13 @@ public class ConversationDomainService {
      * @param sessionId 会话id */
     public void deleteConversationMessages(String sessionId) {
         messageRepository.delete(Wrappers.<MessageEntity>lambdaQuery().eq(MessageEntity::getSessionId, sessionId));
+        conversationContextCache.invalidate(sessionId);
     }
 
     public void deleteConversationMessages(List<String> sessionIds) {
         messageRepository
                 .checkedDelete(Wrappers.<MessageEntity>lambdaQuery().in(MessageEntity::getSessionId, sessionIds));
+        sessionIds.forEach(conversationContextCache::invalidate);
     }
 
     /** 更新消息的token数量
@@ -58,5 +63,6 @@ public class ConversationDomainService {
     public void updateMessageTokenCount(MessageEntity message) {
         logger.info("更新消息token数量，消息ID: {}, token数量: {}", message.getId(), message.getTokenCount());
         messageRepository.checkedUpdateById(message);
+        conversationContextCache.refreshMessage(message);
     }
 }
\ No newline at end of file
@@ -1,25 +1,48 @@
 package org.xhy.domain.conversation.service;
 
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONException;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
 import org.xhy.domain.conversation.model.ContextEntity;
 import org.xhy.domain.conversation.model.MessageEntity;
-import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.domain.conversation.model.TurnJournalRecord;
 import org.xhy.domain.conversation.repository.MessageRepository;
+import org.xhy.infrastructure.journal.TurnJournal;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class MessageDomainService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageDomainService.class);
+
     private final MessageRepository messageRepository;
 
-    private final ContextRepository contextRepository;
+    private final ContextWindowStore contextWindowStore;
+
+    private final ConversationContextCache conversationContextCache;
+
+    private final TurnJournal turnJournal;
 
-    public MessageDomainService(MessageRepository messageRepository, ContextRepository contextRepository) {
+    private final TransactionOperations transactionOperations;
+
+    public MessageDomainService(MessageRepository messageRepository, ContextWindowStore contextWindowStore,
+            ConversationContextCache conversationContextCache, TurnJournal turnJournal,
+            TransactionOperations transactionOperations) {
         this.messageRepository = messageRepository;
-        this.contextRepository = contextRepository;
+        this.contextWindowStore = contextWindowStore;
+        this.conversationContextCache = conversationContextCache;
+        this.turnJournal = turnJournal;
+        this.transactionOperations = transactionOperations;
     }
 
     public List<MessageEntity> listByIds(List<String> ids) {
@@ -37,7 +60,15 @@ public class MessageDomainService {
         }
         messageRepository.insert(messageEntities);
         contextEntity.getActiveMessages().addAll(messageEntities.stream().map(MessageEntity::getId).toList());
-        contextRepository.insertOrUpdate(contextEntity);
+        try {
+            // 只追加新成员，不重写整个活跃消息列表
+            contextWindowStore.save(contextEntity);
+        } catch (RuntimeException e) {
+            conversationContextCache.invalidate(contextEntity.getSessionId());
+            throw e;
+        }
+        // 写库成功后同步更新缓存，下一轮对话无需重新加载整个消息窗口
+        conversationContextCache.writeThrough(contextEntity, messageEntities);
     }
 
     /** 保存消息 */
@@ -47,6 +78,148 @@ public class MessageDomainService {
 
     public void updateMessage(MessageEntity message) {
         messageRepository.updateById(message);
+        conversationContextCache.refreshMessage(message);
+    }
+
+    /** 开始一轮对话的写入缓冲
+     * @param contextEntity 本轮对话的上下文，缓冲区中追加的消息会加入其活跃消息
+     * @return 写入缓冲区 */
+    public TurnWriteBuffer beginTurn(ContextEntity contextEntity) {
+        return new TurnWriteBuffer(IdWorker.get32UUID(), contextEntity, turnJournal);
+    }
+
+    /** 在一个事务中提交一轮对话缓冲的全部写入：批量插入消息、更新消息、追加上下文成员
+     *
+     * 写库成功后同步更新缓存并删除写入日志；失败时保留缓冲区和日志，可再次提交或在重启后恢复
+     * @param turn 写入缓冲区 */
+    public void commitTurn(TurnWriteBuffer turn) {
+        ContextEntity context = turn.getContext();
+        List<MessageEntity> inserts;
+        List<MessageEntity> updates;
+        synchronized (turn) {
+            if (turn.isEmpty()) {
+                return;
+            }
+            inserts = turn.pendingInserts();
+            updates = turn.pendingUpdates();
+            boolean windowChanged = turn.isWindowChanged();
+            try {
+                transactionOperations.executeWithoutResult(status -> {
+                    if (!inserts.isEmpty()) {
+                        messageRepository.insertAll(inserts);
+                    }
+                    for (MessageEntity message : updates) {
+                        messageRepository.updateById(message);
+                    }
+                    if (windowChanged) {
+                        contextWindowStore.save(context);
+                    }
+                });
+            } catch (RuntimeException e) {
+                conversationContextCache.invalidate(context.getSessionId());
+                throw e;
+            }
+            turn.clear();
+        }
+        conversationContextCache.writeThrough(context, inserts);
+        updates.forEach(conversationContextCache::refreshMessage);
+        turnJournal.complete(turn.getTurnId());
+    }
+
+    /** 恢复写入日志中未提交的对话轮次，用于进程崩溃后重启
+     * @return 恢复的轮次数 */
+    public int recoverPendingTurns() {
+        int recovered = 0;
+        for (Map.Entry<String, List<String>> entry : turnJournal.loadPending().entrySet()) {
+            String turnId = entry.getKey();
+            try {
+                if (recoverTurn(entry.getValue())) {
+                    recovered++;
+                }
+                turnJournal.complete(turnId);
+            } catch (RuntimeException e) {
+                // 保留日志，下次启动时重试
+                logger.error("恢复对话轮次失败 - 轮次: {}, 错误: {}", turnId, e.getMessage(), e);
+            }
+        }
+        return recovered;
+    }
+
+    /** 按日志重放一轮对话的写入
+     * @return 是否写入了数据；轮次已提交或日志为空时返回false */
+    private boolean recoverTurn(List<String> lines) {
+        List<TurnJournalRecord> records = new ArrayList<>();
+        for (String line : lines) {
+            try {
+                records.add(JSON.parseObject(line, TurnJournalRecord.class));
+            } catch (JSONException e) {
+                // 崩溃时未写完整的最后一条记录
+                break;
+            }
+        }
+        if (records.isEmpty()) {
+            return false;
+        }
+
+        String sessionId = records.get(0).getSessionId();
+        Map<String, MessageEntity> inserts = new LinkedHashMap<>();
+        Map<String, MessageEntity> updates = new LinkedHashMap<>();
+        List<String> window = null;
+        List<String> appended = new ArrayList<>();
+        for (TurnJournalRecord record : records) {
+            MessageEntity message = record.getMessage();
+            switch (record.getType()) {
+                case WINDOW :
+                    window = new ArrayList<>(record.getActiveMessages());
+                    appended.clear();
+                    break;
+                case SAVE :
+                    inserts.put(message.getId(), message);
+                    break;
+                case APPEND :
+                    inserts.put(message.getId(), message);
+                    appended.add(message.getId());
+                    break;
+                case UPDATE :
+                    if (inserts.containsKey(message.getId())) {
+                        inserts.put(message.getId(), message);
+                    } else {
+                        updates.put(message.getId(), message);
+                    }
+                    break;
+                default :
+                    break;
+            }
+        }
+
+        // 提交成功但删除日志前崩溃：一轮的消息在同一事务中插入，第一条存在即已提交
+        if (!inserts.isEmpty() && messageRepository.selectById(inserts.keySet().iterator().next()) != null) {
+            return false;
+        }
+
+        List<String> baseWindow = window;
+        transactionOperations.executeWithoutResult(status -> {
+            if (!inserts.isEmpty()) {
+                messageRepository.insertAll(new ArrayList<>(inserts.values()));
+            }
+            for (MessageEntity message : updates.values()) {
+                messageRepository.updateById(message);
+            }
+            ContextEntity context = contextWindowStore.findBySessionId(sessionId);
+            if (context == null) {
+                context = new ContextEntity();
+                context.setSessionId(sessionId);
+            }
+            List<String> activeMessages = baseWindow != null
+                    ? new ArrayList<>(baseWindow)
+                    : new ArrayList<>(context.getActiveMessages());
+            activeMessages.addAll(appended);
+            context.setActiveMessages(activeMessages);
+            contextWindowStore.save(context);
+        });
+        conversationContextCache.invalidate(sessionId);
+        logger.info("已从写入日志恢复对话轮次 - 会话: {}, 消息数: {}", sessionId, inserts.size());
+        return true;
     }
 
     public boolean isFirstConversation(String sessionId) {
@@ -0,0 +1,143 @@
+package org.xhy.domain.conversation.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import org.springframework.beans.BeanUtils;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.conversation.model.TurnJournalRecord;
+import org.xhy.infrastructure.journal.TurnJournal;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 单轮对话的写入缓冲区
+ *
+ * 一轮流式对话中的用户消息、工具调用消息、助手消息及其Token数更新先写入缓冲区和写入日志，
+ * 在对话完成、出错或中断时由 {@link MessageDomainService#commitTurn} 在一个事务中写库。
+ * 消息ID在进入缓冲区时分配，创建时间按进入顺序严格递增，保证历史消息的排序与写入顺序一致。 */
+public class TurnWriteBuffer {
+
+    private final String turnId;
+
+    private final ContextEntity context;
+
+    private final TurnJournal journal;
+
+    /** 待插入的消息，按进入顺序 */
+    private final Map<String, MessageEntity> inserts = new LinkedHashMap<>();
+
+    /** 待更新的已有消息 */
+    private final Map<String, MessageEntity> updates = new LinkedHashMap<>();
+
+    /** 活跃消息窗口是否有变化 */
+    private boolean windowChanged;
+
+    private LocalDateTime lastCreatedAt;
+
+    TurnWriteBuffer(String turnId, ContextEntity context, TurnJournal journal) {
+        this.turnId = turnId;
+        this.context = context;
+        this.journal = journal;
+    }
+
+    public String getTurnId() {
+        return turnId;
+    }
+
+    public ContextEntity getContext() {
+        return context;
+    }
+
+    /** 替换活跃消息窗口，如按历史消息重新计算的窗口 */
+    public synchronized void resetWindow(List<String> activeMessages) {
+        context.setActiveMessages(new ArrayList<>(activeMessages));
+        windowChanged = true;
+        record(new TurnJournalRecord(TurnJournalRecord.Type.WINDOW, context.getSessionId(),
+                context.getActiveMessages(), null));
+    }
+
+    /** 保存消息但不加入上下文，保留已设置的创建时间 */
+    public synchronized void save(MessageEntity message) {
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(nextCreatedAt());
+        }
+        message.setId(IdWorker.get32UUID());
+        MessageEntity copy = copy(message);
+        inserts.put(copy.getId(), copy);
+        record(new TurnJournalRecord(TurnJournalRecord.Type.SAVE, context.getSessionId(), null, copy));
+    }
+
+    /** 保存消息并追加到上下文；同一实体多次追加时每次都作为新消息保存 */
+    public synchronized void append(MessageEntity message) {
+        message.setId(IdWorker.get32UUID());
+        message.setCreatedAt(nextCreatedAt());
+        MessageEntity copy = copy(message);
+        inserts.put(copy.getId(), copy);
+        context.getActiveMessages().add(copy.getId());
+        windowChanged = true;
+        record(new TurnJournalRecord(TurnJournalRecord.Type.APPEND, context.getSessionId(), null, copy));
+    }
+
+    /** 更新消息，消息尚未写库时直接合并到待插入的消息中 */
+    public synchronized void update(MessageEntity message) {
+        if (message.getId() == null) {
+            return;
+        }
+        MessageEntity copy = copy(message);
+        if (inserts.containsKey(copy.getId())) {
+            inserts.put(copy.getId(), copy);
+        } else {
+            updates.put(copy.getId(), copy);
+        }
+        record(new TurnJournalRecord(TurnJournalRecord.Type.UPDATE, context.getSessionId(), null, copy));
+    }
+
+    synchronized boolean isEmpty() {
+        return inserts.isEmpty() && updates.isEmpty() && !windowChanged;
+    }
+
+    synchronized List<MessageEntity> pendingInserts() {
+        return new ArrayList<>(inserts.values());
+    }
+
+    synchronized List<MessageEntity> pendingUpdates() {
+        return new ArrayList<>(updates.values());
+    }
+
+    synchronized boolean isWindowChanged() {
+        return windowChanged;
+    }
+
+    /** 写库成功后清空缓冲区 */
+    synchronized void clear() {
+        inserts.clear();
+        updates.clear();
+        windowChanged = false;
+    }
+
+    /** 创建时间严格递增，同一微秒内的消息向后顺延 */
+    private LocalDateTime nextCreatedAt() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        if (lastCreatedAt != null && !now.isAfter(lastCreatedAt)) {
+            now = lastCreatedAt.plus(1, ChronoUnit.MICROS);
+        }
+        lastCreatedAt = now;
+        return now;
+    }
+
+    private void record(TurnJournalRecord record) {
+        journal.append(turnId, JSON.toJSONString(record));
+    }
+
+    private static MessageEntity copy(MessageEntity source) {
+        MessageEntity copy = new MessageEntity();
+        BeanUtils.copyProperties(source, copy);
+        copy.setFileUrls(source.getFileUrls() == null ? null : new ArrayList<>(source.getFileUrls()));
+        return copy;
+    }
+}
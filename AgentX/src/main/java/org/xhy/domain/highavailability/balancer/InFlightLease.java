@@ -0,0 +1,44 @@
+package org.xhy.domain.highavailability.balancer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** 本地负载均衡为一次调用占用的进行中请求名额
+ *
+ * 选择实例时占用，调用结束、被拒绝或放弃时由调用方归还，重复归还无效。
+ * 调用方遗漏归还时，名额占用超过空闲时长后由 {@link ProviderBalancerSync} 单独回收，不影响其他进行中的请求。 */
+public final class InFlightLease {
+
+    private final InstanceStats stats;
+
+    private final long startedAt;
+
+    /** 是否为暂停到期后放行的探测请求 */
+    private final boolean probe;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    InFlightLease(InstanceStats stats, long startedAt, boolean probe) {
+        this.stats = stats;
+        this.startedAt = startedAt;
+        this.probe = probe;
+    }
+
+    /** 归还名额，可重复调用 */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            stats.end(this);
+        }
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    long getStartedAt() {
+        return startedAt;
+    }
+
+    boolean isProbe() {
+        return probe;
+    }
+}
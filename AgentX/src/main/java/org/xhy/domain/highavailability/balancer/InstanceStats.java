@@ -0,0 +1,164 @@
+package org.xhy.domain.highavailability.balancer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** 单个模型实例的本地调用统计：延迟、首Token时间、错误率的指数加权移动平均，以及进行中的请求数
+ *
+ * 连续失败达到阈值后暂停分配，暂停到期后只放行一个探测请求，探测成功即恢复并清零错误率。
+ * 进行中的请求数为尚未归还的 {@link InFlightLease} 数量，与调用结果的记录相互独立。
+ * 写入加锁，读取无锁，选择时读到的可能是稍旧的值，不影响选择的正确性。 */
+public class InstanceStats {
+
+    /** 没有新调用结果时错误率的半衰期，使偶发失败后长期未被选中的实例能重新参与竞争 */
+    private static final long ERROR_HALF_LIFE_MS = 60000;
+
+    private final double alpha;
+
+    /** 尚未归还的进行中请求名额 */
+    private final Set<InFlightLease> inFlight = ConcurrentHashMap.newKeySet();
+
+    private volatile double latencyMs;
+
+    private volatile double firstTokenMs;
+
+    private volatile double errorRate;
+
+    private volatile int consecutiveFailures;
+
+    /** 暂停分配的截止时间，0表示未暂停 */
+    private volatile long cooldownUntil;
+
+    /** 是否处于暂停或等待探测的状态 */
+    private volatile boolean open;
+
+    /** 是否有探测请求正在进行 */
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    /** 正在进行的探测请求占用的名额，探测请求未上报结果就归还时据此放开探测名额 */
+    private volatile InFlightLease probeLease;
+
+    private volatile long lastCompletedAt;
+
+    public InstanceStats(double alpha, double initialLatencyMs) {
+        this.alpha = alpha;
+        this.latencyMs = initialLatencyMs;
+    }
+
+    /** 分配一个请求
+     * @param probe 是否为通过 {@link #tryProbe} 放行的探测请求
+     * @return 进行中请求名额，由调用方在调用结束后归还 */
+    public InFlightLease begin(long now, boolean probe) {
+        InFlightLease lease = new InFlightLease(this, now, probe);
+        inFlight.add(lease);
+        if (probe) {
+            probeLease = lease;
+        }
+        return lease;
+    }
+
+    /** 归还名额，由 {@link InFlightLease#release()} 调用 */
+    void end(InFlightLease lease) {
+        inFlight.remove(lease);
+        if (lease.isProbe()) {
+            synchronized (this) {
+                if (probeLease == lease) {
+                    // 探测请求被放弃（如被隔离舱拒绝），没有结果可判断，放开名额等待下一次探测
+                    probeLease = null;
+                    probing.set(false);
+                }
+            }
+        }
+    }
+
+    /** 记录调用结果
+     * @param success 是否成功
+     * @param latency 调用耗时(毫秒)
+     * @param failureThreshold 连续失败多少次后暂停分配
+     * @param cooldownMs 暂停分配的时长(毫秒) */
+    public synchronized void complete(boolean success, long latency, long now, int failureThreshold,
+            long cooldownMs) {
+        probing.set(false);
+        probeLease = null;
+        errorRate = decayedErrorRate(now);
+        lastCompletedAt = now;
+        errorRate = errorRate + alpha * ((success ? 0 : 1) - errorRate);
+        if (success) {
+            latencyMs = latencyMs + alpha * (latency - latencyMs);
+            consecutiveFailures = 0;
+            cooldownUntil = 0;
+            if (open) {
+                // 探测成功，之前的失败不再代表当前状态
+                open = false;
+                errorRate = 0;
+            }
+        } else {
+            // 失败耗时通常不代表正常响应速度，只在更慢时计入
+            if (latency > latencyMs) {
+                latencyMs = latencyMs + alpha * (latency - latencyMs);
+            }
+            consecutiveFailures++;
+            if (consecutiveFailures >= failureThreshold) {
+                open = true;
+                cooldownUntil = now + cooldownMs;
+            }
+        }
+    }
+
+    /** 记录首Token时间 */
+    public synchronized void recordFirstToken(long firstToken) {
+        firstTokenMs = firstTokenMs == 0 ? firstToken : firstTokenMs + alpha * (firstToken - firstTokenMs);
+    }
+
+    /** 回收占用超过指定时长仍未归还的名额，每个名额按各自的开始时间单独判断 */
+    public void releaseStale(long now, long idleMs) {
+        for (InFlightLease lease : inFlight) {
+            if (now - lease.getStartedAt() > idleMs) {
+                lease.release();
+            }
+        }
+    }
+
+    /** 是否可以分配请求：未暂停，或暂停已到期（等待探测） */
+    public boolean isAvailable(long now) {
+        return cooldownUntil <= now && !(open && probing.get());
+    }
+
+    /** 暂停到期后尝试占用唯一的探测名额
+     * @return 是否应把本次请求作为探测请求分配给该实例 */
+    public boolean tryProbe(long now) {
+        return open && cooldownUntil <= now && probing.compareAndSet(false, true);
+    }
+
+    /** 选择代价：预估耗时 × (进行中请求数 + 1)，按成功率放大；越小越优先 */
+    public double cost(long now) {
+        double expected = latencyMs + firstTokenMs;
+        double successRate = Math.max(0.01, 1 - decayedErrorRate(now));
+        return expected * (inFlight.size() + 1) / successRate;
+    }
+
+    private double decayedErrorRate(long now) {
+        long idle = now - lastCompletedAt;
+        if (lastCompletedAt == 0 || idle <= 0) {
+            return errorRate;
+        }
+        return errorRate * Math.pow(0.5, (double) idle / ERROR_HALF_LIFE_MS);
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public double getLatencyMs() {
+        return latencyMs;
+    }
+
+    public double getFirstTokenMs() {
+        return firstTokenMs;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+}
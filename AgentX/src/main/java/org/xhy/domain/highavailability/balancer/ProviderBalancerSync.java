@@ -0,0 +1,123 @@
+package org.xhy.domain.highavailability.balancer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.highavailability.gateway.HighAvailabilityGateway;
+import org.xhy.domain.llm.event.ModelDomainEvent;
+import org.xhy.domain.llm.event.ModelsBatchDeletedEvent;
+import org.xhy.domain.llm.event.ProviderChangedEvent;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.service.LLMDomainService;
+import org.xhy.infrastructure.config.HighAvailabilityProperties;
+import org.xhy.infrastructure.config.ProviderBalancerProperties;
+import org.xhy.infrastructure.highavailability.dto.request.SelectInstanceRequest;
+import org.xhy.infrastructure.highavailability.dto.response.ApiInstanceDTO;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** 本地负载均衡器的后台同步：定期从数据库刷新候选模型和服务商，并向高可用网关同步最近使用分组的偏好实例 */
+@Component
+public class ProviderBalancerSync {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderBalancerSync.class);
+
+    /** 进行中请求名额占用超过该时长仍未归还时视为调用方遗漏归还 */
+    private static final long IN_FLIGHT_IDLE_MS = 10 * 60 * 1000L;
+
+    private final ProviderLoadBalancer loadBalancer;
+    private final LLMDomainService llmDomainService;
+    private final HighAvailabilityGateway gateway;
+    private final HighAvailabilityProperties properties;
+    private final ProviderBalancerProperties balancerProperties;
+
+    public ProviderBalancerSync(ProviderLoadBalancer loadBalancer, LLMDomainService llmDomainService,
+            HighAvailabilityGateway gateway, HighAvailabilityProperties properties,
+            ProviderBalancerProperties balancerProperties) {
+        this.loadBalancer = loadBalancer;
+        this.llmDomainService = llmDomainService;
+        this.gateway = gateway;
+        this.properties = properties;
+        this.balancerProperties = balancerProperties;
+    }
+
+    /** 定期同步 */
+    @Scheduled(fixedDelayString = "${high-availability.balancer.sync-interval-ms:30000}")
+    public void sync() {
+        if (!isActive()) {
+            return;
+        }
+        refreshCatalog();
+        syncRemotePreferences();
+        loadBalancer.releaseStale(IN_FLIGHT_IDLE_MS);
+    }
+
+    /** 服务商变更后刷新候选 */
+    @Async
+    @EventListener
+    public void onProviderChanged(ProviderChangedEvent event) {
+        if (isActive()) {
+            refreshCatalog();
+        }
+    }
+
+    /** 模型创建、更新、删除、状态变更后刷新候选 */
+    @Async
+    @EventListener
+    public void onModelChanged(ModelDomainEvent event) {
+        if (isActive()) {
+            refreshCatalog();
+        }
+    }
+
+    /** 模型批量删除后刷新候选 */
+    @Async
+    @EventListener
+    public void onModelsBatchDeleted(ModelsBatchDeletedEvent event) {
+        if (isActive()) {
+            refreshCatalog();
+        }
+    }
+
+    /** 从数据库加载激活的模型及其服务商 */
+    public void refreshCatalog() {
+        try {
+            List<ModelEntity> models = llmDomainService.getAllActiveModels();
+            Set<String> providerIds = models.stream().map(ModelEntity::getProviderId).collect(Collectors.toSet());
+            loadBalancer.updateCatalog(models, llmDomainService.getProvidersByIds(providerIds));
+            logger.debug("负载均衡候选模型已刷新: 模型数={}", models.size());
+        } catch (Exception e) {
+            logger.error("刷新负载均衡候选模型失败", e);
+        }
+    }
+
+    /** 向网关查询最近使用分组的最佳实例，作为本地选择的偏好 */
+    private void syncRemotePreferences() {
+        for (ProviderLoadBalancer.RecentGroup group : loadBalancer.drainRecentGroups()) {
+            try {
+                SelectInstanceRequest request = new SelectInstanceRequest(group.getUserId(), group.getApiIdentifier(),
+                        "MODEL");
+                if (group.getFallbackChain() != null && !group.getFallbackChain().isEmpty()) {
+                    request.setFallbackChain(group.getFallbackChain());
+                }
+                ApiInstanceDTO instance = gateway.selectBestInstance(request);
+                if (instance != null && instance.getBusinessId() != null) {
+                    loadBalancer.updateRemotePreference(group.getUserId(), group.getApiIdentifier(),
+                            instance.getBusinessId(), instance.getId());
+                }
+            } catch (Exception e) {
+                logger.debug("同步网关偏好实例失败: userId={}, apiIdentifier={}, 错误: {}", group.getUserId(),
+                        group.getApiIdentifier(), e.getMessage());
+            }
+        }
+    }
+
+    private boolean isActive() {
+        return properties.isEnabled() && balancerProperties.isEnabled();
+    }
+}
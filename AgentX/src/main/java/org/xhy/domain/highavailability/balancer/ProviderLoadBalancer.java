@@ -0,0 +1,372 @@
+package org.xhy.domain.highavailability.balancer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.config.ProviderBalancerProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** 本地服务商负载均衡器
+ *
+ * 在进程内维护每个模型实例（同一用户下模型标识相同的模型）的延迟、首Token时间、错误率和进行中的请求数，
+ * 用"两次随机选择取代价较小者"在候选实例中选择，连续失败的实例暂停分配，到期后放行一个探测请求，
+ * 不再每次请求都同步调用高可用网关和查询数据库。
+ * 候选模型和服务商由 {@link ProviderBalancerSync} 在后台从数据库刷新，网关的选择结果作为偏好在后台同步。 */
+@Component
+public class ProviderLoadBalancer {
+
+    private final ProviderBalancerProperties properties;
+
+    private final Map<String, InstanceStats> stats = new ConcurrentHashMap<>();
+
+    /** 分组 -> 网关偏好的模型ID */
+    private final Map<String, String> remotePreferences = new ConcurrentHashMap<>();
+
+    /** 模型ID -> 网关中的实例ID，上报调用结果时使用 */
+    private final Map<String, String> gatewayInstanceIds = new ConcurrentHashMap<>();
+
+    /** 最近一个同步周期内选择过的分组，后台向网关同步这些分组的偏好 */
+    private final Map<String, RecentGroup> recentGroups = new ConcurrentHashMap<>();
+
+    /** 会话 -> 上次选择的模型ID，保持会话亲和 */
+    private final Cache<String, String> sessionAffinity = CacheBuilder.newBuilder().maximumSize(100000)
+            .expireAfterAccess(30, TimeUnit.MINUTES).build();
+
+    private volatile Catalog catalog = new Catalog(Collections.emptyList(), Collections.emptyList());
+
+    public ProviderLoadBalancer(ProviderBalancerProperties properties) {
+        this.properties = properties;
+    }
+
+    /** 选择模型实例
+     *
+     * 优先保持会话亲和；否则在与所选模型同组的可用实例中选择，全部不可用时依次尝试降级链中的模型，
+     * 仍无可用实例时在原分组中选择代价最小的实例。选择结果占用所选实例的一个进行中请求名额，
+     * 调用方无论调用成功、失败、被拒绝还是放弃，都要通过 {@link Selection#release()} 归还
+     *
+     * @param model 用户选择的模型
+     * @param userId 用户ID
+     * @param sessionId 会话ID，为null时不读取也不更新会话亲和
+     * @param fallbackChain 降级模型ID列表，可为null
+     * @return 选择结果；模型尚未加载到本地时返回null，由调用方走网关选择 */
+    public Selection select(ModelEntity model, String userId, String sessionId, List<String> fallbackChain) {
+        Catalog current = this.catalog;
+        if (!current.modelsById.containsKey(model.getId())) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        String groupKey = groupKey(userId, model.getModelId());
+        recentGroups.putIfAbsent(groupKey, new RecentGroup(userId, model.getModelId(), fallbackChain));
+
+        ModelEntity chosen = null;
+        if (sessionId != null) {
+            String pinned = sessionAffinity.getIfPresent(sessionId);
+            ModelEntity pinnedModel = pinned == null ? null : current.modelsById.get(pinned);
+            if (pinnedModel != null && statsOf(pinned).isAvailable(now)
+                    && isCandidate(pinnedModel, model, userId, fallbackChain)) {
+                chosen = pinnedModel;
+            }
+        }
+
+        List<ModelEntity> primary = current.candidates(userId, model);
+        boolean probing = false;
+        if (chosen == null) {
+            chosen = probe(primary, now);
+            probing = chosen != null;
+        }
+        if (chosen == null) {
+            chosen = choose(available(primary, now), groupKey, now);
+        }
+        if (chosen == null && fallbackChain != null) {
+            for (String fallbackId : fallbackChain) {
+                ModelEntity fallback = current.modelsById.get(fallbackId);
+                if (fallback == null) {
+                    continue;
+                }
+                chosen = choose(available(current.candidates(userId, fallback), now),
+                        groupKey(userId, fallback.getModelId()), now);
+                if (chosen != null) {
+                    break;
+                }
+            }
+        }
+        if (chosen == null) {
+            chosen = choose(primary, groupKey, now);
+        }
+
+        InFlightLease lease = statsOf(chosen.getId()).begin(now, probing);
+        if (sessionId != null) {
+            sessionAffinity.put(sessionId, chosen.getId());
+        }
+        return new Selection(copy(chosen), copy(current.providersById.get(chosen.getProviderId())),
+                gatewayInstanceIds.get(chosen.getId()), lease);
+    }
+
+    /** 记录调用结果，不归还进行中请求名额
+     * @param modelId 模型ID
+     * @param success 是否成功
+     * @param latencyMs 调用耗时(毫秒) */
+    public void recordResult(String modelId, boolean success, long latencyMs) {
+        if (modelId == null) {
+            return;
+        }
+        statsOf(modelId).complete(success, latencyMs, System.currentTimeMillis(), properties.getFailureThreshold(),
+                properties.getCooldownMs());
+    }
+
+    /** 记录流式调用的首Token时间
+     * @param modelId 模型ID
+     * @param firstTokenMs 从发起调用到收到首个Token的耗时(毫秒) */
+    public void recordFirstToken(String modelId, long firstTokenMs) {
+        if (modelId == null) {
+            return;
+        }
+        statsOf(modelId).recordFirstToken(firstTokenMs);
+    }
+
+    /** 替换候选模型和服务商，只保留激活的模型和服务商 */
+    public void updateCatalog(List<ModelEntity> models, List<ProviderEntity> providers) {
+        Catalog updated = new Catalog(models, providers);
+        this.catalog = updated;
+        stats.keySet().retainAll(updated.modelsById.keySet());
+    }
+
+    /** 记录网关对某个分组的偏好实例 */
+    public void updateRemotePreference(String userId, String apiIdentifier, String modelId, String instanceId) {
+        remotePreferences.put(groupKey(userId, apiIdentifier), modelId);
+        if (instanceId != null) {
+            gatewayInstanceIds.put(modelId, instanceId);
+        }
+    }
+
+    /** 取出最近选择过的分组并清空 */
+    public List<RecentGroup> drainRecentGroups() {
+        List<RecentGroup> groups = new ArrayList<>();
+        for (String key : new ArrayList<>(recentGroups.keySet())) {
+            RecentGroup group = recentGroups.remove(key);
+            if (group != null) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /** 回收占用超过指定时长仍未归还的进行中请求名额 */
+    public void releaseStale(long idleMs) {
+        long now = System.currentTimeMillis();
+        stats.values().forEach(instance -> instance.releaseStale(now, idleMs));
+    }
+
+    /** 获取模型实例的统计，未加载时返回null */
+    public InstanceStats getStats(String modelId) {
+        return stats.get(modelId);
+    }
+
+    /** 暂停到期的实例优先分配一个探测请求 */
+    private ModelEntity probe(List<ModelEntity> candidates, long now) {
+        for (ModelEntity candidate : candidates) {
+            if (statsOf(candidate.getId()).tryProbe(now)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private ModelEntity choose(List<ModelEntity> candidates, String groupKey, long now) {
+        int size = candidates.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        String preferred = remotePreferences.get(groupKey);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ModelEntity a = candidates.get(first);
+        ModelEntity b = candidates.get(second);
+        return cost(a, preferred, now) <= cost(b, preferred, now) ? a : b;
+    }
+
+    private double cost(ModelEntity model, String preferred, long now) {
+        double cost = statsOf(model.getId()).cost(now);
+        return model.getId().equals(preferred) ? cost * properties.getRemotePreferenceDiscount() : cost;
+    }
+
+    private List<ModelEntity> available(List<ModelEntity> candidates, long now) {
+        List<ModelEntity> available = new ArrayList<>(candidates.size());
+        for (ModelEntity candidate : candidates) {
+            if (statsOf(candidate.getId()).isAvailable(now)) {
+                available.add(candidate);
+            }
+        }
+        return available;
+    }
+
+    private boolean isCandidate(ModelEntity pinned, ModelEntity model, String userId, List<String> fallbackChain) {
+        if (isSameGroup(pinned, model, userId)) {
+            return true;
+        }
+        if (fallbackChain != null) {
+            Catalog current = this.catalog;
+            for (String fallbackId : fallbackChain) {
+                ModelEntity fallback = current.modelsById.get(fallbackId);
+                if (fallback != null && isSameGroup(pinned, fallback, userId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameGroup(ModelEntity candidate, ModelEntity model, String userId) {
+        return candidate.getId().equals(model.getId()) || (Objects.equals(candidate.getUserId(), userId)
+                && Objects.equals(candidate.getModelId(), model.getModelId()));
+    }
+
+    private InstanceStats statsOf(String modelId) {
+        return stats.computeIfAbsent(modelId,
+                key -> new InstanceStats(properties.getEwmaAlpha(), properties.getDefaultLatencyMs()));
+    }
+
+    private static String groupKey(String userId, String apiIdentifier) {
+        return userId + ":" + apiIdentifier;
+    }
+
+    private static ModelEntity copy(ModelEntity source) {
+        ModelEntity copy = new ModelEntity();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    private static ProviderEntity copy(ProviderEntity source) {
+        ProviderEntity copy = new ProviderEntity();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    /** 选择结果 */
+    public static class Selection {
+
+        private final ModelEntity model;
+
+        private final ProviderEntity provider;
+
+        /** 网关中的实例ID，尚未从网关同步时为null */
+        private final String instanceId;
+
+        private final InFlightLease lease;
+
+        public Selection(ModelEntity model, ProviderEntity provider, String instanceId, InFlightLease lease) {
+            this.model = model;
+            this.provider = provider;
+            this.instanceId = instanceId;
+            this.lease = lease;
+        }
+
+        /** 归还所选实例的进行中请求名额，可重复调用 */
+        public void release() {
+            lease.release();
+        }
+
+        public ModelEntity getModel() {
+            return model;
+        }
+
+        public ProviderEntity getProvider() {
+            return provider;
+        }
+
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        public InFlightLease getLease() {
+            return lease;
+        }
+    }
+
+    /** 最近选择过的分组，用于后台向网关同步 */
+    public static class RecentGroup {
+
+        private final String userId;
+
+        private final String apiIdentifier;
+
+        private final List<String> fallbackChain;
+
+        public RecentGroup(String userId, String apiIdentifier, List<String> fallbackChain) {
+            this.userId = userId;
+            this.apiIdentifier = apiIdentifier;
+            this.fallbackChain = fallbackChain;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getApiIdentifier() {
+            return apiIdentifier;
+        }
+
+        public List<String> getFallbackChain() {
+            return fallbackChain;
+        }
+    }
+
+    /** 候选模型和服务商的不可变快照 */
+    private static final class Catalog {
+
+        private final Map<String, ModelEntity> modelsById = new HashMap<>();
+
+        private final Map<String, ProviderEntity> providersById = new HashMap<>();
+
+        /** 分组（用户ID + 模型标识）-> 该组内的模型 */
+        private final Map<String, List<ModelEntity>> groups = new HashMap<>();
+
+        private Catalog(List<ModelEntity> models, List<ProviderEntity> providers) {
+            for (ProviderEntity provider : providers) {
+                if (Boolean.TRUE.equals(provider.getStatus())) {
+                    providersById.put(provider.getId(), provider);
+                }
+            }
+            for (ModelEntity model : models) {
+                if (Boolean.TRUE.equals(model.getStatus()) && providersById.containsKey(model.getProviderId())) {
+                    modelsById.put(model.getId(), model);
+                    groups.computeIfAbsent(groupKey(model.getUserId(), model.getModelId()), key -> new ArrayList<>())
+                            .add(model);
+                }
+            }
+        }
+
+        /** 与模型同组的候选模型，模型本身不属于该用户时（如官方模型）也包含在内 */
+        private List<ModelEntity> candidates(String userId, ModelEntity model) {
+            List<ModelEntity> group = groups.getOrDefault(groupKey(userId, model.getModelId()),
+                    Collections.emptyList());
+            ModelEntity self = modelsById.get(model.getId());
+            if (self == null || group.contains(self)) {
+                return group;
+            }
+            List<ModelEntity> candidates = new ArrayList<>(group.size() + 1);
+            candidates.add(self);
+            candidates.addAll(group);
+            return candidates;
+        }
+    }
+}
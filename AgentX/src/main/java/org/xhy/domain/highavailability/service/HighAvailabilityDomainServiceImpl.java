@@ -2,8 +2,8 @@ package org.xhy.domain.highavailability.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.xhy.domain.highavailability.balancer.ProviderLoadBalancer;
 import org.xhy.domain.highavailability.gateway.HighAvailabilityGateway;
 import org.xhy.domain.llm.model.HighAvailabilityResult;
 import org.xhy.domain.llm.model.ModelEntity;
@@ -12,6 +12,7 @@ import org.xhy.domain.llm.service.HighAvailabilityDomainService;
 import org.xhy.domain.llm.service.LLMDomainService;
 import org.xhy.domain.llm.event.ModelsBatchDeletedEvent;
 import org.xhy.infrastructure.config.HighAvailabilityProperties;
+import org.xhy.infrastructure.config.ProviderBalancerProperties;
 import org.xhy.infrastructure.exception.BusinessException;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceCreateRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceUpdateRequest;
@@ -37,12 +38,17 @@ public class HighAvailabilityDomainServiceImpl implements HighAvailabilityDomain
     private final HighAvailabilityProperties properties;
     private final HighAvailabilityGateway gateway;
     private final LLMDomainService llmDomainService;
+    private final ProviderLoadBalancer loadBalancer;
+    private final ProviderBalancerProperties balancerProperties;
 
     public HighAvailabilityDomainServiceImpl(HighAvailabilityProperties properties, HighAvailabilityGateway gateway,
-            LLMDomainService llmDomainService) {
+            LLMDomainService llmDomainService, ProviderLoadBalancer loadBalancer,
+            ProviderBalancerProperties balancerProperties) {
         this.properties = properties;
         this.gateway = gateway;
         this.llmDomainService = llmDomainService;
+        this.loadBalancer = loadBalancer;
+        this.balancerProperties = balancerProperties;
     }
 
     @Override
@@ -124,6 +130,20 @@ public class HighAvailabilityDomainServiceImpl implements HighAvailabilityDomain
             return new HighAvailabilityResult(provider, model, null, false);
         }
 
+        if (balancerProperties.isEnabled()) {
+            // 本地选择，网关状态在后台同步
+            ProviderLoadBalancer.Selection selection = loadBalancer.select(model, userId, sessionId, fallbackChain);
+            if (selection != null) {
+                boolean switched = !model.getId().equals(selection.getModel().getId());
+                logger.debug("本地负载均衡选择Provider: modelId={}, selectedModelId={}, providerId={}, switched={}",
+                        model.getId(), selection.getModel().getId(), selection.getProvider().getId(), switched);
+                HighAvailabilityResult result = new HighAvailabilityResult(selection.getProvider(),
+                        selection.getModel(), selection.getInstanceId(), switched);
+                result.setLease(selection.getLease());
+                return result;
+            }
+        }
+
         try {
             // 构建选择实例请求
             SelectInstanceRequest request = new SelectInstanceRequest(userId, model.getModelId(), "MODEL");
@@ -177,13 +197,16 @@ public class HighAvailabilityDomainServiceImpl implements HighAvailabilityDomain
     }
 
     @Override
-    @Async
     public void reportCallResult(String instanceId, String modelId, boolean success, long latencyMs,
             String errorMessage) {
         if (!properties.isEnabled()) {
             return;
         }
 
+        if (balancerProperties.isEnabled()) {
+            loadBalancer.recordResult(modelId, success, latencyMs);
+        }
+
         try {
             ReportResultRequest request = new ReportResultRequest();
             request.setInstanceId(instanceId);
@@ -195,7 +218,7 @@ public class HighAvailabilityDomainServiceImpl implements HighAvailabilityDomain
 
             gateway.reportResult(request);
 
-            logger.debug("成功上报调用结果: instanceId={}, modelId={}, success={}, latency={}ms", instanceId, modelId, success,
+            logger.debug("已记录调用结果: instanceId={}, modelId={}, success={}, latency={}ms", instanceId, modelId, success,
                     latencyMs);
 
         } catch (Exception e) {
@@ -203,6 +226,13 @@ public class HighAvailabilityDomainServiceImpl implements HighAvailabilityDomain
         }
     }
 
+    @Override
+    public void reportFirstToken(String modelId, long firstTokenMs) {
+        if (properties.isEnabled() && balancerProperties.isEnabled()) {
+            loadBalancer.recordFirstToken(modelId, firstTokenMs);
+        }
+    }
+
     @Override
     public void initializeProject() {
         if (!properties.isEnabled()) {
@@ -0,0 +1,37 @@
+package org.xhy.domain.llm.event;
+
+import java.time.LocalDateTime;
+
+/** 服务商变更事件 服务商配置更新、状态切换或删除时发布，用于失效已缓存的LLM客户端
+ * 
+ * @author xhy
+ * @since 1.0.0 */
+public class ProviderChangedEvent {
+
+    /** 服务商ID */
+    private final String providerId;
+
+    /** 用户ID */
+    private final String userId;
+
+    /** 事件发生时间 */
+    private final LocalDateTime occurredAt;
+
+    public ProviderChangedEvent(String providerId, String userId) {
+        this.providerId = providerId;
+        this.userId = userId;
+        this.occurredAt = LocalDateTime.now();
+    }
+
+    public String getProviderId() {
+        return providerId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+}
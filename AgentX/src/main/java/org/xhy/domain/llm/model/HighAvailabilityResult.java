@@ -1,5 +1,7 @@
 package org.xhy.domain.llm.model;
 
+import org.xhy.domain.highavailability.balancer.InFlightLease;
+
 /** 高可用选择结果
  * 
  * @author xhy
@@ -18,6 +20,9 @@ public class HighAvailabilityResult {
     /** 模型是否被切换（降级到备用模型） */
     private boolean switched;
 
+    /** 本地负载均衡占用的进行中请求名额，网关选择或未启用本地负载均衡时为null */
+    private InFlightLease lease;
+
     public HighAvailabilityResult() {
     }
 
@@ -66,4 +71,19 @@ public class HighAvailabilityResult {
     public void setSwitched(boolean switched) {
         this.switched = switched;
     }
+
+    public InFlightLease getLease() {
+        return lease;
+    }
+
+    public void setLease(InFlightLease lease) {
+        this.lease = lease;
+    }
+
+    /** 归还所选实例的进行中请求名额，调用结束、被拒绝或放弃时调用，可重复调用 */
+    public void release() {
+        if (lease != null) {
+            lease.release();
+        }
+    }
 }
\ No newline at end of file
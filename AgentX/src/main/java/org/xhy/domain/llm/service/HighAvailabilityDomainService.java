@@ -45,6 +45,8 @@ public interface HighAvailabilityDomainService {
     HighAvailabilityResult selectBestProvider(ModelEntity model, String userId, String sessionId);
 
     /** 通过高可用网关选择最佳Provider和Model（支持会话亲和性和降级链） 如果高可用未启用或选择失败，则降级到默认逻辑
+     *
+     * 本地负载均衡选择的结果占用所选实例的进行中请求名额，调用方用完后须调用 {@link HighAvailabilityResult#release()}
      *
      * @param model 模型实体
      * @param userId 用户ID
@@ -63,6 +65,12 @@ public interface HighAvailabilityDomainService {
      * @param errorMessage 错误信息(可选) */
     void reportCallResult(String instanceId, String modelId, boolean success, long latencyMs, String errorMessage);
 
+    /** 记录流式调用的首Token时间，用于本地负载均衡
+     *
+     * @param modelId 模型ID
+     * @param firstTokenMs 从发起调用到收到首个Token的耗时(毫秒) */
+    void reportFirstToken(String modelId, long firstTokenMs);
+
     /** 初始化项目到高可用网关 */
     void initializeProject();
 
@@ -9,10 +9,12 @@ import org.xhy.domain.llm.event.ModelCreatedEvent;
 import org.xhy.domain.llm.event.ModelDeletedEvent;
 import org.xhy.domain.llm.event.ModelStatusChangedEvent;
 import org.xhy.domain.llm.event.ModelUpdatedEvent;
+import org.xhy.domain.llm.event.ProviderChangedEvent;
 import org.xhy.domain.llm.model.ModelEntity;
 import org.xhy.domain.llm.model.ProviderAggregate;
 import org.xhy.domain.llm.model.ProviderEntity;
 import org.xhy.infrastructure.entity.Operator;
+import org.xhy.infrastructure.llm.factory.LLMProviderFactory;
 import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
 import org.xhy.domain.llm.model.enums.ProviderType;
 import org.xhy.domain.llm.repository.ModelRepository;
@@ -60,6 +62,8 @@ public class LLMDomainService {
                 .eq(ProviderEntity::getId, provider.getId())
                 .eq(provider.needCheckUserId(), ProviderEntity::getUserId, provider.getUserId());
         providerRepository.checkedUpdate(provider, wrapper);
+
+        eventPublisher.publishEvent(new ProviderChangedEvent(provider.getId(), provider.getUserId()));
     }
 
     /** 获取用户自己的服务商
@@ -214,6 +218,7 @@ public class LLMDomainService {
         Wrapper<ProviderEntity> wrapper = Wrappers.<ProviderEntity>lambdaQuery().eq(ProviderEntity::getId, providerId)
                 .eq(operator.needCheckUserId(), ProviderEntity::getUserId, userId);
         providerRepository.checkedDelete(wrapper);
+        eventPublisher.publishEvent(new ProviderChangedEvent(providerId, userId));
 
         // 删除模型
         Wrapper<ModelEntity> modelWrapper = Wrappers.<ModelEntity>lambdaQuery().eq(ModelEntity::getProviderId,
@@ -243,13 +248,15 @@ public class LLMDomainService {
      * @param protocol 服务商提供商编码
      * @return */
     private boolean isSupportedProvider(ProviderProtocol protocol) {
-        return Arrays.stream(ProviderProtocol.values()).anyMatch(providerType -> providerType == protocol);
+        return getProviderProtocols().contains(protocol);
     }
 
-    /** 获取所有支持的服务商协议
+    /** 获取所有支持的服务商协议，MOCK 协议只在开放后返回
      * @return */
     public List<ProviderProtocol> getProviderProtocols() {
-        return Arrays.asList(ProviderProtocol.values());
+        return Arrays.stream(ProviderProtocol.values())
+                .filter(protocol -> protocol != ProviderProtocol.MOCK || LLMProviderFactory.isMockEnabled())
+                .collect(Collectors.toList());
     }
 
     /** 创建模型
@@ -334,6 +341,7 @@ public class LLMDomainService {
                 .eq(ProviderEntity::getId, providerId).eq(ProviderEntity::getUserId, userId)
                 .setSql("status = NOT status");
         providerRepository.checkedUpdate(updateWrapper);
+        eventPublisher.publishEvent(new ProviderChangedEvent(providerId, userId));
     }
 
     /** 获取模型
@@ -373,6 +381,19 @@ public class LLMDomainService {
         return modelRepository.selectList(wrapper);
     }
 
+    /** 批量获取服务商信息
+     * @param providerIds 服务商ID集合
+     * @return 服务商列表 */
+    public List<ProviderEntity> getProvidersByIds(Set<String> providerIds) {
+        if (providerIds == null || providerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Wrapper<ProviderEntity> wrapper = Wrappers.<ProviderEntity>lambdaQuery().in(ProviderEntity::getId,
+                providerIds);
+        return providerRepository.selectList(wrapper);
+    }
+
     /** 获取服务商下的所有模型（包括禁用的）- 用于管理员功能
      * @param providerId 服务商ID
      * @param userId 用户ID
@@ -16,6 +16,12 @@ public final class PricingConfigKeys {
     /** 输出Token百万级单价 */
     public static final String OUTPUT_COST_PER_MILLION = "output_cost_per_million";
 
+    /** 命中提示词缓存的输入Token百万级单价，未配置时按输入单价计费 */
+    public static final String CACHED_INPUT_COST_PER_MILLION = "cached_input_cost_per_million";
+
+    /** 写入提示词缓存的输入Token百万级单价，未配置时按输入单价计费 */
+    public static final String CACHE_WRITE_COST_PER_MILLION = "cache_write_cost_per_million";
+
     // ========== 按次计费相关 ==========
 
     /** 单次使用费用 */
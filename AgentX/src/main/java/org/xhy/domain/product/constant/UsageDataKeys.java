@@ -16,6 +16,12 @@ public final class UsageDataKeys {
     /** 输出Token数量 */
     public static final String OUTPUT_TOKENS = "output";
 
+    /** 命中提示词缓存的输入Token数量（包含在输入Token数量中，可选） */
+    public static final String CACHED_INPUT_TOKENS = "cached_input";
+
+    /** 写入提示词缓存的输入Token数量（包含在输入Token数量中，可选） */
+    public static final String CACHE_WRITE_INPUT_TOKENS = "cache_write_input";
+
     // ========== 按次计费相关 ==========
 
     /** 使用数量 */
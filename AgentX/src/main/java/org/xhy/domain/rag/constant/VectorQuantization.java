@@ -0,0 +1,59 @@
+package org.xhy.domain.rag.constant;
+
+/** 数据集向量量化方式枚举
+ *
+ * 量化后的向量与原始向量一同存储，检索时先在量化向量上取回候选，再以原始向量重新打分 */
+public enum VectorQuantization {
+
+    /** 不量化 - 直接在原始向量上检索 */
+    NONE("NONE", "不量化"),
+
+    /** 标量量化 - 每维以半精度浮点存储，体积为原始向量的一半，召回损失很小 */
+    SCALAR("SCALAR", "标量量化"),
+
+    /** 二值量化 - 每维只保留符号位，体积为原始向量的1/32，需要更多候选重新打分 */
+    BINARY("BINARY", "二值量化");
+
+    private final String code;
+    private final String description;
+
+    VectorQuantization(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /** 根据代码获取枚举
+     *
+     * @param code 代码
+     * @return 枚举值
+     * @throws IllegalArgumentException 如果代码无效 */
+    public static VectorQuantization fromCode(String code) {
+        for (VectorQuantization quantization : values()) {
+            if (quantization.getCode().equals(code)) {
+                return quantization;
+            }
+        }
+        throw new IllegalArgumentException("无效的向量量化方式代码: " + code);
+    }
+
+    /** 根据代码获取枚举，支持默认值
+     *
+     * @param code 代码
+     * @param defaultQuantization 默认量化方式
+     * @return 枚举值 */
+    public static VectorQuantization fromCodeOrDefault(String code, VectorQuantization defaultQuantization) {
+        try {
+            return fromCode(code);
+        } catch (IllegalArgumentException e) {
+            return defaultQuantization;
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package org.xhy.domain.rag.model;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import java.io.Serial;
 import java.io.Serializable;
+import org.xhy.domain.rag.constant.VectorQuantization;
+import org.xhy.infrastructure.converter.VectorQuantizationConverter;
 import org.xhy.infrastructure.entity.BaseEntity;
 
 /** RAG知识库数据集实体
@@ -33,6 +36,10 @@ public class RagQaDatasetEntity extends BaseEntity implements Serializable {
     /** 用户ID */
     private String userId;
 
+    /** 向量量化方式，为空时不修改，新建时由数据库默认为不量化 */
+    @TableField(value = "vector_quantization", typeHandler = VectorQuantizationConverter.class)
+    private VectorQuantization vectorQuantization;
+
     public String getId() {
         return id;
     }
@@ -72,4 +79,12 @@ public class RagQaDatasetEntity extends BaseEntity implements Serializable {
     public void setUserId(String userId) {
         this.userId = userId;
     }
+
+    public VectorQuantization getVectorQuantization() {
+        return vectorQuantization;
+    }
+
+    public void setVectorQuantization(VectorQuantization vectorQuantization) {
+        this.vectorQuantization = vectorQuantization;
+    }
 }
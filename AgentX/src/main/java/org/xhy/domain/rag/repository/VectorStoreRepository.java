@@ -14,21 +14,23 @@ import java.util.List;
 @Mapper
 public interface VectorStoreRepository extends MyBatisPlusExtRepository<VectorStoreResult> {
 
-    /** 基于PostgreSQL全文搜索的关键词检索 使用中文分词配置和ts_rank_cd进行相关性排序
+    /** 基于PostgreSQL全文搜索的关键词检索 使用写入时生成的 text_tsv 列和 GIN 索引匹配，ts_rank_cd 进行相关性排序
+     *
+     * 分词配置由 vector_store_ts_config() 给出，与生成 text_tsv 时一致，见 V20251020001 迁移脚本；数据集过滤使用 dataset_id 列，
+     * 与 text_tsv 共用 (dataset_id, text_tsv) 复合 GIN 索引，见 V20251021001 迁移脚本。
      * 
      * @param dataSetIds 数据集ID列表
      * @param userQuery 用户查询问题
      * @param maxResults 最大返回结果数量
      * @return 关键词检索结果列表，按相关性排序 */
-    @Select({"<script>", "SELECT ", "    embedding_id,", "    text,", "    metadata,", "    ts_rank_cd(",
-            "        to_tsvector('chinese_cfg', text),", "        to_tsquery(", "            'chinese_cfg',",
-            "            replace(plainto_tsquery('chinese_cfg', #{userQuery})::text, '&amp;', '|')", "        )",
-            "    ) AS score", "FROM", "    vector_store", "WHERE", "    (metadata ->> 'DATA_SET_ID') IN",
+    @Select({"<script>", "SELECT ", "    embedding_id,", "    text,", "    metadata,",
+            "    ts_rank_cd(text_tsv, query) AS score", "FROM", "    vector_store,", "    to_tsquery(",
+            "        vector_store_ts_config(),",
+            "        replace(plainto_tsquery(vector_store_ts_config(), #{userQuery})::text, '&amp;', '|')",
+            "    ) AS query", "WHERE", "    text_tsv @@ query", "    AND", "    dataset_id IN",
             "    <foreach collection='dataSetIds' item='dataSetId' open='(' separator=',' close=')'>",
-            "        #{dataSetId}", "    </foreach>", "    AND", "    to_tsvector('chinese_cfg', text) @@ to_tsquery(",
-            "        'chinese_cfg',",
-            "        replace(plainto_tsquery('chinese_cfg', #{userQuery})::text, '&amp;', '|')", "    )", "ORDER BY",
-            "    score DESC", "LIMIT #{maxResults}", "</script>"})
+            "        #{dataSetId}", "    </foreach>", "ORDER BY", "    score DESC", "LIMIT #{maxResults}",
+            "</script>"})
     List<VectorStoreResult> keywordSearch(@Param("dataSetIds") List<String> dataSetIds,
             @Param("userQuery") String userQuery, @Param("maxResults") Integer maxResults);
 }
\ No newline at end of file
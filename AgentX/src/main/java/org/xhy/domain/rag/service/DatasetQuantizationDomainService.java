@@ -0,0 +1,68 @@
+package org.xhy.domain.rag.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.stereotype.Service;
+import org.xhy.domain.rag.constant.VectorQuantization;
+import org.xhy.domain.rag.model.RagQaDatasetEntity;
+import org.xhy.domain.rag.repository.RagQaDatasetRepository;
+import org.xhy.infrastructure.rag.config.EmbeddingProperties;
+import org.xhy.infrastructure.rag.store.DatasetQuantizationResolver;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+/** 数据集向量量化方式领域服务
+ *
+ * 每次写入和检索分片都要查询量化方式，结果在本地缓存一段时间；本实例修改后立即失效，其他实例在缓存过期后生效。 */
+@Service
+public class DatasetQuantizationDomainService implements DatasetQuantizationResolver {
+
+    private static final int MAX_CACHED_DATASETS = 10000;
+
+    private final RagQaDatasetRepository ragQaDatasetRepository;
+
+    private final Cache<String, VectorQuantization> cache;
+
+    public DatasetQuantizationDomainService(RagQaDatasetRepository ragQaDatasetRepository,
+            EmbeddingProperties embeddingProperties) {
+        this.ragQaDatasetRepository = ragQaDatasetRepository;
+        long cacheSeconds = embeddingProperties.getVectorStore().getQuantizationCacheSeconds();
+        this.cache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_DATASETS)
+                .expireAfterWrite(Duration.ofSeconds(cacheSeconds)).build();
+    }
+
+    /** 获取数据集的量化方式
+     * @param datasetId 数据集ID，可为空
+     * @return 量化方式，数据集不存在或未设置时为不量化 */
+    @Override
+    public VectorQuantization resolve(String datasetId) {
+        if (datasetId == null) {
+            return VectorQuantization.NONE;
+        }
+        try {
+            return cache.get(datasetId, () -> load(datasetId));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("查询数据集量化方式失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /** 数据集量化方式修改后使本地缓存失效
+     * @param datasetId 数据集ID */
+    public void invalidate(String datasetId) {
+        cache.invalidate(datasetId);
+    }
+
+    private VectorQuantization load(String datasetId) {
+        RagQaDatasetEntity dataset = ragQaDatasetRepository.selectById(datasetId);
+        if (dataset == null || dataset.getVectorQuantization() == null) {
+            return VectorQuantization.NONE;
+        }
+        return dataset.getVectorQuantization();
+    }
+}
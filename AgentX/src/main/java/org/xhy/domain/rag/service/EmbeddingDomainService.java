@@ -42,7 +42,9 @@ import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import org.xhy.infrastructure.rag.cache.QueryEmbeddingCache;
 import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
+import org.xhy.infrastructure.rag.memory.MemoryIndexManager;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
@@ -69,14 +71,21 @@ public class EmbeddingDomainService implements MetadataConstant {
 
     private final DocumentUnitRepository documentUnitRepository;
 
+    private final QueryEmbeddingCache queryEmbeddingCache;
+
+    private final MemoryIndexManager memoryIndexManager;
+
     public EmbeddingDomainService(EmbeddingModelFactory embeddingModelFactory,
             EmbeddingStore<TextSegment> embeddingStore, FileDetailRepository fileDetailRepository,
-            ApplicationContext applicationContext, DocumentUnitRepository documentUnitRepository) {
+            ApplicationContext applicationContext, DocumentUnitRepository documentUnitRepository,
+            QueryEmbeddingCache queryEmbeddingCache, MemoryIndexManager memoryIndexManager) {
         this.embeddingModelFactory = embeddingModelFactory;
         this.embeddingStore = embeddingStore;
         this.fileDetailRepository = fileDetailRepository;
         this.applicationContext = applicationContext;
         this.documentUnitRepository = documentUnitRepository;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.memoryIndexManager = memoryIndexManager;
     }
 
     /** 纯向量检索方法 专门负责向量检索算法，返回统一的VectorStoreResult格式
@@ -92,6 +101,24 @@ public class EmbeddingDomainService implements MetadataConstant {
     public List<VectorStoreResult> vectorSearch(List<String> dataSetIds, String question, Integer maxResults,
             Double minScore, Boolean enableRerank, Integer candidateMultiplier,
             EmbeddingModelFactory.EmbeddingConfig embeddingConfig) {
+        return vectorSearch(dataSetIds, question, maxResults, minScore, enableRerank, candidateMultiplier,
+                embeddingConfig, false);
+    }
+
+    /** 纯向量检索方法，可选优先使用进程内向量索引
+     *
+     * @param dataSetIds 数据集ID列表
+     * @param question 查询问题
+     * @param maxResults 最大返回结果数量
+     * @param minScore 最小相似度阈值
+     * @param enableRerank 是否启用重排序
+     * @param candidateMultiplier 候选结果倍数
+     * @param embeddingConfig 嵌入模型配置
+     * @param useMemoryIndex 是否优先在进程内向量索引中检索，由调用方按数据集规模和热度决定，索引不可用时仍查向量库
+     * @return 向量检索结果列表，失败时返回空集合 */
+    public List<VectorStoreResult> vectorSearch(List<String> dataSetIds, String question, Integer maxResults,
+            Double minScore, Boolean enableRerank, Integer candidateMultiplier,
+            EmbeddingModelFactory.EmbeddingConfig embeddingConfig, boolean useMemoryIndex) {
         // 参数验证
         if (dataSetIds == null || dataSetIds.isEmpty()) {
             log.warn("数据集ID列表为空，无法进行向量搜索");
@@ -117,8 +144,8 @@ public class EmbeddingDomainService implements MetadataConstant {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 创建嵌入模型实例
-            OpenAiEmbeddingModel embeddingModel = embeddingModelFactory.createEmbeddingModel(embeddingConfig);
+            // 查询向量只计算一次，主查询与回退查询共用，重复问题直接命中缓存
+            Embedding queryEmbedding = embedQuery(question, embeddingConfig);
 
             // 计算搜索数量
             int searchLimit = finalEnableRerank
@@ -129,19 +156,13 @@ public class EmbeddingDomainService implements MetadataConstant {
                     question, finalMaxResults, finalMinScore, searchLimit);
 
             // 执行向量查询
-            final EmbeddingSearchResult<TextSegment> searchResult = embeddingStore.search(EmbeddingSearchRequest
-                    .builder().filter(new IsIn(DATA_SET_ID, dataSetIds)).maxResults(searchLimit).minScore(finalMinScore)
-                    .queryEmbedding(Embedding.from(embeddingModel.embed(question).content().vector())).build());
-
-            List<EmbeddingMatch<TextSegment>> embeddingMatches = searchResult.matches();
+            List<EmbeddingMatch<TextSegment>> embeddingMatches = searchMatches(dataSetIds, queryEmbedding,
+                    searchLimit, finalMinScore, useMemoryIndex);
 
             // 回退搜索（降低阈值）
             if (embeddingMatches.isEmpty() && finalMinScore > 0.3) {
                 log.info("在最小分数{}下没有找到向量结果，尝试使用较低阈值重试", finalMinScore);
-                final EmbeddingSearchResult<TextSegment> fallbackResult = embeddingStore.search(EmbeddingSearchRequest
-                        .builder().filter(new IsIn(DATA_SET_ID, dataSetIds)).maxResults(searchLimit).minScore(0.3)
-                        .queryEmbedding(Embedding.from(embeddingModel.embed(question).content().vector())).build());
-                embeddingMatches = fallbackResult.matches();
+                embeddingMatches = searchMatches(dataSetIds, queryEmbedding, searchLimit, 0.3, useMemoryIndex);
                 log.debug("回退向量搜索找到{}个匹配结果", embeddingMatches.size());
             }
 
@@ -169,12 +190,40 @@ public class EmbeddingDomainService implements MetadataConstant {
         }
     }
 
+    /** 按数据集检索相似分片，优先使用进程内向量索引，索引已被淘汰或作废时查向量库 */
+    private List<EmbeddingMatch<TextSegment>> searchMatches(List<String> dataSetIds, Embedding queryEmbedding,
+            int maxResults, double minScore, boolean useMemoryIndex) {
+        if (useMemoryIndex) {
+            List<EmbeddingMatch<TextSegment>> matches = memoryIndexManager.search(dataSetIds, queryEmbedding.vector(),
+                    maxResults, minScore);
+            if (matches != null) {
+                return matches;
+            }
+        }
+        final EmbeddingSearchResult<TextSegment> searchResult = embeddingStore.search(EmbeddingSearchRequest.builder()
+                .filter(new IsIn(DATA_SET_ID, dataSetIds)).maxResults(maxResults).minScore(minScore)
+                .queryEmbedding(queryEmbedding).build());
+        return searchResult.matches();
+    }
+
+    /** 获取查询文本的向量，优先从查询向量缓存中读取
+     *
+     * @param question 查询问题
+     * @param embeddingConfig 嵌入模型配置
+     * @return 查询向量 */
+    private Embedding embedQuery(String question, EmbeddingModelFactory.EmbeddingConfig embeddingConfig) {
+        float[] vector = queryEmbeddingCache.get(EmbeddingModelFactory.modelKey(embeddingConfig), question,
+                text -> embeddingModelFactory.getEmbeddingModel(embeddingConfig).embed(text).content().vector());
+        return Embedding.from(vector);
+    }
+
     /** 批量删除向量数据
      *
      * @param fileIds 文件id集合 */
     public void deleteEmbedding(List<String> fileIds) {
 
         embeddingStore.removeAll(metadataKey(MetadataConstant.FILE_ID).isIn(fileIds));
+        memoryIndexManager.invalidateFiles(fileIds);
     }
 
     /** 获取与文件关联的向量ID列表
@@ -183,6 +232,7 @@ public class EmbeddingDomainService implements MetadataConstant {
     private void removeEmbeddingByFileId(String fileId) {
 
         embeddingStore.removeAll(new IsEqualTo(FILE_ID, fileId));
+        memoryIndexManager.invalidateFiles(List.of(fileId));
     }
 
     /** 批量向量化入库 */
@@ -215,7 +265,10 @@ public class EmbeddingDomainService implements MetadataConstant {
         OpenAiEmbeddingModel embeddingModel = createEmbeddingModelFromMessage(ragDocSyncStorageMessage);
         Embedding embeddings = embeddingModel.embed(textSegment).content();
 
-        embeddingStore.add(embeddings, textSegment);
+        // 关键词检索使用的 text_tsv 列由 vector_store 表上的触发器在写入时生成
+        String embeddingId = embeddingStore.add(embeddings, textSegment);
+        memoryIndexManager.onSegmentAdded(ragDocSyncStorageMessage.getDatasetId(), embeddingId, embeddings.vector(),
+                textSegment);
 
         // 提取原始DocumentUnit ID（移除segment后缀）
         String originalDocId = extractOriginalDocId(vectorId);
@@ -289,7 +342,7 @@ public class EmbeddingDomainService implements MetadataConstant {
             // 使用工厂类创建嵌入模型
             EmbeddingModelFactory.EmbeddingConfig config = new EmbeddingModelFactory.EmbeddingConfig(
                     modelConfig.getApiKey(), modelConfig.getBaseUrl(), modelConfig.getModelEndpoint());
-            OpenAiEmbeddingModel embeddingModel = embeddingModelFactory.createEmbeddingModel(config);
+            OpenAiEmbeddingModel embeddingModel = embeddingModelFactory.getEmbeddingModel(config);
 
             log.info("成功为用户{}创建嵌入模型: {}", ragDocSyncStorageMessage.getUserId(), modelConfig.getModelEndpoint());
             return embeddingModel;
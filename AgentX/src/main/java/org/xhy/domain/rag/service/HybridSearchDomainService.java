@@ -9,10 +9,14 @@ import org.xhy.domain.rag.dto.HybridSearchConfig;
 import org.xhy.domain.rag.model.DocumentUnitEntity;
 import org.xhy.domain.rag.model.VectorStoreResult;
 import org.xhy.domain.rag.repository.DocumentUnitRepository;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
 import org.xhy.infrastructure.rag.factory.EmbeddingModelFactory;
+import org.xhy.infrastructure.rag.memory.MemoryIndexManager;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -35,15 +39,22 @@ public class HybridSearchDomainService {
     private final DocumentUnitRepository documentUnitRepository;
     private final RerankDomainService rerankDomainService;
     private final HyDEDomainService hydeDomainService;
+    private final MemoryIndexManager memoryIndexManager;
+
+    /** 并行检索使用的有界线程池，满载时由调用线程执行，不占用公共 ForkJoinPool */
+    private final Executor retrievalExecutor;
 
     public HybridSearchDomainService(EmbeddingDomainService embeddingDomainService,
             KeywordSearchDomainService keywordSearchDomainService, DocumentUnitRepository documentUnitRepository,
-            RerankDomainService rerankDomainService, HyDEDomainService hydeDomainService) {
+            RerankDomainService rerankDomainService, HyDEDomainService hydeDomainService,
+            ExecutorRegistry executorRegistry, MemoryIndexManager memoryIndexManager) {
         this.embeddingDomainService = embeddingDomainService;
         this.keywordSearchDomainService = keywordSearchDomainService;
         this.documentUnitRepository = documentUnitRepository;
         this.rerankDomainService = rerankDomainService;
         this.hydeDomainService = hydeDomainService;
+        this.retrievalExecutor = executorRegistry.get(WorkloadType.RETRIEVAL);
+        this.memoryIndexManager = memoryIndexManager;
     }
 
     /** 执行混合检索 并行执行向量检索和关键词检索，使用RRF算法融合结果
@@ -79,14 +90,17 @@ public class HybridSearchDomainService {
                     config.getChatModelConfig());
             config.setQuestion(hypotheticalDocument);
 
+            // 小而热的数据集已有进程内向量索引时不访问向量库，同时记录本次访问，热点数据集在后台建索引
+            boolean useMemoryIndex = memoryIndexManager.route(config.getDataSetIds());
+
             CompletableFuture<List<VectorStoreResult>> vectorSearchFuture = CompletableFuture
                     .supplyAsync(() -> embeddingDomainService.vectorSearch(config.getDataSetIds(), config.getQuestion(),
                             finalMaxResults * 2, finalMinScore, false, config.getCandidateMultiplier(),
-                            config.getEmbeddingConfig()));
+                            config.getEmbeddingConfig(), useMemoryIndex), retrievalExecutor);
 
             CompletableFuture<List<VectorStoreResult>> keywordSearchFuture = CompletableFuture
                     .supplyAsync(() -> keywordSearchDomainService.keywordSearch(config.getDataSetIds(),
-                            config.getQuestion(), finalMaxResults * 2));
+                            config.getQuestion(), finalMaxResults * 2), retrievalExecutor);
 
             // 等待两个检索任务完成
             List<VectorStoreResult> vectorResults = Collections.emptyList();
@@ -21,9 +21,12 @@ import java.util.List;
 public class RagQaDatasetDomainService {
 
     private final RagQaDatasetRepository ragQaDatasetRepository;
+    private final DatasetQuantizationDomainService datasetQuantizationDomainService;
 
-    public RagQaDatasetDomainService(RagQaDatasetRepository ragQaDatasetRepository) {
+    public RagQaDatasetDomainService(RagQaDatasetRepository ragQaDatasetRepository,
+            DatasetQuantizationDomainService datasetQuantizationDomainService) {
         this.ragQaDatasetRepository = ragQaDatasetRepository;
+        this.datasetQuantizationDomainService = datasetQuantizationDomainService;
     }
 
     /** 创建数据集
@@ -93,6 +96,9 @@ public class RagQaDatasetDomainService {
                 .eq(RagQaDatasetEntity::getId, dataset.getId())
                 .eq(dataset.needCheckUserId(), RagQaDatasetEntity::getUserId, dataset.getUserId());
         ragQaDatasetRepository.checkedUpdate(dataset, wrapper);
+        if (dataset.getVectorQuantization() != null) {
+            datasetQuantizationDomainService.invalidate(dataset.getId());
+        }
     }
 
     /** 删除数据集
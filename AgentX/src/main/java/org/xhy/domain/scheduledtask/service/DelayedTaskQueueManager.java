@@ -8,11 +8,13 @@ import org.springframework.stereotype.Service;
 import org.xhy.domain.scheduledtask.model.DelayedTaskItem;
 import org.xhy.domain.scheduledtask.model.ScheduledTaskEntity;
 
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+
 import java.time.LocalDateTime;
 import java.util.concurrent.DelayQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /** 延迟队列管理器 负责管理延迟队列和任务调度 */
 @Service
@@ -26,8 +28,11 @@ public class DelayedTaskQueueManager {
     /** 任务执行器 */
     private final ScheduleTaskExecutor taskExecutor;
 
-    /** 线程池 */
-    private ExecutorService executorService;
+    /** 后台模型调用线程池满载时，任务推迟重试的秒数 */
+    private static final long RETRY_DELAY_SECONDS = 30;
+
+    /** 后台模型调用线程池，由 ExecutorRegistry 统一管理和关闭 */
+    private final Executor executor;
 
     /** 队列消费线程 */
     private Thread consumerThread;
@@ -35,24 +40,18 @@ public class DelayedTaskQueueManager {
     /** 是否运行中 */
     private volatile boolean running = false;
 
-    public DelayedTaskQueueManager(ScheduleTaskExecutor taskExecutor) {
+    public DelayedTaskQueueManager(ScheduleTaskExecutor taskExecutor, ExecutorRegistry executorRegistry) {
         this.taskExecutor = taskExecutor;
+        this.executor = executorRegistry.get(WorkloadType.BACKGROUND_LLM);
     }
 
     /** 初始化队列管理器 */
     @PostConstruct
     public void init() {
-        // 创建线程池用于执行任务
-        this.executorService = Executors.newFixedThreadPool(5, r -> {
-            Thread t = new Thread(r, "scheduled-task-executor-");
-            t.setDaemon(true);
-            return t;
-        });
-
         // 启动队列消费线程
         startConsumer();
 
-        logger.info("延迟队列管理器已启动，线程池大小: 5");
+        logger.info("延迟队列管理器已启动");
     }
 
     /** 销毁队列管理器 */
@@ -65,19 +64,6 @@ public class DelayedTaskQueueManager {
             consumerThread.interrupt();
         }
 
-        // 关闭线程池
-        if (executorService != null) {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
-
         logger.info("延迟队列管理器已关闭");
     }
 
@@ -129,22 +115,7 @@ public class DelayedTaskQueueManager {
                     logger.debug("从延迟队列取出到期任务: taskId={}", item.getTaskId());
 
                     // 提交任务到线程池执行
-                    executorService.submit(() -> {
-                        try {
-                            ScheduledTaskEntity task = item.getTask();
-
-                            // 检查任务是否可以执行
-                            if (taskExecutor.canExecute(task)) {
-                                taskExecutor.executeTask(task);
-
-                                scheduleNextExecution(task);
-                            } else {
-                                logger.info("任务不满足执行条件，跳过执行: taskId={}", task.getId());
-                            }
-                        } catch (Exception e) {
-                            logger.error("执行任务异常: taskId={}, error={}", item.getTaskId(), e.getMessage(), e);
-                        }
-                    });
+                    submit(item);
                 }
 
             } catch (InterruptedException e) {
@@ -166,6 +137,32 @@ public class DelayedTaskQueueManager {
         logger.info("延迟队列消费线程已停止");
     }
 
+    /** 提交到期任务执行，线程池满载时推迟重试，避免定时任务占满对话使用的模型调用资源
+     * @param item 到期任务 */
+    private void submit(DelayedTaskItem item) {
+        try {
+            executor.execute(() -> {
+                try {
+                    ScheduledTaskEntity task = item.getTask();
+
+                    // 检查任务是否可以执行
+                    if (taskExecutor.canExecute(task)) {
+                        taskExecutor.executeTask(task);
+
+                        scheduleNextExecution(task);
+                    } else {
+                        logger.info("任务不满足执行条件，跳过执行: taskId={}", task.getId());
+                    }
+                } catch (Exception e) {
+                    logger.error("执行任务异常: taskId={}, error={}", item.getTaskId(), e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("后台线程池已满，任务推迟{}秒执行: taskId={}", RETRY_DELAY_SECONDS, item.getTaskId());
+            addTask(item.getTask(), LocalDateTime.now().plusSeconds(RETRY_DELAY_SECONDS));
+        }
+    }
+
     /** 检查并调度任务的下次执行
      * @param task 已执行的任务 */
     private void scheduleNextExecution(ScheduledTaskEntity task) {
@@ -0,0 +1,240 @@
+package org.xhy.domain.token.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 会话Token索引，按对话顺序保存消息及其本体Token数的前缀和
+ *
+ * 任意区间的Token数为两个前缀和之差；Token数非负，从第 i 条到末尾的Token数随 i 单调不增，滑动窗口的起点可二分查找。
+ * 追加消息只计算新增部分，丢弃最早的消息只移动起点，每轮对话不再排序和复制整个消息列表。
+ *
+ * 实例不可变，可被多线程共享。多个实例可共享同一组底层数组，只有末尾与数组已用长度一致的实例原地追加，其余实例追加时复制。 */
+public final class TokenIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /** 对话顺序，创建时间相同的消息保持原有顺序 */
+    private static final Comparator<TokenMessage> CONVERSATION_ORDER = Comparator.comparing(TokenMessage::getCreatedAt,
+            Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final TokenIndex EMPTY = new TokenIndex(new Store(0), 0, 0);
+
+    private final Store store;
+
+    /** 本实例在底层数组中的起点 */
+    private final int offset;
+
+    private final int size;
+
+    private TokenIndex(Store store, int offset, int size) {
+        this.store = store;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /** 空索引 */
+    public static TokenIndex empty() {
+        return EMPTY;
+    }
+
+    /** 由消息列表创建索引，列表未按对话顺序排列时先排序
+     *
+     * @param messages 消息列表，可为空
+     * @return 索引 */
+    public static TokenIndex of(List<TokenMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return EMPTY;
+        }
+        List<TokenMessage> ordered = messages;
+        if (!isOrdered(messages)) {
+            ordered = new ArrayList<>(messages);
+            ordered.sort(CONVERSATION_ORDER);
+        }
+        return EMPTY.append(ordered);
+    }
+
+    /** 在末尾追加消息，新消息早于已有消息时退化为重新排序建立索引
+     *
+     * @param appended 按对话顺序排列的新消息
+     * @return 追加后的索引，本实例不变 */
+    public TokenIndex append(List<TokenMessage> appended) {
+        if (appended == null || appended.isEmpty()) {
+            return this;
+        }
+        if (!isOrdered(appended) || (size > 0 && CONVERSATION_ORDER.compare(appended.get(0), get(size - 1)) < 0)) {
+            List<TokenMessage> all = new ArrayList<>(messages());
+            all.addAll(appended);
+            return of(all);
+        }
+
+        int newSize = size + appended.size();
+        Store target = store;
+        int start = offset;
+        // 已丢弃的消息多于保留的消息时压缩，底层数组不随会话历史无限增长
+        if (offset + newSize > store.capacity() || offset > size || !store.claim(offset + size, offset + newSize)) {
+            target = store.copy(offset, size, Math.max(MIN_CAPACITY, newSize * 2));
+            start = 0;
+            target.claim(size, newSize);
+        }
+        int position = start + size;
+        for (TokenMessage message : appended) {
+            target.set(position++, message);
+        }
+        return new TokenIndex(target, start, newSize);
+    }
+
+    /** 丢弃前 from 条消息，与本实例共享底层数组
+     *
+     * @param from 新索引的第一条消息在本索引中的位置
+     * @return 从 from 开始的索引 */
+    public TokenIndex slice(int from) {
+        checkPosition(from);
+        return from == 0 ? this : new TokenIndex(store, offset + from, size - from);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public TokenMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return store.messages[offset + index];
+    }
+
+    /** 全部消息的本体Token数 */
+    public int getTotalTokens() {
+        return tokensBetween(0, size);
+    }
+
+    /** 从第 from 条到末尾的本体Token数 */
+    public int tokensFrom(int from) {
+        return tokensBetween(from, size);
+    }
+
+    /** [from, to) 区间内消息的本体Token数 */
+    public int tokensBetween(int from, int to) {
+        checkRange(from, to);
+        return store.prefixTokens[offset + to] - store.prefixTokens[offset + from];
+    }
+
+    /** 未记录本体Token数的消息数量，这些消息在前缀和中按0计 */
+    public int getMissingCount() {
+        return store.prefixMissing[offset + size] - store.prefixMissing[offset];
+    }
+
+    /** 二分查找不超过预算的最长后缀的起点，即保留最新消息的滑动窗口
+     *
+     * @param budget Token预算
+     * @return 窗口第一条消息的位置，等于 size 时表示一条也放不下 */
+    public int windowStart(int budget) {
+        if (budget < 0) {
+            return size;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokensFrom(middle) <= budget) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /** 全部消息，按对话顺序排列的只读视图 */
+    public List<TokenMessage> messages() {
+        return messages(0, size);
+    }
+
+    /** [from, to) 区间内的消息，只读视图 */
+    public List<TokenMessage> messages(int from, int to) {
+        checkRange(from, to);
+        if (from == to) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(store.messages).subList(offset + from, offset + to));
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position > size) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size);
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        checkPosition(from);
+        checkPosition(to);
+        if (from > to) {
+            throw new IndexOutOfBoundsException("from: " + from + " > to: " + to);
+        }
+    }
+
+    private static boolean isOrdered(List<TokenMessage> messages) {
+        for (int i = 1; i < messages.size(); i++) {
+            if (CONVERSATION_ORDER.compare(messages.get(i - 1), messages.get(i)) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 底层数组，已用部分写入后不再修改；用量通过CAS占用，保证同一位置只被一个实例写入 */
+    private static final class Store {
+
+        private final TokenMessage[] messages;
+
+        /** prefixTokens[i] 为前 i 条消息的本体Token数之和 */
+        private final int[] prefixTokens;
+
+        /** prefixMissing[i] 为前 i 条消息中未记录本体Token数的数量 */
+        private final int[] prefixMissing;
+
+        private final AtomicInteger used = new AtomicInteger();
+
+        private Store(int capacity) {
+            this.messages = new TokenMessage[capacity];
+            this.prefixTokens = new int[capacity + 1];
+            this.prefixMissing = new int[capacity + 1];
+        }
+
+        private int capacity() {
+            return messages.length;
+        }
+
+        private boolean claim(int expectedUsed, int newUsed) {
+            return used.compareAndSet(expectedUsed, newUsed);
+        }
+
+        private void set(int position, TokenMessage message) {
+            Integer bodyTokenCount = message.getBodyTokenCount();
+            messages[position] = message;
+            prefixTokens[position + 1] = prefixTokens[position]
+                    + (bodyTokenCount != null ? Math.max(0, bodyTokenCount) : 0);
+            prefixMissing[position + 1] = prefixMissing[position] + (bodyTokenCount == null ? 1 : 0);
+        }
+
+        /** 复制 [from, from+length) 到新数组的开头，前缀和以 from 为基准重新计算 */
+        private Store copy(int from, int length, int capacity) {
+            Store copy = new Store(capacity);
+            System.arraycopy(messages, from, copy.messages, 0, length);
+            for (int i = 1; i <= length; i++) {
+                copy.prefixTokens[i] = prefixTokens[from + i] - prefixTokens[from];
+                copy.prefixMissing[i] = prefixMissing[from + i] - prefixMissing[from];
+            }
+            copy.used.set(length);
+            return copy;
+        }
+    }
+}
@@ -10,6 +10,9 @@ public class TokenProcessResult {
     /** 被移除消息的摘要（如果有的话） */
     private String summary;
 
+    /** 待摘要的消息列表（摘要策略下由后台摘要器处理） */
+    private List<TokenMessage> messagesToSummarize;
+
     /** 处理后的总token数 */
     private int totalTokens;
 
@@ -36,6 +39,14 @@ public class TokenProcessResult {
         this.summary = summary;
     }
 
+    public List<TokenMessage> getMessagesToSummarize() {
+        return messagesToSummarize;
+    }
+
+    public void setMessagesToSummarize(List<TokenMessage> messagesToSummarize) {
+        this.messagesToSummarize = messagesToSummarize;
+    }
+
     public int getTotalTokens() {
         return totalTokens;
     }
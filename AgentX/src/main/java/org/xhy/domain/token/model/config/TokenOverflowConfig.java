@@ -21,6 +21,9 @@ public class TokenOverflowConfig {
     /** 摘要触发阈值（消息数量），适用于摘要策略 */
     private Integer summaryThreshold;
 
+    /** 历史消息以外每轮固定发送的Token数（系统提示词、工具定义、用户消息），适用于滑动窗口策略 */
+    private Integer reservedTokens;
+
     private ProviderConfig providerConfig;
 
     /** 默认构造函数 */
@@ -73,6 +76,14 @@ public class TokenOverflowConfig {
         this.summaryThreshold = summaryThreshold;
     }
 
+    public Integer getReservedTokens() {
+        return reservedTokens;
+    }
+
+    public void setReservedTokens(Integer reservedTokens) {
+        this.reservedTokens = reservedTokens;
+    }
+
     /** 创建默认的无策略配置
      * 
      * @return 无策略配置实例 */
@@ -1,28 +1,59 @@
 package org.xhy.domain.token.service;
 
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.Content;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
 import org.springframework.stereotype.Service;
+import org.xhy.application.conversation.service.handler.context.AgentPromptTemplates;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.token.model.TokenIndex;
 import org.xhy.domain.token.model.TokenMessage;
 import org.xhy.domain.token.model.TokenProcessResult;
 import org.xhy.domain.token.model.config.TokenOverflowConfig;
+import org.xhy.infrastructure.llm.LLMProviderService;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.tokenizer.ModelTokenizer;
+import org.xhy.infrastructure.llm.tokenizer.TokenizerRegistry;
 
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /** Token领域服务 封装Token超限处理的核心逻辑 */
 @Service
 public class TokenDomainService {
 
+    /** 每条消息除内容外的格式开销（角色标记和分隔符），与 OpenAI 的计数方式一致 */
+    private static final int TOKENS_PER_MESSAGE = 3;
+
+    /** 服务商在回复前追加的引导Token */
+    private static final int REPLY_PRIMING_TOKENS = 3;
+
+    /** 每个工具定义除名称、描述和参数外的包装开销 */
+    private static final int TOKENS_PER_TOOL = 8;
+
     private final TokenOverflowStrategyFactory strategyFactory;
+    private final TokenizerRegistry tokenizerRegistry;
 
-    public TokenDomainService(TokenOverflowStrategyFactory strategyFactory) {
+    public TokenDomainService(TokenOverflowStrategyFactory strategyFactory, TokenizerRegistry tokenizerRegistry) {
         this.strategyFactory = strategyFactory;
+        this.tokenizerRegistry = tokenizerRegistry;
     }
 
-    /** 处理消息列表
+    /** 处理消息列表，缺少Token数的消息（如服务商尚未返回用量的新消息）先用本地分词器补齐
      *
      * @param messages 待处理的消息列表
      * @param config 处理配置
      * @return 处理结果 */
     public TokenProcessResult processMessages(List<TokenMessage> messages, TokenOverflowConfig config) {
+        fillMissingTokenCounts(messages, getModel(config));
+
         // 创建策略
         TokenOverflowStrategy strategy = strategyFactory.createStrategy(config);
 
@@ -30,6 +61,179 @@ public class TokenDomainService {
         return strategy.process(messages, config);
     }
 
+    /** 判断消息列表是否需要Token超限处理
+     *
+     * @param messages 待检查的消息列表
+     * @param config 处理配置
+     * @return 是否需要处理 */
+    public boolean needsProcessing(List<TokenMessage> messages, TokenOverflowConfig config) {
+        fillMissingTokenCounts(messages, getModel(config));
+        return strategyFactory.createStrategy(config).needsProcessing(messages);
+    }
+
+    /** 处理会话Token索引，索引中存在缺少Token数的消息时补齐后重建索引
+     *
+     * @param index 会话Token索引
+     * @param config 处理配置
+     * @return 处理结果 */
+    public TokenProcessResult processMessages(TokenIndex index, TokenOverflowConfig config) {
+        return strategyFactory.createStrategy(config).process(completeIndex(index, config), config);
+    }
+
+    /** 判断会话Token索引是否需要Token超限处理
+     *
+     * @param index 会话Token索引
+     * @param config 处理配置
+     * @return 是否需要处理 */
+    public boolean needsProcessing(TokenIndex index, TokenOverflowConfig config) {
+        return strategyFactory.createStrategy(config).needsProcessing(completeIndex(index, config));
+    }
+
+    /** 用本地分词器计算文本的Token数，词表按模型选择，词表不可用时按字符数估算
+     *
+     * @param text 文本
+     * @param model 模型名
+     * @return Token数 */
+    public int countTokens(String text, String model) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        ModelTokenizer modelTokenizer = ModelTokenizer.forModel(model);
+        int count = tokenizerRegistry.getTokenizer(modelTokenizer.getEncoding())
+                .map(tokenizer -> tokenizer.countTokens(text)).orElseGet(() -> TokenEstimator.estimate(text));
+        return modelTokenizer.scale(count);
+    }
+
+    /** 计算单条消息的Token数，含消息格式开销 */
+    public int countMessageTokens(String content, String model) {
+        return countTokens(content, model) + TOKENS_PER_MESSAGE;
+    }
+
+    /** 计算工具定义的Token数，工具定义随每次请求发送，同样占用上下文窗口
+     *
+     * @param tools 工具定义
+     * @param model 模型名
+     * @return Token数 */
+    public int countToolTokens(Collection<ToolSpecification> tools, String model) {
+        if (tools == null || tools.isEmpty()) {
+            return 0;
+        }
+        int total = 0;
+        for (ToolSpecification tool : tools) {
+            total += TOKENS_PER_TOOL + countTokens(tool.name(), model) + countTokens(tool.description(), model);
+            if (tool.parameters() != null) {
+                total += countTokens(tool.parameters().toString(), model);
+            }
+        }
+        return total;
+    }
+
+    /** 计算每轮请求中历史消息以外的固定部分：系统提示词、工具定义和用户消息
+     *
+     * @param systemPrompt 系统提示词
+     * @param tools 工具定义，可为空
+     * @param userMessage 用户消息（RAG对话中含检索结果）
+     * @param model 模型名
+     * @return Token数 */
+    public int countPromptTokens(String systemPrompt, Collection<ToolSpecification> tools, String userMessage,
+            String model) {
+        return countMessageTokens(systemPrompt, model) + countToolTokens(tools, model)
+                + countMessageTokens(userMessage, model) + REPLY_PRIMING_TOKENS;
+    }
+
+    /** 按顺序选取不超过预算的文本，用于裁剪RAG检索结果等按相关度排序的内容
+     *
+     * @param texts 按优先级排序的文本
+     * @param budget Token预算
+     * @param model 模型名
+     * @return 可以放入预算的前缀文本数量 */
+    public int countWithinBudget(List<String> texts, int budget, String model) {
+        int used = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            used += countTokens(texts.get(i), model);
+            if (used > budget) {
+                return i;
+            }
+        }
+        return texts.size();
+    }
+
+    /** 补齐缺少Token数的消息，本体Token数按消息内容计算
+     *
+     * @param messages 消息列表
+     * @param model 模型名 */
+    public void fillMissingTokenCounts(List<TokenMessage> messages, String model) {
+        if (messages == null) {
+            return;
+        }
+        for (TokenMessage message : messages) {
+            if (message.getBodyTokenCount() == null) {
+                message.setBodyTokenCount(countMessageTokens(message.getContent(), model));
+            }
+            if (message.getTokenCount() == null) {
+                message.setTokenCount(message.getBodyTokenCount());
+            }
+        }
+    }
+
+    /** 调用大模型为消息生成摘要，旧摘要作为待摘要消息的一部分传入时其要点会被保留
+     *
+     * @param messagesToSummarize 待摘要的消息（按时间排序）
+     * @param config 处理配置，使用其中的服务商配置
+     * @param historyMessages 完整的历史消息，用于确定摘要消息的时间
+     * @return 摘要消息，创建时间早于最早的历史消息 */
+    public TokenMessage generateSummary(List<TokenMessage> messagesToSummarize, TokenOverflowConfig config,
+            List<TokenMessage> historyMessages) {
+        ProviderConfig providerConfig = config.getProviderConfig();
+        String summaryPrefixPrompt = "。最后请你以这段话作为生成摘要的开头返回，开头：" + AgentPromptTemplates.getSummaryPrefix();
+
+        // 使用当前服务商调用大模型
+        ChatModel chatLanguageModel = LLMProviderService.getStrand(providerConfig.getProtocol(), providerConfig);
+        SystemMessage systemMessage = new SystemMessage("你是一个专业的对话摘要生成器，请严格按照以下要求工作：\n"
+                + "1. 只基于提供的对话内容生成客观摘要，不得添加任何原对话中没有的信息\n" + "2. 特别关注：用户问题、回答中的关键信息、重要事实\n" + "3. 去除所有寒暄、表情符号和情感表达\n"
+                + "4. 使用简洁的第三人称陈述句\n" + "5. 保持时间顺序和逻辑关系\n" + "6. 示例格式：[用户]问... [AI]回答...\n" + "禁止使用任何表情符号或拟人化表达"
+                + "7. 提供的对话内容中格式与第六点的示例格式相符的，属于旧摘要，旧摘要部分必须全部保留要点" + summaryPrefixPrompt);
+        List<Content> contents = messagesToSummarize.stream().map(message -> new TextContent(message.getContent()))
+                .collect(Collectors.toList());
+        UserMessage userMessage = new UserMessage(contents);
+        ChatResponse chatResponse = chatLanguageModel.chat(Arrays.asList(systemMessage, userMessage));
+
+        TokenMessage summaryMessage = new TokenMessage();
+        summaryMessage.setRole(Role.SUMMARY.name());
+        summaryMessage.setContent(chatResponse.aiMessage().text());
+        summaryMessage.setBodyTokenCount(chatResponse.tokenUsage().outputTokenCount());
+        summaryMessage.setTokenCount(chatResponse.tokenUsage().outputTokenCount());
+
+        // 设置创建时间为历史消息中最早时间的前一秒，保证摘要排在最前
+        LocalDateTime earliestTime = historyMessages.stream()
+                .filter(message -> !Role.SUMMARY.name().equals(message.getRole())).map(TokenMessage::getCreatedAt)
+                .min(LocalDateTime::compareTo).orElse(LocalDateTime.now());
+        summaryMessage.setCreatedAt(earliestTime.minusSeconds(1));
+        return summaryMessage;
+    }
+
+    /** 索引可能被多个请求共享，补齐Token数时在消息副本上进行，不修改原索引中的消息 */
+    private TokenIndex completeIndex(TokenIndex index, TokenOverflowConfig config) {
+        if (index.getMissingCount() == 0) {
+            return index;
+        }
+        List<TokenMessage> messages = index.messages().stream().map(TokenDomainService::copyMessage)
+                .collect(Collectors.toList());
+        fillMissingTokenCounts(messages, getModel(config));
+        return TokenIndex.of(messages);
+    }
+
+    private static TokenMessage copyMessage(TokenMessage source) {
+        TokenMessage copy = new TokenMessage(source.getId(), source.getContent(), source.getRole(),
+                source.getTokenCount(), source.getCreatedAt());
+        copy.setBodyTokenCount(source.getBodyTokenCount());
+        return copy;
+    }
+
+    private static String getModel(TokenOverflowConfig config) {
+        return config != null && config.getProviderConfig() != null ? config.getProviderConfig().getModel() : null;
+    }
+
     /** 计算消息列表的总Token数
      *
      * @param messages 消息列表
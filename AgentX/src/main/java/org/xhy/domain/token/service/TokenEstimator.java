@@ -0,0 +1,34 @@
+package org.xhy.domain.token.service;
+
+/** Token数量估算
+ *
+ * 在拿不到服务商返回的用量时（如流被中途取消）按字符粗略估算：CJK字符按1个Token计，其他字符按4个字符1个Token计。 */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    /** 估算文本的Token数量
+     * @param text 文本
+     * @return 估算的Token数量 */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjkCount = 0;
+        int otherCount = 0;
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isIdeographic(codePoint)
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HANGUL
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HIRAGANA
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.KATAKANA) {
+                cjkCount++;
+            } else {
+                otherCount++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjkCount + (otherCount + 3) / 4;
+    }
+}
@@ -1,5 +1,6 @@
 package org.xhy.domain.token.service;
 
+import org.xhy.domain.token.model.TokenIndex;
 import org.xhy.domain.token.model.TokenMessage;
 import org.xhy.domain.token.model.TokenProcessResult;
 import org.xhy.domain.token.model.config.TokenOverflowConfig;
@@ -8,20 +9,36 @@ import java.util.List;
 
 /** Token溢出处理策略接口 */
 public interface TokenOverflowStrategy {
-    /** 处理消息列表
+    /** 处理会话Token索引
+     *
+     * @param index 按对话顺序排列的消息及其Token前缀和
+     * @return 处理结果，包含处理后的消息列表、摘要等信息 */
+    TokenProcessResult process(TokenIndex index, TokenOverflowConfig tokenOverflowConfig);
+
+    /** 处理消息列表，先按对话顺序建立索引
      *
      * @param messages 待处理的消息列表
      * @return 处理结果，包含处理后的消息列表、摘要等信息 */
-    TokenProcessResult process(List<TokenMessage> messages, TokenOverflowConfig tokenOverflowConfig);
+    default TokenProcessResult process(List<TokenMessage> messages, TokenOverflowConfig tokenOverflowConfig) {
+        return process(TokenIndex.of(messages), tokenOverflowConfig);
+    }
 
     /** 获取策略名称
      *
      * @return 策略名称 */
     String getName();
 
+    /** 检查是否需要处理
+     *
+     * @param index 待检查的会话Token索引
+     * @return 是否需要处理 */
+    boolean needsProcessing(TokenIndex index);
+
     /** 检查是否需要处理
      *
      * @param messages 待检查的消息列表
      * @return 是否需要处理 */
-    boolean needsProcessing(List<TokenMessage> messages);
-}
\ No newline at end of file
+    default boolean needsProcessing(List<TokenMessage> messages) {
+        return needsProcessing(TokenIndex.of(messages));
+    }
+}
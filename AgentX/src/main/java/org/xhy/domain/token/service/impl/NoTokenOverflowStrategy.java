@@ -1,6 +1,7 @@
 package org.xhy.domain.token.service.impl;
 
 import org.springframework.stereotype.Service;
+import org.xhy.domain.token.model.TokenIndex;
 import org.xhy.domain.token.model.TokenMessage;
 import org.xhy.domain.token.model.TokenProcessResult;
 import org.xhy.domain.token.model.config.TokenOverflowConfig;
@@ -28,12 +29,13 @@ public class NoTokenOverflowStrategy implements TokenOverflowStrategy {
         this.config = config != null ? config : TokenOverflowConfig.createDefault();
     }
 
-    /** 处理消息列表，无策略实现不做任何处理，返回原消息列表
+    /** 处理消息列表，无策略实现不做任何处理，返回全部消息
      *
-     * @param messages 待处理的消息列表
-     * @return 原消息列表，不做修改 */
+     * @param index 会话Token索引
+     * @return 全部消息，不做修改 */
     @Override
-    public TokenProcessResult process(List<TokenMessage> messages, TokenOverflowConfig tokenOverflowConfig) {
+    public TokenProcessResult process(TokenIndex index, TokenOverflowConfig tokenOverflowConfig) {
+        List<TokenMessage> messages = index.messages();
         TokenProcessResult result = new TokenProcessResult();
         result.setRetainedMessages(messages);
         result.setStrategyName(getName());
@@ -52,10 +54,10 @@ public class NoTokenOverflowStrategy implements TokenOverflowStrategy {
 
     /** 是否需要进行Token超限处理 无策略实现始终返回false，表示不需要处理
      *
-     * @param messages 待处理的消息列表
+     * @param index 会话Token索引
      * @return 始终返回false，表示不处理 */
     @Override
-    public boolean needsProcessing(List<TokenMessage> messages) {
+    public boolean needsProcessing(TokenIndex index) {
         // 无策略实现，始终返回false，表示不需要处理
         return false;
     }
@@ -1,15 +1,13 @@
 package org.xhy.domain.token.service.impl;
 
 import org.springframework.stereotype.Service;
+import org.xhy.domain.token.model.TokenIndex;
 import org.xhy.domain.token.model.TokenMessage;
 import org.xhy.domain.token.model.TokenProcessResult;
 import org.xhy.domain.token.model.config.TokenOverflowConfig;
 import org.xhy.domain.shared.enums.TokenOverflowStrategyEnum;
 import org.xhy.domain.token.service.TokenOverflowStrategy;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /** 滑动窗口Token超限处理策略实现 根据Token数量保留最新消息，超出窗口的旧消息将被丢弃 */
@@ -34,48 +32,34 @@ public class SlidingWindowTokenOverflowStrategy implements TokenOverflowStrategy
 
     /** 处理消息列表，应用滑动窗口策略
      * 
-     * @param messages 待处理的消息列表
-     * @return 处理后保留的消息列表 */
+     * @param index 按对话顺序排列的会话Token索引
+     * @return 处理后保留的消息列表，按对话顺序排列 */
     @Override
-    public TokenProcessResult process(List<TokenMessage> messages, TokenOverflowConfig tokenOverflowConfig) {
-        if (!needsProcessing(messages)) {
+    public TokenProcessResult process(TokenIndex index, TokenOverflowConfig tokenOverflowConfig) {
+        if (!needsProcessing(index)) {
             TokenProcessResult result = new TokenProcessResult();
-            result.setRetainedMessages(messages);
+            result.setRetainedMessages(index.messages());
             result.setStrategyName(getName());
             result.setProcessed(false);
-            result.setTotalTokens(calculateTotalTokens(messages));
+            result.setTotalTokens(index.getTotalTokens());
             return result;
         }
 
-        // 按时间排序，保留最新的消息
-        List<TokenMessage> sortedMessages = new ArrayList<>(messages);
-        Collections.sort(sortedMessages, Comparator.comparing(TokenMessage::getCreatedAt).reversed());
-
-        // 计算可用token数（考虑预留空间）
-        int maxTokens = config.getMaxTokens();
-        int reserveTokens = (int) (maxTokens * config.getReserveRatio());
-        int availableTokens = maxTokens - reserveTokens;
-
-        // 保留最新的消息，直到达到token限制
-        List<TokenMessage> retainedMessages = new ArrayList<>();
-        int totalTokens = 0;
-
-        for (TokenMessage message : sortedMessages) {
-            int messageTokens = message.getBodyTokenCount() != null ? message.getBodyTokenCount() : 0;
-            if (totalTokens + messageTokens <= availableTokens) {
-                retainedMessages.add(message);
-                totalTokens += messageTokens;
-            } else {
-                break;
-            }
-        }
+        // 计算可用token数（考虑预留空间和每轮固定发送的部分）
+        int maxTokens = getMaxTokens();
+        int reserveTokens = (int) (maxTokens * getReserveRatio());
+        int availableTokens = maxTokens - reserveTokens - getReservedTokens();
+
+        // 保留最新的消息，直到达到token限制：即不超过可用token数的最长后缀，按前缀和二分查找起点
+        int start = index.windowStart(availableTokens);
+        List<TokenMessage> retainedMessages = index.messages(start, index.size());
 
         // 创建结果对象
         TokenProcessResult result = new TokenProcessResult();
         result.setRetainedMessages(retainedMessages);
         result.setStrategyName(getName());
         result.setProcessed(true);
-        result.setTotalTokens(totalTokens);
+        result.setTotalTokens(index.tokensFrom(start));
 
         return result;
     }
@@ -90,22 +74,15 @@ public class SlidingWindowTokenOverflowStrategy implements TokenOverflowStrategy
 
     /** 判断是否需要进行Token超限处理
      * 
-     * @param messages 待处理的消息列表
+     * @param index 待处理的会话Token索引
      * @return 是否需要处理 */
     @Override
-    public boolean needsProcessing(List<TokenMessage> messages) {
-        if (messages == null || messages.isEmpty()) {
+    public boolean needsProcessing(TokenIndex index) {
+        if (index.isEmpty()) {
             return false;
         }
 
-        int totalTokens = calculateTotalTokens(messages);
-        int maxTokens = config.getMaxTokens();
-        return totalTokens > maxTokens;
-    }
-
-    /** 计算消息列表的总token数 */
-    private int calculateTotalTokens(List<TokenMessage> messages) {
-        return messages.stream().mapToInt(m -> m.getBodyTokenCount() != null ? m.getBodyTokenCount() : 0).sum();
+        return index.getTotalTokens() + getReservedTokens() > getMaxTokens();
     }
 
     /** 获取配置的最大Token数，如果未配置则使用默认值
@@ -127,4 +104,12 @@ public class SlidingWindowTokenOverflowStrategy implements TokenOverflowStrategy
         }
         return config.getReserveRatio();
     }
+
+    /** 获取历史消息以外每轮固定发送的Token数，未计算时为0 */
+    private int getReservedTokens() {
+        if (config == null || config.getReservedTokens() == null) {
+            return 0;
+        }
+        return config.getReservedTokens();
+    }
 }
\ No newline at end of file
@@ -21,26 +21,47 @@ public class ModelTokenStrategy implements RuleStrategy {
             throw new IllegalArgumentException("无效的用量数据或价格配置");
         }
 
-        // 获取Token数量
+        // 获取Token数量，输入Token数量包含命中和写入提示词缓存的部分
         Integer inputTokens = (Integer) usageData.get(UsageDataKeys.INPUT_TOKENS);
         Integer outputTokens = (Integer) usageData.get(UsageDataKeys.OUTPUT_TOKENS);
+        int cachedInputTokens = getTokenCount(usageData, UsageDataKeys.CACHED_INPUT_TOKENS);
+        int cacheWriteTokens = getTokenCount(usageData, UsageDataKeys.CACHE_WRITE_INPUT_TOKENS);
+        int uncachedInputTokens = Math.max(0, inputTokens - cachedInputTokens - cacheWriteTokens);
 
-        // 获取价格配置
+        // 获取价格配置，缓存单价未配置时按输入单价计费
         BigDecimal inputCostPerMillion = getBigDecimalValue(pricingConfig, PricingConfigKeys.INPUT_COST_PER_MILLION);
         BigDecimal outputCostPerMillion = getBigDecimalValue(pricingConfig, PricingConfigKeys.OUTPUT_COST_PER_MILLION);
+        BigDecimal cachedCostPerMillion = getOptionalCost(pricingConfig,
+                PricingConfigKeys.CACHED_INPUT_COST_PER_MILLION, inputCostPerMillion);
+        BigDecimal cacheWriteCostPerMillion = getOptionalCost(pricingConfig,
+                PricingConfigKeys.CACHE_WRITE_COST_PER_MILLION, inputCostPerMillion);
 
-        // 计算输入Token费用：(inputTokens / 1000000) * inputCostPerMillion
-        BigDecimal inputCost = new BigDecimal(inputTokens).divide(MILLION, 8, RoundingMode.HALF_UP)
-                .multiply(inputCostPerMillion);
+        // 计算输入Token费用：(tokens / 1000000) * costPerMillion，缓存命中和写入部分分别计价
+        BigDecimal inputCost = tokenCost(uncachedInputTokens, inputCostPerMillion)
+                .add(tokenCost(cachedInputTokens, cachedCostPerMillion))
+                .add(tokenCost(cacheWriteTokens, cacheWriteCostPerMillion));
 
         // 计算输出Token费用：(outputTokens / 1000000) * outputCostPerMillion
-        BigDecimal outputCost = new BigDecimal(outputTokens).divide(MILLION, 8, RoundingMode.HALF_UP)
-                .multiply(outputCostPerMillion);
+        BigDecimal outputCost = tokenCost(outputTokens, outputCostPerMillion);
 
         // 总费用
         return inputCost.add(outputCost).setScale(8, RoundingMode.HALF_UP);
     }
 
+    private BigDecimal tokenCost(int tokens, BigDecimal costPerMillion) {
+        return new BigDecimal(tokens).divide(MILLION, 8, RoundingMode.HALF_UP).multiply(costPerMillion);
+    }
+
+    private BigDecimal getOptionalCost(Map<String, Object> pricingConfig, String key, BigDecimal defaultCost) {
+        return pricingConfig.get(key) != null ? getBigDecimalValue(pricingConfig, key) : defaultCost;
+    }
+
+    /** 读取可选的Token数量，缺失或无效时为0 */
+    private int getTokenCount(Map<String, Object> usageData, String key) {
+        Object value = usageData.get(key);
+        return value instanceof Integer tokens && tokens > 0 ? tokens : 0;
+    }
+
     @Override
     public String getStrategyName() {
         return "MODEL_TOKEN_STRATEGY";
@@ -0,0 +1,123 @@
+package org.xhy.infrastructure.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 有界的虚拟线程执行器：每个任务一个虚拟线程，同时运行的任务数和已接收的任务数都有上限
+ *
+ * 超出运行上限的任务在自己的虚拟线程上等待许可，等待中的虚拟线程不占用载体线程，相当于线程池的队列。 */
+final class BoundedVirtualExecutor extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+
+    /** 同时运行的任务许可 */
+    private final Semaphore running;
+
+    /** 已接收（运行中+等待中）的任务许可 */
+    private final Semaphore admitted;
+
+    private final int maxConcurrency;
+
+    private final int maxAdmitted;
+
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger largestActive = new AtomicInteger();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    BoundedVirtualExecutor(ThreadFactory threadFactory, int maxConcurrency, int queueCapacity) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.maxAdmitted = maxConcurrency + queueCapacity;
+        this.running = new Semaphore(maxConcurrency);
+        this.admitted = new Semaphore(maxAdmitted);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown || !admitted.tryAcquire()) {
+            throw new RejectedExecutionException(shutdown ? "执行器已关闭" : "运行和等待的任务数已达上限");
+        }
+        Thread thread = threadFactory.newThread(() -> {
+            threads.add(Thread.currentThread());
+            try {
+                running.acquire();
+                try {
+                    largestActive.accumulateAndGet(getActiveCount(), Math::max);
+                    task.run();
+                } finally {
+                    running.release();
+                    completed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                threads.remove(Thread.currentThread());
+                admitted.release();
+            }
+        });
+        thread.start();
+    }
+
+    int getActiveCount() {
+        return maxConcurrency - running.availablePermits();
+    }
+
+    int getLargestActiveCount() {
+        return largestActive.get();
+    }
+
+    int getQueueSize() {
+        return Math.max(0, maxAdmitted - admitted.availablePermits() - getActiveCount());
+    }
+
+    long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        threads.forEach(Thread::interrupt);
+        return new ArrayList<>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && admitted.availablePermits() == maxAdmitted;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return true;
+    }
+}
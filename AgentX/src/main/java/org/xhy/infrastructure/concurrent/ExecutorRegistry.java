@@ -0,0 +1,107 @@
+package org.xhy.infrastructure.concurrent;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.config.ExecutorProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 线程池注册表，按负载类型统一创建和管理有界线程池
+ *
+ * 所有线程池都有线程数和队列上限，满载时按拒绝策略处理；提交任务时通过 {@link TaskContextPropagator} 传递用户、追踪等线程上下文。
+ * 开启虚拟线程且运行在 Java 21 及以上时，I/O密集的线程池改用虚拟线程，并发数上限不变。
+ * 定时任务共用一个调度器，调度器只负责到期触发，不传递线程上下文，需要阻塞或耗时的工作应转交给对应负载的线程池。 */
+@Component
+public class ExecutorRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorRegistry.class);
+
+    private final Map<WorkloadType, ManagedExecutor> executors = new EnumMap<>(WorkloadType.class);
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public ExecutorRegistry(ExecutorProperties properties, List<TaskContextPropagator> propagators) {
+        List<TaskContextPropagator> contextPropagators = Collections.unmodifiableList(new ArrayList<>(propagators));
+        for (WorkloadType workload : WorkloadType.values()) {
+            executors.put(workload, create(workload, properties, contextPropagators));
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, properties.getSchedulerThreads()), r -> {
+            Thread t = new Thread(r, "scheduler-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        logger.info("线程池已创建: {}", executors.values());
+    }
+
+    /** 获取负载对应的线程池
+     * @param workload 负载类型
+     * @return 线程池 */
+    public ManagedExecutor get(WorkloadType workload) {
+        return executors.get(workload);
+    }
+
+    /** 共享定时调度器，用于超时检测、延迟补发等到期触发 */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /** 所有线程池，用于查看运行状态 */
+    public Collection<ManagedExecutor> getExecutors() {
+        return Collections.unmodifiableCollection(executors.values());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        executors.values().forEach(ManagedExecutor::shutdown);
+        for (ManagedExecutor executor : executors.values()) {
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ManagedExecutor create(WorkloadType workload, ExecutorProperties properties,
+            List<TaskContextPropagator> propagators) {
+        ExecutorProperties.Pool pool = properties.getPools().getOrDefault(workload.getPoolName(),
+                new ExecutorProperties.Pool());
+        int maxSize = pool.getMaxSize() != null ? pool.getMaxSize() : workload.getMaxSize();
+        int coreSize = pool.getCoreSize() != null ? pool.getCoreSize() : Math.min(workload.getCoreSize(), maxSize);
+        int queueCapacity = pool.getQueueCapacity() != null ? pool.getQueueCapacity() : workload.getQueueCapacity();
+        RejectionPolicy rejectionPolicy = pool.getRejectionPolicy() != null
+                ? pool.getRejectionPolicy()
+                : workload.getRejectionPolicy();
+        boolean virtualThreads = pool.getVirtualThreads() != null
+                ? pool.getVirtualThreads()
+                : properties.isVirtualThreads() && workload.isIoBound();
+
+        if (virtualThreads) {
+            ManagedExecutor executor = ManagedExecutor.virtual(workload.getPoolName(), maxSize, queueCapacity,
+                    rejectionPolicy, propagators);
+            if (executor != null) {
+                return executor;
+            }
+            logger.warn("当前JDK {} 不支持虚拟线程，线程池 {} 使用平台线程", Runtime.version().feature(), workload.getPoolName());
+        }
+        return ManagedExecutor.platform(workload.getPoolName(), coreSize, maxSize, queueCapacity,
+                properties.getKeepAliveSeconds(), rejectionPolicy, propagators);
+    }
+}
@@ -0,0 +1,255 @@
+package org.xhy.infrastructure.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 受管的有界执行器
+ *
+ * 底层为有界队列的平台线程池，或限制并发数的虚拟线程执行器；提交时采集线程上下文并在执行线程上恢复，线程池和队列都满时按拒绝策略处理并计数。
+ * 可直接作为 CompletableFuture 和 Spring @Async 的执行器。 */
+public class ManagedExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagedExecutor.class);
+
+    private final String name;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private final List<TaskContextPropagator> propagators;
+
+    /** 平台线程池，使用虚拟线程时为空 */
+    private final ThreadPoolExecutor threadPool;
+
+    /** 虚拟线程执行器，使用平台线程时为空 */
+    private final BoundedVirtualExecutor virtualExecutor;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private ManagedExecutor(String name, RejectionPolicy rejectionPolicy, List<TaskContextPropagator> propagators,
+            ThreadPoolExecutor threadPool, BoundedVirtualExecutor virtualExecutor) {
+        this.name = name;
+        this.rejectionPolicy = rejectionPolicy;
+        this.propagators = propagators;
+        this.threadPool = threadPool;
+        this.virtualExecutor = virtualExecutor;
+    }
+
+    /** 创建平台线程池
+     * @param name 线程池名称，同时作为线程名前缀
+     * @param coreSize 核心线程数，空闲超时后同样回收
+     * @param maxSize 最大线程数
+     * @param queueCapacity 队列容量，为0时不排队，线程数达到上限即拒绝
+     * @param keepAliveSeconds 空闲线程存活时间(秒)
+     * @param rejectionPolicy 拒绝策略
+     * @param propagators 线程上下文传递
+     * @return 执行器 */
+    public static ManagedExecutor platform(String name, int coreSize, int maxSize, int queueCapacity,
+            long keepAliveSeconds, RejectionPolicy rejectionPolicy, List<TaskContextPropagator> propagators) {
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(Math.min(coreSize, maxSize), maxSize,
+                keepAliveSeconds, TimeUnit.SECONDS, queue, r -> {
+                    Thread t = new Thread(r, name + "-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        threadPool.allowCoreThreadTimeOut(true);
+        return new ManagedExecutor(name, rejectionPolicy, propagators, threadPool, null);
+    }
+
+    /** 创建虚拟线程执行器，当前JDK不支持虚拟线程时返回空
+     * @param name 执行器名称，同时作为线程名前缀
+     * @param maxConcurrency 同时运行的任务数上限
+     * @param queueCapacity 等待运行的任务数上限
+     * @param rejectionPolicy 拒绝策略
+     * @param propagators 线程上下文传递
+     * @return 执行器，不支持虚拟线程时为null */
+    public static ManagedExecutor virtual(String name, int maxConcurrency, int queueCapacity,
+            RejectionPolicy rejectionPolicy, List<TaskContextPropagator> propagators) {
+        ThreadFactory threadFactory = virtualThreadFactory(name + "-");
+        if (threadFactory == null) {
+            return null;
+        }
+        BoundedVirtualExecutor virtualExecutor = new BoundedVirtualExecutor(threadFactory, maxConcurrency,
+                queueCapacity);
+        return new ManagedExecutor(name, rejectionPolicy, propagators, null, virtualExecutor);
+    }
+
+    /** 项目按 Java 17 编译，通过反射创建虚拟线程工厂，运行在 Java 21 及以上时可用 */
+    static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Runnable wrapped = wrap(task);
+        try {
+            delegate().execute(wrapped);
+        } catch (RejectedExecutionException e) {
+            if (isShutdown()) {
+                throw e;
+            }
+            long rejected = rejectedCount.incrementAndGet();
+            switch (rejectionPolicy) {
+                case CALLER_RUNS :
+                    logger.debug("线程池 {} 已满，由提交线程执行", name);
+                    wrapped.run();
+                    break;
+                case DISCARD :
+                    logger.warn("线程池 {} 已满，丢弃任务，累计拒绝 {} 次", name, rejected);
+                    break;
+                default :
+                    logger.warn("线程池 {} 已满，拒绝任务，累计拒绝 {} 次", name, rejected);
+                    throw new RejectedExecutionException("线程池 " + name + " 已满", e);
+            }
+        }
+    }
+
+    /** 在当前线程采集上下文并绑定到任务，用于稍后由其他线程（如定时调度器）提交的任务
+     * @param task 任务
+     * @return 执行时恢复当前线程上下文的任务 */
+    public Runnable withContext(Runnable task) {
+        return wrap(task);
+    }
+
+    /** 在当前线程采集上下文，之后通过返回的执行器提交的任务都在该上下文中执行，用于由回调线程稍后提交的任务
+     * @return 绑定当前线程上下文的执行器，满载时的处理与本线程池相同 */
+    public Executor withCurrentContext() {
+        if (propagators.isEmpty()) {
+            return this;
+        }
+        Object[] captured = capture();
+        return task -> execute(() -> runWith(captured, task));
+    }
+
+    /** 提交线程上采集上下文，执行线程上恢复并在结束后按相反顺序还原 */
+    private Runnable wrap(Runnable task) {
+        if (propagators.isEmpty()) {
+            return task;
+        }
+        Object[] captured = capture();
+        return () -> runWith(captured, task);
+    }
+
+    private Object[] capture() {
+        Object[] captured = new Object[propagators.size()];
+        for (int i = 0; i < captured.length; i++) {
+            captured[i] = propagators.get(i).capture();
+        }
+        return captured;
+    }
+
+    private void runWith(Object[] captured, Runnable task) {
+        Object[] previous = new Object[captured.length];
+        for (int i = 0; i < captured.length; i++) {
+            previous[i] = propagators.get(i).restore(captured[i]);
+        }
+        try {
+            task.run();
+        } finally {
+            for (int i = captured.length - 1; i >= 0; i--) {
+                propagators.get(i).reset(previous[i]);
+            }
+        }
+    }
+
+    private ExecutorService delegate() {
+        return threadPool != null ? threadPool : virtualExecutor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /** 正在执行任务的线程数 */
+    public int getActiveCount() {
+        return threadPool != null ? threadPool.getActiveCount() : virtualExecutor.getActiveCount();
+    }
+
+    /** 当前线程数，虚拟线程执行器为运行中的任务数 */
+    public int getPoolSize() {
+        return threadPool != null ? threadPool.getPoolSize() : virtualExecutor.getActiveCount();
+    }
+
+    /** 线程数峰值 */
+    public int getLargestPoolSize() {
+        return threadPool != null ? threadPool.getLargestPoolSize() : virtualExecutor.getLargestActiveCount();
+    }
+
+    /** 等待执行的任务数 */
+    public int getQueueSize() {
+        return threadPool != null ? threadPool.getQueue().size() : virtualExecutor.getQueueSize();
+    }
+
+    public long getCompletedTaskCount() {
+        return threadPool != null ? threadPool.getCompletedTaskCount() : virtualExecutor.getCompletedTaskCount();
+    }
+
+    /** 累计被拒绝的次数，包括由提交线程执行和丢弃的任务 */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate().shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate().shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate().isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate().isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate().awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%s, active=%d, pool=%d, largest=%d, queued=%d, completed=%d, rejected=%d]", name,
+                isVirtual() ? "virtual" : "platform", getActiveCount(), getPoolSize(), getLargestPoolSize(),
+                getQueueSize(), getCompletedTaskCount(), getRejectedCount());
+    }
+}
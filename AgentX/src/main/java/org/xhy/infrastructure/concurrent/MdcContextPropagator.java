@@ -0,0 +1,39 @@
+package org.xhy.infrastructure.concurrent;
+
+import org.slf4j.MDC;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/** 传递日志MDC（如消息队列链路的 traceId），异步任务的日志与发起请求的日志可以关联 */
+@Component
+@Order(1)
+public class MdcContextPropagator implements TaskContextPropagator {
+
+    @Override
+    public Object capture() {
+        return MDC.getCopyOfContextMap();
+    }
+
+    @Override
+    public Object restore(Object captured) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        set(captured);
+        return previous;
+    }
+
+    @Override
+    public void reset(Object previous) {
+        set(previous);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void set(Object contextMap) {
+        if (contextMap == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap((Map<String, String>) contextMap);
+        }
+    }
+}
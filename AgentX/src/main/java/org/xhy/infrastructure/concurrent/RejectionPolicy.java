@@ -0,0 +1,14 @@
+package org.xhy.infrastructure.concurrent;
+
+/** 线程池和队列都满时的处理方式 */
+public enum RejectionPolicy {
+
+    /** 抛出 RejectedExecutionException，由提交方决定重试或放弃 */
+    ABORT,
+
+    /** 由提交任务的线程直接执行，提交方被减速，任务不丢失 */
+    CALLER_RUNS,
+
+    /** 丢弃任务并记录日志，只用于可以丢失的任务 */
+    DISCARD
+}
@@ -0,0 +1,20 @@
+package org.xhy.infrastructure.concurrent;
+
+/** 线程上下文传递，提交任务时采集提交线程的上下文，在执行线程上恢复，任务结束后还原
+ *
+ * 线程池中的线程会被复用，执行后必须还原为执行前的值，不能依赖 InheritableThreadLocal 在创建线程时复制的值。 */
+public interface TaskContextPropagator {
+
+    /** 在提交任务的线程上采集上下文
+     * @return 上下文，可为空 */
+    Object capture();
+
+    /** 在执行任务的线程上设置采集到的上下文
+     * @param captured capture 的返回值
+     * @return 执行线程原有的上下文，用于还原 */
+    Object restore(Object captured);
+
+    /** 任务结束后还原执行线程的上下文
+     * @param previous restore 的返回值 */
+    void reset(Object previous);
+}
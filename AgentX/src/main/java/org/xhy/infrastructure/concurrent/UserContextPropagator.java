@@ -0,0 +1,36 @@
+package org.xhy.infrastructure.concurrent;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.auth.UserContext;
+
+/** 传递当前用户ID，异步任务中可继续通过 UserContext 获取发起请求的用户 */
+@Component
+@Order(0)
+public class UserContextPropagator implements TaskContextPropagator {
+
+    @Override
+    public Object capture() {
+        return UserContext.getCurrentUserId();
+    }
+
+    @Override
+    public Object restore(Object captured) {
+        String previous = UserContext.getCurrentUserId();
+        set((String) captured);
+        return previous;
+    }
+
+    @Override
+    public void reset(Object previous) {
+        set((String) previous);
+    }
+
+    private static void set(String userId) {
+        if (userId == null) {
+            UserContext.clear();
+        } else {
+            UserContext.setCurrentUserId(userId);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.xhy.infrastructure.concurrent;
+
+/** 线程池负载类型，每种负载一个独立的有界线程池，互不抢占线程
+ *
+ * 默认参数可通过 executor.pools.{name} 覆盖。 */
+public enum WorkloadType {
+
+    /** 对话准备：SSE连接返回后加载会话、Agent、上下文并发起模型调用 */
+    CHAT_IO("chat-io", 32, 128, 1000, RejectionPolicy.ABORT, true),
+
+    /** 对话准备阶段内部的并发查询，与准备线程分离，避免准备线程互相等待导致饥饿 */
+    CHAT_LOOKUP("chat-lookup", 64, 64, 2000, RejectionPolicy.CALLER_RUNS, true),
+
+    /** RAG检索：向量检索与关键词检索并行执行 */
+    RETRIEVAL("retrieval", 16, 32, 200, RejectionPolicy.CALLER_RUNS, true),
+
+    /** 计费事件：充值、购买等异步监听器，队列满时由发布线程执行，不丢弃 */
+    BILLING("billing", 2, 8, 1000, RejectionPolicy.CALLER_RUNS, false),
+
+    /** 流式模型响应读取：每个进行中的流式调用占用一个线程直到响应结束，不排队，达到上限时新的流式调用直接失败 */
+    LLM_STREAM("llm-stream", 16, 512, 0, RejectionPolicy.ABORT, true),
+
+    /** 共享HTTP客户端的IO线程：JDK HttpClient 的连接、握手和响应分发，队列满时由提交线程执行，不丢弃 */
+    LLM_HTTP_IO("llm-http-io", 64, 64, 2000, RejectionPolicy.CALLER_RUNS, true),
+
+    /** 同步模型调用的对冲请求：主调用在调用线程执行，只有对冲请求占用线程，不排队，满载时放弃对冲 */
+    LLM_HEDGE("llm-hedge", 2, 32, 0, RejectionPolicy.ABORT, true),
+
+    /** SSE合并发送的定时补发：时间窗口到期时写出缓冲的Token，队列满时由调度线程执行 */
+    SSE_FLUSH("sse-flush", 2, 16, 2000, RejectionPolicy.CALLER_RUNS, true),
+
+    /** 对话轮次写入日志：单个线程按提交顺序批量写文件并刷盘，对话线程只入队；队列满时由提交线程写出，不丢失 */
+    TURN_JOURNAL("turn-journal", 1, 1, 64, RejectionPolicy.CALLER_RUNS, false),
+
+    /** 后台模型调用：会话命名、定时任务等不阻塞用户请求的调用 */
+    BACKGROUND_LLM("background-llm", 4, 8, 200, RejectionPolicy.ABORT, true),
+
+    /** 上下文滚动摘要：每轮对话结束后在后台调用模型合并早期消息，同一会话同时只有一个任务，队列满时放弃，下一轮对话结束后重新触发 */
+    CONTEXT_SUMMARY("context-summary", 4, 4, 500, RejectionPolicy.ABORT, true),
+
+    /** 进程内向量索引构建，计算密集，同时只构建少量数据集，队列满时放弃，下次检索时重试 */
+    MEMORY_INDEX("memory-index", 1, 2, 64, RejectionPolicy.ABORT, false),
+
+    /** 数据集切换量化方式后为存量分片补写量化向量，逐个数据集执行，队列满时放弃，下次检索时重试 */
+    VECTOR_QUANTIZE("vector-quantize", 1, 1, 256, RejectionPolicy.ABORT, false),
+
+    /** 高可用调用结果上报：逐次上报和定时批量发送，队列满时放弃上报，不阻塞对话线程 */
+    HA_REPORT("ha-report", 1, 2, 1000, RejectionPolicy.ABORT, true),
+
+    /** 其他异步领域事件，@Async 的默认执行器 */
+    EVENT("event", 4, 16, 1000, RejectionPolicy.CALLER_RUNS, false);
+
+    /** 线程池名称，同时作为线程名前缀和配置键 */
+    private final String poolName;
+
+    private final int coreSize;
+
+    private final int maxSize;
+
+    private final int queueCapacity;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    /** 是否以等待网络I/O为主，开启虚拟线程时只有此类线程池切换 */
+    private final boolean ioBound;
+
+    WorkloadType(String poolName, int coreSize, int maxSize, int queueCapacity, RejectionPolicy rejectionPolicy,
+            boolean ioBound) {
+        this.poolName = poolName;
+        this.coreSize = coreSize;
+        this.maxSize = maxSize;
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+        this.ioBound = ioBound;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getCoreSize() {
+        return coreSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public boolean isIoBound() {
+        return ioBound;
+    }
+}
@@ -1,12 +1,37 @@
 package org.xhy.infrastructure.config;
 
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
 
-/** 异步配置 启用Spring的异步处理功能，用于异步事件处理 */
+import java.util.concurrent.Executor;
+
+/** 异步配置 启用Spring的异步处理功能，用于异步事件处理
+ *
+ * 默认的 @Async 使用有界的 event 线程池，计费相关的监听器通过 @Async(AsyncConfig.BILLING_EXECUTOR) 使用单独的 billing 线程池。 */
 @Configuration
 @EnableAsync
-public class AsyncConfig {
-    // Spring Boot会自动配置默认的异步执行器
-    // 如果需要自定义线程池，可以在这里配置
-}
\ No newline at end of file
+public class AsyncConfig implements AsyncConfigurer {
+
+    /** 计费事件线程池的Bean名称 */
+    public static final String BILLING_EXECUTOR = "billingExecutor";
+
+    private final ExecutorRegistry executorRegistry;
+
+    public AsyncConfig(ExecutorRegistry executorRegistry) {
+        this.executorRegistry = executorRegistry;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return executorRegistry.get(WorkloadType.EVENT);
+    }
+
+    @Bean(name = BILLING_EXECUTOR)
+    public Executor billingExecutor() {
+        return executorRegistry.get(WorkloadType.BILLING);
+    }
+}
@@ -0,0 +1,49 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xhy.infrastructure.session.ChatSessionRegistry;
+import org.xhy.infrastructure.session.ClusteredChatSessionRegistry;
+import org.xhy.infrastructure.session.LocalChatSessionRegistry;
+import org.xhy.infrastructure.session.RabbitSessionBroadcastChannel;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+/** 对话会话注册表配置，按 chat.session-registry.mode 选择单机或集群实现 */
+@Configuration
+public class ChatSessionRegistryConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "chat.session-registry", name = "mode", havingValue = "local", matchIfMissing = true)
+    public ChatSessionRegistry localChatSessionRegistry() {
+        return new LocalChatSessionRegistry();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "chat.session-registry", name = "mode", havingValue = "cluster")
+    public ClusteredChatSessionRegistry clusteredChatSessionRegistry(ChatSessionRegistryProperties properties,
+            ConnectionFactory connectionFactory, RabbitTemplate rabbitTemplate, AmqpAdmin amqpAdmin) {
+        RabbitSessionBroadcastChannel channel = new RabbitSessionBroadcastChannel(connectionFactory, rabbitTemplate,
+                amqpAdmin);
+        return new ClusteredChatSessionRegistry(resolveNodeId(properties), channel,
+                properties.getInterruptTimeoutMillis(), properties.getOwnershipTtlMinutes());
+    }
+
+    private String resolveNodeId(ChatSessionRegistryProperties properties) {
+        if (properties.getNodeId() != null && !properties.getNodeId().isBlank()) {
+            return properties.getNodeId();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
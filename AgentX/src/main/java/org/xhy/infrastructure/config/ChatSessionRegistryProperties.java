@@ -0,0 +1,54 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 对话会话注册表配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "chat.session-registry")
+public class ChatSessionRegistryProperties {
+
+    /** 注册表模式：local 单机，cluster 基于RabbitMQ的集群模式 */
+    private String mode = "local";
+
+    /** 节点ID，为空时使用主机名加随机后缀 */
+    private String nodeId;
+
+    /** 跨节点中断等待确认的超时时间(毫秒) */
+    private long interruptTimeoutMillis = 2000;
+
+    /** 会话归属记录的过期时间(分钟)，应不小于SSE连接的最长存活时间 */
+    private long ownershipTtlMinutes = 60;
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getInterruptTimeoutMillis() {
+        return interruptTimeoutMillis;
+    }
+
+    public void setInterruptTimeoutMillis(long interruptTimeoutMillis) {
+        this.interruptTimeoutMillis = interruptTimeoutMillis;
+    }
+
+    public long getOwnershipTtlMinutes() {
+        return ownershipTtlMinutes;
+    }
+
+    public void setOwnershipTtlMinutes(long ownershipTtlMinutes) {
+        this.ownershipTtlMinutes = ownershipTtlMinutes;
+    }
+}
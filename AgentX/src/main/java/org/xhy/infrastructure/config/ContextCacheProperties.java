@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 会话上下文缓存配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "conversation.context-cache")
+public class ContextCacheProperties {
+
+    /** 是否启用上下文缓存，关闭后每轮对话都从数据库加载上下文和历史消息 */
+    private boolean enabled = true;
+
+    /** 缓存中活跃消息的总条数上限，按消息条数衡量缓存容量 */
+    private long maxCachedMessages = 200000;
+
+    /** 会话上下文在最后一次访问后的过期时间(分钟) */
+    private long expireMinutes = 30;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMaxCachedMessages() {
+        return maxCachedMessages;
+    }
+
+    public void setMaxCachedMessages(long maxCachedMessages) {
+        this.maxCachedMessages = maxCachedMessages;
+    }
+
+    public long getExpireMinutes() {
+        return expireMinutes;
+    }
+
+    public void setExpireMinutes(long expireMinutes) {
+        this.expireMinutes = expireMinutes;
+    }
+}
@@ -0,0 +1,65 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 嵌入缓存配置属性类，包括查询向量缓存和嵌入模型客户端缓存 */
+@Configuration
+@ConfigurationProperties(prefix = "embedding.cache")
+public class EmbeddingCacheProperties {
+
+    /** 是否缓存查询文本的向量，关闭后每次检索都调用嵌入模型 */
+    private boolean queryEnabled = true;
+
+    /** 查询向量缓存的容量上限(MB)，按向量和文本占用的字节数衡量，超出时淘汰最久未使用的向量 */
+    private long queryMaxSizeMb = 64;
+
+    /** 查询向量写入后的过期时间(分钟)，嵌入模型在同名下升级时旧向量最多保留这么久 */
+    private long queryExpireMinutes = 60;
+
+    /** 缓存的嵌入模型客户端数量上限 */
+    private long maxClients = 64;
+
+    /** 嵌入模型客户端空闲过期时间(分钟) */
+    private long clientIdleExpireMinutes = 30;
+
+    public boolean isQueryEnabled() {
+        return queryEnabled;
+    }
+
+    public void setQueryEnabled(boolean queryEnabled) {
+        this.queryEnabled = queryEnabled;
+    }
+
+    public long getQueryMaxSizeMb() {
+        return queryMaxSizeMb;
+    }
+
+    public void setQueryMaxSizeMb(long queryMaxSizeMb) {
+        this.queryMaxSizeMb = queryMaxSizeMb;
+    }
+
+    public long getQueryExpireMinutes() {
+        return queryExpireMinutes;
+    }
+
+    public void setQueryExpireMinutes(long queryExpireMinutes) {
+        this.queryExpireMinutes = queryExpireMinutes;
+    }
+
+    public long getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(long maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public long getClientIdleExpireMinutes() {
+        return clientIdleExpireMinutes;
+    }
+
+    public void setClientIdleExpireMinutes(long clientIdleExpireMinutes) {
+        this.clientIdleExpireMinutes = clientIdleExpireMinutes;
+    }
+}
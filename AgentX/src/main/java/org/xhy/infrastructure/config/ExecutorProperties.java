@@ -0,0 +1,119 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.xhy.infrastructure.concurrent.RejectionPolicy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** 线程池配置属性类
+ *
+ * 每种负载一个有界线程池，默认参数见 WorkloadType，pools 中按线程池名称覆盖，未配置的字段使用默认值。 */
+@Configuration
+@ConfigurationProperties(prefix = "executor")
+public class ExecutorProperties {
+
+    /** I/O密集的线程池是否使用虚拟线程，需要运行在 Java 21 及以上，否则仍使用平台线程 */
+    private boolean virtualThreads = false;
+
+    /** 空闲线程存活时间(秒) */
+    private long keepAliveSeconds = 60;
+
+    /** 共享定时调度器的线程数，调度器只负责到期触发，实际工作交给对应负载的线程池 */
+    private int schedulerThreads = 2;
+
+    /** 按线程池名称（如 chat-io、retrieval）覆盖的参数 */
+    private Map<String, Pool> pools = new HashMap<>();
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public long getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public void setKeepAliveSeconds(long keepAliveSeconds) {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    public Map<String, Pool> getPools() {
+        return pools;
+    }
+
+    public void setPools(Map<String, Pool> pools) {
+        this.pools = pools;
+    }
+
+    /** 单个线程池的参数，为空的字段使用默认值 */
+    public static class Pool {
+
+        /** 核心线程数 */
+        private Integer coreSize;
+
+        /** 最大线程数，使用虚拟线程时为同时运行的任务数上限 */
+        private Integer maxSize;
+
+        /** 队列容量 */
+        private Integer queueCapacity;
+
+        /** 拒绝策略 */
+        private RejectionPolicy rejectionPolicy;
+
+        /** 是否使用虚拟线程，为空时I/O密集的线程池跟随全局开关 */
+        private Boolean virtualThreads;
+
+        public Integer getCoreSize() {
+            return coreSize;
+        }
+
+        public void setCoreSize(Integer coreSize) {
+            this.coreSize = coreSize;
+        }
+
+        public Integer getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(Integer maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public RejectionPolicy getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+
+        public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        public Boolean getVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(Boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+    }
+}
@@ -26,6 +26,12 @@ public class HighAvailabilityProperties {
     /** 读取超时时间(毫秒)，默认60秒 */
     private int readTimeout = 60000;
 
+    /** 连接池最大连接数 */
+    private int maxConnections = 50;
+
+    /** 连接池每个路由的最大连接数 */
+    private int maxConnectionsPerRoute = 20;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -65,4 +71,20 @@ public class HighAvailabilityProperties {
     public void setReadTimeout(int readTimeout) {
         this.readTimeout = readTimeout;
     }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** 模型调用隔离舱配置属性类
+ *
+ * 每个 (服务商, 上游模型标识) 一个隔离舱，限制同时进行的调用数，并根据观测到的延迟自适应调整上限。 */
+@Configuration
+@ConfigurationProperties(prefix = "llm.bulkhead")
+public class LLMBulkheadProperties {
+
+    /** 是否启用隔离舱 */
+    private boolean enabled = true;
+
+    /** 初始并发上限 */
+    private int initialLimit = 20;
+
+    /** 自适应调整的并发下限 */
+    private int minLimit = 2;
+
+    /** 自适应调整的并发上限 */
+    private int maxLimit = 100;
+
+    /** 达到并发上限后最多排队等待的请求数，超出立即拒绝 */
+    private int maxQueue = 50;
+
+    /** 排队等待的最长时间(毫秒)，超时拒绝 */
+    private long maxWaitMs = 2000;
+
+    /** 延迟容忍倍数：近期延迟超过长期基线的该倍数时开始收紧上限 */
+    private double rttTolerance = 1.5;
+
+    /** 上限调整的平滑系数(0-1]，越大调整越快 */
+    private double smoothing = 0.2;
+
+    /** 调用失败（超时、限流等）时上限的乘性缩减系数 */
+    private double backoffRatio = 0.9;
+
+    /** 隔离舱空闲多久后回收(分钟) */
+    private int idleExpireMinutes = 30;
+
+    /** 按服务商或模型覆盖的最大并发上限，键为服务商ID或 服务商ID:上游模型标识 */
+    private Map<String, Integer> limits = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public void setRttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public int getIdleExpireMinutes() {
+        return idleExpireMinutes;
+    }
+
+    public void setIdleExpireMinutes(int idleExpireMinutes) {
+        this.idleExpireMinutes = idleExpireMinutes;
+    }
+
+    public Map<String, Integer> getLimits() {
+        return limits;
+    }
+
+    public void setLimits(Map<String, Integer> limits) {
+        this.limits = limits;
+    }
+}
@@ -0,0 +1,77 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** LLM客户端池配置属性类 用于控制模型客户端缓存与共享HTTP连接池的参数 */
+@Configuration
+@ConfigurationProperties(prefix = "llm.client")
+public class LLMClientProperties {
+
+    /** 最多缓存的模型客户端数量（流式和非流式分别计算） */
+    private int maxClients = 500;
+
+    /** 客户端空闲多久后被驱逐(分钟) */
+    private int idleExpireMinutes = 30;
+
+    /** 连接超时时间(毫秒) */
+    private int connectTimeout = 30000;
+
+    /** 读取超时时间(毫秒)，流式对话可能持续较长时间，默认1小时 */
+    private long readTimeout = 3600000L;
+
+    /** 是否为稳定的系统提示词和工具定义附加提示词缓存标记（如 Anthropic 的 cache_control），OpenAI 兼容服务按前缀自动缓存 */
+    private boolean promptCache = true;
+
+    /** 是否开放 MOCK 模拟服务商协议，开启后可创建指向进程内模拟服务的服务商，仅用于离线压测 */
+    private boolean mockEnabled = false;
+
+    public boolean isMockEnabled() {
+        return mockEnabled;
+    }
+
+    public void setMockEnabled(boolean mockEnabled) {
+        this.mockEnabled = mockEnabled;
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public int getIdleExpireMinutes() {
+        return idleExpireMinutes;
+    }
+
+    public void setIdleExpireMinutes(int idleExpireMinutes) {
+        this.idleExpireMinutes = idleExpireMinutes;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+
+    public boolean isPromptCache() {
+        return promptCache;
+    }
+
+    public void setPromptCache(boolean promptCache) {
+        this.promptCache = promptCache;
+    }
+}
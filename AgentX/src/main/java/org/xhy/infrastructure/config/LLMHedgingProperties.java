@@ -0,0 +1,101 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 同步模型调用对冲请求配置属性类
+ *
+ * 主调用超过该模型近期延迟的指定分位仍未返回时，向备选实例发出一份相同的请求，先返回的结果生效，另一份被取消。 */
+@Configuration
+@ConfigurationProperties(prefix = "llm.hedging")
+public class LLMHedgingProperties {
+
+    /** 是否启用对冲请求，默认关闭 */
+    private boolean enabled = false;
+
+    /** 触发对冲的延迟分位(0-100) */
+    private double percentile = 95;
+
+    /** 对冲预算：每次主调用积累的对冲额度，0.05表示对冲请求不超过主调用的5% */
+    private double budgetRatio = 0.05;
+
+    /** 对冲额度的累积上限，允许短时突发 */
+    private double maxBudget = 10;
+
+    /** 参与分位计算的最近样本数 */
+    private int windowSize = 200;
+
+    /** 样本数达到该值后才开始对冲 */
+    private int minSamples = 20;
+
+    /** 对冲延迟下限(毫秒)，避免分位过低时频繁对冲 */
+    private long minDelayMs = 100;
+
+    /** 对冲延迟上限(毫秒) */
+    private long maxDelayMs = 30000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    public double getMaxBudget() {
+        return maxBudget;
+    }
+
+    public void setMaxBudget(double maxBudget) {
+        this.maxBudget = maxBudget;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public long getMinDelayMs() {
+        return minDelayMs;
+    }
+
+    public void setMinDelayMs(long minDelayMs) {
+        this.minDelayMs = minDelayMs;
+    }
+
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    public void setMaxDelayMs(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 进程内向量索引配置属性类，小而热的数据集在本机内存建 HNSW 索引，检索不再访问 PostgreSQL */
+@Configuration
+@ConfigurationProperties(prefix = "embedding.memory-index")
+public class MemoryIndexProperties {
+
+    /** 是否启用进程内向量索引 */
+    private boolean enabled = false;
+
+    /** 数据集分片数不超过此值才建内存索引 */
+    private int maxVectorsPerDataset = 50000;
+
+    /** 统计窗口内检索次数达到此值的数据集视为热点，开始建内存索引 */
+    private int minQueriesPerWindow = 20;
+
+    /** 检索次数统计窗口(分钟) */
+    private long accessWindowMinutes = 10;
+
+    /** 所有内存索引合计占用上限(MB)，超出时淘汰最久未检索的数据集 */
+    private long maxMemoryMb = 512;
+
+    /** 内存索引构建后的最长使用时间(分钟)，到期重建，以纳入其他实例写入或删除的分片 */
+    private long maxAgeMinutes = 30;
+
+    /** HNSW 每个节点在上层保留的邻居数 */
+    private int m = 16;
+
+    /** HNSW 构建时候选列表大小 */
+    private int efConstruction = 200;
+
+    /** HNSW 检索时候选列表大小 */
+    private int efSearch = 100;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxVectorsPerDataset() {
+        return maxVectorsPerDataset;
+    }
+
+    public void setMaxVectorsPerDataset(int maxVectorsPerDataset) {
+        this.maxVectorsPerDataset = maxVectorsPerDataset;
+    }
+
+    public int getMinQueriesPerWindow() {
+        return minQueriesPerWindow;
+    }
+
+    public void setMinQueriesPerWindow(int minQueriesPerWindow) {
+        this.minQueriesPerWindow = minQueriesPerWindow;
+    }
+
+    public long getAccessWindowMinutes() {
+        return accessWindowMinutes;
+    }
+
+    public void setAccessWindowMinutes(long accessWindowMinutes) {
+        this.accessWindowMinutes = accessWindowMinutes;
+    }
+
+    public long getMaxMemoryMb() {
+        return maxMemoryMb;
+    }
+
+    public void setMaxMemoryMb(long maxMemoryMb) {
+        this.maxMemoryMb = maxMemoryMb;
+    }
+
+    public long getMaxAgeMinutes() {
+        return maxAgeMinutes;
+    }
+
+    public void setMaxAgeMinutes(long maxAgeMinutes) {
+        this.maxAgeMinutes = maxAgeMinutes;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+}
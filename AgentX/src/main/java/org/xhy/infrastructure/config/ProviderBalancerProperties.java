@@ -0,0 +1,87 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 本地服务商负载均衡配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "high-availability.balancer")
+public class ProviderBalancerProperties {
+
+    /** 是否在本地选择服务商，关闭后每次请求都调用高可用网关选择 */
+    private boolean enabled = true;
+
+    /** 从数据库刷新候选模型、从网关同步实例偏好的间隔(毫秒) */
+    private long syncIntervalMs = 30000;
+
+    /** 指数加权移动平均的平滑系数，越大越偏重最近的调用 */
+    private double ewmaAlpha = 0.2;
+
+    /** 尚无调用记录的实例的预估延迟(毫秒) */
+    private long defaultLatencyMs = 1000;
+
+    /** 连续失败多少次后暂停向该实例分配请求 */
+    private int failureThreshold = 3;
+
+    /** 实例暂停分配的时长(毫秒)，到期后重新参与选择 */
+    private long cooldownMs = 30000;
+
+    /** 网关同步的偏好实例的代价折扣，1表示不参考网关 */
+    private double remotePreferenceDiscount = 0.8;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSyncIntervalMs() {
+        return syncIntervalMs;
+    }
+
+    public void setSyncIntervalMs(long syncIntervalMs) {
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    public void setEwmaAlpha(double ewmaAlpha) {
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    public long getDefaultLatencyMs() {
+        return defaultLatencyMs;
+    }
+
+    public void setDefaultLatencyMs(long defaultLatencyMs) {
+        this.defaultLatencyMs = defaultLatencyMs;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getCooldownMs() {
+        return cooldownMs;
+    }
+
+    public void setCooldownMs(long cooldownMs) {
+        this.cooldownMs = cooldownMs;
+    }
+
+    public double getRemotePreferenceDiscount() {
+        return remotePreferenceDiscount;
+    }
+
+    public void setRemotePreferenceDiscount(double remotePreferenceDiscount) {
+        this.remotePreferenceDiscount = remotePreferenceDiscount;
+    }
+}
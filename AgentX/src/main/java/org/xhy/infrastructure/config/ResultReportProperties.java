@@ -0,0 +1,122 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 高可用网关调用结果上报配置属性类
+ *
+ * 调用结果先在本地按实例、按时间窗口聚合，再批量发送到网关。 */
+@Configuration
+@ConfigurationProperties(prefix = "high-availability.report")
+public class ResultReportProperties {
+
+    /** 是否聚合后批量上报，关闭后每次调用单独上报；网关需提供批量上报接口，不支持时自动改为逐次上报 */
+    private boolean batchEnabled = false;
+
+    /** 聚合窗口长度，即批量发送间隔(毫秒) */
+    private long flushIntervalMs = 5000;
+
+    /** 单个窗口内最多聚合的实例数，超出后丢弃新实例的结果 */
+    private int maxInstances = 5000;
+
+    /** 单次请求最多携带的聚合结果数 */
+    private int maxBatchSize = 200;
+
+    /** 等待发送的批次上限，网关不可用时超出部分丢弃最旧的批次 */
+    private int maxPendingBatches = 50;
+
+    /** 单个批次的最大重试次数 */
+    private int maxRetries = 3;
+
+    /** 发送失败后暂停发送的初始时长(毫秒)，连续失败时翻倍 */
+    private long outageBackoffMs = 5000;
+
+    /** 暂停发送的最长时长(毫秒) */
+    private long maxOutageBackoffMs = 60000;
+
+    /** 上报请求的连接超时时间(毫秒) */
+    private int connectTimeout = 2000;
+
+    /** 上报请求的读取超时时间(毫秒) */
+    private int readTimeout = 5000;
+
+    public boolean isBatchEnabled() {
+        return batchEnabled;
+    }
+
+    public void setBatchEnabled(boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        this.maxInstances = maxInstances;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+
+    public void setMaxPendingBatches(int maxPendingBatches) {
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getOutageBackoffMs() {
+        return outageBackoffMs;
+    }
+
+    public void setOutageBackoffMs(long outageBackoffMs) {
+        this.outageBackoffMs = outageBackoffMs;
+    }
+
+    public long getMaxOutageBackoffMs() {
+        return maxOutageBackoffMs;
+    }
+
+    public void setMaxOutageBackoffMs(long maxOutageBackoffMs) {
+        this.maxOutageBackoffMs = maxOutageBackoffMs;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+}
@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** SSE Token合并发送配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "transport.sse.coalescing")
+public class SseCoalescingProperties {
+
+    /** 是否启用合并发送，关闭时每个Token一个事件 */
+    private boolean enabled = true;
+
+    /** 合并时间窗口(毫秒) */
+    private long windowMillis = 30;
+
+    /** 缓冲字节阈值，达到后立即发送 */
+    private int maxBytes = 512;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+}
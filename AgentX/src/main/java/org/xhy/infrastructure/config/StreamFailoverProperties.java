@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 流式对话故障转移配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "llm.failover")
+public class StreamFailoverProperties {
+
+    /** 是否在首Token前调用失败时切换到降级链中的下一个模型 */
+    private boolean enabled = true;
+
+    /** 单次对话最多尝试的模型数（含首次） */
+    private int maxAttempts = 3;
+
+    /** 等待首Token的超时时间(毫秒)，超时视为本次尝试失败，0表示不限制 */
+    private long firstTokenTimeoutMs = 30000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getFirstTokenTimeoutMs() {
+        return firstTokenTimeoutMs;
+    }
+
+    public void setFirstTokenTimeoutMs(long firstTokenTimeoutMs) {
+        this.firstTokenTimeoutMs = firstTokenTimeoutMs;
+    }
+}
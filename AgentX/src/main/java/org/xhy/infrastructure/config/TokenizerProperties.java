@@ -0,0 +1,33 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 本地分词器配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "llm.tokenizer")
+public class TokenizerProperties {
+
+    /** 是否使用本地BPE词表计数，关闭或词表缺失时按字符数估算 */
+    private boolean enabled = true;
+
+    /** 词表文件目录，存放 cl100k_base.tiktoken、o200k_base.tiktoken；为空或文件不存在时从类路径 tokenizer/ 下加载，
+     * 都没有时按字符数估算 */
+    private String vocabularyDir = "";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getVocabularyDir() {
+        return vocabularyDir;
+    }
+
+    public void setVocabularyDir(String vocabularyDir) {
+        this.vocabularyDir = vocabularyDir;
+    }
+}
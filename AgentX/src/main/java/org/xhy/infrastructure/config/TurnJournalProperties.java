@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/** 对话轮次写入日志配置属性类 */
+@Configuration
+@ConfigurationProperties(prefix = "conversation.turn-journal")
+public class TurnJournalProperties {
+
+    /** 是否启用写入日志，关闭后进程崩溃时尚未提交的对话轮次会丢失 */
+    private boolean enabled = true;
+
+    /** 日志文件目录，每个未提交的对话轮次对应一个文件 */
+    private String directory = "./data/turn-journal";
+
+    /** 每批记录写出后是否强制刷盘 */
+    private boolean fsync = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+}
@@ -0,0 +1,38 @@
+package org.xhy.infrastructure.converter;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.xhy.domain.rag.constant.VectorQuantization;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/** VectorQuantization枚举类型转换器 */
+public class VectorQuantizationConverter extends BaseTypeHandler<VectorQuantization> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, VectorQuantization parameter, JdbcType jdbcType)
+            throws SQLException {
+        ps.setString(i, parameter.getCode());
+    }
+
+    @Override
+    public VectorQuantization getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        String code = rs.getString(columnName);
+        return code == null ? null : VectorQuantization.fromCodeOrDefault(code, VectorQuantization.NONE);
+    }
+
+    @Override
+    public VectorQuantization getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        String code = rs.getString(columnIndex);
+        return code == null ? null : VectorQuantization.fromCodeOrDefault(code, VectorQuantization.NONE);
+    }
+
+    @Override
+    public VectorQuantization getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        String code = cs.getString(columnIndex);
+        return code == null ? null : VectorQuantization.fromCodeOrDefault(code, VectorQuantization.NONE);
+    }
+}
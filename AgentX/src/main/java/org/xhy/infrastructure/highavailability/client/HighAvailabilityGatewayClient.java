@@ -1,5 +1,7 @@
 package org.xhy.infrastructure.highavailability.client;
 
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpPost;
@@ -7,27 +9,32 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.xhy.infrastructure.config.HighAvailabilityProperties;
+import org.xhy.infrastructure.config.ResultReportProperties;
 import org.xhy.infrastructure.exception.BusinessException;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceBatchCreateRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceBatchDeleteRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceCreateRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceUpdateRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ProjectCreateRequest;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultBatchRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ReportResultRequest;
 import org.xhy.infrastructure.highavailability.dto.request.SelectInstanceRequest;
 import org.xhy.infrastructure.highavailability.dto.response.ApiInstanceDTO;
 import org.xhy.infrastructure.highavailability.dto.response.GatewayResult;
 import org.xhy.infrastructure.utils.JsonUtils;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import java.io.IOException;
 import java.net.URI;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /** 高可用网关HTTP客户端 负责与高可用网关进行HTTP通信
  * 
@@ -41,9 +48,25 @@ public class HighAvailabilityGatewayClient {
     private final HighAvailabilityProperties properties;
     private final CloseableHttpClient httpClient;
 
-    public HighAvailabilityGatewayClient(HighAvailabilityProperties properties) {
+    /** 调用结果上报使用的请求配置，超时比管理类请求更短 */
+    private final RequestConfig reportRequestConfig;
+
+    public HighAvailabilityGatewayClient(HighAvailabilityProperties properties,
+            ResultReportProperties reportProperties) {
         this.properties = properties;
-        this.httpClient = HttpClients.createDefault();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(properties.getConnectTimeout())
+                .setConnectionRequestTimeout(properties.getConnectTimeout())
+                .setSocketTimeout(properties.getReadTimeout()).build();
+        this.httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+                .evictIdleConnections(60, TimeUnit.SECONDS).build();
+        this.reportRequestConfig = RequestConfig.custom().setConnectTimeout(reportProperties.getConnectTimeout())
+                .setConnectionRequestTimeout(reportProperties.getConnectTimeout())
+                .setSocketTimeout(reportProperties.getReadTimeout()).build();
     }
 
     /** 选择最佳API实例 */
@@ -112,12 +135,14 @@ public class HighAvailabilityGatewayClient {
             httpPost.setHeader("Content-Type", "application/json");
             httpPost.setHeader("api-key", properties.getApiKey());
 
+            httpPost.setConfig(reportRequestConfig);
+
             String jsonRequest = JsonUtils.toJsonString(request);
             httpPost.setEntity(new StringEntity(jsonRequest, StandardCharsets.UTF_8));
 
             try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
                 if (response.getStatusLine().getStatusCode() != 200) {
-                    String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
                     logger.warn("上报调用结果失败，响应码: {}, 响应体: {}", response.getStatusLine().getStatusCode(), responseBody);
                 }
             }
@@ -128,6 +153,34 @@ public class HighAvailabilityGatewayClient {
         }
     }
 
+    /** 批量上报聚合后的调用结果
+     * 
+     * 与其他方法不同，失败时不在这里吞掉异常，由调用方根据响应码和异常决定重试或丢弃
+     * 
+     * @return 网关响应码
+     * @throws IOException 连接失败、超时等网络异常 */
+    public int reportResults(ReportResultBatchRequest request) throws IOException {
+        String url = properties.getGatewayUrl() + "/gateway/report-result/batch";
+
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("Content-Type", "application/json");
+        httpPost.setHeader("api-key", properties.getApiKey());
+        httpPost.setConfig(reportRequestConfig);
+
+        String jsonRequest = JsonUtils.toJsonString(request);
+        httpPost.setEntity(new StringEntity(jsonRequest, StandardCharsets.UTF_8));
+
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            // 读完响应体，连接才能归还连接池复用
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 200) {
+                logger.warn("批量上报调用结果失败，响应码: {}, 响应体: {}", statusCode, responseBody);
+            }
+            return statusCode;
+        }
+    }
+
     /** 创建API实例 */
     public void createApiInstance(ApiInstanceCreateRequest request) {
         if (!properties.isEnabled()) {
@@ -366,4 +419,13 @@ public class HighAvailabilityGatewayClient {
             // 删除失败不抛异常，避免影响主流程
         }
     }
-}
\ No newline at end of file
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("关闭高可用网关HTTP客户端失败", e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.xhy.infrastructure.highavailability.dto.request;
+
+import java.util.List;
+import java.util.Map;
+
+/** 聚合后的调用结果，一个实例在一个时间窗口内的调用统计
+ * 
+ * @author xhy
+ * @since 1.0.0 */
+public class ReportResultAggregate {
+
+    /** API实例ID */
+    private String instanceId;
+
+    /** 业务ID */
+    private String businessId;
+
+    /** 窗口开始时间戳 */
+    private Long windowStart;
+
+    /** 窗口结束时间戳 */
+    private Long windowEnd;
+
+    /** 调用次数 */
+    private Long totalCount;
+
+    /** 成功次数 */
+    private Long successCount;
+
+    /** 失败次数 */
+    private Long failureCount;
+
+    /** 总延迟（毫秒） */
+    private Long latencySumMs;
+
+    /** 最大延迟（毫秒） */
+    private Long maxLatencyMs;
+
+    /** 延迟直方图各桶上界（毫秒），最后一个桶没有上界 */
+    private List<Long> latencyBucketBoundsMs;
+
+    /** 延迟直方图各桶计数，比上界多一个 */
+    private List<Long> latencyBucketCounts;
+
+    /** 错误类型 -> 次数 */
+    private Map<String, Long> errorTypes;
+
+    /** 窗口内最后一次错误信息 */
+    private String lastErrorMessage;
+
+    public ReportResultAggregate() {
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public String getBusinessId() {
+        return businessId;
+    }
+
+    public void setBusinessId(String businessId) {
+        this.businessId = businessId;
+    }
+
+    public Long getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(Long windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public Long getWindowEnd() {
+        return windowEnd;
+    }
+
+    public void setWindowEnd(Long windowEnd) {
+        this.windowEnd = windowEnd;
+    }
+
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Long getSuccessCount() {
+        return successCount;
+    }
+
+    public void setSuccessCount(Long successCount) {
+        this.successCount = successCount;
+    }
+
+    public Long getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(Long failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public Long getLatencySumMs() {
+        return latencySumMs;
+    }
+
+    public void setLatencySumMs(Long latencySumMs) {
+        this.latencySumMs = latencySumMs;
+    }
+
+    public Long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public void setMaxLatencyMs(Long maxLatencyMs) {
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    public List<Long> getLatencyBucketBoundsMs() {
+        return latencyBucketBoundsMs;
+    }
+
+    public void setLatencyBucketBoundsMs(List<Long> latencyBucketBoundsMs) {
+        this.latencyBucketBoundsMs = latencyBucketBoundsMs;
+    }
+
+    public List<Long> getLatencyBucketCounts() {
+        return latencyBucketCounts;
+    }
+
+    public void setLatencyBucketCounts(List<Long> latencyBucketCounts) {
+        this.latencyBucketCounts = latencyBucketCounts;
+    }
+
+    public Map<String, Long> getErrorTypes() {
+        return errorTypes;
+    }
+
+    public void setErrorTypes(Map<String, Long> errorTypes) {
+        this.errorTypes = errorTypes;
+    }
+
+    public String getLastErrorMessage() {
+        return lastErrorMessage;
+    }
+
+    public void setLastErrorMessage(String lastErrorMessage) {
+        this.lastErrorMessage = lastErrorMessage;
+    }
+}
@@ -0,0 +1,28 @@
+package org.xhy.infrastructure.highavailability.dto.request;
+
+import java.util.List;
+
+/** 批量上报调用结果请求
+ * 
+ * @author xhy
+ * @since 1.0.0 */
+public class ReportResultBatchRequest {
+
+    /** 聚合后的调用结果列表 */
+    private List<ReportResultAggregate> results;
+
+    public ReportResultBatchRequest() {
+    }
+
+    public ReportResultBatchRequest(List<ReportResultAggregate> results) {
+        this.results = results;
+    }
+
+    public List<ReportResultAggregate> getResults() {
+        return results;
+    }
+
+    public void setResults(List<ReportResultAggregate> results) {
+        this.results = results;
+    }
+}
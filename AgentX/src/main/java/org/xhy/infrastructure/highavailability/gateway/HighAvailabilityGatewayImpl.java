@@ -10,6 +10,7 @@ import org.xhy.infrastructure.highavailability.dto.request.ReportResultRequest;
 import org.xhy.infrastructure.highavailability.dto.request.SelectInstanceRequest;
 import org.xhy.infrastructure.highavailability.dto.request.ApiInstanceBatchDeleteRequest;
 import org.xhy.infrastructure.highavailability.dto.response.ApiInstanceDTO;
+import org.xhy.infrastructure.highavailability.report.CallResultReporter;
 
 import java.util.List;
 
@@ -21,9 +22,12 @@ import java.util.List;
 public class HighAvailabilityGatewayImpl implements HighAvailabilityGateway {
 
     private final HighAvailabilityGatewayClient gatewayClient;
+    private final CallResultReporter resultReporter;
 
-    public HighAvailabilityGatewayImpl(HighAvailabilityGatewayClient gatewayClient) {
+    public HighAvailabilityGatewayImpl(HighAvailabilityGatewayClient gatewayClient,
+            CallResultReporter resultReporter) {
         this.gatewayClient = gatewayClient;
+        this.resultReporter = resultReporter;
     }
 
     @Override
@@ -48,7 +52,8 @@ public class HighAvailabilityGatewayImpl implements HighAvailabilityGateway {
 
     @Override
     public void reportResult(ReportResultRequest request) {
-        gatewayClient.reportResult(request);
+        // 先在本地聚合，由后台批量发送
+        resultReporter.record(request);
     }
 
     @Override
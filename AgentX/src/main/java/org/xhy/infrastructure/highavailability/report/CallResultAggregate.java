@@ -0,0 +1,105 @@
+package org.xhy.infrastructure.highavailability.report;
+
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultAggregate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 单个实例在一个窗口内的调用统计，内存占用固定：直方图桶数固定，错误类型数有上限 */
+class CallResultAggregate {
+
+    /** 延迟直方图各桶上界(毫秒)，超过最后一个上界的计入溢出桶 */
+    static final long[] LATENCY_BUCKET_BOUNDS_MS = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    /** 单个窗口内最多区分的错误类型数，超出的计入OTHER */
+    private static final int MAX_ERROR_TYPES = 16;
+
+    private static final String OTHER_ERROR_TYPE = "OTHER";
+
+    /** 错误信息最多保留的长度 */
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 500;
+
+    private final String instanceId;
+
+    private final String businessId;
+
+    private final long windowStart;
+
+    private final long[] bucketCounts = new long[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+
+    private final Map<String, Long> errorTypes = new HashMap<>();
+
+    private long successCount;
+
+    private long failureCount;
+
+    private long latencySumMs;
+
+    private long maxLatencyMs;
+
+    private String lastErrorMessage;
+
+    CallResultAggregate(String instanceId, String businessId, long windowStart) {
+        this.instanceId = instanceId;
+        this.businessId = businessId;
+        this.windowStart = windowStart;
+    }
+
+    synchronized void record(boolean success, long latencyMs, String errorType, String errorMessage) {
+        long latency = Math.max(0, latencyMs);
+        if (success) {
+            successCount++;
+        } else {
+            failureCount++;
+            String type = errorTypes.containsKey(errorType) || errorTypes.size() < MAX_ERROR_TYPES
+                    ? errorType
+                    : OTHER_ERROR_TYPE;
+            errorTypes.merge(type, 1L, Long::sum);
+            if (errorMessage != null) {
+                lastErrorMessage = errorMessage.length() > MAX_ERROR_MESSAGE_LENGTH
+                        ? errorMessage.substring(0, MAX_ERROR_MESSAGE_LENGTH)
+                        : errorMessage;
+            }
+        }
+        latencySumMs += latency;
+        maxLatencyMs = Math.max(maxLatencyMs, latency);
+        bucketCounts[bucketIndex(latency)]++;
+    }
+
+    synchronized ReportResultAggregate toRequest(long windowEnd) {
+        ReportResultAggregate aggregate = new ReportResultAggregate();
+        aggregate.setInstanceId(instanceId);
+        aggregate.setBusinessId(businessId);
+        aggregate.setWindowStart(windowStart);
+        aggregate.setWindowEnd(windowEnd);
+        aggregate.setTotalCount(successCount + failureCount);
+        aggregate.setSuccessCount(successCount);
+        aggregate.setFailureCount(failureCount);
+        aggregate.setLatencySumMs(latencySumMs);
+        aggregate.setMaxLatencyMs(maxLatencyMs);
+        List<Long> bounds = new ArrayList<>(LATENCY_BUCKET_BOUNDS_MS.length);
+        for (long bound : LATENCY_BUCKET_BOUNDS_MS) {
+            bounds.add(bound);
+        }
+        aggregate.setLatencyBucketBoundsMs(bounds);
+        List<Long> counts = new ArrayList<>(bucketCounts.length);
+        for (long count : bucketCounts) {
+            counts.add(count);
+        }
+        aggregate.setLatencyBucketCounts(counts);
+        aggregate.setErrorTypes(new HashMap<>(errorTypes));
+        aggregate.setLastErrorMessage(lastErrorMessage);
+        return aggregate;
+    }
+
+    private static int bucketIndex(long latencyMs) {
+        for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MS.length; i++) {
+            if (latencyMs <= LATENCY_BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKET_BOUNDS_MS.length;
+    }
+}
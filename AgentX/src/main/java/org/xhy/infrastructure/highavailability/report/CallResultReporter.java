@@ -0,0 +1,323 @@
+package org.xhy.infrastructure.highavailability.report;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.ManagedExecutor;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.HighAvailabilityProperties;
+import org.xhy.infrastructure.config.ResultReportProperties;
+import org.xhy.infrastructure.highavailability.client.HighAvailabilityGatewayClient;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultAggregate;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultBatchRequest;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** 调用结果上报缓冲区
+ *
+ * 调用结果按实例在内存中聚合成窗口统计（次数、延迟直方图、错误类型），由上报线程池定期批量发送到网关。
+ * 记录结果只更新内存，不做任何IO，不会阻塞对话线程。
+ * 内存有上限：窗口内的实例数和等待发送的批次数都有上限，超出时丢弃并计数。
+ * 网关不可用时按指数退避暂停发送，期间只聚合不发送，恢复后继续发送积压的批次。
+ * 网关没有批量上报接口（404/405）时改为逐次上报；关闭批量上报或逐次上报时同样在上报线程池中发送，队列满时丢弃并计数。 */
+@Component
+public class CallResultReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallResultReporter.class);
+
+    private final HighAvailabilityProperties properties;
+    private final ResultReportProperties reportProperties;
+    private final HighAvailabilityGatewayClient client;
+
+    /** 保护窗口切换：记录结果时持有读锁，切换窗口时持有写锁 */
+    private final ReentrantReadWriteLock windowLock = new ReentrantReadWriteLock();
+
+    private Map<String, CallResultAggregate> window = new ConcurrentHashMap<>();
+
+    private long windowStart = System.currentTimeMillis();
+
+    /** 等待发送的批次，只在发送线程中访问 */
+    private final Deque<PendingBatch> pendingBatches = new ArrayDeque<>();
+
+    /** 暂停发送的截止时间 */
+    private long pausedUntil;
+
+    private int consecutiveSendFailures;
+
+    private final AtomicLong droppedResults = new AtomicLong();
+
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    /** 网关没有批量上报接口，已改为逐次上报 */
+    private volatile boolean batchUnsupported;
+
+    /** 已提交但尚未执行完的定时发送，避免网关响应慢时发送任务在队列中堆积 */
+    private final AtomicBoolean flushSubmitted = new AtomicBoolean(false);
+
+    private final ManagedExecutor reportExecutor;
+
+    public CallResultReporter(HighAvailabilityProperties properties, ResultReportProperties reportProperties,
+            HighAvailabilityGatewayClient client, ExecutorRegistry executorRegistry) {
+        this.properties = properties;
+        this.reportProperties = reportProperties;
+        this.client = client;
+        this.reportExecutor = executorRegistry.get(WorkloadType.HA_REPORT);
+    }
+
+    /** 记录一次调用结果
+     *
+     * 关闭批量上报或网关不支持批量上报时每次调用单独发送，在上报线程池中执行 */
+    public void record(ReportResultRequest request) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (!isBatching()) {
+            try {
+                reportExecutor.execute(() -> client.reportResult(request));
+            } catch (RejectedExecutionException e) {
+                droppedResults.incrementAndGet();
+            }
+            return;
+        }
+
+        boolean success = Boolean.TRUE.equals(request.getSuccess());
+        long latency = request.getLatencyMs() == null ? 0 : request.getLatencyMs();
+        String errorType = success ? null : classifyError(request.getErrorType(), request.getErrorMessage());
+        String key = request.getInstanceId() + "|" + request.getBusinessId();
+
+        windowLock.readLock().lock();
+        try {
+            CallResultAggregate aggregate = window.get(key);
+            if (aggregate == null) {
+                if (window.size() >= reportProperties.getMaxInstances()) {
+                    droppedResults.incrementAndGet();
+                    return;
+                }
+                aggregate = window.computeIfAbsent(key,
+                        k -> new CallResultAggregate(request.getInstanceId(), request.getBusinessId(), windowStart));
+            }
+            aggregate.record(success, latency, errorType, request.getErrorMessage());
+        } finally {
+            windowLock.readLock().unlock();
+        }
+    }
+
+    /** 定时结束窗口，发送在上报线程池中执行，不占用共享的调度线程 */
+    @Scheduled(fixedDelayString = "${high-availability.report.flush-interval-ms:5000}",
+            initialDelayString = "${high-availability.report.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        if (!properties.isEnabled() || !isBatching() || !flushSubmitted.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            reportExecutor.execute(() -> {
+                try {
+                    flushSafely();
+                } finally {
+                    flushSubmitted.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            flushSubmitted.set(false);
+        }
+    }
+
+    /** 结束当前窗口并发送积压的批次；网关暂停期间只结束窗口 */
+    public synchronized void flush() {
+        long now = System.currentTimeMillis();
+        List<ReportResultAggregate> aggregates = drainWindow(now);
+        if (batchUnsupported) {
+            // 改为逐次上报前已聚合的结果无法再拆分
+            droppedResults.addAndGet(aggregates.size());
+            return;
+        }
+        enqueue(aggregates);
+
+        if (now < pausedUntil) {
+            return;
+        }
+        while (!pendingBatches.isEmpty()) {
+            PendingBatch batch = pendingBatches.peekFirst();
+            SendOutcome outcome = send(batch);
+            if (outcome == SendOutcome.UNSUPPORTED) {
+                batchUnsupported = true;
+                droppedBatches.addAndGet(pendingBatches.size());
+                logger.warn("高可用网关不支持批量上报接口，改为逐次上报调用结果: 丢弃批次={}", pendingBatches.size());
+                pendingBatches.clear();
+                return;
+            }
+            if (outcome == SendOutcome.RETRY) {
+                batch.attempts++;
+                if (batch.attempts > reportProperties.getMaxRetries()) {
+                    pendingBatches.pollFirst();
+                    droppedBatches.incrementAndGet();
+                }
+                pause();
+                return;
+            }
+            pendingBatches.pollFirst();
+            consecutiveSendFailures = 0;
+        }
+    }
+
+    /** 是否聚合后批量上报 */
+    public boolean isBatching() {
+        return reportProperties.isBatchEnabled() && !batchUnsupported;
+    }
+
+    /** 等待发送的批次数 */
+    public synchronized int getPendingBatchCount() {
+        return pendingBatches.size();
+    }
+
+    /** 因窗口内实例数超限、上报队列已满或改为逐次上报而丢弃的结果数，改为逐次上报时按实例聚合结果计数 */
+    public long getDroppedResultCount() {
+        return droppedResults.get();
+    }
+
+    /** 因积压超限或重试耗尽而丢弃的批次数 */
+    public long getDroppedBatchCount() {
+        return droppedBatches.get();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (properties.isEnabled() && isBatching()) {
+            // 停机前尽量发出最后一个窗口
+            flushSafely();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("批量上报调用结果异常", e);
+        }
+    }
+
+    private List<ReportResultAggregate> drainWindow(long now) {
+        Map<String, CallResultAggregate> drained;
+        long start;
+        windowLock.writeLock().lock();
+        try {
+            drained = window;
+            start = windowStart;
+            window = new ConcurrentHashMap<>();
+            windowStart = now;
+        } finally {
+            windowLock.writeLock().unlock();
+        }
+        List<ReportResultAggregate> aggregates = new ArrayList<>(drained.size());
+        for (CallResultAggregate aggregate : drained.values()) {
+            aggregates.add(aggregate.toRequest(now));
+        }
+        if (!aggregates.isEmpty()) {
+            logger.debug("调用结果窗口结束: 实例数={}, 窗口={}ms", aggregates.size(), now - start);
+        }
+        return aggregates;
+    }
+
+    private void enqueue(List<ReportResultAggregate> aggregates) {
+        int batchSize = Math.max(1, reportProperties.getMaxBatchSize());
+        for (int from = 0; from < aggregates.size(); from += batchSize) {
+            List<ReportResultAggregate> results = new ArrayList<>(
+                    aggregates.subList(from, Math.min(aggregates.size(), from + batchSize)));
+            pendingBatches.addLast(new PendingBatch(results));
+        }
+        while (pendingBatches.size() > reportProperties.getMaxPendingBatches()) {
+            // 积压超限时丢弃最旧的批次，优先保留最近的统计
+            pendingBatches.pollFirst();
+            long dropped = droppedBatches.incrementAndGet();
+            logger.warn("调用结果积压超限，丢弃最旧批次: 累计丢弃={}", dropped);
+        }
+    }
+
+    private SendOutcome send(PendingBatch batch) {
+        try {
+            int statusCode = client.reportResults(new ReportResultBatchRequest(batch.results));
+            if (statusCode == 200) {
+                return SendOutcome.SENT;
+            }
+            if (statusCode == 429 || statusCode >= 500) {
+                return SendOutcome.RETRY;
+            }
+            if (statusCode == 404 || statusCode == 405) {
+                return SendOutcome.UNSUPPORTED;
+            }
+            // 其他4xx重发也不会成功
+            droppedBatches.incrementAndGet();
+            return SendOutcome.REJECTED;
+        } catch (Exception e) {
+            logger.warn("批量上报调用结果失败: {}", e.getMessage());
+            return SendOutcome.RETRY;
+        }
+    }
+
+    /** 从发送失败时起计算暂停时长，发送本身耗时较长时暂停不会提前结束 */
+    private void pause() {
+        long now = System.currentTimeMillis();
+        consecutiveSendFailures++;
+        long backoff = reportProperties.getOutageBackoffMs() << Math.min(consecutiveSendFailures - 1, 20);
+        pausedUntil = now + Math.min(backoff, reportProperties.getMaxOutageBackoffMs());
+        logger.warn("高可用网关不可用，暂停上报调用结果{}ms: 积压批次={}", pausedUntil - now, pendingBatches.size());
+    }
+
+    /** 将错误归类，使聚合后的错误类型数量有限 */
+    static String classifyError(String errorType, String errorMessage) {
+        if (errorType != null && !errorType.isBlank()) {
+            return errorType;
+        }
+        if (errorMessage == null) {
+            return "UNKNOWN";
+        }
+        String message = errorMessage.toLowerCase(Locale.ROOT);
+        if (message.contains("timeout") || message.contains("timed out") || message.contains("超时")) {
+            return "TIMEOUT";
+        }
+        if (message.contains("429") || message.contains("rate limit") || message.contains("too many requests")) {
+            return "RATE_LIMIT";
+        }
+        if (message.contains("401") || message.contains("403") || message.contains("unauthorized")
+                || message.contains("api key")) {
+            return "AUTH";
+        }
+        if (message.contains("connect") || message.contains("connection") || message.contains("reset")) {
+            return "NETWORK";
+        }
+        if (message.contains("500") || message.contains("502") || message.contains("503")
+                || message.contains("504")) {
+            return "SERVER";
+        }
+        return "OTHER";
+    }
+
+    private enum SendOutcome {
+        SENT, REJECTED, RETRY, UNSUPPORTED
+    }
+
+    private static final class PendingBatch {
+
+        private final List<ReportResultAggregate> results;
+
+        private int attempts;
+
+        private PendingBatch(List<ReportResultAggregate> results) {
+            this.results = results;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.xhy.infrastructure.initializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.conversation.service.MessageDomainService;
+
+/** 对话轮次恢复初始化器 在应用启动时将上次进程退出前未提交的对话轮次从写入日志写入数据库 */
+@Component
+@Order(10)
+public class TurnJournalRecoveryInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(TurnJournalRecoveryInitializer.class);
+
+    private final MessageDomainService messageDomainService;
+
+    public TurnJournalRecoveryInitializer(MessageDomainService messageDomainService) {
+        this.messageDomainService = messageDomainService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int recovered = messageDomainService.recoverPendingTurns();
+            if (recovered > 0) {
+                log.info("已恢复{}个未提交的对话轮次", recovered);
+            }
+        } catch (Exception e) {
+            log.error("恢复未提交的对话轮次失败", e);
+            // 不抛出异常，避免影响应用启动
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.xhy.infrastructure.journal;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.TurnJournalProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** 对话轮次写入日志
+ *
+ * 每个尚未提交到数据库的对话轮次对应一个文件，每行一条记录，按写入顺序追加；轮次提交后删除文件。
+ * 进程崩溃后残留的文件即为需要恢复的轮次。写日志失败只记录错误，不影响对话本身。
+ *
+ * 对话线程只把记录放入队列，由单个写入线程按入队顺序批量写出：一批中同一文件只打开和刷盘一次，
+ * 写入线程忙于刷盘期间到达的记录合并到下一批。删除也经过队列，保证不会被之后写出的旧记录重新创建。
+ * 进程崩溃时最后一批尚未写出的记录会丢失，恢复时该轮次少了最后几条写入。 */
+@Component
+public class TurnJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnJournal.class);
+
+    private static final String SUFFIX = ".journal";
+
+    private final TurnJournalProperties properties;
+
+    private final Path directory;
+
+    private final Executor writer;
+
+    /** 待写出的追加和删除，按入队顺序 */
+    private final Queue<Operation> pending = new ConcurrentLinkedQueue<>();
+
+    /** 是否已有写出任务等待执行，避免每条记录提交一个任务 */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    public TurnJournal(TurnJournalProperties properties, ExecutorRegistry executorRegistry) {
+        this.properties = properties;
+        this.directory = Paths.get(properties.getDirectory());
+        this.writer = executorRegistry.get(WorkloadType.TURN_JOURNAL);
+    }
+
+    /** 追加一条记录，异步写出
+     * @param turnId 轮次ID
+     * @param record 单行记录，不能包含换行 */
+    public void append(String turnId, String record) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        pending.add(new Operation(turnId, (record + "\n").getBytes(StandardCharsets.UTF_8)));
+        scheduleDrain();
+    }
+
+    /** 轮次已提交，在该轮次已入队的记录之后删除日志 */
+    public void complete(String turnId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        pending.add(new Operation(turnId, null));
+        scheduleDrain();
+    }
+
+    /** 在当前线程写出所有已入队的记录，返回时此前入队的追加和删除均已完成 */
+    @PreDestroy
+    public void flush() {
+        drain();
+    }
+
+    /** 读取所有未提交轮次的记录，按文件修改时间排序；末尾未写完整的一行会被忽略
+     * @return 轮次ID到记录列表的映射 */
+    public Map<String, List<String>> loadPending() {
+        Map<String, List<String>> pending = new LinkedHashMap<>();
+        if (!properties.isEnabled() || !Files.isDirectory(directory)) {
+            return pending;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.error("读取对话轮次日志目录失败: {}", e.getMessage());
+            return pending;
+        }
+        for (Path path : files) {
+            String fileName = path.getFileName().toString();
+            String turnId = fileName.substring(0, fileName.length() - SUFFIX.length());
+            try {
+                String content = Files.readString(path, StandardCharsets.UTF_8);
+                List<String> records = new ArrayList<>();
+                int start = 0;
+                int end;
+                while ((end = content.indexOf('\n', start)) >= 0) {
+                    if (end > start) {
+                        records.add(content.substring(start, end));
+                    }
+                    start = end + 1;
+                }
+                pending.put(turnId, records);
+            } catch (IOException e) {
+                logger.error("读取对话轮次日志失败 - 轮次: {}, 错误: {}", turnId, e.getMessage());
+            }
+        }
+        return pending;
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，由当前线程写出
+            drain();
+        }
+    }
+
+    /** 取出队列中的全部操作作为一批写出；同一时间只有一个线程写出，保证文件内记录顺序与入队顺序一致 */
+    private synchronized void drain() {
+        // 先清除标记再取队列，取队列期间入队的记录会触发下一次写出
+        drainScheduled.set(false);
+        Map<String, ByteArrayOutputStream> batch = new LinkedHashMap<>();
+        Operation operation;
+        while ((operation = pending.poll()) != null) {
+            if (operation.line == null) {
+                // 轮次已提交，本批中尚未写出的记录无需再写
+                batch.remove(operation.turnId);
+                delete(operation.turnId);
+            } else {
+                batch.computeIfAbsent(operation.turnId, k -> new ByteArrayOutputStream())
+                        .writeBytes(operation.line);
+            }
+        }
+        for (Map.Entry<String, ByteArrayOutputStream> entry : batch.entrySet()) {
+            write(entry.getKey(), entry.getValue().toByteArray());
+        }
+    }
+
+    private void write(String turnId, byte[] lines) {
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(file(turnId), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (properties.isFsync()) {
+                    channel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("写入对话轮次日志失败 - 轮次: {}, 错误: {}", turnId, e.getMessage());
+        }
+    }
+
+    private void delete(String turnId) {
+        try {
+            Files.deleteIfExists(file(turnId));
+        } catch (IOException e) {
+            logger.error("删除对话轮次日志失败 - 轮次: {}, 错误: {}", turnId, e.getMessage());
+        }
+    }
+
+    private Path file(String turnId) {
+        return directory.resolve(turnId + SUFFIX);
+    }
+
+    /** 待写出的操作，line 为空时表示删除 */
+    private static final class Operation {
+
+        private final String turnId;
+
+        private final byte[] line;
+
+        private Operation(String turnId, byte[] line) {
+            this.turnId = turnId;
+            this.line = line;
+        }
+    }
+}
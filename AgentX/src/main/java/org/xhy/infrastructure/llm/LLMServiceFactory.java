@@ -1,28 +1,83 @@
 package org.xhy.infrastructure.llm;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.xhy.domain.llm.event.ProviderChangedEvent;
 import org.xhy.domain.llm.model.ModelEntity;
 import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.LLMClientProperties;
+import org.xhy.infrastructure.llm.bulkhead.AdaptiveBulkhead;
+import org.xhy.infrastructure.llm.bulkhead.BulkheadChatModel;
+import org.xhy.infrastructure.llm.bulkhead.ProviderBulkheads;
 import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.factory.LLMProviderFactory;
+import org.xhy.infrastructure.llm.factory.SharedHttpClientBuilder;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
 
-/** LLM服务工厂，用于创建LLM客户端 */
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+/** LLM服务工厂，用于创建LLM客户端
+ *
+ * 模型客户端是线程安全的，按 (服务商id, 协议, baseUrl, 模型, 配置摘要) 缓存复用，所有客户端共享同一个有界HTTP连接池。 空闲客户端会被驱逐，服务商变更时对应客户端失效。
+ * 每个 (服务商, 模型) 的并发调用受隔离舱限制：同步客户端在每次调用时获取许可，流式调用由消息处理器通过 {@link #acquirePermit} 获取。 */
 @Component
 public class LLMServiceFactory {
 
+    private static final Logger logger = LoggerFactory.getLogger(LLMServiceFactory.class);
+
+    private final SharedHttpClientBuilder httpClientBuilder;
+    private final Duration timeout;
+    private final ProviderBulkheads bulkheads;
+    private final boolean promptCache;
+
+    /** 流式客户端缓存 */
+    private final Cache<ClientKey, StreamingChatModel> streamingClients;
+
+    /** 标准客户端缓存 */
+    private final Cache<ClientKey, ChatModel> strandClients;
+
+    public LLMServiceFactory(LLMClientProperties properties, ProviderBulkheads bulkheads,
+            ExecutorRegistry executorRegistry) {
+        this.bulkheads = bulkheads;
+        this.promptCache = properties.isPromptCache();
+        this.timeout = Duration.ofMillis(properties.getReadTimeout());
+        LLMProviderFactory.setMockEnabled(properties.isMockEnabled());
+        this.httpClientBuilder = new SharedHttpClientBuilder(Duration.ofMillis(properties.getConnectTimeout()),
+                timeout, executorRegistry.get(WorkloadType.LLM_HTTP_IO), executorRegistry.get(WorkloadType.LLM_STREAM));
+        this.streamingClients = CacheBuilder.newBuilder().maximumSize(properties.getMaxClients())
+                .expireAfterAccess(Duration.ofMinutes(properties.getIdleExpireMinutes())).recordStats().build();
+        this.strandClients = CacheBuilder.newBuilder().maximumSize(properties.getMaxClients())
+                .expireAfterAccess(Duration.ofMinutes(properties.getIdleExpireMinutes())).recordStats().build();
+    }
+
     /** 获取流式LLM客户端
      * 
      * @param provider 服务商实体
      * @param model 模型实体
      * @return 流式聊天语言模型 */
     public StreamingChatModel getStreamingClient(ProviderEntity provider, ModelEntity model) {
-        org.xhy.domain.llm.model.config.ProviderConfig config = provider.getConfig();
-
-        ProviderConfig providerConfig = new ProviderConfig(config.getApiKey(), config.getBaseUrl(),
-                model.getModelEndpoint(), provider.getProtocol());
-
-        return LLMProviderService.getStream(provider.getProtocol(), providerConfig);
+        ProviderConfig providerConfig = toProviderConfig(provider, model);
+        ClientKey key = ClientKey.of(provider.getId(), providerConfig);
+        try {
+            return streamingClients.get(key, () -> LLMProviderFactory.getLLMProviderByStream(provider.getProtocol(),
+                    providerConfig, httpClientBuilder, timeout));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建流式LLM客户端失败: " + e.getCause().getMessage(), e.getCause());
+        }
     }
 
     /** 获取标准LLM客户端
@@ -31,11 +86,108 @@ public class LLMServiceFactory {
      * @param model 模型实体
      * @return 流式聊天语言模型 */
     public ChatModel getStrandClient(ProviderEntity provider, ModelEntity model) {
-        org.xhy.domain.llm.model.config.ProviderConfig config = provider.getConfig();
+        ProviderConfig providerConfig = toProviderConfig(provider, model);
+        ClientKey key = ClientKey.of(provider.getId(), providerConfig);
+        try {
+            return strandClients.get(key, () -> new BulkheadChatModel(LLMProviderFactory.getLLMProvider(
+                    provider.getProtocol(), providerConfig, httpClientBuilder, timeout), bulkheads, provider, model));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建LLM客户端失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /** 获取流式调用许可，达到并发上限时排队等待，流结束后由调用方归还
+     *
+     * @param provider 服务商实体
+     * @param model 模型实体
+     * @return 调用许可
+     * @throws org.xhy.infrastructure.exception.RateLimitException 排队已满或等待超时 */
+    public AdaptiveBulkhead.Permit acquirePermit(ProviderEntity provider, ModelEntity model) {
+        return bulkheads.acquire(provider, model);
+    }
 
+    /** 获取流式调用许可，不排队等待
+     *
+     * @return 调用许可，达到并发上限时返回null */
+    public AdaptiveBulkhead.Permit tryAcquirePermit(ProviderEntity provider, ModelEntity model) {
+        return bulkheads.tryAcquire(provider, model, 0);
+    }
+
+    /** 使指定服务商的所有缓存客户端失效
+     *
+     * @param providerId 服务商id */
+    public void invalidateProvider(String providerId) {
+        streamingClients.asMap().keySet().removeIf(key -> Objects.equals(key.providerId, providerId));
+        strandClients.asMap().keySet().removeIf(key -> Objects.equals(key.providerId, providerId));
+        bulkheads.invalidateProvider(providerId);
+        logger.info("已失效服务商的LLM客户端缓存: providerId={}", providerId);
+    }
+
+    /** 服务商配置变更时失效缓存 */
+    @EventListener
+    public void onProviderChanged(ProviderChangedEvent event) {
+        invalidateProvider(event.getProviderId());
+    }
+
+    /** 获取当前缓存的客户端数量 */
+    public long getCachedClientCount() {
+        return streamingClients.size() + strandClients.size();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        streamingClients.invalidateAll();
+        strandClients.invalidateAll();
+    }
+
+    private ProviderConfig toProviderConfig(ProviderEntity provider, ModelEntity model) {
+        org.xhy.domain.llm.model.config.ProviderConfig config = provider.getConfig();
         ProviderConfig providerConfig = new ProviderConfig(config.getApiKey(), config.getBaseUrl(),
                 model.getModelEndpoint(), provider.getProtocol());
+        providerConfig.setPromptCache(promptCache);
+        return providerConfig;
+    }
+
+    /** 客户端缓存键，密钥等敏感配置只以摘要形式参与比较 */
+    static final class ClientKey {
+        private final String providerId;
+        private final ProviderProtocol protocol;
+        private final String baseUrl;
+        private final String model;
+        private final String configHash;
+
+        private ClientKey(String providerId, ProviderProtocol protocol, String baseUrl, String model,
+                String configHash) {
+            this.providerId = providerId;
+            this.protocol = protocol;
+            this.baseUrl = baseUrl;
+            this.model = model;
+            this.configHash = configHash;
+        }
+
+        static ClientKey of(String providerId, ProviderConfig config) {
+            Map<String, String> headers = new TreeMap<>(config.getCustomHeaders());
+            String configHash = DigestUtil.sha256Hex(config.getApiKey() + "|" + headers);
+            return new ClientKey(providerId, config.getProtocol(), config.getBaseUrl(), config.getModel(),
+                    configHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey that)) {
+                return false;
+            }
+            return Objects.equals(providerId, that.providerId) && protocol == that.protocol
+                    && Objects.equals(baseUrl, that.baseUrl) && Objects.equals(model, that.model)
+                    && Objects.equals(configHash, that.configHash);
+        }
 
-        return LLMProviderService.getStrand(provider.getProtocol(), providerConfig);
+        @Override
+        public int hashCode() {
+            return Objects.hash(providerId, protocol, baseUrl, model, configHash);
+        }
     }
-}
\ No newline at end of file
+}
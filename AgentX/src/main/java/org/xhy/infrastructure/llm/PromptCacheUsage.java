@@ -0,0 +1,73 @@
+package org.xhy.infrastructure.llm;
+
+import dev.langchain4j.model.anthropic.AnthropicTokenUsage;
+import dev.langchain4j.model.openai.OpenAiTokenUsage;
+import dev.langchain4j.model.output.TokenUsage;
+
+/** 输入Token用量，区分命中提示词缓存、写入缓存和未缓存的部分
+ *
+ * 各服务商口径不同：OpenAI 的 prompt_tokens 已包含缓存命中的Token；Anthropic 的 input_tokens 不含缓存命中和缓存写入的Token。
+ * 这里统一为输入总量加缓存明细，便于按不同单价计费。 */
+public final class PromptCacheUsage {
+
+    private static final PromptCacheUsage EMPTY = new PromptCacheUsage(0, 0, 0);
+
+    /** 输入Token总数，含缓存命中和缓存写入 */
+    private final int inputTokens;
+
+    /** 命中缓存的输入Token数 */
+    private final int cachedInputTokens;
+
+    /** 写入缓存的输入Token数 */
+    private final int cacheWriteTokens;
+
+    private PromptCacheUsage(int inputTokens, int cachedInputTokens, int cacheWriteTokens) {
+        this.inputTokens = inputTokens;
+        this.cachedInputTokens = cachedInputTokens;
+        this.cacheWriteTokens = cacheWriteTokens;
+    }
+
+    /** 从模型响应的用量中提取缓存明细，不支持缓存统计的服务商全部计为未缓存 */
+    public static PromptCacheUsage of(TokenUsage tokenUsage) {
+        if (tokenUsage == null) {
+            return EMPTY;
+        }
+        int input = valueOf(tokenUsage.inputTokenCount());
+        if (tokenUsage instanceof AnthropicTokenUsage anthropicUsage) {
+            int cached = valueOf(anthropicUsage.cacheReadInputTokens());
+            int written = valueOf(anthropicUsage.cacheCreationInputTokens());
+            return new PromptCacheUsage(input + cached + written, cached, written);
+        }
+        if (tokenUsage instanceof OpenAiTokenUsage openAiUsage && openAiUsage.inputTokensDetails() != null) {
+            int cached = valueOf(openAiUsage.inputTokensDetails().cachedTokens());
+            return new PromptCacheUsage(input, Math.min(cached, input), 0);
+        }
+        return new PromptCacheUsage(input, 0, 0);
+    }
+
+    /** 没有缓存明细的用量，如按估算结算的中断对话 */
+    public static PromptCacheUsage uncached(Integer inputTokens) {
+        return new PromptCacheUsage(valueOf(inputTokens), 0, 0);
+    }
+
+    private static int valueOf(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    public int getInputTokens() {
+        return inputTokens;
+    }
+
+    public int getCachedInputTokens() {
+        return cachedInputTokens;
+    }
+
+    public int getCacheWriteTokens() {
+        return cacheWriteTokens;
+    }
+
+    /** 未命中也未写入缓存、按普通输入单价计费的Token数 */
+    public int getUncachedInputTokens() {
+        return inputTokens - cachedInputTokens - cacheWriteTokens;
+    }
+}
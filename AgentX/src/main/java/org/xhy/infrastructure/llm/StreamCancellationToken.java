@@ -0,0 +1,91 @@
+package org.xhy.infrastructure.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** 流式调用取消令牌
+ *
+ * 每个对话会话持有一个令牌，HTTP层在发起流式请求时通过线程上下文获取当前令牌并登记中止动作（关闭响应流）， 令牌取消后正在读取的流会被关闭，后续的模型请求（如工具调用后的下一轮）不会再发出。 */
+public class StreamCancellationToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamCancellationToken.class);
+
+    /** 当前线程绑定的令牌 */
+    private static final ThreadLocal<StreamCancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+
+    /** 是否已收到服务端的流式事件，用于区分握手阶段的失败和输出过程中的失败 */
+    private volatile boolean responded;
+
+    /** 取消令牌，依次执行登记的中止动作，仅第一次调用生效
+     * @return 是否由本次调用完成取消 */
+    public boolean cancel() {
+        if (!cancelled.compareAndSet(false, true)) {
+            return false;
+        }
+        for (Runnable action : cancelActions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                logger.warn("执行取消动作失败: {}", e.getMessage());
+            }
+        }
+        cancelActions.clear();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /** 标记已收到服务端的流式事件 */
+    public void markResponded() {
+        responded = true;
+    }
+
+    public boolean hasResponded() {
+        return responded;
+    }
+
+    /** 登记取消时执行的动作，令牌已取消时立即执行 */
+    public void onCancel(Runnable action) {
+        cancelActions.add(action);
+        if (cancelled.get() && cancelActions.remove(action)) {
+            action.run();
+        }
+    }
+
+    /** 移除已登记的动作，用于流正常结束后释放引用 */
+    public void removeOnCancel(Runnable action) {
+        cancelActions.remove(action);
+    }
+
+    /** 获取当前线程绑定的令牌
+     * @return 令牌，未绑定时为null */
+    public static StreamCancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /** 在绑定令牌的线程上下文中执行
+     * @param token 令牌，可为null
+     * @param runnable 待执行逻辑 */
+    public static void runWith(StreamCancellationToken token, Runnable runnable) {
+        StreamCancellationToken previous = CURRENT.get();
+        CURRENT.set(token);
+        try {
+            runnable.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
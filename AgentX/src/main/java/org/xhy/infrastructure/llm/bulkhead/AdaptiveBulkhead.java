@@ -0,0 +1,264 @@
+package org.xhy.infrastructure.llm.bulkhead;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.RateLimitException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** 自适应并发隔离舱
+ *
+ * 限制同一 (服务商, 模型) 同时进行的调用数，达到上限的请求按到达顺序排队，超过排队上限或等待超时即拒绝。
+ * 上限按梯度算法调整：维护无排队时的延迟基线，样本延迟明显高于基线（上游开始排队）时收紧上限，延迟平稳时逐步放宽；
+ * 上游过载（429、5xx）或超时按比例缩减，其他失败（如参数错误、鉴权失败、调用被取消）与上游容量无关，不调整上限。
+ * 流式调用以首个响应的延迟作为样本，不受输出长度影响。 */
+public class AdaptiveBulkhead {
+
+    /** 样本低于基线时基线的调整速率 */
+    private static final double BASELINE_DECREASE_RATE = 0.1;
+
+    /** 样本高于基线时基线的调整速率，远小于下调速率，使基线反映无排队时的延迟 */
+    private static final double BASELINE_INCREASE_RATE = 0.002;
+
+    /** 不做限制的许可，隔离舱关闭时使用 */
+    public static final Permit UNLIMITED = new Permit(null);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitMs;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+
+    /** 公平锁，等待者按到达顺序获得许可 */
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    /** 无排队时的延迟基线(毫秒)，0表示尚无样本 */
+    private double baselineRtt;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveBulkhead(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMs,
+            double rttTolerance, double smoothing, double backoffRatio) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMs = maxWaitMs;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /** 获取许可，达到上限时按配置排队等待
+     * @return 许可，排队已满或等待超时时返回null */
+    public Permit tryAcquire() {
+        return tryAcquire(maxWaitMs);
+    }
+
+    /** 获取许可
+     * @param waitMs 达到上限时最长等待时间(毫秒)，0表示不等待
+     * @return 许可，排队已满或等待超时时返回null */
+    public Permit tryAcquire(long waitMs) {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return new Permit(this);
+            }
+            if (waitMs <= 0 || waiting >= maxQueue) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(waitMs);
+            waiting++;
+            try {
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        return null;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+                inFlight++;
+                return new Permit(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.incrementAndGet();
+                return null;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** 当前并发上限 */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 正在进行的调用数 */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 正在排队的请求数 */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 累计拒绝的请求数 */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /** 归还许可并按调用结果调整上限
+     * @param outcome 调用结果
+     * @param rttMs 延迟样本(毫秒)，只在调用成功时计入 */
+    private void onRelease(Outcome outcome, long rttMs) {
+        lock.lock();
+        try {
+            int utilized = inFlight;
+            inFlight--;
+            if (outcome == Outcome.SUCCESS) {
+                adjust(Math.max(1, rttMs), utilized);
+            } else if (outcome == Outcome.OVERLOADED) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            }
+            int free = currentLimit() - inFlight;
+            for (int i = 0; i < free && i < waiting; i++) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(double rtt, int utilized) {
+        // 基线跟踪延迟的下沿：样本更低时快速下调，更高时缓慢上调，单次抖动不会抬高基线
+        if (baselineRtt == 0) {
+            baselineRtt = rtt;
+        } else if (rtt < baselineRtt) {
+            baselineRtt += (rtt - baselineRtt) * BASELINE_DECREASE_RATE;
+        } else {
+            baselineRtt += (rtt - baselineRtt) * BASELINE_INCREASE_RATE;
+        }
+        // 并发远未用满时样本不能说明上限是否合适，不调整
+        if (utilized < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * baselineRtt / rtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    /** 判断调用失败是否说明上游过载：限流(429)、服务端错误(5xx)或超时，沿异常的原因链查找 */
+    static boolean isOverload(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof RateLimitException || t instanceof InternalServerException
+                    || t instanceof dev.langchain4j.exception.TimeoutException || t instanceof TimeoutException
+                    || t instanceof SocketTimeoutException || t instanceof HttpTimeoutException) {
+                return true;
+            }
+            if (t instanceof HttpException) {
+                int status = ((HttpException) t).statusCode();
+                return status == 429 || status >= 500;
+            }
+        }
+        return false;
+    }
+
+    /** 调用结果对上限的影响 */
+    enum Outcome {
+        /** 调用成功，计入延迟样本 */
+        SUCCESS,
+        /** 上游过载或超时，按比例缩减上限 */
+        OVERLOADED,
+        /** 与上游容量无关的失败或被取消的调用，不调整上限 */
+        NEUTRAL
+    }
+
+    /** 调用许可，调用结束后必须归还一次，重复归还被忽略 */
+    public static final class Permit {
+
+        private final AdaptiveBulkhead bulkhead;
+        private final long acquiredAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile long firstResponseAt;
+
+        private Permit(AdaptiveBulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        /** 记录首个响应时间，流式调用以此作为延迟样本 */
+        public void markFirstResponse() {
+            if (firstResponseAt == 0) {
+                firstResponseAt = System.nanoTime();
+            }
+        }
+
+        /** 调用成功后归还许可，计入延迟样本 */
+        public void release() {
+            long end = firstResponseAt != 0 ? firstResponseAt : System.nanoTime();
+            release(Outcome.SUCCESS, TimeUnit.NANOSECONDS.toMillis(end - acquiredAt));
+        }
+
+        /** 调用失败后归还许可，只有上游过载或超时才缩减上限
+         * @param failure 调用失败的异常 */
+        public void release(Throwable failure) {
+            release(isOverload(failure) ? Outcome.OVERLOADED : Outcome.NEUTRAL, -1);
+        }
+
+        /** 归还许可，不计入延迟样本，用于调用被取消的情况 */
+        public void abandon() {
+            release(Outcome.NEUTRAL, -1);
+        }
+
+        void release(Outcome outcome, long rttMs) {
+            if (bulkhead != null && released.compareAndSet(false, true)) {
+                bulkhead.onRelease(outcome, rttMs);
+            }
+        }
+    }
+}
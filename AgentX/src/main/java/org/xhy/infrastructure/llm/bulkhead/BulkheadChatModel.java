@@ -0,0 +1,57 @@
+package org.xhy.infrastructure.llm.bulkhead;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+
+import java.util.Set;
+
+/** 受隔离舱限制的同步模型客户端，每次调用前获取许可，调用结束后按结果归还，调用被中断取消时不计入延迟样本 */
+public class BulkheadChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final ProviderBulkheads bulkheads;
+    private final ProviderEntity provider;
+    private final ModelEntity model;
+
+    public BulkheadChatModel(ChatModel delegate, ProviderBulkheads bulkheads, ProviderEntity provider,
+            ModelEntity model) {
+        this.delegate = delegate;
+        this.bulkheads = bulkheads;
+        this.provider = provider;
+        this.model = model;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        AdaptiveBulkhead.Permit permit = bulkheads.acquire(provider, model);
+        ChatResponse response;
+        try {
+            response = delegate.chat(chatRequest);
+        } catch (RuntimeException | Error e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 调用被取消（如对冲请求的落败方），不计入失败
+                permit.abandon();
+            } else {
+                permit.release(e);
+            }
+            throw e;
+        }
+        permit.release();
+        return response;
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+}
@@ -0,0 +1,93 @@
+package org.xhy.infrastructure.llm.bulkhead;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.config.LLMBulkheadProperties;
+import org.xhy.infrastructure.exception.RateLimitException;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+/** 模型调用隔离舱注册表
+ *
+ * 每个 (服务商, 上游模型标识) 一个隔离舱，一个上游变慢只会占满自己的并发额度，不会拖住处理其他模型的线程。
+ * 空闲的隔离舱会被回收，服务商变更时对应隔离舱重建。 */
+@Component
+public class ProviderBulkheads {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderBulkheads.class);
+
+    private final LLMBulkheadProperties properties;
+
+    private final Cache<String, AdaptiveBulkhead> bulkheads;
+
+    public ProviderBulkheads(LLMBulkheadProperties properties) {
+        this.properties = properties;
+        this.bulkheads = CacheBuilder.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(properties.getIdleExpireMinutes())).build();
+    }
+
+    /** 获取调用许可，达到并发上限时排队等待
+     * @param provider 服务商
+     * @param model 模型
+     * @return 调用许可
+     * @throws RateLimitException 排队已满或等待超时 */
+    public AdaptiveBulkhead.Permit acquire(ProviderEntity provider, ModelEntity model) {
+        AdaptiveBulkhead.Permit permit = tryAcquire(provider, model, properties.getMaxWaitMs());
+        if (permit == null) {
+            throw new RateLimitException("模型当前请求过多，请稍后再试");
+        }
+        return permit;
+    }
+
+    /** 获取调用许可
+     * @param provider 服务商
+     * @param model 模型
+     * @param waitMs 达到上限时最长等待时间(毫秒)
+     * @return 调用许可，排队已满或等待超时时返回null */
+    public AdaptiveBulkhead.Permit tryAcquire(ProviderEntity provider, ModelEntity model, long waitMs) {
+        if (!properties.isEnabled()) {
+            return AdaptiveBulkhead.UNLIMITED;
+        }
+        AdaptiveBulkhead bulkhead = get(provider.getId(), model.getModelEndpoint());
+        AdaptiveBulkhead.Permit permit = bulkhead.tryAcquire(waitMs);
+        if (permit == null) {
+            logger.warn("模型调用被隔离舱拒绝: {}, 并发上限={}, 排队={}, 累计拒绝={}", bulkhead.getName(),
+                    bulkhead.getLimit(), bulkhead.getWaiting(), bulkhead.getRejectedCount());
+        }
+        return permit;
+    }
+
+    /** 获取 (服务商, 上游模型标识) 的隔离舱，不存在时创建 */
+    public AdaptiveBulkhead get(String providerId, String modelEndpoint) {
+        String key = providerId + ":" + modelEndpoint;
+        try {
+            return bulkheads.get(key, () -> create(key, providerId));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建隔离舱失败: " + key, e.getCause());
+        }
+    }
+
+    /** 服务商变更时重建其隔离舱，已发放的许可仍归还给旧隔离舱 */
+    public void invalidateProvider(String providerId) {
+        bulkheads.asMap().keySet().removeIf(key -> key.startsWith(providerId + ":"));
+    }
+
+    private AdaptiveBulkhead create(String key, String providerId) {
+        Integer override = properties.getLimits().get(key);
+        if (override == null) {
+            override = properties.getLimits().get(providerId);
+        }
+        int maxLimit = override != null ? override : properties.getMaxLimit();
+        int minLimit = Math.min(properties.getMinLimit(), maxLimit);
+        int initialLimit = Math.min(properties.getInitialLimit(), maxLimit);
+        return new AdaptiveBulkhead(key, initialLimit, minLimit, maxLimit, properties.getMaxQueue(),
+                properties.getMaxWaitMs(), properties.getRttTolerance(), properties.getSmoothing(),
+                properties.getBackoffRatio());
+    }
+}
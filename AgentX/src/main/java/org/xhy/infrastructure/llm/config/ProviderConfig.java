@@ -40,6 +40,9 @@ public class ProviderConfig {
 
     private Map<String, String> customHeaders = new HashMap<>();
 
+    /** 是否为系统提示词和工具定义附加服务商的提示词缓存标记 */
+    private boolean promptCache;
+
     public String getApiKey() {
         return apiKey;
     }
@@ -62,4 +65,12 @@ public class ProviderConfig {
     public void addCustomHeaders(String key, String value) {
         customHeaders.put(key, value);
     }
+
+    public boolean isPromptCache() {
+        return promptCache;
+    }
+
+    public void setPromptCache(boolean promptCache) {
+        this.promptCache = promptCache;
+    }
 }
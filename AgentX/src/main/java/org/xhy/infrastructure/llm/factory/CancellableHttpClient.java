@@ -0,0 +1,283 @@
+package org.xhy.infrastructure.llm.factory;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.TimeoutException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/** 可取消的HTTP客户端
+ *
+ * 同步请求和流式请求共用同一个 JDK 客户端；流式请求由这里自行读取响应流，发起时从线程上下文取得 {@link StreamCancellationToken}，
+ * 令牌取消时关闭响应流并中断读取线程，底层连接随之关闭，不会再读取后续Token。回调执行期间令牌会绑定到回调线程，
+ * 因此工具调用之后发起的下一轮模型请求同样受该令牌控制，令牌已取消时直接拒绝发起。
+ * 响应流的阻塞读取在独立的读取线程池中执行，不占用 JDK 客户端的IO线程：IO线程被读取占满后，客户端无法再投递响应数据，所有流都会卡住。 */
+public class CancellableHttpClient implements HttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CancellableHttpClient.class);
+
+    private final java.net.http.HttpClient jdkClient;
+    private final Duration readTimeout;
+
+    /** 流式响应读取线程池，每个进行中的流占用一个线程直到响应结束 */
+    private final Executor streamExecutor;
+
+    public CancellableHttpClient(java.net.http.HttpClient jdkClient, Duration readTimeout, Executor streamExecutor) {
+        this.jdkClient = jdkClient;
+        this.readTimeout = readTimeout;
+        this.streamExecutor = streamExecutor;
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) throws HttpException, RuntimeException {
+        StreamCancellationToken token = StreamCancellationToken.current();
+        if (token != null && token.isCancelled()) {
+            throw new CancellationException("请求已取消");
+        }
+        try {
+            HttpResponse<String> response = jdkClient.send(toJdkRequest(request),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new HttpException(response.statusCode(), response.body());
+            }
+            return SuccessfulHttpResponse.builder().statusCode(response.statusCode())
+                    .headers(response.headers().map()).body(response.body()).build();
+        } catch (HttpTimeoutException e) {
+            throw new TimeoutException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        StreamCancellationToken current = StreamCancellationToken.current();
+        if (current != null && current.isCancelled()) {
+            logger.debug("令牌已取消，不再发起流式请求: {}", request.url());
+            return;
+        }
+        // 不在会话中发起的流式请求使用独占的令牌，只用于关闭本次响应流
+        StreamCancellationToken token = current != null ? current : new StreamCancellationToken();
+
+        StreamExchange exchange = new StreamExchange(token, listener);
+        Runnable abortAction = exchange::abort;
+        token.onCancel(abortAction);
+
+        CompletableFuture<HttpResponse<InputStream>> responseFuture = jdkClient.sendAsync(toJdkRequest(request),
+                HttpResponse.BodyHandlers.ofInputStream());
+        exchange.awaitResponse(responseFuture);
+        responseFuture.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                exchange.fail(throwable);
+                token.removeOnCancel(abortAction);
+                return;
+            }
+            try {
+                streamExecutor.execute(() -> {
+                    try {
+                        exchange.consume(response, parser);
+                    } finally {
+                        token.removeOnCancel(abortAction);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(response.body());
+                exchange.fail(e);
+                token.removeOnCancel(abortAction);
+            }
+        });
+    }
+
+    private java.net.http.HttpRequest toJdkRequest(HttpRequest request) {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder().uri(URI.create(request.url()))
+                .timeout(readTimeout);
+        request.headers().forEach((name, values) -> {
+            if (values != null) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        java.net.http.HttpRequest.BodyPublisher body = request.body() == null
+                ? java.net.http.HttpRequest.BodyPublishers.noBody()
+                : java.net.http.HttpRequest.BodyPublishers.ofString(request.body());
+        return builder.method(request.method().name(), body).build();
+    }
+
+    /** 单次流式交换，负责读取响应流并在取消时关闭 */
+    private static class StreamExchange {
+
+        private final StreamCancellationToken token;
+        private final ServerSentEventListener listener;
+
+        private InputStream body;
+        private Thread readerThread;
+        /** 尚未收到响应头时的请求，取消时一并取消，避免握手阶段卡住的连接一直占用到读取超时 */
+        private CompletableFuture<?> pendingResponse;
+        /** 是否正在执行回调，回调期间不中断线程，避免打断回调内的数据库等操作 */
+        private boolean inCallback;
+        private boolean finished;
+
+        StreamExchange(StreamCancellationToken token, ServerSentEventListener listener) {
+            this.token = token;
+            this.listener = listener;
+        }
+
+        synchronized void awaitResponse(CompletableFuture<?> responseFuture) {
+            pendingResponse = responseFuture;
+        }
+
+        void consume(HttpResponse<InputStream> response, ServerSentEventParser parser) {
+            synchronized (this) {
+                pendingResponse = null;
+            }
+            int statusCode = response.statusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                String errorBody = readQuietly(response.body());
+                finish();
+                if (!token.isCancelled()) {
+                    listener.onError(new HttpException(statusCode, errorBody));
+                }
+                return;
+            }
+
+            synchronized (this) {
+                if (token.isCancelled()) {
+                    finished = true;
+                    closeQuietly(response.body());
+                    return;
+                }
+                body = response.body();
+                readerThread = Thread.currentThread();
+            }
+
+            try {
+                invoke(() -> listener.onOpen(SuccessfulHttpResponse.builder().statusCode(statusCode)
+                        .headers(response.headers().map()).build()));
+                try (InputStream inputStream = body) {
+                    parser.parse(inputStream, new CancellableListener());
+                }
+                finish();
+                if (!token.isCancelled()) {
+                    invoke(listener::onClose);
+                }
+            } catch (StreamAbortedException | IOException e) {
+                finish();
+                if (!token.isCancelled()) {
+                    invoke(() -> listener.onError(e));
+                }
+            } finally {
+                finish();
+                // 取消时可能中断了读取线程，归还线程池前清除中断标志
+                Thread.interrupted();
+            }
+        }
+
+        void fail(Throwable throwable) {
+            finish();
+            if (!token.isCancelled()) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+                invoke(() -> listener.onError(cause));
+            }
+        }
+
+        /** 取消时关闭响应流，阻塞在读取上的线程会被唤醒 */
+        synchronized void abort() {
+            if (finished) {
+                return;
+            }
+            if (pendingResponse != null) {
+                pendingResponse.cancel(true);
+            }
+            closeQuietly(body);
+            if (readerThread != null && !inCallback) {
+                readerThread.interrupt();
+            }
+            logger.info("流式请求已取消，关闭响应流");
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            readerThread = null;
+        }
+
+        private void invoke(Runnable callback) {
+            synchronized (this) {
+                inCallback = true;
+            }
+            try {
+                StreamCancellationToken.runWith(token, callback);
+            } finally {
+                synchronized (this) {
+                    inCallback = false;
+                }
+            }
+        }
+
+        private class CancellableListener implements ServerSentEventListener {
+
+            @Override
+            public void onEvent(ServerSentEvent event) {
+                if (token.isCancelled()) {
+                    throw new StreamAbortedException();
+                }
+                token.markResponded();
+                invoke(() -> listener.onEvent(event));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                if (!token.isCancelled()) {
+                    invoke(() -> listener.onError(throwable));
+                }
+            }
+        }
+    }
+
+    /** 令牌取消后在解析回调中抛出，用于终止解析循环 */
+    private static class StreamAbortedException extends RuntimeException {
+        StreamAbortedException() {
+            super("流式请求已取消", null, false, false);
+        }
+    }
+
+    private static String readQuietly(InputStream inputStream) {
+        try (InputStream in = inputStream) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
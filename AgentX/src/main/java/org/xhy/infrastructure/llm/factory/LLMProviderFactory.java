@@ -1,5 +1,6 @@
 package org.xhy.infrastructure.llm.factory;
 
+import dev.langchain4j.http.client.HttpClientBuilder;
 import dev.langchain4j.model.anthropic.AnthropicChatModel;
 import dev.langchain4j.model.anthropic.AnthropicStreamingChatModel;
 import dev.langchain4j.model.chat.ChatModel;
@@ -7,16 +8,48 @@ import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.mock.MockLLMServer;
 import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
 
 import java.time.Duration;
 
 public class LLMProviderFactory {
 
+    /** 默认超时时间 */
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofHours(1);
+
+    /** 是否允许 MOCK 协议，由 llm.client.mock-enabled 控制，默认关闭 */
+    private static volatile boolean mockEnabled;
+
+    /** 开放或关闭 MOCK 协议
+     * @param enabled 是否开放 */
+    public static void setMockEnabled(boolean enabled) {
+        mockEnabled = enabled;
+    }
+
+    public static boolean isMockEnabled() {
+        return mockEnabled;
+    }
+
     /** 获取对应的服务商 不使用工厂模式，因为 OpenAiChatModel 没有无参构造器，并且其他类型的模型不能适配
      * @param protocol 协议
      * @param providerConfig 服务商信息 */
     public static ChatModel getLLMProvider(ProviderProtocol protocol, ProviderConfig providerConfig) {
+        return getLLMProvider(protocol, providerConfig, null, DEFAULT_TIMEOUT);
+    }
+
+    /** 获取对应的服务商
+     * @param protocol 协议
+     * @param providerConfig 服务商信息
+     * @param httpClientBuilder HTTP客户端构建器，为null时使用langchain4j默认实现
+     * @param timeout 超时时间 */
+    public static ChatModel getLLMProvider(ProviderProtocol protocol, ProviderConfig providerConfig,
+            HttpClientBuilder httpClientBuilder, Duration timeout) {
+        if (protocol == ProviderProtocol.MOCK) {
+            // 模拟服务商指向本地回环服务，按场景参数使用 OpenAI 或 Anthropic 兼容客户端
+            ProviderConfig mockConfig = toMockConfig(providerConfig);
+            return getLLMProvider(mockConfig.getProtocol(), mockConfig, httpClientBuilder, timeout);
+        }
         ChatModel model = null;
         if (protocol == ProviderProtocol.OPENAI) {
             OpenAiChatModel.OpenAiChatModelBuilder openAiChatModelBuilder = new OpenAiChatModel.OpenAiChatModelBuilder();
@@ -24,27 +57,50 @@ public class LLMProviderFactory {
             openAiChatModelBuilder.baseUrl(providerConfig.getBaseUrl());
             openAiChatModelBuilder.customHeaders(providerConfig.getCustomHeaders());
             openAiChatModelBuilder.modelName(providerConfig.getModel());
-            openAiChatModelBuilder.timeout(Duration.ofHours(1));
+            openAiChatModelBuilder.timeout(timeout);
+            openAiChatModelBuilder.httpClientBuilder(httpClientBuilder);
             model = new OpenAiChatModel(openAiChatModelBuilder);
         } else if (protocol == ProviderProtocol.ANTHROPIC) {
+            // 缓存标记打在工具定义和系统提示词末尾，两者在多轮对话中保持不变
             model = AnthropicChatModel.builder().apiKey(providerConfig.getApiKey()).baseUrl(providerConfig.getBaseUrl())
-                    .modelName(providerConfig.getModel()).version("2023-06-01").timeout(Duration.ofHours(1)).build();
+                    .modelName(providerConfig.getModel()).version("2023-06-01").timeout(timeout)
+                    .cacheSystemMessages(providerConfig.isPromptCache()).cacheTools(providerConfig.isPromptCache())
+                    .httpClientBuilder(httpClientBuilder).build();
         }
         return model;
     }
 
     public static StreamingChatModel getLLMProviderByStream(ProviderProtocol protocol, ProviderConfig providerConfig) {
+        return getLLMProviderByStream(protocol, providerConfig, null, DEFAULT_TIMEOUT);
+    }
+
+    public static StreamingChatModel getLLMProviderByStream(ProviderProtocol protocol, ProviderConfig providerConfig,
+            HttpClientBuilder httpClientBuilder, Duration timeout) {
+        if (protocol == ProviderProtocol.MOCK) {
+            ProviderConfig mockConfig = toMockConfig(providerConfig);
+            return getLLMProviderByStream(mockConfig.getProtocol(), mockConfig, httpClientBuilder, timeout);
+        }
         StreamingChatModel model = null;
         if (protocol == ProviderProtocol.OPENAI) {
             model = new OpenAiStreamingChatModel.OpenAiStreamingChatModelBuilder().apiKey(providerConfig.getApiKey())
                     .baseUrl(providerConfig.getBaseUrl()).customHeaders(providerConfig.getCustomHeaders())
-                    .modelName(providerConfig.getModel()).timeout(Duration.ofHours(1)).build();
+                    .modelName(providerConfig.getModel()).timeout(timeout).httpClientBuilder(httpClientBuilder)
+                    .build();
         } else if (protocol == ProviderProtocol.ANTHROPIC) {
             model = AnthropicStreamingChatModel.builder().apiKey(providerConfig.getApiKey())
                     .baseUrl(providerConfig.getBaseUrl()).version("2023-06-01").modelName(providerConfig.getModel())
-                    .timeout(Duration.ofHours(1)).build();
+                    .timeout(timeout).cacheSystemMessages(providerConfig.isPromptCache())
+                    .cacheTools(providerConfig.isPromptCache()).httpClientBuilder(httpClientBuilder).build();
         }
 
         return model;
     }
+
+    /** 未开放 MOCK 协议时不启动模拟服务，已存在的 MOCK 服务商调用失败 */
+    private static ProviderConfig toMockConfig(ProviderConfig providerConfig) {
+        if (!mockEnabled) {
+            throw new IllegalStateException("未开放模拟服务商协议: " + ProviderProtocol.MOCK);
+        }
+        return MockLLMServer.shared().toProviderConfig(providerConfig);
+    }
 }
@@ -0,0 +1,56 @@
+package org.xhy.infrastructure.llm.factory;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/** 共享HTTP客户端构建器
+ *
+ * langchain4j 的模型构建器每次 build 都会新建一个底层 HTTP 客户端（独立的连接池和 TLS 会话）， 这里让所有模型客户端复用同一个 JDK HttpClient，IO
+ * 线程池由调用方提供并负责关闭，连接在各模型之间复用。流式请求支持通过 {@link org.xhy.infrastructure.llm.StreamCancellationToken} 取消，
+ * 响应流在单独的读取线程池中读取。 */
+public class SharedHttpClientBuilder implements HttpClientBuilder {
+
+    private final HttpClient sharedClient;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+
+    /** @param ioExecutor JDK 客户端IO线程池，须有界且满载时不丢弃任务
+     * @param streamExecutor 流式响应读取线程池，须与IO线程池分开 */
+    public SharedHttpClientBuilder(Duration connectTimeout, Duration readTimeout, Executor ioExecutor,
+            Executor streamExecutor) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        java.net.http.HttpClient jdkClient = java.net.http.HttpClient.newBuilder().executor(ioExecutor)
+                .connectTimeout(connectTimeout).build();
+        this.sharedClient = new CancellableHttpClient(jdkClient, readTimeout, streamExecutor);
+    }
+
+    @Override
+    public Duration connectTimeout() {
+        return connectTimeout;
+    }
+
+    /** 超时在共享客户端创建时已确定，忽略各模型构建器传入的值 */
+    @Override
+    public HttpClientBuilder connectTimeout(Duration timeout) {
+        return this;
+    }
+
+    @Override
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public HttpClientBuilder readTimeout(Duration timeout) {
+        return this;
+    }
+
+    @Override
+    public HttpClient build() {
+        return sharedClient;
+    }
+}
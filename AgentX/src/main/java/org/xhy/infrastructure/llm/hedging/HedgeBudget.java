@@ -0,0 +1,51 @@
+package org.xhy.infrastructure.llm.hedging;
+
+/** 对冲预算
+ *
+ * 每次主调用积累 ratio 个额度，每次对冲消耗一个额度，额度不足时不对冲。长期来看对冲请求数不超过主调用数的 ratio 倍，
+ * 累积上限限制了突发的对冲数量。 */
+public class HedgeBudget {
+
+    private final double ratio;
+    private final double max;
+
+    private double balance;
+    private long requests;
+    private long hedges;
+
+    public HedgeBudget(double ratio, double max) {
+        this.ratio = Math.max(0, ratio);
+        this.max = Math.max(1, max);
+    }
+
+    /** 记录一次主调用并积累额度 */
+    public synchronized void deposit() {
+        requests++;
+        balance = Math.min(max, balance + ratio);
+    }
+
+    /** 尝试消耗一个对冲额度
+     * @return 额度足够时返回true */
+    public synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        hedges++;
+        return true;
+    }
+
+    /** 退回一个未使用的对冲额度（如没有可用的备选实例） */
+    public synchronized void refund() {
+        balance = Math.min(max, balance + 1);
+        hedges--;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getHedges() {
+        return hedges;
+    }
+}
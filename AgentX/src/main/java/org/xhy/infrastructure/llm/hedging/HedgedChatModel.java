@@ -0,0 +1,44 @@
+package org.xhy.infrastructure.llm.hedging;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/** 带对冲请求的同步模型客户端，主客户端响应过慢时向备选客户端发出相同请求，先返回的结果生效 */
+public class HedgedChatModel implements ChatModel {
+
+    private final RequestHedger hedger;
+    private final String key;
+    private final ChatModel primary;
+    private final Supplier<ChatModel> alternative;
+
+    public HedgedChatModel(RequestHedger hedger, String key, ChatModel primary, Supplier<ChatModel> alternative) {
+        this.hedger = hedger;
+        this.key = key;
+        this.primary = primary;
+        this.alternative = alternative;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        return hedger.execute(key, () -> primary.chat(chatRequest), () -> {
+            ChatModel model = alternative.get();
+            return model != null ? () -> model.chat(chatRequest) : null;
+        }).getValue();
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return primary.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return primary.supportedCapabilities();
+    }
+}
@@ -0,0 +1,45 @@
+package org.xhy.infrastructure.llm.hedging;
+
+import java.util.Arrays;
+
+/** 最近N次调用的延迟样本，用于计算对冲延迟 */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public LatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    /** 记录一个延迟样本(毫秒) */
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /** 计算延迟分位
+     * @param percentile 分位(0-100)
+     * @param minSamples 最少样本数
+     * @return 分位延迟(毫秒)，样本不足时返回-1 */
+    public long percentile(double percentile, int minSamples) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0 || count < minSamples) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
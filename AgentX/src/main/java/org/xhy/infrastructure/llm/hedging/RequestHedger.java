@@ -0,0 +1,328 @@
+package org.xhy.infrastructure.llm.hedging;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.langchain4j.model.chat.ChatModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.ManagedExecutor;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.LLMHedgingProperties;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/** 同步模型调用的对冲请求
+ *
+ * 主调用在调用线程上执行，超过该模型近期延迟分位（默认p95）仍未返回时，在对冲线程池中选择负载均衡给出的另一个实例并发出一份相同的请求，
+ * 先成功返回的结果生效，另一方被中断取消。对冲数量受预算限制，长期不超过主调用数的配置比例。每个模型独立统计延迟和预算。 */
+@Component
+public class RequestHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    private final LLMHedgingProperties properties;
+
+    private final Cache<String, Stats> stats;
+
+    private final ManagedExecutor executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    public RequestHedger(LLMHedgingProperties properties, ExecutorRegistry executorRegistry) {
+        this.properties = properties;
+        this.stats = CacheBuilder.newBuilder().expireAfterAccess(Duration.ofMinutes(30)).build();
+        this.executor = executorRegistry.get(WorkloadType.LLM_HEDGE);
+        this.scheduler = executorRegistry.getScheduler();
+    }
+
+    /** 执行可对冲的调用
+     *
+     * @param key 延迟统计的键，通常为模型ID
+     * @param primary 主调用，在调用线程执行
+     * @param alternative 备选调用的来源，在需要对冲时于对冲线程调用，返回null表示没有可用的备选实例
+     * @return 调用结果及生效的一方 */
+    public <R> Outcome<R> execute(String key, Supplier<R> primary, Supplier<Supplier<R>> alternative) {
+        if (!properties.isEnabled()) {
+            return new Outcome<>(primary.get(), false, false, -1);
+        }
+        Stats keyStats = getStats(key);
+        keyStats.budget.deposit();
+        long delay = hedgeDelay(keyStats.window);
+        if (delay < 0) {
+            // 样本不足时不对冲
+            return callInline(keyStats, primary);
+        }
+
+        Race<R> race = new Race<>(Thread.currentThread());
+        Runnable hedgeTask = executor.withContext(() -> runHedge(key, delay, keyStats, alternative, race));
+        ScheduledFuture<?> timer = scheduler.schedule(() -> launch(key, hedgeTask, race), delay,
+                TimeUnit.MILLISECONDS);
+        long primaryStart = System.nanoTime();
+        R value = null;
+        RuntimeException primaryError = null;
+        try {
+            value = primary.get();
+        } catch (RuntimeException e) {
+            primaryError = e;
+        }
+        timer.cancel(false);
+        long primaryLatency = elapsedMs(primaryStart);
+
+        if (race.finishPrimary()) {
+            // 对冲请求先返回，主调用已被中断；被取消的主调用至少耗时到此刻，作为截尾样本计入，保留尾部延迟的信息
+            keyStats.window.record(race.hedgeLatency);
+            keyStats.window.record(primaryLatency);
+            return new Outcome<>(race.hedgeResult.join(), true, true, race.hedgeLatency);
+        }
+        if (primaryError == null) {
+            keyStats.window.record(primaryLatency);
+            race.cancelHedge();
+            return new Outcome<>(value, race.hedgeSent, false, primaryLatency);
+        }
+        if (!race.isLaunched()) {
+            throw primaryError;
+        }
+
+        // 主调用失败时等待对冲请求的结果
+        logger.warn("对冲调用的主调用失败，等待对冲请求结果: {}, 错误: {}", key, primaryError.getMessage());
+        try {
+            R hedgeValue = race.hedgeResult.get();
+            keyStats.window.record(race.hedgeLatency);
+            return new Outcome<>(hedgeValue, true, true, race.hedgeLatency);
+        } catch (ExecutionException e) {
+            primaryError.addSuppressed(e.getCause());
+            throw primaryError;
+        } catch (CancellationException e) {
+            // 没有发出对冲请求
+            throw primaryError;
+        } catch (InterruptedException e) {
+            race.cancelHedge();
+            Thread.currentThread().interrupt();
+            throw new BusinessException("模型调用被中断", e);
+        }
+    }
+
+    /** 为同步模型客户端加上对冲
+     *
+     * @param key 延迟统计的键，通常为模型ID
+     * @param primary 主客户端
+     * @param alternative 备选客户端的来源，返回null表示没有可用的备选实例
+     * @return 未启用对冲时原样返回 */
+    public ChatModel hedged(String key, ChatModel primary, Supplier<ChatModel> alternative) {
+        if (!properties.isEnabled()) {
+            return primary;
+        }
+        return new HedgedChatModel(this, key, primary, alternative);
+    }
+
+    /** 对冲的累计统计，键不存在时返回null */
+    public HedgeBudget getBudget(String key) {
+        Stats keyStats = stats.getIfPresent(key);
+        return keyStats != null ? keyStats.budget : null;
+    }
+
+    private <R> Outcome<R> callInline(Stats keyStats, Supplier<R> primary) {
+        long start = System.nanoTime();
+        R value = primary.get();
+        long latency = elapsedMs(start);
+        keyStats.window.record(latency);
+        return new Outcome<>(value, false, false, latency);
+    }
+
+    /** 对冲延迟到期，在调度线程上把对冲任务交给对冲线程池 */
+    private <R> void launch(String key, Runnable hedgeTask, Race<R> race) {
+        try {
+            race.hedgeRun = executor.submit(hedgeTask);
+        } catch (RejectedExecutionException e) {
+            logger.debug("对冲线程池已满，放弃对冲: {}", key);
+        }
+    }
+
+    /** 在对冲线程上选择备选实例并发出对冲请求，主调用已结束时不再发出 */
+    private <R> void runHedge(String key, long delay, Stats keyStats, Supplier<Supplier<R>> alternative,
+            Race<R> race) {
+        if (!race.start()) {
+            return;
+        }
+        try {
+            Supplier<R> hedge = keyStats.budget.tryWithdraw() ? selectAlternative(keyStats, alternative) : null;
+            if (hedge == null) {
+                return;
+            }
+            race.hedgeSent = true;
+            logger.debug("主调用超过{}ms未返回，发出对冲请求: {}", delay, key);
+            long hedgeStart = System.nanoTime();
+            R value = hedge.get();
+            race.hedgeSucceeded(value, elapsedMs(hedgeStart));
+        } catch (RuntimeException e) {
+            if (!race.isPrimaryDone()) {
+                logger.warn("对冲请求失败，继续等待主调用: {}, 错误: {}", key, e.getMessage());
+            }
+            race.hedgeResult.completeExceptionally(e);
+        } finally {
+            // 未发出或未完成对冲时结束等待
+            race.hedgeResult.cancel(false);
+        }
+    }
+
+    private <R> Supplier<R> selectAlternative(Stats keyStats, Supplier<Supplier<R>> alternative) {
+        Supplier<R> hedge = null;
+        try {
+            hedge = alternative.get();
+        } catch (Exception e) {
+            logger.warn("选择对冲备选实例失败: {}", e.getMessage());
+        }
+        if (hedge == null) {
+            keyStats.budget.refund();
+        }
+        return hedge;
+    }
+
+    private long hedgeDelay(LatencyWindow window) {
+        long p = window.percentile(properties.getPercentile(), Math.max(1, properties.getMinSamples()));
+        if (p < 0) {
+            return -1;
+        }
+        return Math.max(properties.getMinDelayMs(), Math.min(properties.getMaxDelayMs(), p));
+    }
+
+    private Stats getStats(String key) {
+        try {
+            return stats.get(key, Stats::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建对冲统计失败: " + key, e.getCause());
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private final class Stats {
+
+        private final LatencyWindow window = new LatencyWindow(properties.getWindowSize());
+        private final HedgeBudget budget = new HedgeBudget(properties.getBudgetRatio(), properties.getMaxBudget());
+    }
+
+    /** 一次可对冲调用中主调用与对冲请求的竞争状态
+     *
+     * 对冲请求先成功时中断仍在执行主调用的调用线程；状态变更与中断在同一把锁内完成，调用线程结束主调用后清除残留的中断标记。 */
+    private static final class Race<R> {
+
+        private static final int RUNNING = 0;
+        private static final int PRIMARY_DONE = 1;
+        private static final int HEDGE_WON = 2;
+
+        private final Thread caller;
+
+        /** 对冲请求的结果，未发出对冲时被取消 */
+        private final CompletableFuture<R> hedgeResult = new CompletableFuture<>();
+
+        private int state = RUNNING;
+
+        /** 对冲任务是否已在主调用结束前开始执行 */
+        private boolean launched;
+
+        private volatile Future<?> hedgeRun;
+        private volatile boolean hedgeSent;
+        private volatile long hedgeLatency;
+
+        private Race(Thread caller) {
+            this.caller = caller;
+        }
+
+        /** 对冲任务开始执行，主调用已结束时返回false */
+        synchronized boolean start() {
+            if (state != RUNNING) {
+                return false;
+            }
+            launched = true;
+            return true;
+        }
+
+        synchronized boolean isLaunched() {
+            return launched;
+        }
+
+        synchronized boolean isPrimaryDone() {
+            return state == PRIMARY_DONE;
+        }
+
+        /** 对冲请求成功，主调用仍在执行时中断调用线程 */
+        synchronized void hedgeSucceeded(R value, long latencyMs) {
+            hedgeLatency = latencyMs;
+            hedgeResult.complete(value);
+            if (state == RUNNING) {
+                state = HEDGE_WON;
+                caller.interrupt();
+            }
+        }
+
+        /** 主调用结束（成功或失败）后在调用线程上调用
+         * @return 对冲请求是否已先成功返回 */
+        synchronized boolean finishPrimary() {
+            if (state == HEDGE_WON) {
+                Thread.interrupted();
+                return true;
+            }
+            state = PRIMARY_DONE;
+            return false;
+        }
+
+        /** 中断仍在执行的对冲请求 */
+        void cancelHedge() {
+            Future<?> run = hedgeRun;
+            if (run != null) {
+                run.cancel(true);
+            }
+        }
+    }
+
+    /** 对冲调用的结果
+     * @param <R> 结果类型 */
+    public static final class Outcome<R> {
+
+        private final R value;
+        private final boolean hedged;
+        private final boolean hedgeWon;
+        private final long latencyMs;
+
+        Outcome(R value, boolean hedged, boolean hedgeWon, long latencyMs) {
+            this.value = value;
+            this.hedged = hedged;
+            this.hedgeWon = hedgeWon;
+            this.latencyMs = latencyMs;
+        }
+
+        public R getValue() {
+            return value;
+        }
+
+        /** 是否发出了对冲请求 */
+        public boolean isHedged() {
+            return hedged;
+        }
+
+        /** 生效的是否为对冲请求 */
+        public boolean isHedgeWon() {
+            return hedgeWon;
+        }
+
+        /** 生效一方的调用耗时(毫秒)，未启用对冲时为-1 */
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package org.xhy.infrastructure.llm.mock;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** 本地模拟大模型服务
+ *
+ * 在回环地址上提供 OpenAI 兼容的 /v1/chat/completions 和 Anthropic 兼容的 /v1/messages 接口，支持流式输出。
+ * 延迟、输出长度、错误注入和工具调用由模型名中的场景参数决定（见 {@link MockScenario}），回复内容由种子和用户消息确定，
+ * 同样的请求序列得到同样的结果，用于离线环境下可重复的压测和延迟测试。
+ * 服务端模拟提示词前缀缓存：OpenAI 接口按与历史请求相同的最长前缀自动命中，Anthropic 接口只在 cache_control 标记处读写缓存，
+ * 命中和写入的Token数在用量中返回，可用于验证多轮对话的前缀是否稳定。
+ *
+ * MOCK 协议的服务商使用进程内共享的实例，需开启 llm.client.mock-enabled；也可通过 main 方法单独启动，供其他进程以 OPENAI 或 ANTHROPIC 协议接入。
+ * 处理线程数有上限，线程和队列都满时由接收线程处理，新连接排队等待，与过载的真实服务一样变慢而不是无限创建线程。 */
+public class MockLLMServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MockLLMServer.class);
+
+    private static final String[] VOCABULARY = {"the", "agent", "answer", "context", "model", "token", "stream",
+            "request", "tool", "result", "knowledge", "search", "user", "message", "session", "latency", "provider",
+            "response", "query", "document", "vector", "memory", "task", "plan", "summary", "data", "system", "value"};
+
+    /** 缓存的前缀摘要数上限，超出后整体清空，避免长时间压测占用过多内存 */
+    private static final int MAX_CACHED_PREFIXES = 100_000;
+
+    /** 同时处理的请求数上限，流式回复在处理线程中按场景延迟输出，一个请求占用一个线程 */
+    private static final int MAX_THREADS = 256;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static MockLLMServer shared;
+
+    private final Map<String, ScenarioState> states = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong idSequence = new AtomicLong();
+
+    /** 已缓存的提示词前缀摘要 */
+    private final Set<Long> cachedPrefixes = ConcurrentHashMap.newKeySet();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** 获取进程内共享的模拟服务，首次调用时在随机端口启动 */
+    public static synchronized MockLLMServer shared() {
+        if (shared == null) {
+            MockLLMServer server = new MockLLMServer();
+            server.start(0, true);
+            shared = server;
+        }
+        return shared;
+    }
+
+    /** 启动服务
+     * @param port 端口，0表示随机端口
+     * @param daemon 是否使用守护线程，不阻止JVM退出 */
+    public synchronized MockLLMServer start(int port, boolean daemon) {
+        if (server != null) {
+            return this;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "mock-llm-" + threadIndex.incrementAndGet());
+                    t.setDaemon(daemon);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        threadPool.allowCoreThreadTimeOut(true);
+        executor = threadPool;
+        if (daemon) {
+            // HttpServer 的分发线程继承启动线程的守护属性，在守护线程中启动
+            Thread starter = new Thread(() -> bind(port));
+            starter.setDaemon(true);
+            starter.start();
+            try {
+                starter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            bind(port);
+        }
+        if (server == null) {
+            executor.shutdownNow();
+            throw new IllegalStateException("模拟大模型服务启动失败，端口: " + port);
+        }
+        logger.info("模拟大模型服务已启动: {}", getBaseUrl());
+        return this;
+    }
+
+    private void bind(int port) {
+        try {
+            HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    1024);
+            httpServer.setExecutor(executor);
+            httpServer.createContext("/v1/chat/completions", exchange -> handle(exchange, false));
+            httpServer.createContext("/v1/messages", exchange -> handle(exchange, true));
+            httpServer.start();
+            server = httpServer;
+        } catch (IOException e) {
+            logger.error("模拟大模型服务绑定端口失败: {}", port, e);
+        }
+    }
+
+    /** 停止服务 */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /** 服务地址，如 http://127.0.0.1:18080/v1 */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1";
+    }
+
+    /** 将 MOCK 服务商的配置转换为指向本服务的配置，按场景的 api 参数选择兼容协议 */
+    public ProviderConfig toProviderConfig(ProviderConfig config) {
+        MockScenario scenario = MockScenario.parse(config.getModel());
+        String apiKey = config.getApiKey() == null || config.getApiKey().isBlank() ? "mock" : config.getApiKey();
+        ProviderConfig mockConfig = new ProviderConfig(apiKey, getBaseUrl(), config.getModel(),
+                scenario.isAnthropic() ? ProviderProtocol.ANTHROPIC : ProviderProtocol.OPENAI);
+        mockConfig.setCustomHeaders(config.getCustomHeaders());
+        mockConfig.setPromptCache(config.isPromptCache());
+        return mockConfig;
+    }
+
+    /** 累计收到的请求数 */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** 累计注入的错误数 */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    private void handle(HttpExchange exchange, boolean anthropic) {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error(anthropic, "invalid_request_error", "Method not allowed"));
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            JSONObject request = JSON.parseObject(new String(body, StandardCharsets.UTF_8));
+            String model = request.getString("model");
+            MockScenario scenario;
+            try {
+                scenario = MockScenario.parse(model);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, 400, error(anthropic, "invalid_request_error", e.getMessage()));
+                return;
+            }
+            Reply reply = plan(scenario, model, request, anthropic, body.length);
+            if (reply.errorStatus > 0) {
+                errorCount.incrementAndGet();
+                sleepMillis(scenario.getFirstTokenDelayMs());
+                String type = reply.errorStatus == 429 ? "rate_limit_error" : "api_error";
+                sendJson(exchange, reply.errorStatus, error(anthropic, type, "Injected mock error"));
+                return;
+            }
+            boolean stream = request.getBooleanValue("stream");
+            if (anthropic) {
+                if (stream) {
+                    streamAnthropic(exchange, scenario, model, reply);
+                } else {
+                    sleepUntilComplete(scenario, reply);
+                    sendJson(exchange, 200, anthropicMessage(model, reply));
+                }
+            } else {
+                if (stream) {
+                    streamOpenAi(exchange, scenario, model, reply);
+                } else {
+                    sleepUntilComplete(scenario, reply);
+                    sendJson(exchange, 200, openAiCompletion(model, reply));
+                }
+            }
+        } catch (IOException e) {
+            // 客户端提前断开（如对话被中断）
+            logger.debug("模拟大模型服务连接断开: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.warn("模拟大模型服务处理请求失败", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** 根据场景和请求决定本次回复：错误、工具调用或文本 */
+    private Reply plan(MockScenario scenario, String model, JSONObject request, boolean anthropic, int bodyLength) {
+        ScenarioState state = states.computeIfAbsent(model == null ? "" : model,
+                key -> new ScenarioState(scenario.getSeed()));
+        long sequence = state.requests.incrementAndGet();
+        requestCount.incrementAndGet();
+
+        Reply reply = new Reply();
+        reply.id = idSequence.incrementAndGet();
+        // 输入Token数按请求体大小估算
+        reply.inputTokens = Math.max(1, bodyLength / 4);
+        if ((scenario.getErrorEvery() > 0 && sequence % scenario.getErrorEvery() == 0)
+                || (scenario.getErrorRate() > 0 && state.nextDouble() < scenario.getErrorRate())) {
+            reply.errorStatus = scenario.getErrorStatus();
+            return reply;
+        }
+
+        JSONArray messages = request.getJSONArray("messages");
+        JSONArray tools = request.getJSONArray("tools");
+        applyPromptCache(model, request, anthropic, reply);
+        String toolName = scenario.getTool();
+        if (toolName != null && tools != null && !tools.isEmpty() && !endsWithToolResult(messages, anthropic)) {
+            if ("auto".equals(toolName)) {
+                JSONObject first = tools.getJSONObject(0);
+                toolName = anthropic ? first.getString("name") : first.getJSONObject("function").getString("name");
+            }
+            reply.toolName = toolName;
+            reply.toolArgs = scenario.getToolArgs();
+            reply.outputTokens = Math.max(1, reply.toolArgs.length() / 4);
+            return reply;
+        }
+
+        Random random = new Random(scenario.getSeed() * 31 + lastUserText(messages).hashCode());
+        String[] tokens = new String[Math.max(1, scenario.getTokens())];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = (i == 0 ? "" : " ") + VOCABULARY[random.nextInt(VOCABULARY.length)];
+        }
+        reply.tokens = tokens;
+        reply.outputTokens = tokens.length;
+        return reply;
+    }
+
+    /** 按请求的前缀片段（工具定义、系统提示词、各条消息依次排列）计算缓存命中和写入的Token数
+     *
+     * OpenAI 接口每个片段边界都可命中并写入缓存；Anthropic 接口只有带 cache_control 的片段是缓存断点 */
+    private void applyPromptCache(String model, JSONObject request, boolean anthropic, Reply reply) {
+        List<String> segments = new ArrayList<>();
+        addSegments(segments, request.get("tools"));
+        if (anthropic) {
+            addSegments(segments, request.get("system"));
+        }
+        addSegments(segments, request.get("messages"));
+
+        long hash = model == null ? 0 : model.hashCode();
+        int prefixTokens = 0;
+        int cachedTokens = 0;
+        int breakpointTokens = 0;
+        List<Long> breakpoints = new ArrayList<>();
+        for (String segment : segments) {
+            hash = hash * 1_000_003L + segment.hashCode();
+            prefixTokens += Math.max(1, segment.length() / 4);
+            if (anthropic && !segment.contains("\"cache_control\"")) {
+                continue;
+            }
+            breakpoints.add(hash);
+            breakpointTokens = prefixTokens;
+            if (cachedPrefixes.contains(hash)) {
+                cachedTokens = prefixTokens;
+            }
+        }
+        if (cachedPrefixes.size() > MAX_CACHED_PREFIXES) {
+            cachedPrefixes.clear();
+        }
+        cachedPrefixes.addAll(breakpoints);
+
+        reply.inputTokens = Math.max(reply.inputTokens, prefixTokens);
+        reply.cachedInputTokens = cachedTokens;
+        // OpenAI 不单独报告缓存写入；Anthropic 断点之前未命中的部分按写入计
+        reply.cacheWriteTokens = anthropic ? breakpointTokens - cachedTokens : 0;
+    }
+
+    private static void addSegments(List<String> segments, Object value) {
+        if (value instanceof JSONArray array) {
+            for (Object item : array) {
+                segments.add(JSON.toJSONString(item));
+            }
+        } else if (value != null) {
+            segments.add(JSON.toJSONString(value));
+        }
+    }
+
+    private void streamOpenAi(HttpExchange exchange, MockScenario scenario, String model, Reply reply)
+            throws IOException {
+        OutputStream out = openStream(exchange);
+        String id = "chatcmpl-mock-" + reply.id;
+        sleepMillis(scenario.getFirstTokenDelayMs());
+        if (reply.toolName != null) {
+            JSONObject function = new JSONObject().fluentPut("name", reply.toolName).fluentPut("arguments",
+                    reply.toolArgs);
+            JSONObject toolCall = new JSONObject().fluentPut("index", 0).fluentPut("id", "call_mock_" + reply.id)
+                    .fluentPut("type", "function").fluentPut("function", function);
+            writeData(out, openAiChunk(id, model,
+                    new JSONObject().fluentPut("role", "assistant").fluentPut("tool_calls", JSONArray.of(toolCall)),
+                    null));
+            writeData(out, openAiChunk(id, model, new JSONObject(), "tool_calls"));
+        } else {
+            long start = System.nanoTime();
+            for (int i = 0; i < reply.tokens.length; i++) {
+                if (scenario.getFailAfter() > 0 && i >= scenario.getFailAfter()) {
+                    errorCount.incrementAndGet();
+                    writeData(out, error(false, "server_error", "Injected mock stream error").toJSONString());
+                    return;
+                }
+                parkUntil(start + scenario.tokenOffsetNanos(i));
+                JSONObject delta = new JSONObject().fluentPut("content", reply.tokens[i]);
+                if (i == 0) {
+                    delta.put("role", "assistant");
+                }
+                writeData(out, openAiChunk(id, model, delta, null));
+            }
+            writeData(out, openAiChunk(id, model, new JSONObject(), "stop"));
+        }
+        JSONObject usageChunk = new JSONObject().fluentPut("id", id).fluentPut("object", "chat.completion.chunk")
+                .fluentPut("created", epochSeconds()).fluentPut("model", model).fluentPut("choices", new JSONArray())
+                .fluentPut("usage", openAiUsage(reply));
+        writeData(out, usageChunk.toJSONString());
+        writeData(out, "[DONE]");
+    }
+
+    private void streamAnthropic(HttpExchange exchange, MockScenario scenario, String model, Reply reply)
+            throws IOException {
+        OutputStream out = openStream(exchange);
+        JSONObject message = anthropicMessage(model, reply).fluentPut("content", new JSONArray())
+                .fluentPut("stop_reason", null).fluentPut("usage", anthropicUsage(reply, 0));
+        writeEvent(out, "message_start", new JSONObject().fluentPut("type", "message_start").fluentPut("message",
+                message));
+        sleepMillis(scenario.getFirstTokenDelayMs());
+        if (reply.toolName != null) {
+            JSONObject block = new JSONObject().fluentPut("type", "tool_use").fluentPut("id", "toolu_mock_" + reply.id)
+                    .fluentPut("name", reply.toolName).fluentPut("input", new JSONObject());
+            writeEvent(out, "content_block_start", new JSONObject().fluentPut("type", "content_block_start")
+                    .fluentPut("index", 0).fluentPut("content_block", block));
+            writeEvent(out, "content_block_delta",
+                    new JSONObject().fluentPut("type", "content_block_delta").fluentPut("index", 0).fluentPut("delta",
+                            new JSONObject().fluentPut("type", "input_json_delta").fluentPut("partial_json",
+                                    reply.toolArgs)));
+        } else {
+            writeEvent(out, "content_block_start",
+                    new JSONObject().fluentPut("type", "content_block_start").fluentPut("index", 0).fluentPut(
+                            "content_block", new JSONObject().fluentPut("type", "text").fluentPut("text", "")));
+            long start = System.nanoTime();
+            for (int i = 0; i < reply.tokens.length; i++) {
+                if (scenario.getFailAfter() > 0 && i >= scenario.getFailAfter()) {
+                    errorCount.incrementAndGet();
+                    writeEvent(out, "error", error(true, "api_error", "Injected mock stream error"));
+                    return;
+                }
+                parkUntil(start + scenario.tokenOffsetNanos(i));
+                writeEvent(out, "content_block_delta",
+                        new JSONObject().fluentPut("type", "content_block_delta").fluentPut("index", 0).fluentPut(
+                                "delta",
+                                new JSONObject().fluentPut("type", "text_delta").fluentPut("text", reply.tokens[i])));
+            }
+        }
+        writeEvent(out, "content_block_stop",
+                new JSONObject().fluentPut("type", "content_block_stop").fluentPut("index", 0));
+        writeEvent(out, "message_delta",
+                new JSONObject().fluentPut("type", "message_delta")
+                        .fluentPut("delta", new JSONObject().fluentPut("stop_reason", reply.stopReason(true)))
+                        .fluentPut("usage", new JSONObject().fluentPut("output_tokens", reply.outputTokens)));
+        writeEvent(out, "message_stop", new JSONObject().fluentPut("type", "message_stop"));
+    }
+
+    private JSONObject openAiCompletion(String model, Reply reply) {
+        JSONObject message = new JSONObject().fluentPut("role", "assistant");
+        if (reply.toolName != null) {
+            JSONObject function = new JSONObject().fluentPut("name", reply.toolName).fluentPut("arguments",
+                    reply.toolArgs);
+            message.put("tool_calls", JSONArray.of(new JSONObject().fluentPut("id", "call_mock_" + reply.id)
+                    .fluentPut("type", "function").fluentPut("function", function)));
+        } else {
+            message.put("content", String.join("", reply.tokens));
+        }
+        JSONObject choice = new JSONObject().fluentPut("index", 0).fluentPut("message", message)
+                .fluentPut("finish_reason", reply.stopReason(false));
+        return new JSONObject().fluentPut("id", "chatcmpl-mock-" + reply.id).fluentPut("object", "chat.completion")
+                .fluentPut("created", epochSeconds()).fluentPut("model", model)
+                .fluentPut("choices", JSONArray.of(choice)).fluentPut("usage", openAiUsage(reply));
+    }
+
+    private String openAiChunk(String id, String model, JSONObject delta, String finishReason) {
+        JSONObject choice = new JSONObject().fluentPut("index", 0).fluentPut("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        }
+        return new JSONObject().fluentPut("id", id).fluentPut("object", "chat.completion.chunk")
+                .fluentPut("created", epochSeconds()).fluentPut("model", model)
+                .fluentPut("choices", JSONArray.of(choice)).toJSONString();
+    }
+
+    private JSONObject openAiUsage(Reply reply) {
+        return new JSONObject().fluentPut("prompt_tokens", reply.inputTokens)
+                .fluentPut("completion_tokens", reply.outputTokens)
+                .fluentPut("total_tokens", reply.inputTokens + reply.outputTokens)
+                .fluentPut("prompt_tokens_details",
+                        new JSONObject().fluentPut("cached_tokens", reply.cachedInputTokens));
+    }
+
+    /** Anthropic 的 input_tokens 不含缓存命中和写入的部分 */
+    private JSONObject anthropicUsage(Reply reply, int outputTokens) {
+        return new JSONObject()
+                .fluentPut("input_tokens", reply.inputTokens - reply.cachedInputTokens - reply.cacheWriteTokens)
+                .fluentPut("cache_creation_input_tokens", reply.cacheWriteTokens)
+                .fluentPut("cache_read_input_tokens", reply.cachedInputTokens).fluentPut("output_tokens", outputTokens);
+    }
+
+    private JSONObject anthropicMessage(String model, Reply reply) {
+        JSONObject block;
+        if (reply.toolName != null) {
+            block = new JSONObject().fluentPut("type", "tool_use").fluentPut("id", "toolu_mock_" + reply.id)
+                    .fluentPut("name", reply.toolName).fluentPut("input", JSON.parseObject(reply.toolArgs));
+        } else {
+            block = new JSONObject().fluentPut("type", "text").fluentPut("text", String.join("", reply.tokens));
+        }
+        return new JSONObject().fluentPut("id", "msg_mock_" + reply.id).fluentPut("type", "message")
+                .fluentPut("role", "assistant").fluentPut("model", model).fluentPut("content", JSONArray.of(block))
+                .fluentPut("stop_reason", reply.stopReason(true))
+                .fluentPut("usage", anthropicUsage(reply, reply.outputTokens));
+    }
+
+    private JSONObject error(boolean anthropic, String type, String message) {
+        JSONObject error = new JSONObject().fluentPut("type", type).fluentPut("message", message);
+        if (anthropic) {
+            return new JSONObject().fluentPut("type", "error").fluentPut("error", error);
+        }
+        return new JSONObject().fluentPut("error", error);
+    }
+
+    private boolean endsWithToolResult(JSONArray messages, boolean anthropic) {
+        if (messages == null || messages.isEmpty()) {
+            return false;
+        }
+        JSONObject last = messages.getJSONObject(messages.size() - 1);
+        if (!anthropic) {
+            return "tool".equals(last.getString("role"));
+        }
+        Object content = last.get("content");
+        if (content instanceof JSONArray blocks) {
+            for (int i = 0; i < blocks.size(); i++) {
+                if ("tool_result".equals(blocks.getJSONObject(i).getString("type"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String lastUserText(JSONArray messages) {
+        if (messages == null) {
+            return "";
+        }
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            JSONObject message = messages.getJSONObject(i);
+            if (!"user".equals(message.getString("role"))) {
+                continue;
+            }
+            Object content = message.get("content");
+            if (content instanceof String text) {
+                return text;
+            }
+            if (content instanceof JSONArray blocks) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j < blocks.size(); j++) {
+                    String part = blocks.getJSONObject(j).getString("text");
+                    if (part != null) {
+                        text.append(part);
+                    }
+                }
+                return text.toString();
+            }
+        }
+        return "";
+    }
+
+    private void sleepUntilComplete(MockScenario scenario, Reply reply) {
+        int tokens = reply.tokens != null ? reply.tokens.length : 1;
+        parkUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scenario.getFirstTokenDelayMs())
+                + scenario.tokenOffsetNanos(tokens - 1));
+    }
+
+    private static void sleepMillis(long millis) {
+        parkUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static long epochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static OutputStream openStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void writeData(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void writeEvent(OutputStream out, String event, JSONObject data) throws IOException {
+        out.write(("event: " + event + "\ndata: " + data.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /** 单独启动模拟服务：java MockLLMServer [端口]，默认端口18080 */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18080;
+        MockLLMServer server = new MockLLMServer().start(port, false);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    /** 同一场景（模型名）的请求计数和随机序列，保证错误注入可重复 */
+    private static final class ScenarioState {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final Random random;
+
+        private ScenarioState(long seed) {
+            this.random = new Random(seed);
+        }
+
+        private synchronized double nextDouble() {
+            return random.nextDouble();
+        }
+    }
+
+    /** 一次请求的回复计划 */
+    private static final class Reply {
+
+        private long id;
+        private int errorStatus;
+        private String[] tokens;
+        private String toolName;
+        private String toolArgs;
+        private int inputTokens;
+        private int cachedInputTokens;
+        private int cacheWriteTokens;
+        private int outputTokens;
+
+        private String stopReason(boolean anthropic) {
+            if (toolName != null) {
+                return anthropic ? "tool_use" : "tool_calls";
+            }
+            return anthropic ? "end_turn" : "stop";
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.xhy.infrastructure.llm.mock;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/** 模拟服务商的响应场景
+ *
+ * 场景写在模型名中，格式为 名称?参数=值&参数=值，例如 mock?ttft=300&tps=40&tokens=200&errorRate=0.05&tool=auto。
+ * 模型名原样随请求发往模拟服务，同一模型名得到同样的延迟、输出和错误序列。
+ *
+ * 支持的参数：
+ * <ul>
+ * <li>ttft：首Token延迟(毫秒)，默认200</li>
+ * <li>tps：每秒输出Token数，0表示不限速，默认50</li>
+ * <li>tokens：回复的Token数，默认64</li>
+ * <li>errorRate：按种子随机返回错误的比例(0-1)，默认0</li>
+ * <li>errorEvery：每N次请求返回一次错误，0表示不启用，默认0</li>
+ * <li>errorStatus：注入错误的HTTP状态码，默认500</li>
+ * <li>failAfter：流式输出N个Token后发送错误事件并结束，0表示不启用，默认0</li>
+ * <li>tool：请求带有工具且尚未返回工具结果时，先调用的工具名；auto表示调用请求中的第一个工具，默认不调用</li>
+ * <li>toolArgs：工具调用参数(JSON)，默认 {}</li>
+ * <li>seed：随机种子，默认0</li>
+ * <li>api：客户端使用的协议，openai 或 anthropic，默认openai</li>
+ * </ul> */
+public class MockScenario {
+
+    /** 客户端协议：OpenAI 兼容 */
+    public static final String API_OPENAI = "openai";
+
+    /** 客户端协议：Anthropic 兼容 */
+    public static final String API_ANTHROPIC = "anthropic";
+
+    private String name = "mock";
+    private long firstTokenDelayMs = 200;
+    private double tokensPerSecond = 50;
+    private int tokens = 64;
+    private double errorRate;
+    private int errorEvery;
+    private int errorStatus = 500;
+    private int failAfter;
+    private String tool;
+    private String toolArgs = "{}";
+    private long seed;
+    private String api = API_OPENAI;
+
+    /** 从模型名解析场景，未指定的参数使用默认值
+     * @param model 模型名
+     * @return 场景
+     * @throws IllegalArgumentException 参数格式错误 */
+    public static MockScenario parse(String model) {
+        MockScenario scenario = new MockScenario();
+        if (model == null || model.isBlank()) {
+            return scenario;
+        }
+        int query = model.indexOf('?');
+        scenario.name = query >= 0 ? model.substring(0, query) : model;
+        if (query < 0) {
+            return scenario;
+        }
+        for (String pair : model.substring(query + 1).split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            try {
+                scenario.apply(key, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("模拟场景参数格式错误: " + pair, e);
+            }
+        }
+        return scenario;
+    }
+
+    private void apply(String key, String value) {
+        switch (key) {
+            case "ttft" -> firstTokenDelayMs = Long.parseLong(value);
+            case "tps" -> tokensPerSecond = Double.parseDouble(value);
+            case "tokens" -> tokens = Integer.parseInt(value);
+            case "errorRate" -> errorRate = Double.parseDouble(value);
+            case "errorEvery" -> errorEvery = Integer.parseInt(value);
+            case "errorStatus" -> errorStatus = Integer.parseInt(value);
+            case "failAfter" -> failAfter = Integer.parseInt(value);
+            case "tool" -> tool = value.isEmpty() ? null : value;
+            case "toolArgs" -> toolArgs = value;
+            case "seed" -> seed = Long.parseLong(value);
+            case "api" -> api = value.toLowerCase();
+            default -> throw new IllegalArgumentException("未知的模拟场景参数: " + key);
+        }
+    }
+
+    /** 输出第 index 个Token的时间相对首Token的偏移(纳秒) */
+    public long tokenOffsetNanos(int index) {
+        if (tokensPerSecond <= 0) {
+            return 0;
+        }
+        return (long) (index * 1_000_000_000L / tokensPerSecond);
+    }
+
+    public boolean isAnthropic() {
+        return API_ANTHROPIC.equals(api);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFirstTokenDelayMs() {
+        return firstTokenDelayMs;
+    }
+
+    public double getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    public int getTokens() {
+        return tokens;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public int getErrorEvery() {
+        return errorEvery;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public int getFailAfter() {
+        return failAfter;
+    }
+
+    public String getTool() {
+        return tool;
+    }
+
+    public String getToolArgs() {
+        return toolArgs;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getApi() {
+        return api;
+    }
+}
@@ -2,7 +2,10 @@ package org.xhy.infrastructure.llm.protocol.enums;
 
 public enum ProviderProtocol {
 
-    OPENAI, ANTHROPIC;
+    OPENAI, ANTHROPIC,
+
+    /** 本地模拟服务商，请求发往进程内的回环服务，场景由模型名指定，用于离线压测 */
+    MOCK;
 
     public static ProviderProtocol fromCode(String code) {
         for (ProviderProtocol protocol : values()) {
@@ -0,0 +1,159 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** 字节级BPE分词器，算法与 tiktoken 一致：按预分词正则切分文本，每个片段的UTF-8字节反复合并序号最小的相邻字节对
+ *
+ * 词表以字节序列为键，字节序列按 ISO-8859-1 一一映射为字符串存储，查询时无需额外的字节数组包装。 实例不可变，可被多线程共享。 */
+public final class BpeTokenizer {
+
+    private final Pattern pattern;
+
+    /** 字节序列(ISO-8859-1字符串) -> 序号 */
+    private final Map<String, Integer> ranks;
+
+    BpeTokenizer(Pattern pattern, Map<String, Integer> ranks) {
+        this.pattern = pattern;
+        this.ranks = ranks;
+    }
+
+    /** 从 tiktoken 格式的词表文件加载分词器
+     * @param encoding 词表编码，提供预分词正则
+     * @param vocabulary 词表文件内容，读取后不会关闭
+     * @return 分词器 */
+    public static BpeTokenizer load(TokenizerEncoding encoding, InputStream vocabulary) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>(262144);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(vocabulary, StandardCharsets.US_ASCII));
+        Base64.Decoder decoder = Base64.getDecoder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            byte[] bytes = decoder.decode(line.substring(0, space));
+            ranks.put(new String(bytes, StandardCharsets.ISO_8859_1), Integer.parseInt(line.substring(space + 1)));
+        }
+        if (ranks.isEmpty()) {
+            throw new IOException("词表为空: " + encoding.getName());
+        }
+        return new BpeTokenizer(encoding.getPattern(), ranks);
+    }
+
+    /** 计算文本的Token数量
+     * @param text 文本
+     * @return Token数量 */
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = toByteString(text, matcher.start(), matcher.end());
+            count += ranks.containsKey(piece) ? 1 : merge(piece).length - 1;
+        }
+        return count;
+    }
+
+    /** 将文本编码为Token序号
+     * @param text 文本
+     * @return Token序号列表 */
+    public List<Integer> encode(String text) {
+        List<Integer> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = toByteString(text, matcher.start(), matcher.end());
+            Integer rank = ranks.get(piece);
+            if (rank != null) {
+                tokens.add(rank);
+                continue;
+            }
+            int[] bounds = merge(piece);
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                tokens.add(ranks.get(piece.substring(bounds[i], bounds[i + 1])));
+            }
+        }
+        return tokens;
+    }
+
+    /** 词表大小 */
+    public int getVocabularySize() {
+        return ranks.size();
+    }
+
+    /** 片段转换为字节字符串，纯ASCII片段与其UTF-8字节一致，直接截取 */
+    private static String toByteString(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80) {
+                byte[] bytes = text.substring(start, end).getBytes(StandardCharsets.UTF_8);
+                return new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return text.substring(start, end);
+    }
+
+    /** BPE合并，返回合并后各Token在片段中的起始位置，末尾追加片段长度
+     *
+     * rankAt[i] 为第 i 与第 i+1 个部分合并后的序号，每轮合并序号最小的一对，并只重新计算与其相邻的两个值 */
+    private int[] merge(String piece) {
+        int length = piece.length();
+        int[] bounds = new int[length + 1];
+        int[] rankAt = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            bounds[i] = i;
+        }
+        int parts = length + 1;
+        for (int i = 0; i < parts - 2; i++) {
+            rankAt[i] = rankOf(piece, bounds[i], bounds[i + 2]);
+        }
+        rankAt[parts - 2] = Integer.MAX_VALUE;
+        rankAt[parts - 1] = Integer.MAX_VALUE;
+
+        while (parts > 2) {
+            int minRank = Integer.MAX_VALUE;
+            int minIndex = -1;
+            for (int i = 0; i < parts - 2; i++) {
+                if (rankAt[i] < minRank) {
+                    minRank = rankAt[i];
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+            // 删除第 minIndex+1 个边界，即把两个部分合并为一个
+            System.arraycopy(bounds, minIndex + 2, bounds, minIndex + 1, parts - minIndex - 2);
+            System.arraycopy(rankAt, minIndex + 2, rankAt, minIndex + 1, parts - minIndex - 2);
+            parts--;
+            rankAt[minIndex] = minIndex + 2 < parts ? rankOf(piece, bounds[minIndex], bounds[minIndex + 2])
+                    : Integer.MAX_VALUE;
+            if (minIndex > 0) {
+                rankAt[minIndex - 1] = rankOf(piece, bounds[minIndex - 1], bounds[minIndex + 1]);
+            }
+        }
+
+        int[] result = new int[parts];
+        System.arraycopy(bounds, 0, result, 0, parts);
+        return result;
+    }
+
+    private int rankOf(String piece, int start, int end) {
+        Integer rank = ranks.get(piece.substring(start, end));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
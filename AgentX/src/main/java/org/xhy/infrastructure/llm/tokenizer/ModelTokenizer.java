@@ -0,0 +1,87 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import java.util.List;
+import java.util.Locale;
+
+/** 模型与本地词表的对应关系
+ *
+ * OpenAI 模型直接使用其公开词表，结果与服务商计数一致；其他服务商的词表未公开，选用最接近的词表并乘以系数估算，系数取偏大的值，宁可提前裁剪上下文也不超出窗口。 */
+public final class ModelTokenizer {
+
+    /** 未识别的模型：按 cl100k 计数并放大10% */
+    public static final ModelTokenizer DEFAULT = new ModelTokenizer(TokenizerEncoding.CL100K_BASE, 1.1);
+
+    /** 按模型名前缀匹配，先匹配的优先，因此更长的前缀要排在前面 */
+    private static final List<Rule> RULES = List.of(
+            new Rule("gpt-4o", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("chatgpt-4o", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("gpt-4.1", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("gpt-4.5", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("gpt-5", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("gpt-oss", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("o1", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("o3", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("o4", TokenizerEncoding.O200K_BASE, 1.0),
+            new Rule("gpt-4", TokenizerEncoding.CL100K_BASE, 1.0),
+            new Rule("gpt-3.5", TokenizerEncoding.CL100K_BASE, 1.0),
+            new Rule("text-embedding", TokenizerEncoding.CL100K_BASE, 1.0),
+            // Claude 词表较小，同一文本的Token数通常比 cl100k 多一到两成
+            new Rule("claude", TokenizerEncoding.CL100K_BASE, 1.2),
+            // 国内模型词表对中文的压缩率与 o200k 接近
+            new Rule("qwen", TokenizerEncoding.O200K_BASE, 1.05),
+            new Rule("deepseek", TokenizerEncoding.O200K_BASE, 1.05),
+            new Rule("glm", TokenizerEncoding.O200K_BASE, 1.05),
+            new Rule("kimi", TokenizerEncoding.O200K_BASE, 1.05),
+            new Rule("moonshot", TokenizerEncoding.O200K_BASE, 1.05),
+            new Rule("doubao", TokenizerEncoding.O200K_BASE, 1.05));
+
+    /** 使用的词表 */
+    private final TokenizerEncoding encoding;
+
+    /** 计数结果的放大系数 */
+    private final double ratio;
+
+    private ModelTokenizer(TokenizerEncoding encoding, double ratio) {
+        this.encoding = encoding;
+        this.ratio = ratio;
+    }
+
+    /** 根据模型名选择词表，忽略大小写及 "openai/"、"Qwen/" 等服务商前缀
+     * @param model 模型名，可为空
+     * @return 词表对应关系 */
+    public static ModelTokenizer forModel(String model) {
+        if (model == null || model.isBlank()) {
+            return DEFAULT;
+        }
+        String name = model.substring(model.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        for (Rule rule : RULES) {
+            if (name.startsWith(rule.prefix)) {
+                return rule.tokenizer;
+            }
+        }
+        return DEFAULT;
+    }
+
+    /** 按系数换算词表计数 */
+    public int scale(int count) {
+        return ratio == 1.0 ? count : (int) Math.round(count * ratio);
+    }
+
+    public TokenizerEncoding getEncoding() {
+        return encoding;
+    }
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    private static final class Rule {
+        private final String prefix;
+        private final ModelTokenizer tokenizer;
+
+        private Rule(String prefix, TokenizerEncoding encoding, double ratio) {
+            this.prefix = prefix;
+            this.tokenizer = new ModelTokenizer(encoding, ratio);
+        }
+    }
+}
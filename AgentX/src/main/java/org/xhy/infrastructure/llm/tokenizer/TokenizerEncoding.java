@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import java.util.regex.Pattern;
+
+/** BPE词表编码，词表文件与 tiktoken 发布的格式一致（每行为 Base64编码的字节序列 + 空格 + 序号） */
+public enum TokenizerEncoding {
+
+    /** GPT-4、GPT-3.5 及 text-embedding-3 系列使用的词表 */
+    CL100K_BASE("cl100k_base", "'(?i:[sdmt]|ll|ve|re)|[^\\r\\n\\p{L}\\p{N}]?+\\p{L}+|\\p{N}{1,3}"
+            + "| ?[^\\s\\p{L}\\p{N}]++[\\r\\n]*|\\s*[\\r\\n]|\\s+(?!\\S)|\\s+"),
+
+    /** GPT-4o、GPT-4.1、o 系列使用的词表 */
+    O200K_BASE("o200k_base", String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+"
+                    + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*"
+                    + "(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}", " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*", "\\s*[\\r\\n]+", "\\s+(?!\\S)", "\\s+"));
+
+    /** 词表名称，对应资源文件 tokenizer/{name}.tiktoken */
+    private final String name;
+
+    /** 预分词正则，先按该正则切分文本，再在每个片段内做BPE合并 */
+    private final Pattern pattern;
+
+    TokenizerEncoding(String name, String regex) {
+        this.name = name;
+        this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /** 词表文件名 */
+    public String getFileName() {
+        return name + ".tiktoken";
+    }
+}
@@ -0,0 +1,72 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.config.TokenizerProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** 本地分词器注册表，按词表编码懒加载并缓存分词器
+ *
+ * 词表优先从配置的目录读取，其次从类路径 tokenizer/ 下读取；两处都没有时记录一次警告，之后该词表始终不可用，由调用方降级为估算。 */
+@Component
+public class TokenizerRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenizerRegistry.class);
+
+    private static final String CLASSPATH_DIR = "tokenizer/";
+
+    private final TokenizerProperties properties;
+
+    /** 加载结果，包括加载失败的空结果，避免每次计数都重新查找词表 */
+    private final Map<TokenizerEncoding, Optional<BpeTokenizer>> tokenizers = new ConcurrentHashMap<>();
+
+    public TokenizerRegistry(TokenizerProperties properties) {
+        this.properties = properties;
+    }
+
+    /** 获取词表对应的分词器
+     * @param encoding 词表编码
+     * @return 分词器，未启用或词表缺失时为空 */
+    public Optional<BpeTokenizer> getTokenizer(TokenizerEncoding encoding) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        return tokenizers.computeIfAbsent(encoding, this::load);
+    }
+
+    private Optional<BpeTokenizer> load(TokenizerEncoding encoding) {
+        long startTime = System.currentTimeMillis();
+        try (InputStream vocabulary = openVocabulary(encoding)) {
+            if (vocabulary == null) {
+                logger.warn("未找到词表 {}，Token数按字符数估算", encoding.getFileName());
+                return Optional.empty();
+            }
+            BpeTokenizer tokenizer = BpeTokenizer.load(encoding, vocabulary);
+            logger.info("词表 {} 加载完成，共 {} 个Token，耗时 {}ms", encoding.getName(), tokenizer.getVocabularySize(),
+                    System.currentTimeMillis() - startTime);
+            return Optional.of(tokenizer);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("词表 {} 加载失败，Token数按字符数估算: {}", encoding.getFileName(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private InputStream openVocabulary(TokenizerEncoding encoding) throws IOException {
+        String dir = properties.getVocabularyDir();
+        if (dir != null && !dir.isBlank()) {
+            Path file = Path.of(dir, encoding.getFileName());
+            if (Files.isRegularFile(file)) {
+                return Files.newInputStream(file);
+            }
+        }
+        return TokenizerRegistry.class.getClassLoader().getResourceAsStream(CLASSPATH_DIR + encoding.getFileName());
+    }
+}
@@ -0,0 +1,148 @@
+package org.xhy.infrastructure.rag.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.config.EmbeddingCacheProperties;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/** 查询向量缓存，按 (嵌入模型标识, 归一化后的查询文本) 缓存查询文本的向量
+ *
+ * 热门问题和重复提问不再每次调用嵌入模型；同一键的并发未命中只调用一次嵌入模型，其余请求等待结果。 向量以 float[] 保存，容量按字节数衡量，超出时淘汰最久未使用的向量，写入一段时间后过期。
+ * 命中率、平均嵌入耗时等统计见 {@link #getStats()}，同时以 cache=query-embedding 注册到监控指标（cache.gets、cache.evictions 等）。 */
+@Component
+public class QueryEmbeddingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryEmbeddingCache.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /** 监控指标中的缓存名 */
+    static final String METRICS_NAME = "query-embedding";
+
+    /** 每个条目除向量和文本外的估算开销(字节) */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final boolean enabled;
+
+    private final Cache<Key, float[]> cache;
+
+    @Autowired
+    public QueryEmbeddingCache(EmbeddingCacheProperties properties, MeterRegistry meterRegistry) {
+        this(properties.isQueryEnabled(), properties.getQueryMaxSizeMb() * 1024 * 1024,
+                Duration.ofMinutes(properties.getQueryExpireMinutes()), Ticker.systemTicker());
+        GuavaCacheMetrics.monitor(meterRegistry, cache, METRICS_NAME);
+    }
+
+    QueryEmbeddingCache(boolean enabled, long maxBytes, Duration expireAfterWrite, Ticker ticker) {
+        this.enabled = enabled;
+        // 查询量远低于对话消息量，单段保证严格按最久未使用淘汰，总容量不超过上限
+        this.cache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxBytes)
+                .weigher((Key key, float[] vector) -> key.weight() + vector.length * Float.BYTES)
+                .expireAfterWrite(expireAfterWrite).ticker(ticker).recordStats().build();
+    }
+
+    /** 获取查询文本的向量，未命中时调用嵌入模型并缓存
+     *
+     * @param modelKey 嵌入模型标识，相同标识下相同文本的向量相同
+     * @param text 查询文本
+     * @param embedder 嵌入函数，参数为归一化后的文本
+     * @return 向量副本，调用方可自由修改 */
+    public float[] get(String modelKey, String text, Function<String, float[]> embedder) {
+        String normalized = normalize(text);
+        if (!enabled) {
+            return embedder.apply(normalized);
+        }
+        try {
+            return cache.get(new Key(modelKey, normalized), () -> embed(embedder, normalized)).clone();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("查询文本向量化失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /** 归一化查询文本：Unicode 兼容归一化（全角转半角等），合并连续空白并去除首尾空白，不改变大小写
+     *
+     * @param text 查询文本
+     * @return 归一化后的文本 */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /** 命中、未命中、淘汰次数和平均嵌入耗时(averageLoadPenalty，纳秒) */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /** 当前缓存的向量数量 */
+    public long size() {
+        return cache.size();
+    }
+
+    /** 清空缓存 */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static float[] embed(Function<String, float[]> embedder, String normalized) {
+        long start = System.nanoTime();
+        float[] vector = embedder.apply(normalized);
+        if (vector == null) {
+            throw new IllegalStateException("嵌入模型返回的向量为空");
+        }
+        logger.debug("查询向量未命中缓存，嵌入耗时{}ms，文本长度{}", (System.nanoTime() - start) / 1_000_000,
+                normalized.length());
+        return vector.clone();
+    }
+
+    private static final class Key {
+        private final String modelKey;
+        private final String text;
+
+        private Key(String modelKey, String text) {
+            this.modelKey = modelKey;
+            this.text = text;
+        }
+
+        private int weight() {
+            return ENTRY_OVERHEAD_BYTES + (modelKey.length() + text.length()) * Character.BYTES;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key that)) {
+                return false;
+            }
+            return modelKey.equals(that.modelKey) && text.equals(that.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(modelKey, text);
+        }
+    }
+}
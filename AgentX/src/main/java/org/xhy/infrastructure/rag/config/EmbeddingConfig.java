@@ -1,13 +1,16 @@
 package org.xhy.infrastructure.rag.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.rag.store.DatasetEmbeddingStore;
+import org.xhy.infrastructure.rag.store.DatasetQuantizationResolver;
 
 /** 嵌入式配置
  * @author shilong.zang
@@ -25,17 +28,35 @@ public class EmbeddingConfig {
         this.embeddingProperties = embeddingProperties;
     }
 
-    /** 向量化存储配置
-     * @return PgVectorEmbeddingStore实例 */
-    @Bean
-    public EmbeddingStore<TextSegment> initEmbeddingStore() {
+    /** 向量化存储配置，PgVectorEmbeddingStore 外包一层按数据集列读写的存储
+     * @param quantizationResolver 数据集向量量化方式
+     * @param executorRegistry 线程池注册表，补写量化向量使用其中的线程池
+     * @return DatasetEmbeddingStore实例 */
+    @Bean(destroyMethod = "close")
+    public DatasetEmbeddingStore initEmbeddingStore(DatasetQuantizationResolver quantizationResolver,
+            ExecutorRegistry executorRegistry) {
         EmbeddingProperties.VectorStore vectorStoreConfig = embeddingProperties.getVectorStore();
 
-        return PgVectorEmbeddingStore.builder().table(vectorStoreConfig.getTable())
+        PgVectorEmbeddingStore delegate = PgVectorEmbeddingStore.builder().table(vectorStoreConfig.getTable())
                 .dropTableFirst(vectorStoreConfig.isDropTableFirst()).createTable(vectorStoreConfig.isCreateTable())
                 .host(vectorStoreConfig.getHost()).port(vectorStoreConfig.getPort()).user(vectorStoreConfig.getUser())
                 .password(vectorStoreConfig.getPassword()).dimension(vectorStoreConfig.getDimension())
                 .database(vectorStoreConfig.getDatabase()).build();
+
+        // 独立的连接池，不注册为 Bean，以免替换应用主数据源
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("vector-store");
+        dataSource.setJdbcUrl("jdbc:postgresql://" + vectorStoreConfig.getHost() + ":" + vectorStoreConfig.getPort()
+                + "/" + vectorStoreConfig.getDatabase());
+        dataSource.setUsername(vectorStoreConfig.getUser());
+        dataSource.setPassword(vectorStoreConfig.getPassword());
+        dataSource.setMaximumPoolSize(vectorStoreConfig.getPoolSize());
+
+        return new DatasetEmbeddingStore(delegate, dataSource, vectorStoreConfig.getTable(),
+                new DatasetEmbeddingStore.SearchTuning(vectorStoreConfig.getIterativeScan(),
+                        vectorStoreConfig.getEfSearch(), vectorStoreConfig.getMaxScanTuples(),
+                        vectorStoreConfig.getRescoreMultiplier()),
+                quantizationResolver, executorRegistry.get(WorkloadType.VECTOR_QUANTIZE));
     }
 
 }
@@ -56,6 +56,24 @@ public class EmbeddingProperties {
         /** 是否创建表 */
         private boolean createTable = false;
 
+        /** 带数据集过滤的近邻检索使用的 HNSW 迭代扫描模式：relaxed_order、strict_order 或 off，需要 pgvector 0.8 及以上 */
+        private String iterativeScan = "relaxed_order";
+
+        /** HNSW 检索的候选列表大小，越大召回越高、耗时越长 */
+        private int efSearch = 100;
+
+        /** 迭代扫描最多访问的索引元组数，过滤后结果不足时在此处停止 */
+        private int maxScanTuples = 20000;
+
+        /** 向量库连接池大小 */
+        private int poolSize = 10;
+
+        /** 量化检索第一阶段取回的候选数为所需结果数的倍数，候选再以原始向量重新打分 */
+        private int rescoreMultiplier = 4;
+
+        /** 数据集量化方式的本地缓存时间(秒)，修改后其他实例最迟在此时间后生效 */
+        private long quantizationCacheSeconds = 60;
+
         public String getHost() {
             return host;
         }
@@ -127,6 +145,54 @@ public class EmbeddingProperties {
         public void setCreateTable(boolean createTable) {
             this.createTable = createTable;
         }
+
+        public String getIterativeScan() {
+            return iterativeScan;
+        }
+
+        public void setIterativeScan(String iterativeScan) {
+            this.iterativeScan = iterativeScan;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+
+        public int getMaxScanTuples() {
+            return maxScanTuples;
+        }
+
+        public void setMaxScanTuples(int maxScanTuples) {
+            this.maxScanTuples = maxScanTuples;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getRescoreMultiplier() {
+            return rescoreMultiplier;
+        }
+
+        public void setRescoreMultiplier(int rescoreMultiplier) {
+            this.rescoreMultiplier = rescoreMultiplier;
+        }
+
+        public long getQuantizationCacheSeconds() {
+            return quantizationCacheSeconds;
+        }
+
+        public void setQuantizationCacheSeconds(long quantizationCacheSeconds) {
+            this.quantizationCacheSeconds = quantizationCacheSeconds;
+        }
     }
 
     /** 获取嵌入服务名称
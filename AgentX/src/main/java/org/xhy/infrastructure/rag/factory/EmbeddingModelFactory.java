@@ -1,15 +1,33 @@
 package org.xhy.infrastructure.rag.factory;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.config.EmbeddingCacheProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
 
 /** 嵌入模型工厂类 根据用户配置动态创建嵌入模型实例
+ *
+ * 嵌入模型客户端是线程安全的，按 (baseUrl, 模型, 密钥摘要) 缓存复用，空闲客户端会被驱逐。
  * 
  * @author shilong.zang
  * @date 2025-01-22 */
 @Component
 public class EmbeddingModelFactory {
 
+    /** 客户端缓存，键中的密钥只以摘要形式保存 */
+    private final Cache<String, OpenAiEmbeddingModel> clients;
+
+    public EmbeddingModelFactory(EmbeddingCacheProperties properties) {
+        this.clients = CacheBuilder.newBuilder().maximumSize(properties.getMaxClients())
+                .expireAfterAccess(Duration.ofMinutes(properties.getClientIdleExpireMinutes())).recordStats()
+                .build();
+    }
+
     /** 嵌入模型配置类 */
     public static class EmbeddingConfig {
         private String apiKey;
@@ -50,6 +68,32 @@ public class EmbeddingModelFactory {
         }
     }
 
+    /** 获取缓存的嵌入模型实例，相同配置复用同一个客户端
+     *
+     * @param config 嵌入模型配置
+     * @return OpenAiEmbeddingModel实例 */
+    public OpenAiEmbeddingModel getEmbeddingModel(EmbeddingConfig config) {
+        String key = modelKey(config) + "|" + DigestUtil.sha256Hex(String.valueOf(config.getApiKey()));
+        try {
+            return clients.get(key, () -> createEmbeddingModel(config));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建嵌入模型失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /** 嵌入模型标识，同一标识下相同文本的向量相同，与使用的密钥无关
+     *
+     * @param config 嵌入模型配置
+     * @return baseUrl 与模型名组成的标识 */
+    public static String modelKey(EmbeddingConfig config) {
+        return config.getBaseUrl() + "|" + config.getModelEndpoint();
+    }
+
+    /** 获取当前缓存的客户端数量 */
+    public long getCachedClientCount() {
+        return clients.size();
+    }
+
     /** 根据配置创建OpenAI嵌入模型实例
      * 
      * @param config 嵌入模型配置
@@ -0,0 +1,116 @@
+package org.xhy.infrastructure.rag.memory;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.xhy.domain.rag.constant.MetadataConstant;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 单个数据集的内存索引，记录构建时的数据集版本和索引中出现过的文件，文件删除时据此判断是否失效 */
+final class DatasetIndex {
+
+    /** 每个分片附带数据的固定开销估算：ID、对象头和元数据 */
+    private static final int CHUNK_OVERHEAD_BYTES = 256;
+
+    private final String datasetId;
+
+    private final long version;
+
+    private final long createdAt;
+
+    private final HnswIndex<Chunk> index;
+
+    private final Set<String> embeddingIds = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> fileIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong chunkBytes = new AtomicLong();
+
+    private volatile long lastAccess;
+
+    DatasetIndex(String datasetId, long version, HnswIndex<Chunk> index, long createdAt) {
+        this.datasetId = datasetId;
+        this.version = version;
+        this.index = index;
+        this.createdAt = createdAt;
+        this.lastAccess = createdAt;
+    }
+
+    /** 写入分片，已存在的分片ID跳过 */
+    void add(String embeddingId, float[] vector, TextSegment segment) {
+        if (!embeddingIds.add(embeddingId)) {
+            return;
+        }
+        index.add(vector, new Chunk(embeddingId, segment));
+        String fileId = segment.metadata().getString(MetadataConstant.FILE_ID);
+        if (fileId != null) {
+            fileIds.add(fileId);
+        }
+        chunkBytes.addAndGet(CHUNK_OVERHEAD_BYTES + 2L * segment.text().length());
+    }
+
+    /** 检索，分数按 (1 + 余弦相似度) / 2 计算，与 PgVectorEmbeddingStore 一致 */
+    List<EmbeddingMatch<TextSegment>> search(float[] query, int maxResults, int ef, double minScore, long now) {
+        lastAccess = now;
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(maxResults);
+        for (HnswIndex.Neighbor<Chunk> neighbor : index.search(query, maxResults, ef)) {
+            double score = (1 + neighbor.similarity()) / 2;
+            if (score >= minScore) {
+                Chunk chunk = neighbor.payload();
+                matches.add(new EmbeddingMatch<>(score, chunk.embeddingId, null, chunk.segment));
+            }
+        }
+        return matches;
+    }
+
+    boolean containsAnyFile(Collection<String> candidates) {
+        for (String fileId : candidates) {
+            if (fileIds.contains(fileId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    long estimatedBytes() {
+        return index.estimatedBytes() + chunkBytes.get();
+    }
+
+    String getDatasetId() {
+        return datasetId;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /** 索引节点附带的分片 */
+    static final class Chunk {
+
+        private final String embeddingId;
+
+        private final TextSegment segment;
+
+        Chunk(String embeddingId, TextSegment segment) {
+            this.embeddingId = embeddingId;
+            this.segment = segment;
+        }
+    }
+}
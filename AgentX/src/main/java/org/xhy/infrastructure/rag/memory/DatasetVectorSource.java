@@ -0,0 +1,23 @@
+package org.xhy.infrastructure.rag.memory;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+/** 构建内存索引时读取数据集全部分片的数据源 */
+public interface DatasetVectorSource {
+
+    /** 数据集的分片数
+     * @param datasetId 数据集ID */
+    long countVectors(String datasetId);
+
+    /** 逐条读取数据集的分片
+     * @param datasetId 数据集ID
+     * @param consumer 分片处理 */
+    void forEachVector(String datasetId, VectorConsumer consumer);
+
+    /** 分片处理 */
+    @FunctionalInterface
+    interface VectorConsumer {
+
+        void accept(String embeddingId, float[] vector, TextSegment segment);
+    }
+}
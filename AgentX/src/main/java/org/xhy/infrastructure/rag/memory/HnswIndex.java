@@ -0,0 +1,358 @@
+package org.xhy.infrastructure.rag.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** 进程内 HNSW 近似最近邻索引，按余弦相似度检索
+ *
+ * 向量写入时归一化后存放在堆外内存，相似度即点积；图的邻接表和每个节点的附带数据在堆内。支持逐条追加，不支持删除，
+ * 删除数据后由调用方整体重建。检索之间可以并发，写入与检索互斥。
+ *
+ * @param <T> 节点附带的数据，检索结果中原样返回 */
+public class HnswIndex<T> {
+
+    /** 相似度从低到高，检索和选邻居时频繁比较，不用 Comparator.comparingDouble 以免装箱和多层包装 */
+    private static final Comparator<Neighbor<?>> ASCENDING = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    private static final Comparator<Neighbor<?>> DESCENDING = (a, b) -> Float.compare(b.similarity, a.similarity);
+
+    private final int m;
+
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final int expectedSize;
+
+    private final Random random;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** 每个节点每层的邻居，下标0为邻居数，其后为邻居节点序号 */
+    private final List<int[][]> links = new ArrayList<>();
+
+    private final List<T> payloads = new ArrayList<>();
+
+    /** 首次写入时按向量维度创建 */
+    private OffHeapVectors vectors;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /** @param m 每个节点在上层保留的邻居数，第0层为其两倍
+     * @param efConstruction 写入时候选列表大小
+     * @param expectedSize 预计节点数，用于分配堆外内存
+     * @param seed 层级随机数种子，相同写入顺序下构建结果可复现 */
+    public HnswIndex(int m, int efConstruction, int expectedSize, long seed) {
+        if (m < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("HNSW参数无效: m=" + m + ", efConstruction=" + efConstruction);
+        }
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.expectedSize = expectedSize;
+        this.random = new Random(seed);
+    }
+
+    /** 写入向量
+     * @param vector 向量，不要求归一化
+     * @param payload 节点附带的数据
+     * @return 节点序号 */
+    public int add(float[] vector, T payload) {
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (vectors == null) {
+                vectors = new OffHeapVectors(normalized.length, expectedSize);
+            } else if (normalized.length != vectors.dimension()) {
+                throw new IllegalArgumentException("向量维度不一致: 期望" + vectors.dimension() + "，实际" + normalized.length);
+            }
+            int node = vectors.append(normalized);
+            payloads.add(payload);
+            int level = randomLevel();
+            int[][] nodeLinks = new int[level + 1][];
+            for (int layer = 0; layer <= level; layer++) {
+                nodeLinks[layer] = new int[capacity(layer) + 1];
+            }
+            links.add(nodeLinks);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            int current = greedyDescend(normalized, entryPoint, maxLevel, level);
+            BitSet visited = new BitSet(vectors.size());
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                visited.clear();
+                List<Neighbor<T>> candidates = searchLayer(normalized, current, efConstruction, layer, visited);
+                int[] selected = selectNeighbors(normalized, candidates, m);
+                System.arraycopy(selected, 0, nodeLinks[layer], 1, selected.length);
+                nodeLinks[layer][0] = selected.length;
+                for (int neighbor : selected) {
+                    connect(neighbor, node, layer);
+                }
+                current = candidates.get(0).node;
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 检索与 query 最相似的 k 个节点
+     * @param query 查询向量，不要求归一化
+     * @param k 返回数量
+     * @param ef 候选列表大小，越大召回越高，小于 k 时按 k 处理
+     * @return 按相似度从高到低排列的节点 */
+    public List<Neighbor<T>> search(float[] query, int k, int ef) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            if (normalized.length != vectors.dimension()) {
+                throw new IllegalArgumentException("向量维度不一致: 期望" + vectors.dimension() + "，实际" + normalized.length);
+            }
+            int current = greedyDescend(normalized, entryPoint, maxLevel, 0);
+            List<Neighbor<T>> candidates = searchLayer(normalized, current, Math.max(ef, k), 0,
+                    new BitSet(vectors.size()));
+            return candidates.size() > k ? new ArrayList<>(candidates.subList(0, k)) : candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return payloads.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 占用的内存估算：堆外向量加堆内邻接表，不含附带数据 */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long linkBytes = (long) links.size() * (maxM0 + 1 + 16) * Integer.BYTES;
+            return (vectors != null ? vectors.allocatedBytes() : 0) + linkBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 从上层逐层贪心移动到与 query 最相似的节点，直到 stopLevel 的上一层 */
+    private int greedyDescend(float[] query, int start, int fromLevel, int stopLevel) {
+        float[] scratch = new float[query.length];
+        int current = start;
+        float currentSimilarity = vectors.dot(current, query, scratch);
+        for (int layer = fromLevel; layer > stopLevel; layer--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links.get(current)[layer];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    float similarity = vectors.dot(neighbors[i], query, scratch);
+                    if (similarity > currentSimilarity) {
+                        currentSimilarity = similarity;
+                        current = neighbors[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /** 在一层内做最佳优先搜索
+     * @return 最多 ef 个节点，按相似度从高到低排列 */
+    private List<Neighbor<T>> searchLayer(float[] query, int entry, int ef, int layer, BitSet visited) {
+        PriorityQueue<Neighbor<T>> candidates = new PriorityQueue<>(ef + 1, DESCENDING);
+        PriorityQueue<Neighbor<T>> results = new PriorityQueue<>(ef + 1, ASCENDING);
+
+        float[] scratch = new float[query.length];
+        Neighbor<T> start = neighbor(entry, vectors.dot(entry, query, scratch));
+        visited.set(entry);
+        candidates.add(start);
+        results.add(start);
+        while (!candidates.isEmpty()) {
+            Neighbor<T> closest = candidates.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+            int[][] nodeLinks = links.get(closest.node);
+            if (layer >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbors = nodeLinks[layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int next = neighbors[i];
+                if (visited.get(next)) {
+                    continue;
+                }
+                visited.set(next);
+                float similarity = vectors.dot(next, query, scratch);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Neighbor<T> candidate = neighbor(next, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        // 结果堆按相似度从低到高弹出，倒序填充
+        Neighbor<T>[] sorted = newArray(results.size());
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = results.poll();
+        }
+        return Arrays.asList(sorted);
+    }
+
+    /** 启发式选邻居：候选与已选邻居的相似度高于与基准点的相似度时跳过，让邻居分散在不同方向，聚簇数据上召回更高；
+     * 选不满时用跳过的候选补足
+     * @param base 基准点向量
+     * @param candidates 按与基准点相似度从高到低排列的候选 */
+    private int[] selectNeighbors(float[] base, List<Neighbor<T>> candidates, int limit) {
+        int dimension = base.length;
+        List<float[]> selectedVectors = new ArrayList<>(limit);
+        int[] selected = new int[Math.min(limit, candidates.size())];
+        int count = 0;
+        List<Neighbor<T>> skipped = new ArrayList<>();
+        for (Neighbor<T> candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            float[] candidateVector = new float[dimension];
+            vectors.copy(candidate.node, candidateVector);
+            boolean diverse = true;
+            for (float[] selectedVector : selectedVectors) {
+                if (dot(candidateVector, selectedVector) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate.node;
+                selectedVectors.add(candidateVector);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && count < selected.length; i++) {
+            selected[count++] = skipped.get(i).node;
+        }
+        return selected;
+    }
+
+    /** 为 node 在 layer 层加一条指向 added 的边，邻居已满时重新选邻居 */
+    private void connect(int node, int added, int layer) {
+        int[] neighbors = links.get(node)[layer];
+        int capacity = capacity(layer);
+        if (neighbors[0] < capacity) {
+            neighbors[++neighbors[0]] = added;
+            return;
+        }
+        float[] base = new float[vectors.dimension()];
+        float[] scratch = new float[base.length];
+        vectors.copy(node, base);
+        List<Neighbor<T>> candidates = new ArrayList<>(capacity + 1);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidates.add(neighbor(neighbors[i], vectors.dot(neighbors[i], base, scratch)));
+        }
+        candidates.add(neighbor(added, vectors.dot(added, base, scratch)));
+        candidates.sort(DESCENDING);
+        int[] selected = selectNeighbors(base, candidates, capacity);
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+        neighbors[0] = selected.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Neighbor<T>[] newArray(int size) {
+        return (Neighbor<T>[]) new Neighbor<?>[size];
+    }
+
+    private int capacity(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private Neighbor<T> neighbor(int node, float similarity) {
+        return new Neighbor<>(node, similarity, payloads.get(node));
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    /** 检索结果中的节点 */
+    public static final class Neighbor<T> {
+
+        private final int node;
+
+        private final float similarity;
+
+        private final T payload;
+
+        Neighbor(int node, float similarity, T payload) {
+            this.node = node;
+            this.similarity = similarity;
+            this.payload = payload;
+        }
+
+        public int node() {
+            return node;
+        }
+
+        /** 余弦相似度，范围 [-1, 1] */
+        public float similarity() {
+            return similarity;
+        }
+
+        public T payload() {
+            return payload;
+        }
+    }
+}
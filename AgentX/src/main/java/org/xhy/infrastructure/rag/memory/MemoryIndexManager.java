@@ -0,0 +1,265 @@
+package org.xhy.infrastructure.rag.memory;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.MemoryIndexProperties;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 进程内向量索引管理，为小而热的数据集在本机内存维护 HNSW 索引
+ *
+ * 数据集在统计窗口内的检索次数达到阈值且分片数不超过上限时，在后台从向量库读出全部分片建索引；之后本实例写入的分片增量加入索引，
+ * 文件删除时索引整体作废，下次成为热点时重建。每个数据集有一个版本号，写入和删除都会使正在构建的索引作废，避免装入过期数据。
+ * 其他实例的写入和删除无法感知，索引到期后重建。 */
+@Component
+public class MemoryIndexManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryIndexManager.class);
+
+    private final DatasetVectorSource source;
+
+    private final MemoryIndexProperties properties;
+
+    private final Executor buildExecutor;
+
+    private final Ticker ticker;
+
+    /** 已就绪的内存索引 */
+    private final Map<String, DatasetIndex> indexes = new ConcurrentHashMap<>();
+
+    /** 每个数据集的版本号 */
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /** 正在构建索引的数据集 */
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+
+    /** 统计窗口内每个数据集的检索次数 */
+    private final Cache<String, AtomicInteger> accessCounts;
+
+    /** 分片数或占用内存超过上限的数据集，到期后重新判断 */
+    private final Cache<String, Boolean> ineligible;
+
+    public MemoryIndexManager(DatasetVectorSource source, MemoryIndexProperties properties,
+            ExecutorRegistry executorRegistry) {
+        this(source, properties, executorRegistry.get(WorkloadType.MEMORY_INDEX), Ticker.systemTicker());
+    }
+
+    MemoryIndexManager(DatasetVectorSource source, MemoryIndexProperties properties, Executor buildExecutor,
+            Ticker ticker) {
+        this.source = source;
+        this.properties = properties;
+        this.buildExecutor = buildExecutor;
+        this.ticker = ticker;
+        this.accessCounts = CacheBuilder.newBuilder().ticker(ticker)
+                .expireAfterWrite(properties.getAccessWindowMinutes(), TimeUnit.MINUTES).build();
+        this.ineligible = CacheBuilder.newBuilder().ticker(ticker)
+                .expireAfterWrite(properties.getMaxAgeMinutes(), TimeUnit.MINUTES).build();
+    }
+
+    /** 记录一次检索并判断本次能否走内存索引，热点数据集没有索引时在后台构建，本次仍走向量库
+     * @param dataSetIds 检索的数据集ID
+     * @return 所有数据集都有可用的内存索引时为true */
+    public boolean route(List<String> dataSetIds) {
+        if (!properties.isEnabled() || dataSetIds == null || dataSetIds.isEmpty()) {
+            return false;
+        }
+        boolean ready = true;
+        for (String datasetId : new LinkedHashSet<>(dataSetIds)) {
+            int count = accessCounts.asMap().computeIfAbsent(datasetId, id -> new AtomicInteger()).incrementAndGet();
+            DatasetIndex index = indexes.get(datasetId);
+            if (index != null && isExpired(index)) {
+                indexes.remove(datasetId, index);
+                index = null;
+            }
+            if (index == null) {
+                ready = false;
+                if (count >= properties.getMinQueriesPerWindow()) {
+                    scheduleBuild(datasetId);
+                }
+            }
+        }
+        return ready;
+    }
+
+    /** 在内存索引中检索
+     * @param dataSetIds 数据集ID
+     * @param query 查询向量
+     * @param maxResults 最大返回数量
+     * @param minScore 最小分数
+     * @return 按分数从高到低排列的结果；任一数据集的索引已被淘汰或作废时返回null，由调用方改查向量库 */
+    public List<EmbeddingMatch<TextSegment>> search(List<String> dataSetIds, float[] query, int maxResults,
+            double minScore) {
+        Set<String> uniqueIds = new LinkedHashSet<>(dataSetIds);
+        List<DatasetIndex> targets = new ArrayList<>(uniqueIds.size());
+        for (String datasetId : uniqueIds) {
+            DatasetIndex index = indexes.get(datasetId);
+            if (index == null) {
+                return null;
+            }
+            targets.add(index);
+        }
+        int ef = Math.max(properties.getEfSearch(), maxResults);
+        long now = ticker.read();
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (DatasetIndex index : targets) {
+            matches.addAll(index.search(query, maxResults, ef, minScore, now));
+        }
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return matches.size() > maxResults ? new ArrayList<>(matches.subList(0, maxResults)) : matches;
+    }
+
+    /** 本实例写入分片后调用：已有索引时增量加入，正在构建时使本次构建作废
+     * @param datasetId 数据集ID
+     * @param embeddingId 分片向量ID
+     * @param vector 分片向量
+     * @param segment 分片 */
+    public synchronized void onSegmentAdded(String datasetId, String embeddingId, float[] vector,
+            TextSegment segment) {
+        if (!properties.isEnabled() || datasetId == null) {
+            return;
+        }
+        if (building.contains(datasetId)) {
+            version(datasetId).incrementAndGet();
+        }
+        DatasetIndex index = indexes.get(datasetId);
+        if (index == null) {
+            return;
+        }
+        if (index.size() >= properties.getMaxVectorsPerDataset()) {
+            indexes.remove(datasetId);
+            ineligible.put(datasetId, Boolean.TRUE);
+            logger.info("数据集 {} 分片数超过 {}，移出内存向量索引", datasetId, properties.getMaxVectorsPerDataset());
+            return;
+        }
+        index.add(embeddingId, vector, segment);
+    }
+
+    /** 数据集的分片被删除后调用，丢弃其内存索引
+     * @param datasetId 数据集ID */
+    public synchronized void invalidateDataset(String datasetId) {
+        if (datasetId == null) {
+            return;
+        }
+        version(datasetId).incrementAndGet();
+        ineligible.invalidate(datasetId);
+        if (indexes.remove(datasetId) != null) {
+            logger.debug("数据集 {} 有分片删除，内存向量索引已作废", datasetId);
+        }
+    }
+
+    /** 按文件删除分片后调用，丢弃包含这些文件的内存索引；文件所属数据集未知，正在构建的索引一并作废
+     * @param fileIds 文件ID */
+    public synchronized void invalidateFiles(Collection<String> fileIds) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            return;
+        }
+        for (DatasetIndex index : new ArrayList<>(indexes.values())) {
+            if (index.containsAnyFile(fileIds)) {
+                invalidateDataset(index.getDatasetId());
+            }
+        }
+        for (String datasetId : building) {
+            version(datasetId).incrementAndGet();
+        }
+    }
+
+    /** 已就绪的内存索引数 */
+    public int getIndexCount() {
+        return indexes.size();
+    }
+
+    /** 所有内存索引合计占用的内存估算(字节) */
+    public long getEstimatedBytes() {
+        long total = 0;
+        for (DatasetIndex index : indexes.values()) {
+            total += index.estimatedBytes();
+        }
+        return total;
+    }
+
+    private void scheduleBuild(String datasetId) {
+        if (ineligible.getIfPresent(datasetId) != null || !building.add(datasetId)) {
+            return;
+        }
+        long version = version(datasetId).get();
+        try {
+            buildExecutor.execute(() -> build(datasetId, version));
+        } catch (RejectedExecutionException e) {
+            building.remove(datasetId);
+            logger.debug("内存向量索引构建队列已满，数据集 {} 下次检索时重试", datasetId);
+        }
+    }
+
+    private void build(String datasetId, long version) {
+        long start = System.nanoTime();
+        try {
+            long count = source.countVectors(datasetId);
+            if (count > properties.getMaxVectorsPerDataset()) {
+                ineligible.put(datasetId, Boolean.TRUE);
+                logger.debug("数据集 {} 有 {} 个分片，超过内存向量索引上限", datasetId, count);
+                return;
+            }
+            DatasetIndex index = new DatasetIndex(datasetId, version, new HnswIndex<>(properties.getM(),
+                    properties.getEfConstruction(), (int) count, datasetId.hashCode()), ticker.read());
+            source.forEachVector(datasetId, index::add);
+            install(index, start);
+        } catch (RuntimeException e) {
+            logger.warn("构建数据集 {} 的内存向量索引失败: {}", datasetId, e.getMessage(), e);
+        } finally {
+            building.remove(datasetId);
+        }
+    }
+
+    /** 版本未变时装入索引，合计占用超出上限时先淘汰最久未检索的索引 */
+    private synchronized void install(DatasetIndex index, long start) {
+        String datasetId = index.getDatasetId();
+        if (version(datasetId).get() != index.getVersion()) {
+            logger.debug("数据集 {} 在构建内存向量索引期间有变更，丢弃本次构建", datasetId);
+            return;
+        }
+        long limit = properties.getMaxMemoryMb() * 1024 * 1024;
+        long bytes = index.estimatedBytes();
+        if (bytes > limit) {
+            ineligible.put(datasetId, Boolean.TRUE);
+            logger.warn("数据集 {} 的内存向量索引约 {}MB，超过上限 {}MB", datasetId, bytes >> 20, properties.getMaxMemoryMb());
+            return;
+        }
+        while (getEstimatedBytes() + bytes > limit) {
+            DatasetIndex eldest = indexes.values().stream().min(Comparator.comparingLong(DatasetIndex::getLastAccess))
+                    .orElseThrow();
+            indexes.remove(eldest.getDatasetId());
+            logger.info("内存向量索引超出 {}MB，淘汰数据集 {}", properties.getMaxMemoryMb(), eldest.getDatasetId());
+        }
+        indexes.put(datasetId, index);
+        logger.info("内存向量索引已就绪: dataset={}, vectors={}, memory={}KB, 耗时{}ms", datasetId, index.size(),
+                bytes >> 10, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private boolean isExpired(DatasetIndex index) {
+        return ticker.read() - index.getCreatedAt() > TimeUnit.MINUTES.toNanos(properties.getMaxAgeMinutes());
+    }
+
+    private AtomicLong version(String datasetId) {
+        return versions.computeIfAbsent(datasetId, id -> new AtomicLong());
+    }
+}
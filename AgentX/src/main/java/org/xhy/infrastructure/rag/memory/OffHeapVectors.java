@@ -0,0 +1,76 @@
+package org.xhy.infrastructure.rag.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 堆外向量存储，向量按写入顺序连续存放在直接内存分块中，不占用堆空间，也不参与GC标记
+ *
+ * 分块写满后追加新块，已有向量不搬动。直接内存在本对象被回收时释放，上限受 -XX:MaxDirectMemorySize 约束。非线程安全，由调用方加锁。 */
+final class OffHeapVectors {
+
+    /** 每块的字节数上限 */
+    private static final int CHUNK_BYTES = 16 * 1024 * 1024;
+
+    /** 每块至少容纳的向量数，避免逐条追加时频繁分配小块 */
+    private static final int MIN_CHUNK_VECTORS = 256;
+
+    private final int dimension;
+
+    private final int vectorsPerChunk;
+
+    private final List<FloatBuffer> chunks = new ArrayList<>();
+
+    private int size;
+
+    /** @param dimension 向量维度
+     * @param expectedSize 预计向量数，小数据集按此分配，不必占满一整块 */
+    OffHeapVectors(int dimension, int expectedSize) {
+        this.dimension = dimension;
+        int maxVectorsPerChunk = Math.max(1, CHUNK_BYTES / (dimension * Float.BYTES));
+        this.vectorsPerChunk = Math.min(maxVectorsPerChunk, Math.max(MIN_CHUNK_VECTORS, expectedSize));
+    }
+
+    /** 追加向量
+     * @return 向量序号 */
+    int append(float[] vector) {
+        int chunk = size / vectorsPerChunk;
+        if (chunk == chunks.size()) {
+            chunks.add(ByteBuffer.allocateDirect(vectorsPerChunk * dimension * Float.BYTES)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer());
+        }
+        chunks.get(chunk).put((size % vectorsPerChunk) * dimension, vector, 0, dimension);
+        return size++;
+    }
+
+    /** 第 node 个向量与 query 的点积
+     * @param scratch 长度不小于维度的临时数组，向量先整段复制到这里再计算，比逐个读取堆外元素快 */
+    float dot(int node, float[] query, float[] scratch) {
+        copy(node, scratch);
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += scratch[i] * query[i];
+        }
+        return sum;
+    }
+
+    /** 把第 node 个向量复制到 target */
+    void copy(int node, float[] target) {
+        chunks.get(node / vectorsPerChunk).get((node % vectorsPerChunk) * dimension, target, 0, dimension);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /** 已分配的直接内存字节数 */
+    long allocatedBytes() {
+        return (long) chunks.size() * vectorsPerChunk * dimension * Float.BYTES;
+    }
+}
@@ -0,0 +1,510 @@
+package org.xhy.infrastructure.rag.store;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhy.domain.rag.constant.MetadataConstant;
+import org.xhy.domain.rag.constant.VectorQuantization;
+import org.xhy.infrastructure.rag.memory.DatasetVectorSource;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/** 按数据集组织的向量存储，在 PgVectorEmbeddingStore 基础上把数据集ID和文件ID写入独立的 dataset_id、file_id 列
+ *
+ * 写入分片时同时写入这两列；按数据集检索时以 dataset_id 列过滤，配合 HNSW 迭代扫描在过滤后仍能取满结果；按文件删除时以 file_id 列定位。
+ * 其他写入、检索和删除交给 PgVectorEmbeddingStore，遗漏的列由表上的触发器从元数据补齐，见 V20251021001 迁移脚本。
+ * 同时作为内存向量索引的数据源，按 dataset_id 列读出数据集的全部分片。
+ *
+ * 数据集可设置向量量化方式：标量量化在 embedding_sq 列保存半精度向量，二值量化在 embedding_bq 列保存符号位，两列各有只含非空行的 HNSW 索引。
+ * 写入分片时按数据集的量化方式补写对应的列；检索时先在量化向量的索引上取回若干倍候选，再以原始向量重新计算距离取前几名。
+ * 数据集切换量化方式后，存量分片在后台补写量化向量，补写完成前仍检索原始向量。 */
+public class DatasetEmbeddingStore implements EmbeddingStore<TextSegment>, DatasetVectorSource, AutoCloseable {
+
+    /** 读出数据集全部分片时每次从数据库取回的行数 */
+    private static final int SCAN_FETCH_SIZE = 500;
+
+    /** 补写量化向量时每批更新的行数 */
+    private static final int QUANTIZE_BATCH_SIZE = 5000;
+
+    /** 已补写的数据集隔此时间在后台再补写一次，纳入其他实例按过期的量化方式写入的分片 */
+    private static final long QUANTIZE_RECHECK_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** pgvector 允许的 hnsw.ef_search 上限 */
+    private static final int MAX_EF_SEARCH = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetEmbeddingStore.class);
+
+    private static final Comparator<EmbeddingMatch<TextSegment>> BY_SCORE_DESC = Comparator
+            .comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed();
+
+    /** 未识别的配置参数，pgvector 0.8 以下没有迭代扫描参数 */
+    private static final String UNDEFINED_OBJECT = "42704";
+
+    private final EmbeddingStore<TextSegment> delegate;
+
+    private final HikariDataSource dataSource;
+
+    private final String table;
+
+    private final SearchTuning tuning;
+
+    private final DatasetQuantizationResolver quantizationResolver;
+
+    /** 补写存量分片量化向量的线程池 */
+    private final Executor quantizeExecutor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /** 量化向量已补写完成的 (量化方式:数据集ID) 及完成时间 */
+    private final Map<String, Long> quantizedAt = new ConcurrentHashMap<>();
+
+    /** 正在补写量化向量的 (量化方式:数据集ID) */
+    private final Set<String> quantizing = ConcurrentHashMap.newKeySet();
+
+    /** 数据库不支持迭代扫描时关闭，此后只设置候选列表大小 */
+    private volatile boolean iterativeScanSupported;
+
+    public DatasetEmbeddingStore(EmbeddingStore<TextSegment> delegate, HikariDataSource dataSource, String table,
+            SearchTuning tuning, DatasetQuantizationResolver quantizationResolver, Executor quantizeExecutor) {
+        this.delegate = delegate;
+        this.dataSource = dataSource;
+        this.table = table;
+        this.tuning = tuning;
+        this.quantizationResolver = quantizationResolver;
+        this.quantizeExecutor = quantizeExecutor;
+        this.iterativeScanSupported = !"off".equalsIgnoreCase(tuning.getIterativeScan());
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return delegate.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return delegate.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    /** 写入分片及其 dataset_id、file_id 列和数据集所需的量化向量，已存在的同ID分片先删除再写入，普通表和按数据集分区的表都适用 */
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || (textSegments != null && textSegments.size() != ids.size())) {
+            throw new IllegalArgumentException("分片ID、向量和文本的数量不一致");
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement delete = connection
+                        .prepareStatement("DELETE FROM " + table + " WHERE embedding_id = ANY(?::uuid[])")) {
+                    delete.setArray(1, connection.createArrayOf("varchar", ids.toArray()));
+                    delete.executeUpdate();
+                }
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table
+                        + " (embedding_id, embedding, text, metadata, dataset_id, file_id, embedding_sq, embedding_bq) "
+                        + "VALUES (?::uuid, ?::vector, ?, ?::json, ?, ?, ?::halfvec, ?::varbit)")) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        TextSegment segment = textSegments != null ? textSegments.get(i) : null;
+                        Metadata metadata = segment != null ? segment.metadata() : new Metadata();
+                        String datasetId = metadata.getString(MetadataConstant.DATA_SET_ID);
+                        VectorQuantization quantization = quantizationResolver.resolve(datasetId);
+                        float[] vector = embeddings.get(i).vector();
+                        String vectorLiteral = DatasetFilters.toVectorLiteral(vector);
+                        insert.setString(1, ids.get(i));
+                        insert.setString(2, vectorLiteral);
+                        insert.setString(3, segment != null ? segment.text() : null);
+                        insert.setString(4, objectMapper.writeValueAsString(metadata.toMap()));
+                        insert.setString(5, datasetId);
+                        insert.setString(6, metadata.getString(MetadataConstant.FILE_ID));
+                        // 半精度向量与原始向量文本表示相同，由数据库转换
+                        insert.setString(7, quantization == VectorQuantization.SCALAR ? vectorLiteral : null);
+                        insert.setString(8,
+                                quantization == VectorQuantization.BINARY ? DatasetFilters.toBitLiteral(vector) : null);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException | JsonProcessingException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | JsonProcessingException e) {
+            throw new IllegalStateException("写入向量分片失败: " + e.getMessage(), e);
+        }
+    }
+
+    /** 过滤条件为按数据集过滤时在 dataset_id 列上执行近邻检索，其他条件交给 PgVectorEmbeddingStore
+     *
+     * 量化方式不同的数据集分组检索，各组结果按分数合并。 */
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        List<String> dataSetIds = DatasetFilters.values(request.filter(), MetadataConstant.DATA_SET_ID);
+        if (dataSetIds == null) {
+            return delegate.search(request);
+        }
+        if (dataSetIds.isEmpty()) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        Map<VectorQuantization, List<String>> groups = new EnumMap<>(VectorQuantization.class);
+        for (String dataSetId : dataSetIds) {
+            groups.computeIfAbsent(searchQuantization(dataSetId), quantization -> new ArrayList<>()).add(dataSetId);
+        }
+        try {
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (Map.Entry<VectorQuantization, List<String>> group : groups.entrySet()) {
+                matches.addAll(searchDatasets(request, group.getValue(), group.getKey()));
+            }
+            if (groups.size() > 1) {
+                matches.sort(BY_SCORE_DESC);
+                matches = new ArrayList<>(matches.subList(0, Math.min(matches.size(), request.maxResults())));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } catch (SQLException e) {
+            if (iterativeScanSupported && UNDEFINED_OBJECT.equals(e.getSQLState())) {
+                logger.warn("向量库不支持HNSW迭代扫描，改为普通扫描，请升级 pgvector 至 0.8 及以上: {}", e.getMessage());
+                iterativeScanSupported = false;
+                return search(request);
+            }
+            throw new IllegalStateException("向量检索失败: " + e.getMessage(), e);
+        }
+    }
+
+    /** 按文件ID删除时使用 file_id 列，其他条件交给 PgVectorEmbeddingStore */
+    @Override
+    public void removeAll(Filter filter) {
+        List<String> fileIds = DatasetFilters.values(filter, MetadataConstant.FILE_ID);
+        if (fileIds == null) {
+            delegate.removeAll(filter);
+            return;
+        }
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement delete = connection
+                        .prepareStatement("DELETE FROM " + table + " WHERE file_id = ANY(?)")) {
+            delete.setArray(1, connection.createArrayOf("varchar", fileIds.toArray()));
+            int deleted = delete.executeUpdate();
+            logger.debug("按文件删除向量分片: fileIds={}, deleted={}", fileIds, deleted);
+        } catch (SQLException e) {
+            throw new IllegalStateException("删除向量分片失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        delegate.removeAll(ids);
+    }
+
+    @Override
+    public void removeAll() {
+        delegate.removeAll();
+    }
+
+    @Override
+    public void remove(String id) {
+        delegate.remove(id);
+    }
+
+    @Override
+    public long countVectors(String datasetId) {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement count = connection
+                        .prepareStatement("SELECT count(*) FROM " + table + " WHERE dataset_id = ?")) {
+            count.setString(1, datasetId);
+            try (ResultSet resultSet = count.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("统计数据集分片数失败: " + e.getMessage(), e);
+        }
+    }
+
+    /** 以游标分批读取，不把整个数据集一次装入结果集 */
+    @Override
+    public void forEachVector(String datasetId, VectorConsumer consumer) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement scan = connection.prepareStatement("SELECT embedding_id, embedding::text AS vector, "
+                    + "text, metadata FROM " + table + " WHERE dataset_id = ?")) {
+                scan.setFetchSize(SCAN_FETCH_SIZE);
+                scan.setString(1, datasetId);
+                try (ResultSet resultSet = scan.executeQuery()) {
+                    while (resultSet.next()) {
+                        consumer.accept(resultSet.getString("embedding_id"),
+                                DatasetFilters.parseVectorLiteral(resultSet.getString("vector")),
+                                toSegment(resultSet.getString("text"), resultSet.getString("metadata")));
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("读取数据集分片失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    /** 在一个事务内设置本次检索的 HNSW 参数后执行查询，参数随事务结束失效，不影响连接池中的其他查询 */
+    private List<EmbeddingMatch<TextSegment>> searchDatasets(EmbeddingSearchRequest request, List<String> dataSetIds,
+            VectorQuantization quantization) throws SQLException {
+        boolean singleDataset = dataSetIds.size() == 1;
+        float[] queryVector = request.queryEmbedding().vector();
+        String vectorLiteral = DatasetFilters.toVectorLiteral(queryVector);
+        int candidates = quantization == VectorQuantization.NONE
+                ? request.maxResults()
+                : request.maxResults() * tuning.getRescoreMultiplier();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                applyTuning(connection, candidates);
+                List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+                try (PreparedStatement query = connection
+                        .prepareStatement(searchSql(table, quantization, singleDataset))) {
+                    int index = 1;
+                    query.setString(index++, vectorLiteral);
+                    if (singleDataset) {
+                        query.setString(index++, dataSetIds.get(0));
+                    } else {
+                        Array array = connection.createArrayOf("varchar", dataSetIds.toArray());
+                        query.setArray(index++, array);
+                    }
+                    if (quantization != VectorQuantization.NONE) {
+                        query.setString(index++, vectorLiteral);
+                        query.setInt(index++, candidates);
+                    }
+                    query.setInt(index, request.maxResults());
+                    try (ResultSet resultSet = query.executeQuery()) {
+                        while (resultSet.next()) {
+                            double score = DatasetFilters.toScore(resultSet.getDouble("distance"));
+                            if (score >= request.minScore()) {
+                                matches.add(new EmbeddingMatch<>(score, resultSet.getString("embedding_id"), null,
+                                        toSegment(resultSet.getString("text"), resultSet.getString("metadata"))));
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+                // 宽松顺序的迭代扫描返回的结果不保证严格有序
+                matches.sort(BY_SCORE_DESC);
+                return matches;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /** 按数据集检索的语句，量化时内层查询在量化向量的索引上取回候选，外层以原始向量重新计算距离
+     *
+     * 参数依次为：查询向量、数据集ID（单个）或数据集ID数组，量化时再加查询向量和候选数，最后为结果数 */
+    static String searchSql(String table, VectorQuantization quantization, boolean singleDataset) {
+        // 单个数据集用等值条件，超大数据集建有部分索引时规划器可以选中
+        String datasetCondition = singleDataset ? "dataset_id = ?" : "dataset_id = ANY(?)";
+        if (quantization == VectorQuantization.NONE) {
+            return "SELECT embedding_id, text, metadata, embedding <=> ?::vector AS distance FROM " + table
+                    + " WHERE " + datasetCondition + " ORDER BY distance LIMIT ?";
+        }
+        String candidateOrder = quantization == VectorQuantization.SCALAR
+                ? "embedding_sq <=> ?::halfvec"
+                : "embedding_bq <~> binary_quantize(?::vector)";
+        return "SELECT embedding_id, text, metadata, embedding <=> ?::vector AS distance FROM (SELECT embedding_id, "
+                + "text, metadata, embedding FROM " + table + " WHERE " + datasetCondition + " AND "
+                + quantizedColumn(quantization) + " IS NOT NULL ORDER BY " + candidateOrder
+                + " LIMIT ?) candidates ORDER BY distance LIMIT ?";
+    }
+
+    /** 为数据集中缺少量化向量的分片分批补写，参数为数据集ID，返回0行时补写完成 */
+    static String quantizeBatchSql(String table, VectorQuantization quantization) {
+        String column = quantizedColumn(quantization);
+        String value = quantization == VectorQuantization.SCALAR ? "embedding::halfvec" : "binary_quantize(embedding)";
+        return "UPDATE " + table + " SET " + column + " = " + value
+                + " WHERE embedding_id IN (SELECT embedding_id FROM " + table + " WHERE dataset_id = ? AND " + column
+                + " IS NULL LIMIT " + QUANTIZE_BATCH_SIZE + ")";
+    }
+
+    private static String quantizedColumn(VectorQuantization quantization) {
+        return quantization == VectorQuantization.SCALAR ? "embedding_sq" : "embedding_bq";
+    }
+
+    /** 数据集本次检索使用的量化方式，量化向量尚未补写完成时在后台补写，本次检索原始向量 */
+    private VectorQuantization searchQuantization(String dataSetId) {
+        VectorQuantization quantization = quantizationResolver.resolve(dataSetId);
+        if (quantization == VectorQuantization.NONE) {
+            return quantization;
+        }
+        String key = quantization.getCode() + ":" + dataSetId;
+        Long completedAt = quantizedAt.get(key);
+        if (completedAt == null || System.nanoTime() - completedAt > QUANTIZE_RECHECK_NANOS) {
+            scheduleQuantize(key, dataSetId, quantization);
+        }
+        return completedAt != null ? quantization : VectorQuantization.NONE;
+    }
+
+    private void scheduleQuantize(String key, String dataSetId, VectorQuantization quantization) {
+        if (!quantizing.add(key)) {
+            return;
+        }
+        try {
+            quantizeExecutor.execute(() -> {
+                try {
+                    int updated = quantize(dataSetId, quantization);
+                    quantizedAt.put(key, System.nanoTime());
+                    if (updated > 0) {
+                        logger.info("补写数据集量化向量: datasetId={}, quantization={}, updated={}", dataSetId,
+                                quantization, updated);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("补写数据集量化向量失败: datasetId={}, quantization={}", dataSetId, quantization, e);
+                } finally {
+                    quantizing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            quantizing.remove(key);
+            logger.debug("量化向量补写队列已满，下次检索时重试: datasetId={}", dataSetId);
+        }
+    }
+
+    /** 逐批提交，不在一个长事务中锁住整个数据集 */
+    private int quantize(String dataSetId, VectorQuantization quantization) {
+        int total = 0;
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement update = connection.prepareStatement(quantizeBatchSql(table, quantization))) {
+            update.setString(1, dataSetId);
+            int updated;
+            do {
+                updated = update.executeUpdate();
+                total += updated;
+            } while (updated > 0);
+            return total;
+        } catch (SQLException e) {
+            throw new IllegalStateException("补写量化向量失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void applyTuning(Connection connection, int candidates) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL plan_cache_mode = force_custom_plan");
+            // 候选列表不小于要取回的候选数，否则量化检索取不满候选
+            statement.execute("SET LOCAL hnsw.ef_search = "
+                    + Math.min(MAX_EF_SEARCH, Math.max(tuning.getEfSearch(), candidates)));
+            if (iterativeScanSupported) {
+                statement.execute("SET LOCAL hnsw.iterative_scan = " + tuning.getIterativeScan());
+                statement.execute("SET LOCAL hnsw.max_scan_tuples = " + tuning.getMaxScanTuples());
+            }
+        }
+    }
+
+    private TextSegment toSegment(String text, String metadataJson) {
+        try {
+            Map<String, Object> metadata = metadataJson == null
+                    ? Map.of()
+                    : objectMapper.readValue(metadataJson,
+                            TypeFactory.defaultInstance().constructMapType(Map.class, String.class, Object.class));
+            return TextSegment.from(text, Metadata.from(metadata));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("解析分片元数据失败: " + e.getMessage(), e);
+        }
+    }
+
+    /** 带过滤近邻检索的 HNSW 参数 */
+    public static class SearchTuning {
+
+        private final String iterativeScan;
+
+        private final int efSearch;
+
+        private final int maxScanTuples;
+
+        private final int rescoreMultiplier;
+
+        public SearchTuning(String iterativeScan, int efSearch, int maxScanTuples, int rescoreMultiplier) {
+            if (!"off".equalsIgnoreCase(iterativeScan) && !"relaxed_order".equalsIgnoreCase(iterativeScan)
+                    && !"strict_order".equalsIgnoreCase(iterativeScan)) {
+                throw new IllegalArgumentException("不支持的迭代扫描模式: " + iterativeScan);
+            }
+            this.iterativeScan = iterativeScan.toLowerCase();
+            this.efSearch = efSearch;
+            this.maxScanTuples = maxScanTuples;
+            if (rescoreMultiplier < 1) {
+                throw new IllegalArgumentException("量化检索的候选数倍数不能小于1: " + rescoreMultiplier);
+            }
+            this.rescoreMultiplier = rescoreMultiplier;
+        }
+
+        public String getIterativeScan() {
+            return iterativeScan;
+        }
+
+        public int getEfSearch() {
+            return efSearch;
+        }
+
+        public int getMaxScanTuples() {
+            return maxScanTuples;
+        }
+
+        public int getRescoreMultiplier() {
+            return rescoreMultiplier;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.xhy.infrastructure.rag.store;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** 从元数据过滤条件中识别可改用 dataset_id、file_id 列的条件 */
+final class DatasetFilters {
+
+    private DatasetFilters() {
+    }
+
+    /** 过滤条件为 key 等于某值或属于某些值时返回这些值，其他条件返回空
+     * @param filter 过滤条件，可为空
+     * @param key 元数据键
+     * @return 取值列表，无法识别时为null */
+    static List<String> values(Filter filter, String key) {
+        if (filter instanceof IsIn isIn && key.equals(isIn.key())) {
+            return toStrings(isIn.comparisonValues());
+        }
+        if (filter instanceof IsEqualTo isEqualTo && key.equals(isEqualTo.key())) {
+            return List.of(String.valueOf(isEqualTo.comparisonValue()));
+        }
+        return null;
+    }
+
+    /** 转为 pgvector 的文本表示，如 [0.1,0.2] */
+    static String toVectorLiteral(float[] vector) {
+        StringBuilder builder = new StringBuilder(vector.length * 12 + 2).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(vector[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    /** 二值量化，与 pgvector 的 binary_quantize 一致：大于0的维度为1，其余为0，转为 bit 类型的文本表示，如 0110 */
+    static String toBitLiteral(float[] vector) {
+        char[] bits = new char[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            bits[i] = vector[i] > 0 ? '1' : '0';
+        }
+        return new String(bits);
+    }
+
+    /** 解析 pgvector 的文本表示 */
+    static float[] parseVectorLiteral(String literal) {
+        String body = literal.substring(literal.indexOf('[') + 1, literal.lastIndexOf(']')).trim();
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i].trim());
+        }
+        return vector;
+    }
+
+    /** 余弦距离换算为与 PgVectorEmbeddingStore 一致的相关性分数 */
+    static double toScore(double cosineDistance) {
+        return (2 - cosineDistance) / 2;
+    }
+
+    private static List<String> toStrings(Collection<?> values) {
+        List<String> strings = new ArrayList<>(values.size());
+        for (Object value : values) {
+            strings.add(String.valueOf(value));
+        }
+        return strings;
+    }
+}
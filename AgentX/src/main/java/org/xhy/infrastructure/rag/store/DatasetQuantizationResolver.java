@@ -0,0 +1,11 @@
+package org.xhy.infrastructure.rag.store;
+
+import org.xhy.domain.rag.constant.VectorQuantization;
+
+/** 查询数据集的向量量化方式，写入分片时决定补写哪种量化向量，检索时决定在哪种向量上取候选 */
+public interface DatasetQuantizationResolver {
+
+    /** @param datasetId 数据集ID，可为空
+     * @return 量化方式，数据集不存在时为不量化 */
+    VectorQuantization resolve(String datasetId);
+}
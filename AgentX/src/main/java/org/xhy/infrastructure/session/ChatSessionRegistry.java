@@ -0,0 +1,35 @@
+package org.xhy.infrastructure.session;
+
+import java.util.function.Predicate;
+
+/** 对话会话注册表
+ *
+ * SSE连接只能由建立它的节点完成，注册表负责记录会话归属节点，并把落在其他节点上的中断请求转发给归属节点。 */
+public interface ChatSessionRegistry {
+
+    /** 设置本节点的中断处理器，收到转发来的中断请求时调用
+     * @param handler 入参为会话ID，返回本节点是否成功中断 */
+    void setLocalInterruptHandler(Predicate<String> handler);
+
+    /** 登记本节点持有的会话
+     * @param sessionId 会话ID */
+    void register(String sessionId);
+
+    /** 注销本节点持有的会话
+     * @param sessionId 会话ID */
+    void unregister(String sessionId);
+
+    /** 中断不在本节点上的会话
+     * @param sessionId 会话ID
+     * @return 归属节点是否在限定时间内确认中断 */
+    boolean interruptRemote(String sessionId);
+
+    /** 查询会话的归属节点
+     * @param sessionId 会话ID
+     * @return 节点ID，未知时为null */
+    String getOwnerNode(String sessionId);
+
+    /** 获取本节点ID
+     * @return 节点ID */
+    String getNodeId();
+}
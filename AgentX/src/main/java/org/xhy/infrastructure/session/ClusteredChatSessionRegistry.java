@@ -0,0 +1,164 @@
+package org.xhy.infrastructure.session;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/** 集群会话注册表
+ *
+ * 各节点通过广播通道同步会话归属（REGISTER/UNREGISTER），每个节点维护一份归属表。中断请求落在非归属节点时广播 INTERRUPT，
+ * 归属节点中断后回复 INTERRUPT_ACK，请求方最多等待 interruptTimeoutMillis；中断消息设置同样的有效期，过期后不再投递。 */
+public class ClusteredChatSessionRegistry implements ChatSessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusteredChatSessionRegistry.class);
+
+    private final String nodeId;
+    private final SessionBroadcastChannel channel;
+    private final long interruptTimeoutMillis;
+
+    /** 会话归属表：sessionId -> nodeId，按会话最长存活时间过期，防止节点宕机后残留 */
+    private final Cache<String, String> ownership;
+
+    /** 等待确认的中断请求：requestId -> 结果 */
+    private final Map<String, CompletableFuture<Boolean>> pendingInterrupts = new ConcurrentHashMap<>();
+
+    private volatile Predicate<String> localInterruptHandler = sessionId -> false;
+
+    public ClusteredChatSessionRegistry(String nodeId, SessionBroadcastChannel channel, long interruptTimeoutMillis,
+            long ownershipTtlMinutes) {
+        this.nodeId = nodeId;
+        this.channel = channel;
+        this.interruptTimeoutMillis = interruptTimeoutMillis;
+        this.ownership = CacheBuilder.newBuilder().expireAfterWrite(ownershipTtlMinutes, TimeUnit.MINUTES).build();
+        channel.subscribe(nodeId, this::onMessage);
+        logger.info("集群会话注册表已启动: nodeId={}", nodeId);
+    }
+
+    @Override
+    public void setLocalInterruptHandler(Predicate<String> handler) {
+        this.localInterruptHandler = handler;
+    }
+
+    @Override
+    public void register(String sessionId) {
+        ownership.put(sessionId, nodeId);
+        publishQuietly(new SessionBroadcastMessage(SessionBroadcastMessage.Type.REGISTER, sessionId, nodeId, null,
+                null), 0);
+    }
+
+    @Override
+    public void unregister(String sessionId) {
+        ownership.asMap().remove(sessionId, nodeId);
+        publishQuietly(new SessionBroadcastMessage(SessionBroadcastMessage.Type.UNREGISTER, sessionId, nodeId, null,
+                null), 0);
+    }
+
+    @Override
+    public boolean interruptRemote(String sessionId) {
+        String owner = ownership.getIfPresent(sessionId);
+        if (nodeId.equals(owner)) {
+            return false;
+        }
+
+        String requestId = UUID.randomUUID().toString();
+        CompletableFuture<Boolean> ack = new CompletableFuture<>();
+        pendingInterrupts.put(requestId, ack);
+        try {
+            // 归属未知时（如本节点启动晚于会话创建）广播给所有节点
+            channel.publish(new SessionBroadcastMessage(SessionBroadcastMessage.Type.INTERRUPT, sessionId, nodeId,
+                    owner, requestId), interruptTimeoutMillis);
+            boolean interrupted = ack.get(interruptTimeoutMillis, TimeUnit.MILLISECONDS);
+            logger.info("跨节点中断会话: sessionId={}, owner={}, result={}", sessionId, owner, interrupted);
+            return interrupted;
+        } catch (TimeoutException e) {
+            logger.warn("跨节点中断会话超时: sessionId={}, owner={}, timeout={}ms", sessionId, owner, interruptTimeoutMillis);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RuntimeException e) {
+            logger.error("跨节点中断会话失败: sessionId={}, error={}", sessionId, e.getMessage());
+            return false;
+        } finally {
+            pendingInterrupts.remove(requestId);
+        }
+    }
+
+    @Override
+    public String getOwnerNode(String sessionId) {
+        return ownership.getIfPresent(sessionId);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** 关闭广播订阅 */
+    public void shutdown() {
+        channel.close();
+    }
+
+    /** 处理广播消息 */
+    void onMessage(SessionBroadcastMessage message) {
+        if (message == null || message.getType() == null) {
+            return;
+        }
+        String source = message.getSourceNode();
+        switch (message.getType()) {
+            case REGISTER -> {
+                if (!nodeId.equals(source)) {
+                    ownership.put(message.getSessionId(), source);
+                }
+            }
+            case UNREGISTER -> {
+                if (!nodeId.equals(source)) {
+                    ownership.asMap().remove(message.getSessionId(), source);
+                }
+            }
+            case INTERRUPT -> handleInterrupt(message);
+            case INTERRUPT_ACK -> {
+                if (nodeId.equals(message.getTargetNode())) {
+                    CompletableFuture<Boolean> ack = pendingInterrupts.get(message.getRequestId());
+                    if (ack != null) {
+                        ack.complete(true);
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void handleInterrupt(SessionBroadcastMessage message) {
+        String target = message.getTargetNode();
+        if (nodeId.equals(message.getSourceNode()) || (target != null && !nodeId.equals(target))) {
+            return;
+        }
+        if (localInterruptHandler.test(message.getSessionId())) {
+            publishQuietly(new SessionBroadcastMessage(SessionBroadcastMessage.Type.INTERRUPT_ACK,
+                    message.getSessionId(), nodeId, message.getSourceNode(), message.getRequestId()),
+                    interruptTimeoutMillis);
+        }
+    }
+
+    private void publishQuietly(SessionBroadcastMessage message, long ttlMillis) {
+        try {
+            channel.publish(message, ttlMillis);
+        } catch (Exception e) {
+            // 归属同步失败不影响本节点对话，最多导致跨节点中断退化为广播
+            logger.warn("会话广播失败: type={}, sessionId={}, error={}", message.getType(), message.getSessionId(),
+                    e.getMessage());
+        }
+    }
+}
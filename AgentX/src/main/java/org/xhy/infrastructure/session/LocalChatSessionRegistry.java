@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/** 单机会话注册表，所有会话都在本节点上，无需转发中断 */
+public class LocalChatSessionRegistry implements ChatSessionRegistry {
+
+    private static final String LOCAL_NODE_ID = "local";
+
+    private final Map<String, Boolean> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public void setLocalInterruptHandler(Predicate<String> handler) {
+        // 中断请求总是落在本节点，由会话管理器直接处理
+    }
+
+    @Override
+    public void register(String sessionId) {
+        sessions.put(sessionId, Boolean.TRUE);
+    }
+
+    @Override
+    public void unregister(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    @Override
+    public boolean interruptRemote(String sessionId) {
+        return false;
+    }
+
+    @Override
+    public String getOwnerNode(String sessionId) {
+        return sessions.containsKey(sessionId) ? LOCAL_NODE_ID : null;
+    }
+
+    @Override
+    public String getNodeId() {
+        return LOCAL_NODE_ID;
+    }
+}
@@ -0,0 +1,86 @@
+package org.xhy.infrastructure.session;
+
+import com.alibaba.fastjson2.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/** 基于RabbitMQ fanout交换机的会话广播通道
+ *
+ * 每个节点声明一个非持久、独占、自动删除的队列绑定到同一个fanout交换机，节点下线后队列随连接删除。 */
+public class RabbitSessionBroadcastChannel implements SessionBroadcastChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitSessionBroadcastChannel.class);
+
+    public static final String EXCHANGE_NAME = "chat.session.broadcast.exchange";
+    public static final String QUEUE_PREFIX = "chat.session.node.";
+
+    private final ConnectionFactory connectionFactory;
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+
+    private SimpleMessageListenerContainer container;
+
+    public RabbitSessionBroadcastChannel(ConnectionFactory connectionFactory, RabbitTemplate rabbitTemplate,
+            AmqpAdmin amqpAdmin) {
+        this.connectionFactory = connectionFactory;
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<SessionBroadcastMessage> consumer) {
+        FanoutExchange exchange = new FanoutExchange(EXCHANGE_NAME, true, false);
+        Queue queue = new Queue(QUEUE_PREFIX + nodeId, false, true, true);
+        amqpAdmin.declareExchange(exchange);
+        amqpAdmin.declareQueue(queue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(queue).to(exchange));
+
+        container = new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(queue.getName());
+        // 广播消息丢失的后果只是中断超时，使用自动确认降低延迟
+        container.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        container.setConcurrentConsumers(1);
+        container.setPrefetchCount(50);
+        container.setMessageListener(message -> {
+            try {
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                consumer.accept(JSON.parseObject(body, SessionBroadcastMessage.class));
+            } catch (Exception e) {
+                logger.error("处理会话广播消息失败: {}", e.getMessage(), e);
+            }
+        });
+        container.start();
+        logger.info("会话广播队列已启动: queue={}", queue.getName());
+    }
+
+    @Override
+    public void publish(SessionBroadcastMessage message, long ttlMillis) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        if (ttlMillis > 0) {
+            properties.setExpiration(String.valueOf(ttlMillis));
+        }
+        rabbitTemplate.send(EXCHANGE_NAME, "",
+                new Message(JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8), properties));
+    }
+
+    @Override
+    public void close() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+}
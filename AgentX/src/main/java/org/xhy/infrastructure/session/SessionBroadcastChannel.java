@@ -0,0 +1,20 @@
+package org.xhy.infrastructure.session;
+
+import java.util.function.Consumer;
+
+/** 会话广播通道，每条消息投递给集群内所有节点（包括发送者自身） */
+public interface SessionBroadcastChannel {
+
+    /** 开始接收广播
+     * @param nodeId 本节点ID
+     * @param consumer 消息处理器 */
+    void subscribe(String nodeId, Consumer<SessionBroadcastMessage> consumer);
+
+    /** 广播消息
+     * @param message 消息
+     * @param ttlMillis 消息有效期(毫秒)，小于等于0表示不过期 */
+    void publish(SessionBroadcastMessage message, long ttlMillis);
+
+    /** 停止接收广播 */
+    void close();
+}
@@ -0,0 +1,93 @@
+package org.xhy.infrastructure.session;
+
+/** 会话广播消息，在集群节点之间同步会话归属并转发中断 */
+public class SessionBroadcastMessage {
+
+    /** 消息类型 */
+    public enum Type {
+        /** 节点登记会话 */
+        REGISTER,
+        /** 节点注销会话 */
+        UNREGISTER,
+        /** 中断请求 */
+        INTERRUPT,
+        /** 归属节点确认已中断 */
+        INTERRUPT_ACK
+    }
+
+    private Type type;
+
+    private String sessionId;
+
+    /** 发送节点 */
+    private String sourceNode;
+
+    /** 目标节点，为空表示所有节点 */
+    private String targetNode;
+
+    /** 中断请求ID，用于匹配确认消息 */
+    private String requestId;
+
+    private long timestamp;
+
+    public SessionBroadcastMessage() {
+    }
+
+    public SessionBroadcastMessage(Type type, String sessionId, String sourceNode, String targetNode,
+            String requestId) {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.sourceNode = sourceNode;
+        this.targetNode = targetNode;
+        this.requestId = requestId;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getSourceNode() {
+        return sourceNode;
+    }
+
+    public void setSourceNode(String sourceNode) {
+        this.sourceNode = sourceNode;
+    }
+
+    public String getTargetNode() {
+        return targetNode;
+    }
+
+    public void setTargetNode(String targetNode) {
+        this.targetNode = targetNode;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
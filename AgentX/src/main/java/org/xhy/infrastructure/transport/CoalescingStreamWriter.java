@@ -0,0 +1,115 @@
+package org.xhy.infrastructure.transport;
+
+import org.xhy.application.conversation.dto.AgentChatResponse;
+import org.xhy.domain.conversation.constant.MessageType;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** 合并发送的流式消息写入器
+ *
+ * 首个部分响应立即发送以保证首Token延迟；之后的部分响应先缓冲，达到字节阈值或距上次发送超过时间窗口时合并为一个事件发送，
+ * 时间窗口到期但没有新Token到达时由调度器触发、在补发线程池中写出，写出较慢的连接不会占住调度线程。
+ *
+ * @param <T> 连接类型 */
+public class CoalescingStreamWriter<T> implements StreamMessageWriter {
+
+    private final MessageTransport<T> transport;
+    private final T connection;
+    private final MessageType messageType;
+    private final long windowNanos;
+    private final int maxBytes;
+    private final ScheduledExecutorService scheduler;
+    private final Executor flushExecutor;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int bufferedBytes;
+    private long lastFlushNanos;
+    private boolean firstSent;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long eventCount;
+    private long bytesSent;
+
+    public CoalescingStreamWriter(MessageTransport<T> transport, T connection, MessageType messageType,
+            long windowMillis, int maxBytes, ScheduledExecutorService scheduler, Executor flushExecutor) {
+        this.transport = transport;
+        this.connection = connection;
+        this.messageType = messageType;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBytes = maxBytes;
+        this.scheduler = scheduler;
+        this.flushExecutor = flushExecutor;
+    }
+
+    @Override
+    public synchronized void write(String partial) {
+        if (partial == null || partial.isEmpty()) {
+            return;
+        }
+        buffer.append(partial);
+        bufferedBytes += utf8Length(partial);
+
+        // 首个Token立即发送
+        if (!firstSent) {
+            firstSent = true;
+            flush();
+            return;
+        }
+
+        if (bufferedBytes >= maxBytes || System.nanoTime() - lastFlushNanos >= windowNanos) {
+            flush();
+        } else if (scheduledFlush == null && scheduler != null) {
+            long delay = Math.max(0, windowNanos - (System.nanoTime() - lastFlushNanos));
+            scheduledFlush = scheduler.schedule(() -> flushExecutor.execute(this::flush), delay,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (buffer.length() == 0) {
+            return;
+        }
+        transport.sendMessage(connection, AgentChatResponse.build(buffer.toString(), messageType));
+        eventCount++;
+        bytesSent += bufferedBytes;
+        buffer.setLength(0);
+        bufferedBytes = 0;
+        lastFlushNanos = System.nanoTime();
+    }
+
+    /** 已发送的事件数 */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    /** 已发送的内容字节数（UTF-8） */
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    private static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,54 @@
+package org.xhy.infrastructure.transport;
+
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** 可感知首个事件写出时间的SSE发射器
+ *
+ * 控制器返回发射器之前发送的事件只在内存中缓冲，发射器被Spring MVC接管时才一并写出。
+ * 已发送过事件并且已被接管时回调一次，即首个事件实际写到响应上的时间。 */
+class FirstByteSseEmitter extends SseEmitter {
+
+    private final AtomicBoolean handled = new AtomicBoolean(false);
+
+    private final AtomicBoolean sent = new AtomicBoolean(false);
+
+    private final AtomicBoolean fired = new AtomicBoolean(false);
+
+    private volatile Runnable firstByteCallback;
+
+    FirstByteSseEmitter(long timeout) {
+        super(timeout);
+    }
+
+    /** 设置首字节回调，只回调一次 */
+    void onFirstByte(Runnable callback) {
+        this.firstByteCallback = callback;
+        fireIfReady();
+    }
+
+    /** 被Spring MVC接管后立即写出已缓冲的事件 */
+    @Override
+    protected void extendResponse(ServerHttpResponse outputMessage) {
+        super.extendResponse(outputMessage);
+        handled.set(true);
+        fireIfReady();
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+        super.send(builder);
+        sent.set(true);
+        fireIfReady();
+    }
+
+    private void fireIfReady() {
+        Runnable callback = firstByteCallback;
+        if (callback != null && handled.get() && sent.get() && fired.compareAndSet(false, true)) {
+            callback.run();
+        }
+    }
+}
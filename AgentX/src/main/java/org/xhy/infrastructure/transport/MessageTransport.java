@@ -1,6 +1,7 @@
 package org.xhy.infrastructure.transport;
 
 import org.xhy.application.conversation.dto.AgentChatResponse;
+import org.xhy.domain.conversation.constant.MessageType;
 
 /** 消息传输接口，用于抽象不同的消息传输方式(SSE、WebSocket等) */
 public interface MessageTransport<T> {
@@ -27,4 +28,28 @@ public interface MessageTransport<T> {
      * @param connection 连接对象
      * @param error 错误对象 */
     void handleError(T connection, Throwable error);
-}
\ No newline at end of file
+
+    /** 首个消息实际写出到客户端后回调一次，用于统计首字节时间；默认立即回调
+     * @param connection 连接对象
+     * @param callback 回调 */
+    default void onFirstByte(T connection, Runnable callback) {
+        callback.run();
+    }
+
+    /** 创建流式消息写入器，默认每个部分响应发送一个事件
+     * @param connection 连接对象
+     * @param messageType 部分响应的消息类型
+     * @return 写入器 */
+    default StreamMessageWriter createStreamWriter(T connection, MessageType messageType) {
+        return new StreamMessageWriter() {
+            @Override
+            public void write(String partial) {
+                sendMessage(connection, AgentChatResponse.build(partial, messageType));
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+    }
+}
@@ -5,8 +5,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.xhy.application.conversation.dto.AgentChatResponse;
+import org.xhy.domain.conversation.constant.MessageType;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.ManagedExecutor;
+import org.xhy.infrastructure.concurrent.WorkloadType;
+import org.xhy.infrastructure.config.SseCoalescingProperties;
 
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 
 /** SSE消息传输实现 */
 @Component
@@ -20,9 +26,23 @@ public class SseMessageTransport implements MessageTransport<SseEmitter> {
     /** 系统错误消息前缀 */
     private static final String ERROR_MESSAGE_PREFIX = "\n\n[系统错误：";
 
+    private final SseCoalescingProperties coalescingProperties;
+
+    /** 合并发送的定时补发调度器 */
+    private final ScheduledExecutorService flushScheduler;
+
+    /** 补发到期后写出缓冲内容的线程池 */
+    private final ManagedExecutor flushExecutor;
+
+    public SseMessageTransport(SseCoalescingProperties coalescingProperties, ExecutorRegistry executorRegistry) {
+        this.coalescingProperties = coalescingProperties;
+        this.flushScheduler = executorRegistry.getScheduler();
+        this.flushExecutor = executorRegistry.get(WorkloadType.SSE_FLUSH);
+    }
+
     @Override
     public SseEmitter createConnection(long timeout) {
-        SseEmitter emitter = new SseEmitter(timeout);
+        SseEmitter emitter = new FirstByteSseEmitter(timeout);
 
         // 添加简单的生命周期回调
         emitter.onCompletion(() -> {
@@ -58,6 +78,16 @@ public class SseMessageTransport implements MessageTransport<SseEmitter> {
         return emitter;
     }
 
+    /** 控制器返回连接前发送的消息只是缓冲，在连接被接管、消息实际写出后才回调 */
+    @Override
+    public void onFirstByte(SseEmitter connection, Runnable callback) {
+        if (connection instanceof FirstByteSseEmitter emitter) {
+            emitter.onFirstByte(callback);
+        } else {
+            callback.run();
+        }
+    }
+
     @Override
     public void sendMessage(SseEmitter connection, AgentChatResponse streamChatResponse) {
         safeSendMessage(connection, streamChatResponse);
@@ -72,6 +102,15 @@ public class SseMessageTransport implements MessageTransport<SseEmitter> {
         }
     }
 
+    @Override
+    public StreamMessageWriter createStreamWriter(SseEmitter connection, MessageType messageType) {
+        if (!coalescingProperties.isEnabled()) {
+            return MessageTransport.super.createStreamWriter(connection, messageType);
+        }
+        return new CoalescingStreamWriter<>(this, connection, messageType, coalescingProperties.getWindowMillis(),
+                coalescingProperties.getMaxBytes(), flushScheduler, flushExecutor);
+    }
+
     @Override
     public void completeConnection(SseEmitter connection) {
         safeCompleteEmitter(connection);
@@ -0,0 +1,12 @@
+package org.xhy.infrastructure.transport;
+
+/** 流式消息写入器 用于发送模型的部分响应（Token），由具体传输方式决定是否合并发送 */
+public interface StreamMessageWriter {
+
+    /** 写入一段部分响应
+     * @param partial 部分响应内容 */
+    void write(String partial);
+
+    /** 立即发送所有缓冲内容，在发送工具调用、结束或错误消息前必须调用 */
+    void flush();
+}
@@ -16,8 +16,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /** Agent会话管理 */
 @RestController
@@ -25,7 +23,6 @@ import java.util.concurrent.Executors;
 public class PortalAgentSessionController {
 
     private final Logger logger = LoggerFactory.getLogger(PortalAgentSessionController.class);
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
     private final AgentSessionAppService agentSessionAppService;
     private final ConversationAppService conversationAppService;
     private final ChatSessionManager chatSessionManager;
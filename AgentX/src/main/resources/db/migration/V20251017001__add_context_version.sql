@@ -0,0 +1,2 @@
+ALTER TABLE context ADD COLUMN version BIGINT DEFAULT 0;
+COMMENT ON COLUMN context.version IS '上下文版本号，每次写入时更新，用于校验各节点的上下文缓存';
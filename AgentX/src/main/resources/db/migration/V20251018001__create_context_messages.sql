@@ -0,0 +1,32 @@
+-- 上下文成员表：按序号追加记录上下文中的消息，窗口由 context.window_start 与 context.next_ordinal 界定
+CREATE TABLE context_messages (
+    context_id VARCHAR(36) NOT NULL,
+    ordinal BIGINT NOT NULL,
+    message_id VARCHAR(36) NOT NULL,
+    PRIMARY KEY (context_id, ordinal)
+);
+COMMENT ON TABLE context_messages IS '上下文成员表，按追加顺序记录上下文中的消息';
+COMMENT ON COLUMN context_messages.context_id IS '上下文ID';
+COMMENT ON COLUMN context_messages.ordinal IS '消息在上下文中的序号，只增不改';
+COMMENT ON COLUMN context_messages.message_id IS '消息ID';
+
+ALTER TABLE context ADD COLUMN window_start BIGINT;
+ALTER TABLE context ADD COLUMN next_ordinal BIGINT;
+COMMENT ON COLUMN context.window_start IS '活跃窗口起始序号，小于该序号的成员不再属于活跃消息';
+COMMENT ON COLUMN context.next_ordinal IS '下一条追加消息的序号，为空表示尚未从active_messages迁移';
+
+-- 一次性迁移：将 active_messages JSON 数组展开为成员记录
+INSERT INTO context_messages (context_id, ordinal, message_id)
+SELECT c.id, m.ordinality - 1, m.message_id
+FROM context c
+CROSS JOIN LATERAL jsonb_array_elements_text(COALESCE(c.active_messages, '[]'::jsonb))
+    WITH ORDINALITY AS m(message_id, ordinality)
+WHERE c.next_ordinal IS NULL;
+
+UPDATE context
+SET window_start = 0,
+    next_ordinal = COALESCE(jsonb_array_length(active_messages), 0),
+    active_messages = NULL
+WHERE next_ordinal IS NULL;
+
+COMMENT ON COLUMN context.active_messages IS '已废弃：活跃消息改由 context_messages 记录，仅在迁移前写入的旧数据中存在';
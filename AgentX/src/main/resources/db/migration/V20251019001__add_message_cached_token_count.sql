@@ -0,0 +1,2 @@
+ALTER TABLE messages ADD COLUMN cached_token_count INTEGER DEFAULT 0;
+COMMENT ON COLUMN messages.cached_token_count IS '命中提示词缓存的输入token数量，包含在token_count中';
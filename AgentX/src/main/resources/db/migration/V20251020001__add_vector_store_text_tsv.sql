@@ -0,0 +1,55 @@
+-- 关键词检索改用预先计算的 tsvector 列和 GIN 索引，不再对每一行实时调用 to_tsvector
+--
+-- 在线迁移，需在事务之外逐条执行（如 psql -f），过程中不阻塞向量写入：
+-- 1. 加可空列只修改表定义，不重写表；生成列（GENERATED ... STORED）会在排他锁下重写整张表，因此改用触发器维护
+-- 2. 触发器保证迁移开始后写入的分片立即带有 tsvector
+-- 3. 存量分片按主键分批回填，每批单独提交，锁持有时间短
+-- 4. 并发创建 GIN 索引
+-- 回填和建索引完成后再发布使用 text_tsv 的新版本
+
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS text_tsv tsvector;
+COMMENT ON COLUMN vector_store.text_tsv IS '分片文本的全文检索向量，由触发器在写入时生成';
+
+-- 分词配置：优先使用中文分词配置 chinese_cfg，未安装时使用 simple，写入与查询使用同一配置
+CREATE OR REPLACE FUNCTION vector_store_ts_config() RETURNS regconfig AS $$
+    SELECT COALESCE((SELECT c.oid::regconfig FROM pg_ts_config c WHERE c.cfgname = 'chinese_cfg'),
+                    'simple'::regconfig);
+$$ LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION vector_store_text_tsv_trigger() RETURNS trigger AS $$
+BEGIN
+    NEW.text_tsv := to_tsvector(vector_store_ts_config(), COALESCE(NEW.text, ''));
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_vector_store_text_tsv ON vector_store;
+CREATE TRIGGER trg_vector_store_text_tsv BEFORE INSERT OR UPDATE OF text ON vector_store
+    FOR EACH ROW EXECUTE FUNCTION vector_store_text_tsv_trigger();
+
+-- 按主键顺序分批回填，每批提交一次
+CREATE OR REPLACE PROCEDURE vector_store_backfill_text_tsv(batch_size INTEGER DEFAULT 5000) AS $$
+DECLARE
+    last_id uuid := '00000000-0000-0000-0000-000000000000';
+    batch_last_id uuid;
+BEGIN
+    LOOP
+        SELECT embedding_id INTO batch_last_id
+        FROM (SELECT embedding_id FROM vector_store WHERE embedding_id > last_id
+              ORDER BY embedding_id LIMIT batch_size) batch
+        ORDER BY embedding_id DESC LIMIT 1;
+        EXIT WHEN batch_last_id IS NULL;
+
+        UPDATE vector_store SET text_tsv = to_tsvector(vector_store_ts_config(), COALESCE(text, ''))
+        WHERE embedding_id > last_id AND embedding_id <= batch_last_id AND text_tsv IS NULL;
+        COMMIT;
+
+        last_id := batch_last_id;
+    END LOOP;
+END
+$$ LANGUAGE plpgsql;
+
+CALL vector_store_backfill_text_tsv();
+DROP PROCEDURE vector_store_backfill_text_tsv(INTEGER);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_text_tsv ON vector_store USING gin (text_tsv);
@@ -0,0 +1,70 @@
+-- 向量存储表增加 dataset_id、file_id 列，检索和删除不再经 JSON 元数据过滤
+--
+-- 在线迁移，与 V20251020001 相同，需在事务之外逐条执行（如 psql -f）：
+-- 1. 加可空列，写入触发器在应用未写入这两列时从元数据补齐
+-- 2. 存量分片按主键分批回填
+-- 3. 并发创建索引：数据集与文件的复合索引、数据集与全文检索向量的复合 GIN 索引、向量的 HNSW 索引
+-- HNSW 索引构建耗时较长，可先调大 maintenance_work_mem；带过滤的近邻查询依赖 pgvector 0.8 及以上的迭代扫描
+
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS dataset_id VARCHAR(64);
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS file_id VARCHAR(64);
+COMMENT ON COLUMN vector_store.dataset_id IS '分片所属数据集ID，与元数据中的 DATA_SET_ID 一致';
+COMMENT ON COLUMN vector_store.file_id IS '分片所属文件ID，与元数据中的 FILE_ID 一致';
+
+CREATE OR REPLACE FUNCTION vector_store_text_tsv_trigger() RETURNS trigger AS $$
+BEGIN
+    NEW.text_tsv := to_tsvector(vector_store_ts_config(), COALESCE(NEW.text, ''));
+    NEW.dataset_id := COALESCE(NEW.dataset_id, NEW.metadata ->> 'DATA_SET_ID');
+    NEW.file_id := COALESCE(NEW.file_id, NEW.metadata ->> 'FILE_ID');
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_vector_store_text_tsv ON vector_store;
+CREATE TRIGGER trg_vector_store_text_tsv BEFORE INSERT OR UPDATE OF text, metadata ON vector_store
+    FOR EACH ROW EXECUTE FUNCTION vector_store_text_tsv_trigger();
+
+CREATE OR REPLACE PROCEDURE vector_store_backfill_dataset_columns(batch_size INTEGER DEFAULT 5000) AS $$
+DECLARE
+    last_id uuid := '00000000-0000-0000-0000-000000000000';
+    batch_last_id uuid;
+BEGIN
+    LOOP
+        SELECT embedding_id INTO batch_last_id
+        FROM (SELECT embedding_id FROM vector_store WHERE embedding_id > last_id
+              ORDER BY embedding_id LIMIT batch_size) batch
+        ORDER BY embedding_id DESC LIMIT 1;
+        EXIT WHEN batch_last_id IS NULL;
+
+        UPDATE vector_store
+        SET dataset_id = metadata ->> 'DATA_SET_ID',
+            file_id = metadata ->> 'FILE_ID'
+        WHERE embedding_id > last_id AND embedding_id <= batch_last_id AND dataset_id IS NULL;
+        COMMIT;
+
+        last_id := batch_last_id;
+    END LOOP;
+END
+$$ LANGUAGE plpgsql;
+
+CALL vector_store_backfill_dataset_columns();
+DROP PROCEDURE vector_store_backfill_dataset_columns(INTEGER);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_dataset_file ON vector_store (dataset_id, file_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_file_id ON vector_store (file_id);
+-- 关键词检索同时按数据集和全文检索向量过滤，复合 GIN 索引取代只含 text_tsv 的索引
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_dataset_text_tsv ON vector_store
+    USING gin (dataset_id, text_tsv);
+DROP INDEX CONCURRENTLY IF EXISTS idx_vector_store_text_tsv;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_embedding_hnsw ON vector_store
+    USING hnsw (embedding vector_cosine_ops);
+
+-- 超大数据集可单独建部分 HNSW 索引，只查询该数据集时规划器优先使用，不必在全表索引上迭代过滤
+-- 并发建索引不能在函数内执行，函数只生成语句，在 psql 中执行：SELECT vector_store_dataset_index_ddl('数据集ID') \gexec
+CREATE OR REPLACE FUNCTION vector_store_dataset_index_ddl(p_dataset_id VARCHAR) RETURNS text AS $$
+    SELECT format('CREATE INDEX CONCURRENTLY IF NOT EXISTS %I ON vector_store '
+                      || 'USING hnsw (embedding vector_cosine_ops) WHERE dataset_id = %L',
+                  'idx_vector_store_hnsw_' || md5(p_dataset_id), p_dataset_id);
+$$ LANGUAGE sql IMMUTABLE;
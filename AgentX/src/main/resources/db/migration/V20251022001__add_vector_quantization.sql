@@ -0,0 +1,20 @@
+-- 数据集向量量化：数据集增加量化方式，向量存储表增加量化向量列及其 HNSW 索引
+--
+-- 需要 pgvector 0.7 及以上（halfvec 类型、binary_quantize 函数、bit_hamming_ops）。在线迁移，与 V20251020001 相同，需在事务之外逐条执行（如 psql -f）：
+-- 1. 数据集的量化方式列带常量默认值，加可空的量化向量列，均不重写表
+-- 2. 量化向量只为设置了对应量化方式的数据集写入，存量分片由应用在该数据集首次检索时后台分批补写，无需在此回填
+-- 3. 并发创建只含非空行的部分 HNSW 索引，索引体积与量化数据集的规模成正比
+-- 量化向量列的维度须与 embedding 列一致，VECTOR_DB_DIMENSION 不是 1024 时同步修改
+
+ALTER TABLE ai_rag_qa_dataset ADD COLUMN IF NOT EXISTS vector_quantization VARCHAR(16) NOT NULL DEFAULT 'NONE';
+COMMENT ON COLUMN ai_rag_qa_dataset.vector_quantization IS '向量量化方式：NONE 不量化，SCALAR 半精度标量量化，BINARY 二值量化';
+
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS embedding_sq halfvec(1024);
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS embedding_bq bit(1024);
+COMMENT ON COLUMN vector_store.embedding_sq IS '标量量化的半精度向量，只在数据集设置为 SCALAR 时写入';
+COMMENT ON COLUMN vector_store.embedding_bq IS '二值量化向量，每维取符号位，只在数据集设置为 BINARY 时写入';
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_embedding_sq_hnsw ON vector_store
+    USING hnsw (embedding_sq halfvec_cosine_ops) WHERE embedding_sq IS NOT NULL;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_vector_store_embedding_bq_hnsw ON vector_store
+    USING hnsw (embedding_bq bit_hamming_ops) WHERE embedding_bq IS NOT NULL;
@@ -0,0 +1,9 @@
+-- 摘要消息单独记录：摘要消息不再作为上下文成员写入，滚动摘要只移动窗口起点，不重写窗口内的成员
+--
+-- 1. 新增可空列，不重写表；已有上下文开头的摘要消息仍作为普通成员保留，下次窗口移动后自然移出
+-- 2. 清理窗口起点之前的成员，此前移动窗口时未删除，这些行不会再被读取
+ALTER TABLE context ADD COLUMN IF NOT EXISTS summary_message_id VARCHAR(36);
+COMMENT ON COLUMN context.summary_message_id IS '位于活跃消息开头的摘要消息ID，不作为上下文成员记录';
+
+DELETE FROM context_messages cm USING context c
+WHERE cm.context_id = c.id AND c.window_start IS NOT NULL AND cm.ordinal < c.window_start;
@@ -0,0 +1,46 @@
+-- ============================================
+-- 可选：vector_store 按数据集 LIST 分区
+-- ============================================
+-- 适用于个别数据集有数千万分片的部署：大数据集拆到独立分区后，检索只扫描该分区及其索引，删除数据集可直接删除分区。
+-- 需在 V20251021001 之后、停止向量写入时执行，表会被整体复制一次。
+-- 分区表的主键必须包含分区键，因此主键改为 (embedding_id, dataset_id)；应用按ID更新分片时先删除再插入，两种表结构都适用。
+
+BEGIN;
+
+ALTER TABLE vector_store RENAME TO vector_store_unpartitioned;
+ALTER INDEX IF EXISTS vector_store_pkey RENAME TO vector_store_unpartitioned_pkey;
+
+CREATE TABLE vector_store (
+    LIKE vector_store_unpartitioned INCLUDING DEFAULTS INCLUDING COMMENTS,
+    PRIMARY KEY (embedding_id, dataset_id)
+) PARTITION BY LIST (dataset_id);
+CREATE TABLE vector_store_default PARTITION OF vector_store DEFAULT;
+
+INSERT INTO vector_store SELECT * FROM vector_store_unpartitioned;
+
+CREATE INDEX idx_vector_store_dataset_file ON vector_store (dataset_id, file_id);
+CREATE INDEX idx_vector_store_file_id ON vector_store (file_id);
+CREATE INDEX idx_vector_store_dataset_text_tsv ON vector_store USING gin (dataset_id, text_tsv);
+CREATE INDEX idx_vector_store_embedding_hnsw ON vector_store USING hnsw (embedding vector_cosine_ops);
+
+CREATE TRIGGER trg_vector_store_text_tsv BEFORE INSERT OR UPDATE OF text, metadata ON vector_store
+    FOR EACH ROW EXECUTE FUNCTION vector_store_text_tsv_trigger();
+
+COMMIT;
+
+-- 确认数据无误后删除旧表：DROP TABLE vector_store_unpartitioned;
+
+-- 将一个数据集从默认分区拆到独立分区，执行期间向量写入会等待
+-- 用法：CALL vector_store_split_dataset('数据集ID');
+CREATE OR REPLACE PROCEDURE vector_store_split_dataset(p_dataset_id VARCHAR) AS $$
+DECLARE
+    partition_name text := 'vector_store_ds_' || md5(p_dataset_id);
+BEGIN
+    ALTER TABLE vector_store DETACH PARTITION vector_store_default;
+    EXECUTE format('CREATE TABLE %I PARTITION OF vector_store FOR VALUES IN (%L)', partition_name, p_dataset_id);
+    EXECUTE format('INSERT INTO %I SELECT * FROM vector_store_default WHERE dataset_id = %L', partition_name,
+                   p_dataset_id);
+    DELETE FROM vector_store_default WHERE dataset_id = p_dataset_id;
+    ALTER TABLE vector_store ATTACH PARTITION vector_store_default DEFAULT;
+END
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,260 @@
+package org.xhy.application.conversation.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.application.conversation.dto.ChatRequest;
+import org.xhy.application.conversation.service.handler.context.ChatContext;
+import org.xhy.domain.agent.model.AgentEntity;
+import org.xhy.domain.agent.model.AgentWorkspaceEntity;
+import org.xhy.domain.agent.model.LLMModelConfig;
+import org.xhy.domain.agent.service.AgentDomainService;
+import org.xhy.domain.agent.service.AgentWorkspaceDomainService;
+import org.xhy.domain.conversation.model.ContextSnapshot;
+import org.xhy.domain.conversation.model.SessionEntity;
+import org.xhy.domain.conversation.service.ContextDomainService;
+import org.xhy.domain.conversation.service.SessionDomainService;
+import org.xhy.domain.highavailability.service.HighAvailabilityDomainServiceImpl;
+import org.xhy.domain.llm.model.HighAvailabilityResult;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.domain.llm.service.LLMDomainService;
+import org.xhy.domain.tool.model.UserToolEntity;
+import org.xhy.domain.tool.service.UserToolDomainService;
+import org.xhy.domain.user.service.UserSettingsDomainService;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.exception.BusinessException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 对话准备依赖图测试，使用人为延迟的“仓储”模拟数据库查询 */
+public class ChatPreparationGraphTest {
+
+    private static final long LOOKUP_DELAY_MS = 100;
+
+    /** 对话准备中最慢的单个查询（上下文及历史消息），明显长于最长依赖链上的4次普通查询之和 */
+    private static final long CONTEXT_DELAY_MS = 600;
+
+    private static final String USER_ID = "user-1";
+
+    private ExecutorService executor;
+
+    private ExecutorRegistry executorRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(16);
+        executorRegistry = new ExecutorRegistry(new ExecutorProperties(), Collections.emptyList());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        executorRegistry.destroy();
+    }
+
+    /** 模拟 prepareEnvironmentWithModel 的查询依赖：并发执行后耗时应接近最长链（会话->工作区->模型->高可用 共4次），而不是全部9次查询之和 */
+    @Test
+    public void testIndependentLookupsRunConcurrently() {
+        // 顺序执行基线
+        long sequentialStart = System.currentTimeMillis();
+        for (int i = 0; i < 9; i++) {
+            slowLookup("lookup-" + i);
+        }
+        long sequentialCost = System.currentTimeMillis() - sequentialStart;
+
+        long start = System.currentTimeMillis();
+        ChatPreparationGraph graph = new ChatPreparationGraph(executor, 5000);
+        CompletableFuture<String> session = graph.node("session", () -> slowLookup("session"));
+        CompletableFuture<String> fallback = graph.node("fallbackChain", () -> slowLookup("fallback"));
+        CompletableFuture<String> context = graph.node("context", () -> slowLookup("context"));
+        CompletableFuture<String> history = graph.then("history", context, c -> slowLookup("history"));
+        CompletableFuture<String> agent = graph.then("agent", session, s -> slowLookup("agent"));
+        CompletableFuture<String> tools = graph.then("tools", agent, a -> slowLookup("tools"));
+        CompletableFuture<String> workspace = graph.then("workspace", session, s -> slowLookup("workspace"));
+        CompletableFuture<String> model = graph.then("model", workspace, w -> slowLookup("model"));
+        CompletableFuture<String> provider = graph.combine("highAvailability", model, fallback,
+                (m, f) -> slowLookup("provider"));
+
+        for (CompletableFuture<String> future : List.of(history, tools, provider)) {
+            assertNotNull(graph.await(future));
+        }
+        long parallelCost = System.currentTimeMillis() - start;
+
+        assertTrue(parallelCost < LOOKUP_DELAY_MS * 6, "并发执行耗时应接近最长依赖链: " + parallelCost + "ms");
+        assertTrue(parallelCost < sequentialCost,
+                "并发执行应快于顺序执行, 顺序: " + sequentialCost + "ms, 并发: " + parallelCost + "ms");
+    }
+
+    /** 通过 ConversationAppService 准备对话环境，仓储查询均有延迟：总耗时应接近最慢的分支（上下文加载），而不是9次查询之和 */
+    @Test
+    public void testPrepareEnvironmentWaitsOnlyForSlowestBranch() {
+        ConversationAppService appService = newConversationAppService();
+        ChatRequest chatRequest = new ChatRequest();
+        chatRequest.setSessionId("session-1");
+        chatRequest.setMessage("你好");
+        long sequentialCost = LOOKUP_DELAY_MS * 8 + CONTEXT_DELAY_MS;
+
+        long start = System.currentTimeMillis();
+        ChatContext chatContext = appService.prepareEnvironmentWithModel(chatRequest, USER_ID, null);
+        long cost = System.currentTimeMillis() - start;
+
+        assertEquals("provider-1", chatContext.getProvider().getId());
+        assertEquals(List.of("mcp-server"), chatContext.getMcpServerNames());
+        assertEquals(List.of("model-backup"), chatContext.getFallbackChain());
+        assertTrue(cost >= CONTEXT_DELAY_MS, "应等待上下文加载完成: " + cost + "ms");
+        assertTrue(cost < CONTEXT_DELAY_MS + LOOKUP_DELAY_MS * 2,
+                "耗时应接近最慢的分支: " + cost + "ms, 顺序执行约需: " + sequentialCost + "ms");
+    }
+
+    /** 同名节点在同一请求内只执行一次 */
+    @Test
+    public void testNodesAreMemoized() {
+        AtomicInteger calls = new AtomicInteger();
+        ChatPreparationGraph graph = new ChatPreparationGraph(executor, 5000);
+
+        CompletableFuture<Integer> first = graph.node("agent", calls::incrementAndGet);
+        CompletableFuture<Integer> second = graph.node("agent", calls::incrementAndGet);
+
+        assertSame(first, second);
+        assertEquals(1, graph.await(second));
+        assertEquals(1, calls.get());
+    }
+
+    /** 超过请求截止时间时抛出业务异常 */
+    @Test
+    public void testDeadlineExceeded() {
+        ChatPreparationGraph graph = new ChatPreparationGraph(executor, 50);
+        CompletableFuture<String> slow = graph.node("slow", () -> slowLookup("slow"));
+
+        assertThrows(BusinessException.class, () -> graph.await(slow));
+        assertTrue(slow.isCancelled());
+    }
+
+    /** 节点异常原样抛出 */
+    @Test
+    public void testFailurePropagates() {
+        ChatPreparationGraph graph = new ChatPreparationGraph(executor, 5000);
+        CompletableFuture<String> session = graph.node("session", () -> {
+            throw new BusinessException("会话不存在");
+        });
+        CompletableFuture<String> agent = graph.then("agent", session, s -> s + "-agent");
+
+        BusinessException e = assertThrows(BusinessException.class, () -> graph.await(agent));
+        assertEquals("会话不存在", e.getMessage());
+    }
+
+    private String slowLookup(String name) {
+        sleep(LOOKUP_DELAY_MS);
+        return name;
+    }
+
+    /** 只有对话准备用到的查询有实现，每次查询按延迟模拟数据库往返，其余依赖不参与准备阶段 */
+    private ConversationAppService newConversationAppService() {
+        SessionDomainService sessionDomainService = new SessionDomainService(null) {
+            @Override
+            public SessionEntity getSession(String sessionId, String userId) {
+                sleep(LOOKUP_DELAY_MS);
+                SessionEntity session = new SessionEntity();
+                session.setId(sessionId);
+                session.setAgentId("agent-1");
+                return session;
+            }
+        };
+        UserSettingsDomainService userSettingsDomainService = new UserSettingsDomainService(null) {
+            @Override
+            public List<String> getUserFallbackChain(String userId) {
+                sleep(LOOKUP_DELAY_MS);
+                return List.of("model-backup");
+            }
+        };
+        ContextDomainService contextDomainService = new ContextDomainService(null, null) {
+            @Override
+            public ContextSnapshot loadContextWithMessages(String sessionId) {
+                sleep(CONTEXT_DELAY_MS);
+                return null;
+            }
+        };
+        AgentDomainService agentDomainService = new AgentDomainService(null, null, null, null) {
+            @Override
+            public AgentEntity getAgentById(String agentId) {
+                sleep(LOOKUP_DELAY_MS);
+                AgentEntity agent = new AgentEntity();
+                agent.setId(agentId);
+                agent.setUserId(USER_ID);
+                agent.setEnabled(true);
+                agent.setToolIds(List.of("tool-1"));
+                return agent;
+            }
+        };
+        UserToolDomainService userToolDomainService = new UserToolDomainService(null) {
+            @Override
+            public List<UserToolEntity> getInstallTool(List<String> toolIds, String userId) {
+                sleep(LOOKUP_DELAY_MS);
+                UserToolEntity tool = new UserToolEntity();
+                tool.setMcpServerName("mcp-server");
+                return List.of(tool);
+            }
+        };
+        AgentWorkspaceDomainService agentWorkspaceDomainService = new AgentWorkspaceDomainService(null, null, null) {
+            @Override
+            public AgentWorkspaceEntity getWorkspace(String agentId, String userId) {
+                sleep(LOOKUP_DELAY_MS);
+                LLMModelConfig llmModelConfig = new LLMModelConfig();
+                llmModelConfig.setModelId("model-1");
+                AgentWorkspaceEntity workspace = new AgentWorkspaceEntity();
+                workspace.setLlmModelConfig(llmModelConfig);
+                return workspace;
+            }
+        };
+        ModelEntity model = new ModelEntity();
+        model.setId("model-1");
+        model.setProviderId("provider-1");
+        model.setStatus(true);
+        ProviderEntity provider = new ProviderEntity();
+        provider.setId("provider-1");
+        provider.setStatus(true);
+        LLMDomainService llmDomainService = new LLMDomainService(null, null, null) {
+            @Override
+            public ModelEntity findModelById(String modelId) {
+                sleep(LOOKUP_DELAY_MS);
+                return model;
+            }
+
+            @Override
+            public ProviderEntity getProvider(String providerId) {
+                sleep(LOOKUP_DELAY_MS);
+                return provider;
+            }
+        };
+        HighAvailabilityDomainServiceImpl highAvailabilityDomainService = new HighAvailabilityDomainServiceImpl(null,
+                null, null, null, null) {
+            @Override
+            public HighAvailabilityResult selectBestProvider(ModelEntity model, String userId, String sessionId,
+                    List<String> fallbackChain) {
+                sleep(LOOKUP_DELAY_MS);
+                return new HighAvailabilityResult(provider, model, "instance-1");
+            }
+        };
+        return new ConversationAppService(null, sessionDomainService, agentDomainService,
+                agentWorkspaceDomainService, llmDomainService, contextDomainService, null, null, null, null,
+                userToolDomainService, userSettingsDomainService, null, highAvailabilityDomainService, null, null,
+                new ChatPreparationExecutor(executorRegistry), null, null, null);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
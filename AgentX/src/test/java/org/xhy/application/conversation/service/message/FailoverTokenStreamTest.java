@@ -0,0 +1,162 @@
+package org.xhy.application.conversation.service.message;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+import org.xhy.infrastructure.llm.mock.MockProvider;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 流式故障转移测试：用本地模拟服务商（直接失败、挂起无响应、握手后中断）验证首个流式事件之前的切换 */
+public class FailoverTokenStreamTest {
+
+    private ScheduledExecutorService watchdog;
+
+    private ExecutorService attemptExecutor;
+
+    private final List<String> tokens = new CopyOnWriteArrayList<>();
+
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    private final List<ChatResponse> responses = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        watchdog = Executors.newSingleThreadScheduledExecutor();
+        attemptExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "failover-attempt"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        watchdog.shutdownNow();
+        attemptExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testFailsOverWhenProviderFailsBeforeResponding() {
+        MockProvider failing = MockProvider.failing("connection refused");
+        MockProvider healthy = MockProvider.healthy("你好", "世界");
+        Deque<MockProvider> fallbacks = new ArrayDeque<>(List.of(healthy));
+
+        start(failing, fallbacks, null, 0);
+
+        assertEquals(List.of("你好", "世界"), tokens);
+        assertEquals(1, responses.size());
+        assertTrue(errors.isEmpty(), "转移成功时不应回调错误");
+        assertTrue(failing.getToken().isCancelled(), "失败的尝试应被关闭");
+    }
+
+    @Test
+    public void testFailsOverWhenProviderHangs() throws InterruptedException {
+        MockProvider hanging = MockProvider.hanging();
+        MockProvider healthy = MockProvider.healthy("ok");
+        Deque<MockProvider> fallbacks = new ArrayDeque<>(List.of(healthy));
+
+        start(hanging, fallbacks, null, 50);
+        assertTrue(healthy.awaitStarted(2, TimeUnit.SECONDS), "超时后应切换到下一个服务商");
+
+        assertEquals(List.of("ok"), tokens);
+        assertTrue(hanging.getToken().isCancelled(), "挂起的请求应被中止");
+        assertTrue(errors.isEmpty());
+
+        // 被放弃的请求迟到的事件不应影响输出
+        hanging.emit("late");
+        hanging.complete();
+        assertEquals(List.of("ok"), tokens);
+        assertEquals(1, responses.size());
+    }
+
+    @Test
+    public void testReportsErrorOnceWhenAllProvidersFail() {
+        MockProvider first = MockProvider.failing("503");
+        Deque<MockProvider> fallbacks = new ArrayDeque<>(
+                List.of(MockProvider.failing("429"), MockProvider.failing("connection reset")));
+
+        start(first, fallbacks, null, 0);
+
+        assertEquals(1, errors.size(), "降级链用尽后只回调一次错误");
+        assertEquals("connection reset", errors.get(0).getMessage());
+        assertTrue(tokens.isEmpty());
+    }
+
+    @Test
+    public void testDoesNotFailOverAfterFirstToken() {
+        MockProvider broken = new MockProvider(stream -> {
+            stream.emit("部分");
+            stream.fail("stream reset");
+        });
+        MockProvider healthy = MockProvider.healthy("重复");
+        Deque<MockProvider> fallbacks = new ArrayDeque<>(List.of(healthy));
+
+        start(broken, fallbacks, null, 0);
+
+        assertEquals(List.of("部分"), tokens);
+        assertEquals(1, errors.size());
+        assertEquals(1, fallbacks.size(), "输出开始后不应切换");
+    }
+
+    @Test
+    public void testDoesNotFailOverAfterProviderStartedStreaming() {
+        // 握手完成并收到流式事件（如只含角色的首个chunk）后中断
+        MockProvider stalled = new MockProvider(stream -> {
+            StreamCancellationToken.current().markResponded();
+            stream.fail("stream stalled");
+        });
+        Deque<MockProvider> fallbacks = new ArrayDeque<>(List.of(MockProvider.healthy("ok")));
+
+        start(stalled, fallbacks, null, 0);
+
+        assertEquals(1, errors.size());
+        assertEquals(1, fallbacks.size(), "服务商已开始响应后不应切换");
+    }
+
+    @Test
+    public void testSessionCancellationStopsCurrentAttempt() {
+        MockProvider hanging = MockProvider.hanging();
+        StreamCancellationToken sessionToken = new StreamCancellationToken();
+
+        start(hanging, new ArrayDeque<>(), sessionToken, 0);
+        sessionToken.cancel();
+
+        assertTrue(hanging.getToken().isCancelled(), "会话取消应中止当前尝试");
+    }
+
+    @Test
+    public void testNextAttemptPreparedOffFailingThread() throws InterruptedException {
+        MockProvider hanging = MockProvider.hanging();
+        MockProvider healthy = MockProvider.healthy("ok");
+        AtomicReference<String> sourceThread = new AtomicReference<>();
+
+        FailoverTokenStream stream = new FailoverTokenStream(hanging, failure -> {
+            sourceThread.set(Thread.currentThread().getName());
+            return healthy;
+        }, null, watchdog, attemptExecutor, 50);
+        stream.onPartialResponse(tokens::add).onCompleteResponse(responses::add).onError(errors::add).start();
+
+        assertTrue(healthy.awaitStarted(2, TimeUnit.SECONDS));
+        assertEquals("failover-attempt", sourceThread.get(), "下一次尝试不应在超时检测线程上准备");
+        assertEquals(List.of("ok"), tokens);
+    }
+
+    private void start(MockProvider first, Deque<MockProvider> fallbacks, StreamCancellationToken sessionToken,
+            long timeoutMs) {
+        // 同步执行故障转移，便于断言
+        Executor direct = Runnable::run;
+        FailoverTokenStream stream = new FailoverTokenStream(first, failure -> fallbacks.pollFirst(), sessionToken,
+                watchdog, direct, timeoutMs);
+        stream.onPartialResponse(tokens::add).onCompleteResponse(responses::add).onError(errors::add).start();
+    }
+}
@@ -0,0 +1,117 @@
+package org.xhy.application.conversation.service.message;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.infrastructure.llm.PromptCacheUsage;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.factory.LLMProviderFactory;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 提示词前缀缓存测试：按对话处理器的消息排列方式向模拟服务商发送多轮请求，验证前缀在多轮之间保持稳定并命中缓存 */
+class PromptPrefixCacheTest {
+
+    @BeforeAll
+    static void enableMock() {
+        LLMProviderFactory.setMockEnabled(true);
+    }
+
+    @AfterAll
+    static void disableMock() {
+        LLMProviderFactory.setMockEnabled(false);
+    }
+
+    private static final String SYSTEM_PROMPT = "你是一个乐于助人的助手，请用简洁的中文回答用户的问题。".repeat(20);
+
+    private static final List<ToolSpecification> TOOLS = List.of(
+            ToolSpecification.builder().name("get_weather").description("查询指定城市的天气").build(),
+            ToolSpecification.builder().name("search_docs").description("检索知识库中的文档").build());
+
+    /** 测试 OpenAI 兼容接口：每轮请求都命中上一轮的完整前缀，生成摘要后仍命中系统提示词和工具定义 */
+    @Test
+    void testPrefixStaysStableAcrossTurns() {
+        ChatModel model = model("prefix-openai?ttft=0&tps=0&tokens=16");
+        List<MessageEntity> history = new ArrayList<>();
+
+        PromptCacheUsage first = turn(model, "", history, "北京明天的天气怎么样？");
+        PromptCacheUsage second = turn(model, "", history, "那上海呢？");
+        PromptCacheUsage third = turn(model, "", history, "需要带伞吗？");
+
+        assertEquals(0, first.getCachedInputTokens());
+        assertTrue(second.getCachedInputTokens() > 0, "第二轮应命中第一轮的前缀");
+        assertTrue(third.getCachedInputTokens() > second.getCachedInputTokens(), "缓存命中的前缀应随对话增长");
+        assertTrue(third.getCachedInputTokens() < third.getInputTokens());
+
+        // 历史被压缩为摘要后，摘要之前的系统提示词和工具定义仍可命中
+        List<MessageEntity> compacted = new ArrayList<>();
+        PromptCacheUsage afterSummary = turn(model, "用户询问了北京和上海的天气", compacted, "后天呢？");
+        assertTrue(afterSummary.getCachedInputTokens() > 0, "摘要变化不应使系统提示词失效");
+        assertTrue(afterSummary.getCachedInputTokens() < third.getCachedInputTokens());
+    }
+
+    /** 测试 Anthropic 接口：首轮写入缓存断点，后续轮次读取，系统提示词中混入动态内容时无法命中 */
+    @Test
+    void testAnthropicCacheBreakpoints() {
+        ChatModel model = model("prefix-anthropic?ttft=0&tps=0&tokens=16&api=anthropic");
+        List<MessageEntity> history = new ArrayList<>();
+
+        PromptCacheUsage first = turn(model, "", history, "北京明天的天气怎么样？");
+        PromptCacheUsage second = turn(model, "", history, "那上海呢？");
+
+        assertEquals(0, first.getCachedInputTokens());
+        assertTrue(first.getCacheWriteTokens() > 0, "首轮应写入工具定义和系统提示词的缓存");
+        assertEquals(first.getCacheWriteTokens(), second.getCachedInputTokens());
+        assertEquals(0, second.getCacheWriteTokens());
+        assertEquals(second.getInputTokens(), second.getCachedInputTokens() + second.getUncachedInputTokens());
+
+        // 检索结果等每轮变化的内容放进系统提示词，只有工具定义能命中
+        PromptCacheUsage dynamic = turn(model, "", history, SYSTEM_PROMPT + "检索结果：第3轮", "需要带伞吗？");
+        assertTrue(dynamic.getCachedInputTokens() < second.getCachedInputTokens());
+        assertTrue(dynamic.getCacheWriteTokens() > 0);
+    }
+
+    private static PromptCacheUsage turn(ChatModel model, String summary, List<MessageEntity> history,
+            String question) {
+        return turn(model, summary, history, SYSTEM_PROMPT, question);
+    }
+
+    /** 按处理器的排列方式构建一轮请求，回复追加到历史消息中 */
+    private static PromptCacheUsage turn(ChatModel model, String summary, List<MessageEntity> history,
+            String systemPrompt, String question) {
+        MessageWindowChatMemory memory = MessageWindowChatMemory.withMaxMessages(1000);
+        AbstractMessageHandler.appendHistoryMessages(memory, systemPrompt, summary, history);
+        memory.add(UserMessage.from(question));
+
+        ChatResponse response = model
+                .chat(ChatRequest.builder().messages(memory.messages()).toolSpecifications(TOOLS).build());
+        history.add(message(Role.USER, question));
+        history.add(message(Role.ASSISTANT, response.aiMessage().text()));
+        return PromptCacheUsage.of(response.tokenUsage());
+    }
+
+    private static MessageEntity message(Role role, String content) {
+        MessageEntity message = new MessageEntity();
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+
+    private static ChatModel model(String scenario) {
+        ProviderConfig config = new ProviderConfig("mock", null, scenario, ProviderProtocol.MOCK);
+        config.setPromptCache(true);
+        return LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK, config);
+    }
+}
@@ -0,0 +1,105 @@
+package org.xhy.domain.conversation.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.conversation.model.ContextEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** 上下文写入开销基准测试：对比整体重写活跃消息JSON列表与追加成员、移动窗口起点的单条消息写入耗时
+ *
+ * 每次操作追加一条消息（如工具调用消息）并截掉最早的一条，保持窗口大小不变。
+ * 仓库以内存实现替代，每次数据库往返消耗固定开销；旧方式额外执行与 ListConverter 相同的整列表Jackson序列化
+ * （不含 JsonUtils 的调试输出），未计入数据库端重写大字段的开销。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextWindowStoreBenchmark {
+
+    /** 模拟一次数据库往返的CPU开销 */
+    private static final long ROUND_TRIP_TOKENS = 2000;
+
+    /** 模拟每行写入的CPU开销 */
+    private static final long ROW_TOKENS = 200;
+
+    @Param({"1000", "5000"})
+    private int messageCount;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<String> legacyActiveMessages;
+
+    private ContextWindowStore windowStore;
+    private ContextEntity context;
+
+    private long sequence;
+
+    /** 每轮迭代重建存储，避免成员表随追加无限增长 */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<String> messageIds = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            messageIds.add(UUID.randomUUID().toString());
+        }
+        legacyActiveMessages = new ArrayList<>(messageIds);
+
+        InMemoryConversationStore store = new InMemoryConversationStore(ROUND_TRIP_TOKENS, ROW_TOKENS);
+        ContextEntity legacy = new ContextEntity();
+        legacy.setId(UUID.randomUUID().toString());
+        legacy.setSessionId("benchmark-session");
+        legacy.setLegacyActiveMessages(messageIds);
+        store.putContext(legacy);
+        windowStore = new ContextWindowStore(store.contextRepository(), store.contextMessageRepository());
+        context = windowStore.findBySessionId("benchmark-session");
+    }
+
+    /** 原有方式：每条消息都序列化并重写整个活跃消息列表 */
+    @Benchmark
+    public void legacyRewrite(Blackhole blackhole) throws JsonProcessingException {
+        legacyActiveMessages.remove(0);
+        legacyActiveMessages.add(nextMessageId());
+        String json = objectMapper.writeValueAsString(legacyActiveMessages);
+        Blackhole.consumeCPU(ROUND_TRIP_TOKENS + ROW_TOKENS);
+        blackhole.consume(json);
+    }
+
+    /** 新方式：追加一条成员并移动窗口起点 */
+    @Benchmark
+    public void appendOnly() {
+        context.getActiveMessages().remove(0);
+        context.getActiveMessages().add(nextMessageId());
+        windowStore.save(context);
+    }
+
+    private String nextMessageId() {
+        return "message-" + (sequence++);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ContextWindowStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,242 @@
+package org.xhy.domain.conversation.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.conversation.model.ContextEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 上下文窗口存储测试：旧版活跃消息迁移，以及追加、截断、重建窗口的增量写入 */
+class ContextWindowStoreTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private InMemoryConversationStore store;
+    private ContextWindowStore windowStore;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryConversationStore();
+        windowStore = new ContextWindowStore(store.contextRepository(), store.contextMessageRepository());
+    }
+
+    /** 测试旧版JSON活跃消息在首次读取时迁移为按序号排列的成员，且只迁移一次 */
+    @Test
+    void testMigratesLegacyActiveMessages() {
+        List<String> legacy = messageIds(1200);
+        String contextId = putLegacyContext(legacy);
+
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        assertEquals(legacy, context.getActiveMessages(), "迁移后的活跃消息应与旧版列表顺序一致");
+        ContextEntity row = store.contextRow(contextId);
+        assertEquals(0L, row.getWindowStart());
+        assertEquals(1200L, row.getNextOrdinal());
+        assertNull(row.getLegacyActiveMessages(), "迁移后应清空旧版列表");
+        assertEquals(1200, store.memberCount(contextId));
+
+        ContextEntity reloaded = windowStore.findBySessionId(SESSION_ID);
+        assertEquals(legacy, reloaded.getActiveMessages());
+        assertEquals(1200, store.memberCount(contextId), "再次读取不应重复迁移");
+    }
+
+    /** 测试空的旧版列表也能迁移 */
+    @Test
+    void testMigratesEmptyLegacyContext() {
+        String contextId = putLegacyContext(null);
+
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        assertTrue(context.getActiveMessages().isEmpty());
+        assertEquals(0L, store.contextRow(contextId).getNextOrdinal());
+        assertEquals(0, store.memberCount(contextId));
+    }
+
+    /** 测试追加消息只写入新成员，窗口起点不变 */
+    @Test
+    void testAppendWritesOnlyNewMembers() {
+        String contextId = putLegacyContext(messageIds(1000));
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+        List<String> appended = messageIds(2);
+
+        context.getActiveMessages().addAll(appended);
+        windowStore.save(context);
+
+        assertEquals(1002, store.memberCount(contextId), "只应追加两条成员");
+        assertEquals(0L, store.contextRow(contextId).getWindowStart());
+        assertEquals(1002L, store.contextRow(contextId).getNextOrdinal());
+        assertEquals(context.getActiveMessages(), windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+    }
+
+    /** 测试滑动窗口截断只移动窗口起点并删除移出窗口的成员，不写入成员 */
+    @Test
+    void testTruncationMovesWindowStart() {
+        List<String> legacy = messageIds(1000);
+        String contextId = putLegacyContext(legacy);
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        List<String> retained = new ArrayList<>(legacy.subList(400, 1000));
+        context.setActiveMessages(retained);
+        windowStore.save(context);
+
+        assertEquals(600, store.memberCount(contextId), "截断不应写入成员，移出窗口的成员应被删除");
+        assertEquals(400L, store.contextRow(contextId).getWindowStart());
+        assertEquals(retained, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+
+        // 截断后继续追加
+        List<String> expected = new ArrayList<>(retained);
+        expected.add("appended");
+        context.getActiveMessages().add("appended");
+        windowStore.save(context);
+        assertEquals(expected, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+    }
+
+    /** 测试连续两次摘要：摘要消息单独记录，只移动窗口起点，成员行数随窗口收缩而不随摘要次数增长 */
+    @Test
+    void testRepeatedSummaryKeepsMembersBounded() {
+        List<String> legacy = messageIds(30);
+        String contextId = putLegacyContext(legacy);
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        List<String> firstSummary = new ArrayList<>();
+        firstSummary.add("summary-1");
+        firstSummary.addAll(legacy.subList(10, 30));
+        context.setActiveMessages(firstSummary);
+        context.setSummaryMessageId("summary-1");
+        assertTrue(windowStore.saveIfUnchanged(context));
+
+        assertEquals(20, store.memberCount(contextId), "摘要消息不应作为成员写入");
+        assertEquals(10L, store.contextRow(contextId).getWindowStart());
+        assertEquals(30L, store.contextRow(contextId).getNextOrdinal());
+        assertEquals(firstSummary, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+
+        ContextEntity reloaded = windowStore.findBySessionId(SESSION_ID);
+        List<String> secondSummary = new ArrayList<>();
+        secondSummary.add("summary-2");
+        secondSummary.addAll(legacy.subList(20, 30));
+        reloaded.setActiveMessages(secondSummary);
+        reloaded.setSummaryMessageId("summary-2");
+        assertTrue(windowStore.saveIfUnchanged(reloaded));
+
+        assertEquals(10, store.memberCount(contextId), "第二次摘要不应重写窗口");
+        assertEquals(20L, store.contextRow(contextId).getWindowStart());
+        assertEquals(30L, store.contextRow(contextId).getNextOrdinal());
+        assertEquals(secondSummary, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+
+        // 摘要消息被截断出窗口后不再记录
+        reloaded.setActiveMessages(new ArrayList<>(legacy.subList(25, 30)));
+        windowStore.save(reloaded);
+        assertNull(store.contextRow(contextId).getSummaryMessageId());
+        assertEquals(legacy.subList(25, 30), windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+    }
+
+    /** 测试无法表示为截断后追加的窗口整体移到末尾重新追加，原有成员被删除 */
+    @Test
+    void testReorderedWindowRebases() {
+        List<String> legacy = messageIds(30);
+        String contextId = putLegacyContext(legacy);
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        List<String> reordered = new ArrayList<>();
+        reordered.add("inserted");
+        reordered.addAll(legacy.subList(10, 30));
+        context.setActiveMessages(reordered);
+        windowStore.save(context);
+
+        assertEquals(30L, store.contextRow(contextId).getWindowStart());
+        assertEquals(51L, store.contextRow(contextId).getNextOrdinal());
+        assertEquals(21, store.memberCount(contextId));
+        assertEquals(reordered, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+    }
+
+    /** 测试新建上下文 */
+    @Test
+    void testInsertNewContext() {
+        ContextEntity context = new ContextEntity();
+        context.setSessionId(SESSION_ID);
+        context.getActiveMessages().add("first");
+
+        windowStore.save(context);
+
+        assertNotNull(context.getId());
+        assertEquals(List.of("first"), windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+        assertNotNull(store.contextRow(context.getId()).getVersion());
+    }
+
+    /** 测试基于过期窗口的并发写入：不占用重复序号，以最后一次写入为准 */
+    @Test
+    void testConcurrentWriterLastWriteWins() {
+        List<String> legacy = messageIds(10);
+        putLegacyContext(legacy);
+        ContextEntity first = windowStore.findBySessionId(SESSION_ID);
+        ContextEntity second = windowStore.findBySessionId(SESSION_ID);
+
+        first.getActiveMessages().add("from-first");
+        windowStore.save(first);
+        second.getActiveMessages().add("from-second");
+        windowStore.save(second);
+
+        List<String> expected = new ArrayList<>(legacy);
+        expected.add("from-second");
+        assertEquals(expected, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+        assertEquals(second.getVersion(), store.contextRow(second.getId()).getVersion());
+    }
+
+    /** 测试每次写入都会更新版本号 */
+    @Test
+    void testSaveStampsNewVersion() {
+        putLegacyContext(messageIds(3));
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+
+        context.getActiveMessages().add("a");
+        windowStore.save(context);
+        Long firstVersion = context.getVersion();
+        context.getActiveMessages().add("b");
+        windowStore.save(context);
+
+        assertNotEquals(firstVersion, context.getVersion());
+    }
+
+    /** 测试条件写入：读取后窗口被重置（序号不变，只移动起点）时放弃写入，未被修改时正常写入 */
+    @Test
+    void testSaveIfUnchangedRejectsStaleWindow() {
+        List<String> legacy = messageIds(10);
+        String contextId = putLegacyContext(legacy);
+        ContextEntity summarizer = windowStore.findBySessionId(SESSION_ID);
+        ContextEntity turn = windowStore.findBySessionId(SESSION_ID);
+
+        turn.setActiveMessages(new ArrayList<>(legacy.subList(5, 10)));
+        windowStore.save(turn);
+        summarizer.setActiveMessages(new ArrayList<>(List.of("summary")));
+        summarizer.getActiveMessages().addAll(legacy.subList(8, 10));
+
+        assertFalse(windowStore.saveIfUnchanged(summarizer), "窗口已被重置，应放弃写入");
+        assertEquals(legacy.subList(5, 10), windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+
+        ContextEntity fresh = windowStore.findBySessionId(SESSION_ID);
+        fresh.getActiveMessages().add("appended");
+        assertTrue(windowStore.saveIfUnchanged(fresh));
+        assertEquals(fresh.getActiveMessages(), windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+        assertEquals(fresh.getVersion(), store.contextRow(contextId).getVersion());
+    }
+
+    private String putLegacyContext(List<String> legacy) {
+        ContextEntity context = new ContextEntity();
+        context.setId(UUID.randomUUID().toString());
+        context.setSessionId(SESSION_ID);
+        context.setVersion(0L);
+        context.setLegacyActiveMessages(legacy);
+        store.putContext(context);
+        return context.getId();
+    }
+
+    private static List<String> messageIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> UUID.randomUUID().toString()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,149 @@
+package org.xhy.domain.conversation.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.transaction.support.TransactionOperations;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.ContextSnapshot;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.domain.conversation.repository.MessageRepository;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ContextCacheProperties;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.TurnJournalProperties;
+import org.xhy.infrastructure.journal.TurnJournal;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/** 会话上下文准备开销基准测试：对比每轮从库加载整个活跃消息窗口与使用上下文缓存时，单轮对话的上下文加载和写入耗时随历史消息数的变化
+ *
+ * 仓库以内存实现替代，每次查询消耗固定的往返开销，并按返回或写入的行数消耗行映射开销。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationContextCacheBenchmark {
+
+    /** 模拟一次数据库往返的CPU开销 */
+    private static final long ROUND_TRIP_TOKENS = 2000;
+
+    /** 模拟每行结果映射的CPU开销 */
+    private static final long ROW_TOKENS = 200;
+
+    @Param({"20", "200", "800"})
+    private int messageCount;
+
+    private final String sessionId = "benchmark-session";
+
+    private MessageDomainService uncachedMessageService;
+    private ContextDomainService uncachedContextService;
+
+    private MessageDomainService cachedMessageService;
+    private ContextDomainService cachedContextService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryConversationStore store = new InMemoryConversationStore(ROUND_TRIP_TOKENS, ROW_TOKENS);
+        ContextEntity context = new ContextEntity();
+        context.setId(UUID.randomUUID().toString());
+        context.setSessionId(sessionId);
+        context.setVersion(0L);
+        List<String> messageIds = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            MessageEntity message = newMessage(i);
+            message.setId(UUID.randomUUID().toString());
+            store.messages.put(message.getId(), message);
+            messageIds.add(message.getId());
+        }
+        // 以旧版数据写入，首次读取时迁移到上下文成员表
+        context.setLegacyActiveMessages(messageIds);
+        store.putContext(context);
+
+        ContextRepository contextRepository = store.contextRepository();
+        MessageRepository messageRepository = store.messageRepository();
+        ContextWindowStore windowStore = new ContextWindowStore(contextRepository, store.contextMessageRepository());
+
+        TurnJournalProperties journalProperties = new TurnJournalProperties();
+        journalProperties.setEnabled(false);
+        TurnJournal journal = new TurnJournal(journalProperties,
+                new ExecutorRegistry(new ExecutorProperties(), Collections.emptyList()));
+
+        ContextCacheProperties disabled = new ContextCacheProperties();
+        disabled.setEnabled(false);
+        ConversationContextCache uncachedCache = new ConversationContextCache(contextRepository, windowStore,
+                messageRepository, disabled);
+        uncachedMessageService = new MessageDomainService(messageRepository, windowStore, uncachedCache,
+                journal, TransactionOperations.withoutTransaction());
+        uncachedContextService = new ContextDomainService(windowStore, uncachedCache);
+
+        ConversationContextCache cache = new ConversationContextCache(contextRepository, windowStore,
+                messageRepository, new ContextCacheProperties());
+        cachedMessageService = new MessageDomainService(messageRepository, windowStore, cache, journal,
+                TransactionOperations.withoutTransaction());
+        cachedContextService = new ContextDomainService(windowStore, cache);
+    }
+
+    /** 原有方式：每轮重新加载上下文和全部活跃消息 */
+    @Benchmark
+    public void uncachedTurn(Blackhole blackhole) {
+        runTurn(uncachedContextService, uncachedMessageService, blackhole);
+    }
+
+    /** 新方式：版本号校验命中缓存，写库后同步更新缓存 */
+    @Benchmark
+    public void cachedTurn(Blackhole blackhole) {
+        runTurn(cachedContextService, cachedMessageService, blackhole);
+    }
+
+    /** 一轮对话：加载上下文，追加用户和助手消息，同时移出最早的两条消息以保持窗口大小不变 */
+    private void runTurn(ContextDomainService contextService, MessageDomainService messageService,
+            Blackhole blackhole) {
+        ContextSnapshot snapshot = contextService.loadContextWithMessages(sessionId);
+        blackhole.consume(snapshot.getMessages());
+        ContextEntity context = snapshot.getContext();
+        context.getActiveMessages().subList(0, 2).clear();
+        messageService.saveMessageAndUpdateContext(Arrays.asList(newMessage(0), newMessage(1)), context);
+    }
+
+    private MessageEntity newMessage(int index) {
+        MessageEntity message = new MessageEntity();
+        message.setSessionId(sessionId);
+        message.setRole(index % 2 == 0 ? Role.USER : Role.ASSISTANT);
+        message.setContent("基准测试消息内容，用于模拟一条普通长度的对话消息。" + index);
+        message.setTokenCount(120);
+        message.setBodyTokenCount(60);
+        message.setCreatedAt(LocalDateTime.now());
+        return message;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConversationContextCacheBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
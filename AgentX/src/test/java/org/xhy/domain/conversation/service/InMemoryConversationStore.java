@@ -0,0 +1,309 @@
+package org.xhy.domain.conversation.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.ContextMessageEntity;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.domain.conversation.repository.ContextMessageRepository;
+import org.xhy.domain.conversation.repository.ContextRepository;
+import org.xhy.domain.conversation.repository.MessageRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 内存实现的上下文、上下文成员和消息仓库，供测试和基准测试使用
+ *
+ * 仅实现上下文相关领域服务用到的方法；可为每次查询设置模拟的往返开销和每行的映射开销。 */
+class InMemoryConversationStore {
+
+    final Map<String, ContextEntity> contexts = new ConcurrentHashMap<>();
+    final Map<String, NavigableMap<Long, String>> members = new ConcurrentHashMap<>();
+    final Map<String, MessageEntity> messages = new ConcurrentHashMap<>();
+
+    /** 数据库往返次数 */
+    final AtomicInteger roundTrips = new AtomicInteger();
+
+    private final long roundTripTokens;
+    private final long rowTokens;
+
+    InMemoryConversationStore() {
+        this(0, 0);
+    }
+
+    InMemoryConversationStore(long roundTripTokens, long rowTokens) {
+        this.roundTripTokens = roundTripTokens;
+        this.rowTokens = rowTokens;
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+        TableInfoHelper.initTableInfo(assistant, ContextEntity.class);
+        TableInfoHelper.initTableInfo(assistant, MessageEntity.class);
+    }
+
+    /** 直接写入一条上下文记录（不经过仓库） */
+    void putContext(ContextEntity context) {
+        contexts.put(context.getId(), copyContextRow(context));
+    }
+
+    ContextEntity contextRow(String contextId) {
+        return contexts.get(contextId);
+    }
+
+    int memberCount(String contextId) {
+        NavigableMap<Long, String> contextMembers = members.get(contextId);
+        return contextMembers == null ? 0 : contextMembers.size();
+    }
+
+    ContextRepository contextRepository() {
+        return (ContextRepository) Proxy.newProxyInstance(ContextRepository.class.getClassLoader(),
+                new Class<?>[]{ContextRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectOne" : {
+                            charge(1);
+                            String sessionId = (String) singleParam((AbstractWrapper<?, ?, ?>) args[0]);
+                            ContextEntity stored = contexts.values().stream()
+                                    .filter(context -> sessionId.equals(context.getSessionId())).findFirst()
+                                    .orElse(null);
+                            if (stored == null) {
+                                return null;
+                            }
+                            if (((LambdaQueryWrapper<?>) args[0]).getSqlSelect() != null) {
+                                ContextEntity versionOnly = new ContextEntity();
+                                versionOnly.setId(stored.getId());
+                                versionOnly.setVersion(stored.getVersion());
+                                return versionOnly;
+                            }
+                            return copyContextRow(stored);
+                        }
+                        case "selectById" : {
+                            charge(1);
+                            ContextEntity stored = contexts.get((String) args[0]);
+                            return stored == null ? null : copyContextRow(stored);
+                        }
+                        case "insert" : {
+                            charge(1);
+                            ContextEntity context = (ContextEntity) args[0];
+                            if (context.getId() == null) {
+                                context.setId(UUID.randomUUID().toString());
+                            }
+                            ContextEntity row = copyContextRow(context);
+                            // active_messages 不再写入
+                            row.setLegacyActiveMessages(null);
+                            contexts.put(row.getId(), row);
+                            return 1;
+                        }
+                        case "advanceWindow" :
+                            charge(1);
+                            return advanceWindow((String) args[0], (Long) args[1], (Long) args[2], (Long) args[3],
+                                    (String) args[4], (String) args[5], (Long) args[6]);
+                        case "advanceWindowIfUnchanged" :
+                            charge(1);
+                            return advanceWindowIfUnchanged((String) args[0], (Long) args[1], (Long) args[2],
+                                    (Long) args[3], (Long) args[4], (String) args[5], (String) args[6], (Long) args[7]);
+                        case "markMigrated" :
+                            charge(1);
+                            return markMigrated((String) args[0], (Long) args[1]);
+                        default :
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    ContextMessageRepository contextMessageRepository() {
+        return (ContextMessageRepository) Proxy.newProxyInstance(ContextMessageRepository.class.getClassLoader(),
+                new Class<?>[]{ContextMessageRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "insertAll" : {
+                            Collection<?> rows = (Collection<?>) args[0];
+                            charge(rows.size());
+                            insertMembers(rows);
+                            return rows.size();
+                        }
+                        case "selectMessageIds" : {
+                            NavigableMap<Long, String> contextMembers = members.get((String) args[0]);
+                            List<String> result = contextMembers == null
+                                    ? new ArrayList<>()
+                                    : new ArrayList<>(contextMembers.subMap((Long) args[1], (Long) args[2]).values());
+                            charge(result.size());
+                            return result;
+                        }
+                        case "deleteBefore" : {
+                            NavigableMap<Long, String> contextMembers = members.get((String) args[0]);
+                            int deleted = 0;
+                            if (contextMembers != null) {
+                                NavigableMap<Long, String> removed = contextMembers.headMap((Long) args[1], false);
+                                deleted = removed.size();
+                                removed.clear();
+                            }
+                            charge(deleted);
+                            return deleted;
+                        }
+                        default :
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    MessageRepository messageRepository() {
+        return (MessageRepository) Proxy.newProxyInstance(MessageRepository.class.getClassLoader(),
+                new Class<?>[]{MessageRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectByIds" : {
+                            List<MessageEntity> result = new ArrayList<>();
+                            for (Object id : (Collection<?>) args[0]) {
+                                MessageEntity stored = messages.get(id);
+                                if (stored != null) {
+                                    MessageEntity copy = new MessageEntity();
+                                    BeanUtils.copyProperties(stored, copy);
+                                    result.add(copy);
+                                }
+                            }
+                            charge(result.size());
+                            return result;
+                        }
+                        case "insert" : {
+                            Collection<?> rows = (Collection<?>) args[0];
+                            charge(rows.size());
+                            for (Object row : rows) {
+                                MessageEntity message = (MessageEntity) row;
+                                message.setId(UUID.randomUUID().toString());
+                                MessageEntity copy = new MessageEntity();
+                                BeanUtils.copyProperties(message, copy);
+                                messages.put(message.getId(), copy);
+                            }
+                            return null;
+                        }
+                        case "insertAll" : {
+                            Collection<?> rows = (Collection<?>) args[0];
+                            charge(rows.size());
+                            for (Object row : rows) {
+                                MessageEntity message = (MessageEntity) row;
+                                if (messages.containsKey(message.getId())) {
+                                    throw new DuplicateKeyException("messages_pkey: " + message.getId());
+                                }
+                            }
+                            for (Object row : rows) {
+                                messages.put(((MessageEntity) row).getId(), copyMessage((MessageEntity) row));
+                            }
+                            return rows.size();
+                        }
+                        case "selectById" : {
+                            charge(1);
+                            MessageEntity stored = messages.get((String) args[0]);
+                            return stored == null ? null : copyMessage(stored);
+                        }
+                        case "updateById" : {
+                            charge(1);
+                            MessageEntity message = (MessageEntity) args[0];
+                            if (!messages.containsKey(message.getId())) {
+                                return 0;
+                            }
+                            messages.put(message.getId(), copyMessage(message));
+                            return 1;
+                        }
+                        default :
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private synchronized int advanceWindow(String id, long expectedNextOrdinal, long windowStart, long nextOrdinal,
+            String summary, String summaryMessageId, long version) {
+        ContextEntity row = contexts.get(id);
+        if (row == null || !Objects.equals(row.getNextOrdinal(), expectedNextOrdinal)) {
+            return 0;
+        }
+        row.setWindowStart(windowStart);
+        row.setNextOrdinal(nextOrdinal);
+        row.setSummary(summary);
+        row.setSummaryMessageId(summaryMessageId);
+        row.setVersion(version);
+        return 1;
+    }
+
+    private synchronized int advanceWindowIfUnchanged(String id, long expectedNextOrdinal, Long expectedVersion,
+            long windowStart, long nextOrdinal, String summary, String summaryMessageId, long version) {
+        ContextEntity row = contexts.get(id);
+        if (row == null || !Objects.equals(row.getVersion(), expectedVersion)) {
+            return 0;
+        }
+        return advanceWindow(id, expectedNextOrdinal, windowStart, nextOrdinal, summary, summaryMessageId, version);
+    }
+
+    private synchronized int markMigrated(String id, long nextOrdinal) {
+        ContextEntity row = contexts.get(id);
+        if (row == null || row.getNextOrdinal() != null) {
+            return 0;
+        }
+        row.setWindowStart(0L);
+        row.setNextOrdinal(nextOrdinal);
+        row.setLegacyActiveMessages(null);
+        return 1;
+    }
+
+    /** 模拟 (context_id, ordinal) 主键约束 */
+    private synchronized void insertMembers(Collection<?> rows) {
+        for (Object row : rows) {
+            ContextMessageEntity member = (ContextMessageEntity) row;
+            NavigableMap<Long, String> contextMembers = members.get(member.getContextId());
+            if (contextMembers != null && contextMembers.containsKey(member.getOrdinal())) {
+                throw new DuplicateKeyException("context_messages_pkey: " + member.getOrdinal());
+            }
+        }
+        for (Object row : rows) {
+            ContextMessageEntity member = (ContextMessageEntity) row;
+            members.computeIfAbsent(member.getContextId(), key -> new ConcurrentSkipListMap<>())
+                    .put(member.getOrdinal(), member.getMessageId());
+        }
+    }
+
+    private void charge(int rows) {
+        roundTrips.incrementAndGet();
+        if (roundTripTokens > 0 || rowTokens > 0) {
+            Blackhole.consumeCPU(roundTripTokens + rows * rowTokens);
+        }
+    }
+
+    private static MessageEntity copyMessage(MessageEntity source) {
+        MessageEntity copy = new MessageEntity();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    /** 只复制数据库中存在的列 */
+    private static ContextEntity copyContextRow(ContextEntity source) {
+        ContextEntity row = new ContextEntity();
+        row.setId(source.getId());
+        row.setSessionId(source.getSessionId());
+        row.setSummary(source.getSummary());
+        row.setSummaryMessageId(source.getSummaryMessageId());
+        row.setVersion(source.getVersion());
+        row.setWindowStart(source.getWindowStart());
+        row.setNextOrdinal(source.getNextOrdinal());
+        row.setLegacyActiveMessages(
+                source.getLegacyActiveMessages() == null ? null : new ArrayList<>(source.getLegacyActiveMessages()));
+        row.setCreatedAt(source.getCreatedAt());
+        row.setUpdatedAt(source.getUpdatedAt());
+        return row;
+    }
+
+    /** 查询条件中只有会话ID一个参数 */
+    private static Object singleParam(AbstractWrapper<?, ?, ?> wrapper) {
+        wrapper.getSqlSegment();
+        return wrapper.getParamNameValuePairs().values().iterator().next();
+    }
+}
@@ -0,0 +1,232 @@
+package org.xhy.domain.conversation.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionOperations;
+import org.xhy.domain.conversation.constant.MessageType;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.conversation.model.ContextEntity;
+import org.xhy.domain.conversation.model.MessageEntity;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ContextCacheProperties;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.TurnJournalProperties;
+import org.xhy.infrastructure.journal.TurnJournal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 单轮对话写入缓冲测试：写入顺序、从写入日志恢复、每轮的数据库往返次数 */
+class TurnWriteBufferTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    @TempDir
+    Path journalDir;
+
+    private ExecutorRegistry executorRegistry;
+    private InMemoryConversationStore store;
+    private ContextWindowStore windowStore;
+    private TurnJournal journal;
+    private MessageDomainService messageDomainService;
+
+    private List<String> existingMessages;
+
+    @BeforeEach
+    void setUp() {
+        executorRegistry = new ExecutorRegistry(new ExecutorProperties(), Collections.emptyList());
+        store = new InMemoryConversationStore();
+        windowStore = new ContextWindowStore(store.contextRepository(), store.contextMessageRepository());
+        journal = newJournal();
+        messageDomainService = newMessageDomainService(journal);
+
+        existingMessages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MessageEntity message = newMessage(Role.USER, "历史消息" + i);
+            message.setId(UUID.randomUUID().toString());
+            store.messages.put(message.getId(), message);
+            existingMessages.add(message.getId());
+        }
+        ContextEntity context = new ContextEntity();
+        context.setId(UUID.randomUUID().toString());
+        context.setSessionId(SESSION_ID);
+        context.setVersion(0L);
+        context.setLegacyActiveMessages(existingMessages);
+        store.putContext(context);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorRegistry.destroy();
+    }
+
+    /** 测试提交后消息和活跃消息按写入顺序排列，创建时间严格递增，未写库的消息更新合并到插入中 */
+    @Test
+    void testCommitPreservesWriteOrder() {
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+        TurnWriteBuffer turn = messageDomainService.beginTurn(context);
+        MessageEntity user = newMessage(Role.USER, "问题");
+        MessageEntity llm = newMessage(Role.ASSISTANT, "调用工具前的回复");
+        MessageEntity tool = newMessage(Role.ASSISTANT, "执行工具：search");
+        tool.setMessageType(MessageType.TOOL_CALL);
+
+        turn.resetWindow(existingMessages);
+        turn.append(user);
+        turn.append(llm);
+        String segmentId = llm.getId();
+        turn.append(tool);
+        user.setTokenCount(42);
+        turn.update(user);
+        llm.setContent("最终回复");
+        turn.append(llm);
+
+        assertEquals(3, store.messages.size(), "提交前不应写库");
+        messageDomainService.commitTurn(turn);
+
+        List<String> expected = new ArrayList<>(existingMessages);
+        expected.add(user.getId());
+        expected.add(segmentId);
+        expected.add(tool.getId());
+        expected.add(llm.getId());
+        List<String> window = windowStore.findBySessionId(SESSION_ID).getActiveMessages();
+        assertEquals(expected, window, "活跃消息应与写入顺序一致");
+
+        List<MessageEntity> saved = new ArrayList<>();
+        for (String id : window.subList(3, 7)) {
+            saved.add(store.messages.get(id));
+        }
+        for (int i = 1; i < saved.size(); i++) {
+            assertTrue(saved.get(i).getCreatedAt().isAfter(saved.get(i - 1).getCreatedAt()), "创建时间应严格递增");
+        }
+        assertEquals(42, saved.get(0).getTokenCount(), "未写库的用户消息更新应合并到插入中");
+        assertEquals("调用工具前的回复", saved.get(1).getContent());
+        assertEquals("最终回复", saved.get(3).getContent());
+        assertNoPendingJournal();
+    }
+
+    /** 测试进程崩溃后从写入日志恢复未提交的轮次，忽略末尾未写完整的记录 */
+    @Test
+    void testRecoversUncommittedTurnFromJournal() throws IOException {
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+        TurnWriteBuffer turn = messageDomainService.beginTurn(context);
+        MessageEntity user = newMessage(Role.USER, "问题");
+        MessageEntity llm = newMessage(Role.ASSISTANT, "回复");
+        turn.append(user);
+        turn.append(llm);
+        user.setTokenCount(42);
+        turn.update(user);
+        journal.flush();
+        // 模拟崩溃时写了一半的记录
+        Files.writeString(journalFile(turn), "{\"type\":\"APP", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        TurnJournal restarted = newJournal();
+        int recovered = newMessageDomainService(restarted).recoverPendingTurns();
+        restarted.flush();
+
+        assertEquals(1, recovered);
+        List<String> expected = new ArrayList<>(existingMessages);
+        expected.add(user.getId());
+        expected.add(llm.getId());
+        assertEquals(expected, windowStore.findBySessionId(SESSION_ID).getActiveMessages());
+        assertEquals(42, store.messages.get(user.getId()).getTokenCount());
+        assertEquals("回复", store.messages.get(llm.getId()).getContent());
+        assertNoPendingJournal();
+    }
+
+    /** 测试提交成功但删除日志前崩溃时，恢复不会重复写入 */
+    @Test
+    void testRecoveryIsIdempotentAfterCommit() throws IOException {
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+        TurnWriteBuffer turn = messageDomainService.beginTurn(context);
+        turn.append(newMessage(Role.USER, "问题"));
+        turn.append(newMessage(Role.ASSISTANT, "回复"));
+        journal.flush();
+        String records = Files.readString(journalFile(turn), StandardCharsets.UTF_8);
+
+        messageDomainService.commitTurn(turn);
+        journal.flush();
+        Files.writeString(journalFile(turn), records, StandardCharsets.UTF_8);
+        int memberCount = store.memberCount(context.getId());
+
+        TurnJournal restarted = newJournal();
+        assertEquals(0, newMessageDomainService(restarted).recoverPendingTurns());
+        restarted.flush();
+        assertEquals(5, store.messages.size(), "不应重复插入消息");
+        assertEquals(memberCount, store.memberCount(context.getId()), "不应重复追加上下文成员");
+        assertNoPendingJournal();
+    }
+
+    /** 测试包含工具调用的一轮对话写库的往返次数少于逐条写入 */
+    @Test
+    void testFewerRoundTripsPerTurn() {
+        ContextEntity context = windowStore.findBySessionId(SESSION_ID);
+        int before = store.roundTrips.get();
+        MessageEntity user = newMessage(Role.USER, "问题");
+        messageDomainService.saveMessageAndUpdateContext(Collections.singletonList(user), context);
+        messageDomainService.saveMessageAndUpdateContext(
+                Collections.singletonList(newMessage(Role.ASSISTANT, "调用工具前的回复")), context);
+        messageDomainService.saveMessageAndUpdateContext(
+                Collections.singletonList(newMessage(Role.ASSISTANT, "执行工具：search")), context);
+        messageDomainService.updateMessage(user);
+        messageDomainService.saveMessageAndUpdateContext(
+                Collections.singletonList(newMessage(Role.ASSISTANT, "最终回复")), context);
+        int perMessage = store.roundTrips.get() - before;
+
+        before = store.roundTrips.get();
+        TurnWriteBuffer turn = messageDomainService.beginTurn(context);
+        MessageEntity bufferedUser = newMessage(Role.USER, "问题");
+        turn.append(bufferedUser);
+        turn.append(newMessage(Role.ASSISTANT, "调用工具前的回复"));
+        turn.append(newMessage(Role.ASSISTANT, "执行工具：search"));
+        turn.update(bufferedUser);
+        turn.append(newMessage(Role.ASSISTANT, "最终回复"));
+        messageDomainService.commitTurn(turn);
+        int buffered = store.roundTrips.get() - before;
+
+        assertEquals(3, buffered, "插入消息、移动窗口、追加成员各一次");
+        assertTrue(buffered < perMessage, "逐条写入: " + perMessage + ", 缓冲写入: " + buffered);
+    }
+
+    private TurnJournal newJournal() {
+        TurnJournalProperties journalProperties = new TurnJournalProperties();
+        journalProperties.setDirectory(journalDir.toString());
+        return new TurnJournal(journalProperties, executorRegistry);
+    }
+
+    private MessageDomainService newMessageDomainService(TurnJournal turnJournal) {
+        ContextCacheProperties cacheProperties = new ContextCacheProperties();
+        cacheProperties.setEnabled(false);
+        ConversationContextCache cache = new ConversationContextCache(store.contextRepository(), windowStore,
+                store.messageRepository(), cacheProperties);
+        return new MessageDomainService(store.messageRepository(), windowStore, cache,
+                turnJournal, TransactionOperations.withoutTransaction());
+    }
+
+    private Path journalFile(TurnWriteBuffer turn) {
+        return journalDir.resolve(turn.getTurnId() + ".journal");
+    }
+
+    private void assertNoPendingJournal() {
+        journal.flush();
+        assertTrue(newJournal().loadPending().isEmpty(), "提交后应删除写入日志");
+    }
+
+    private static MessageEntity newMessage(Role role, String content) {
+        MessageEntity message = new MessageEntity();
+        message.setSessionId(SESSION_ID);
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+}
@@ -0,0 +1,83 @@
+package org.xhy.domain.highavailability.balancer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.config.ProviderBalancerProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** 本地服务商选择开销基准测试：同组实例数不同时，一次选择、记录结果并归还名额的耗时
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderLoadBalancerBenchmark {
+
+    private static final String USER_ID = "benchmark-user";
+
+    @Param({"2", "8", "32"})
+    private int instances;
+
+    private ProviderLoadBalancer balancer;
+    private ModelEntity model;
+
+    @Setup
+    public void setUp() {
+        List<ModelEntity> models = new ArrayList<>();
+        List<ProviderEntity> providers = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            ProviderEntity provider = new ProviderEntity();
+            provider.setId("provider-" + i);
+            provider.setUserId(USER_ID);
+            provider.setStatus(true);
+            providers.add(provider);
+
+            ModelEntity candidate = new ModelEntity();
+            candidate.setId("instance-" + i);
+            candidate.setUserId(USER_ID);
+            candidate.setProviderId(provider.getId());
+            candidate.setModelId("gpt-4o");
+            candidate.setStatus(true);
+            models.add(candidate);
+        }
+        balancer = new ProviderLoadBalancer(new ProviderBalancerProperties());
+        balancer.updateCatalog(models, providers);
+        model = models.get(0);
+        for (int i = 0; i < 20000; i++) {
+            selectAndRecord();
+        }
+    }
+
+    /** 一次对话的本地选择：选择实例、记录调用结果、归还名额 */
+    @Benchmark
+    public ProviderLoadBalancer.Selection selectAndRecord() {
+        ProviderLoadBalancer.Selection selection = balancer.select(model, USER_ID, null, null);
+        balancer.recordResult(selection.getModel().getId(), true, 200);
+        selection.release();
+        return selection;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProviderLoadBalancerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,308 @@
+package org.xhy.domain.highavailability.balancer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.config.ProviderBalancerProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 本地负载均衡模拟测试：用合成的快、慢、故障实例验证流量转移、降级链和选择策略 */
+class ProviderLoadBalancerTest {
+
+    private static final String USER_ID = "user-1";
+
+    private ProviderLoadBalancerTestFixture fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProviderLoadBalancerTestFixture();
+    }
+
+    /** 测试流量从慢实例和故障实例转移到快实例 */
+    @Test
+    void testShiftsTrafficAwayFromSlowAndFailingInstances() {
+        ModelEntity fast = fixture.addModel("fast", "gpt-4o");
+        ModelEntity slow = fixture.addModel("slow", "gpt-4o");
+        ModelEntity failing = fixture.addModel("failing", "gpt-4o");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        Map<String, SimulatedInstance> instances = new HashMap<>();
+        instances.put(fast.getId(), new SimulatedInstance(200, 0.0));
+        instances.put(slow.getId(), new SimulatedInstance(3000, 0.0));
+        instances.put(failing.getId(), new SimulatedInstance(300, 0.9));
+
+        Map<String, Integer> counts = simulate(balancer, fast, instances, 2000, 1000);
+
+        assertTrue(counts.getOrDefault(fast.getId(), 0) > 800, "快实例应承接大部分流量: " + counts);
+        assertTrue(counts.getOrDefault(slow.getId(), 0) < 150, "慢实例应很少被选中: " + counts);
+        assertTrue(counts.getOrDefault(failing.getId(), 0) < 50, "故障实例应很少被选中: " + counts);
+    }
+
+    /** 测试故障实例暂停到期后经探测恢复，重新获得流量 */
+    @Test
+    void testRecoveredInstanceRegainsTraffic() throws InterruptedException {
+        ModelEntity a = fixture.addModel("a", "gpt-4o");
+        ModelEntity b = fixture.addModel("b", "gpt-4o");
+        ProviderBalancerProperties properties = new ProviderBalancerProperties();
+        properties.setFailureThreshold(1);
+        properties.setCooldownMs(20);
+        ProviderLoadBalancer balancer = fixture.balancer(properties);
+
+        Map<String, SimulatedInstance> instances = new HashMap<>();
+        instances.put(a.getId(), new SimulatedInstance(200, 1.0));
+        instances.put(b.getId(), new SimulatedInstance(1500, 0.0));
+        Map<String, Integer> failing = simulate(balancer, a, instances, 500, 500);
+        assertTrue(failing.getOrDefault(a.getId(), 0) < 50, "故障期间应很少分配给故障实例: " + failing);
+
+        instances.put(a.getId(), new SimulatedInstance(200, 0.0));
+        Thread.sleep(30);
+        Map<String, Integer> counts = simulate(balancer, a, instances, 2000, 1000);
+
+        assertTrue(counts.getOrDefault(a.getId(), 0) > 600, "恢复后的快实例应重新承接大部分流量: " + counts);
+    }
+
+    /** 测试同组实例全部暂停分配时使用降级链中的模型 */
+    @Test
+    void testFallsBackWhenPrimaryGroupIsCoolingDown() {
+        ModelEntity primary = fixture.addModel("primary", "gpt-4o");
+        ModelEntity fallback = fixture.addModel("fallback", "claude-sonnet");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        for (int i = 0; i < 3; i++) {
+            balancer.select(primary, USER_ID, null, null).release();
+            balancer.recordResult(primary.getId(), false, 100);
+        }
+        ProviderLoadBalancer.Selection selection = balancer.select(primary, USER_ID, null,
+                List.of(fallback.getId()));
+
+        assertEquals(fallback.getId(), selection.getModel().getId());
+        assertEquals(fallback.getProviderId(), selection.getProvider().getId());
+
+        // 没有降级链时仍返回原分组中的实例
+        assertEquals(primary.getId(), balancer.select(primary, USER_ID, null, null).getModel().getId());
+    }
+
+    /** 测试会话亲和：同一会话在实例可用时保持选择同一实例 */
+    @Test
+    void testKeepsSessionAffinity() {
+        ModelEntity a = fixture.addModel("a", "gpt-4o");
+        fixture.addModel("b", "gpt-4o");
+        fixture.addModel("c", "gpt-4o");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        String first = balancer.select(a, USER_ID, "session-1", null).getModel().getId();
+        for (int i = 0; i < 20; i++) {
+            assertEquals(first, balancer.select(a, USER_ID, "session-1", null).getModel().getId());
+        }
+    }
+
+    /** 测试会话命名的选择不传会话ID：归还后进行中请求数回到0，且不改写对话的会话亲和 */
+    @Test
+    void testRenameSelectionReleasesWithoutTouchingAffinity() {
+        ModelEntity chatModel = fixture.addModel("chat", "gpt-4o");
+        ModelEntity defaultModel = fixture.addModel("default", "gpt-4o-mini");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        ProviderLoadBalancer.Selection chat = balancer.select(chatModel, USER_ID, "session-1", null);
+        chat.release();
+
+        ProviderLoadBalancer.Selection rename = balancer.select(defaultModel, USER_ID, null, null);
+        assertEquals(1, balancer.getStats(defaultModel.getId()).getInFlight());
+        rename.release();
+
+        assertEquals(0, balancer.getStats(defaultModel.getId()).getInFlight());
+        assertEquals(0, balancer.getStats(chatModel.getId()).getInFlight());
+        assertEquals(chatModel.getId(), balancer.select(chatModel, USER_ID, "session-1", null).getModel().getId(),
+                "命名选择不应改写会话亲和");
+    }
+
+    /** 测试被隔离舱拒绝的选择没有调用结果，归还后进行中请求数回到0；被拒绝的探测请求放开探测名额 */
+    @Test
+    void testRejectedSelectionReleasesInFlightAndProbeSlot() throws InterruptedException {
+        ModelEntity model = fixture.addModel("a", "gpt-4o");
+        ProviderBalancerProperties properties = new ProviderBalancerProperties();
+        properties.setFailureThreshold(1);
+        properties.setCooldownMs(10);
+        ProviderLoadBalancer balancer = fixture.balancer(properties);
+        balancer.select(model, USER_ID, null, null).release();
+        balancer.recordResult(model.getId(), false, 100);
+        Thread.sleep(20);
+
+        // 暂停到期后的探测请求被拒绝，未上报结果
+        ProviderLoadBalancer.Selection probe = balancer.select(model, USER_ID, null, null);
+        assertFalse(balancer.getStats(model.getId()).isAvailable(System.currentTimeMillis()), "探测进行中不应再分配");
+        probe.release();
+        probe.release();
+
+        InstanceStats stats = balancer.getStats(model.getId());
+        assertEquals(0, stats.getInFlight(), "重复归还不应重复扣减");
+        assertTrue(stats.tryProbe(System.currentTimeMillis()), "被拒绝的探测请求应放开探测名额");
+    }
+
+    /** 测试对冲的两路调用：只有生效的一方上报结果，两路名额都归还后进行中请求数回到0 */
+    @Test
+    void testHedgeReleasesBothLegs() {
+        ModelEntity primary = fixture.addModel("primary", "gpt-4o");
+        ModelEntity alternative = fixture.addModel("alternative", "claude-sonnet");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        ProviderLoadBalancer.Selection primaryLeg = balancer.select(primary, USER_ID, "session-1", null);
+        ProviderLoadBalancer.Selection hedgeLeg = balancer.select(alternative, USER_ID, null, null);
+        assertEquals(1, balancer.getStats(primary.getId()).getInFlight());
+        assertEquals(1, balancer.getStats(alternative.getId()).getInFlight());
+
+        // 对冲一方先返回，被取消的主调用不上报结果
+        balancer.recordResult(alternative.getId(), true, 300);
+        primaryLeg.release();
+        hedgeLeg.release();
+
+        assertEquals(0, balancer.getStats(primary.getId()).getInFlight());
+        assertEquals(0, balancer.getStats(alternative.getId()).getInFlight());
+    }
+
+    /** 测试遗漏归还的名额按各自的开始时间回收，不影响新近开始的请求 */
+    @Test
+    void testStaleLeasesAgeOutIndividually() throws InterruptedException {
+        ModelEntity model = fixture.addModel("a", "gpt-4o");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        balancer.select(model, USER_ID, null, null);
+        Thread.sleep(30);
+        ProviderLoadBalancer.Selection recent = balancer.select(model, USER_ID, null, null);
+        balancer.releaseStale(20);
+
+        assertEquals(1, balancer.getStats(model.getId()).getInFlight(), "只应回收超时的名额");
+        recent.release();
+        assertEquals(0, balancer.getStats(model.getId()).getInFlight());
+    }
+
+    /** 测试尚未加载到本地的模型返回null，由调用方走网关选择 */
+    @Test
+    void testUnknownModelIsNotSelectedLocally() {
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+        ModelEntity unknown = new ModelEntity();
+        unknown.setId("unknown");
+        unknown.setModelId("gpt-4o");
+
+        assertNull(balancer.select(unknown, USER_ID, null, null));
+    }
+
+    /** 测试延迟的指数加权移动平均：按调用耗时排序，且偏重最近的调用 */
+    @Test
+    void testEwmaOrdersInstancesByRecentLatency() {
+        ModelEntity a = fixture.addModel("a", "gpt-4o");
+        ModelEntity b = fixture.addModel("b", "gpt-4o");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+
+        for (int i = 0; i < 30; i++) {
+            balancer.recordResult(a.getId(), true, 100);
+            balancer.recordResult(b.getId(), true, 500);
+        }
+        long now = System.currentTimeMillis();
+        assertTrue(balancer.getStats(a.getId()).getLatencyMs() < balancer.getStats(b.getId()).getLatencyMs());
+        assertTrue(balancer.getStats(a.getId()).cost(now) < balancer.getStats(b.getId()).cost(now));
+
+        // 实例变慢后，最近的调用很快主导平均值
+        for (int i = 0; i < 30; i++) {
+            balancer.recordResult(a.getId(), true, 900);
+        }
+        now = System.currentTimeMillis();
+        assertTrue(balancer.getStats(a.getId()).getLatencyMs() > balancer.getStats(b.getId()).getLatencyMs());
+        assertTrue(balancer.getStats(a.getId()).cost(now) > balancer.getStats(b.getId()).cost(now));
+    }
+
+    /** 测试二选一随机选择：每次在两个候选中取代价较小的，最慢的实例不会被选中，最快的实例被选中最多 */
+    @Test
+    void testPowerOfTwoChoicesPrefersFasterInstance() {
+        ModelEntity fast = fixture.addModel("fast", "gpt-4o");
+        ModelEntity medium = fixture.addModel("medium", "gpt-4o");
+        ModelEntity slow = fixture.addModel("slow", "gpt-4o");
+        ProviderLoadBalancer balancer = fixture.balancer(new ProviderBalancerProperties());
+        for (int i = 0; i < 30; i++) {
+            balancer.recordResult(fast.getId(), true, 100);
+            balancer.recordResult(medium.getId(), true, 400);
+            balancer.recordResult(slow.getId(), true, 1600);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            ProviderLoadBalancer.Selection selection = balancer.select(fast, USER_ID, null, null);
+            counts.merge(selection.getModel().getId(), 1, Integer::sum);
+            selection.release();
+        }
+
+        assertEquals(0, counts.getOrDefault(slow.getId(), 0), "最慢的实例总会输给另一个候选: " + counts);
+        assertTrue(counts.getOrDefault(fast.getId(), 0) > counts.getOrDefault(medium.getId(), 0),
+                "最快的实例应被选中最多: " + counts);
+    }
+
+    /** 顺序模拟请求，返回最后 countLast 次选择的分布 */
+    private Map<String, Integer> simulate(ProviderLoadBalancer balancer, ModelEntity model,
+            Map<String, SimulatedInstance> instances, int requests, int countLast) {
+        Random random = new Random(42);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < requests; i++) {
+            ProviderLoadBalancer.Selection selection = balancer.select(model, USER_ID, null, null);
+            String selected = selection.getModel().getId();
+            SimulatedInstance instance = instances.get(selected);
+            boolean success = random.nextDouble() >= instance.failureRate;
+            balancer.recordResult(selected, success, instance.latencyMs);
+            selection.release();
+            if (i >= requests - countLast) {
+                counts.merge(selected, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static final class SimulatedInstance {
+
+        private final long latencyMs;
+
+        private final double failureRate;
+
+        private SimulatedInstance(long latencyMs, double failureRate) {
+            this.latencyMs = latencyMs;
+            this.failureRate = failureRate;
+        }
+    }
+
+    /** 构造候选模型和服务商 */
+    private static final class ProviderLoadBalancerTestFixture {
+
+        private final List<ModelEntity> models = new ArrayList<>();
+
+        private final List<ProviderEntity> providers = new ArrayList<>();
+
+        private ModelEntity addModel(String id, String apiIdentifier) {
+            ProviderEntity provider = new ProviderEntity();
+            provider.setId("provider-" + id);
+            provider.setUserId(USER_ID);
+            provider.setStatus(true);
+            providers.add(provider);
+
+            ModelEntity model = new ModelEntity();
+            model.setId(id);
+            model.setUserId(USER_ID);
+            model.setProviderId(provider.getId());
+            model.setModelId(apiIdentifier);
+            model.setStatus(true);
+            models.add(model);
+            return model;
+        }
+
+        private ProviderLoadBalancer balancer(ProviderBalancerProperties properties) {
+            ProviderLoadBalancer balancer = new ProviderLoadBalancer(properties);
+            balancer.updateCatalog(models, providers);
+            return balancer;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.xhy.domain.rag.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/** 关键词检索耗时基准测试：对比每行实时 to_tsvector 的原查询与使用 text_tsv 列和 GIN 索引的查询
+ *
+ * 需要本地 PostgreSQL，连接参数通过 -Dbench.jdbc.url、-Dbench.jdbc.user、-Dbench.jdbc.password 指定，默认连接 localhost:5432/agentx_bench。
+ * 首次运行在 bench_vector_store 表中生成合成语料：词频呈长尾分布，每个分片约60个词，分布在200个数据集中；表中行数与语料规模一致时直接复用。
+ * 两个查询的SQL与 VectorStoreRepository.keywordSearch 改动前后一致，未安装 chinese_cfg 时两者都按 simple 分词。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordSearchBenchmark {
+
+    private static final String TABLE = "bench_vector_store";
+
+    /** 语料词表大小 */
+    private static final int VOCABULARY_SIZE = 20000;
+
+    /** 查询词，从常见到少见 */
+    private static final String[] QUERIES = {"w200", "w2000 w5000", "w12000"};
+
+    private static final String[] DATA_SET_IDS = {"ds-7", "ds-42", "ds-199"};
+
+    @Param({"1000000"})
+    private int corpusSize;
+
+    private Connection connection;
+
+    private PreparedStatement onTheFlyQuery;
+
+    private PreparedStatement storedQuery;
+
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/agentx_bench"),
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"));
+        String config = textSearchConfig();
+        if (rowCount() != corpusSize) {
+            generateCorpus(config);
+        }
+
+        String dataSetFilter = "(metadata ->> 'DATA_SET_ID') IN (?, ?, ?)";
+        String tsQuery = "to_tsquery('" + config + "', replace(plainto_tsquery('" + config
+                + "', ?)::text, '&', '|'))";
+        onTheFlyQuery = connection.prepareStatement("SELECT embedding_id, text, metadata, ts_rank_cd(to_tsvector('"
+                + config + "', text), " + tsQuery + ") AS score FROM " + TABLE + " WHERE " + dataSetFilter
+                + " AND to_tsvector('" + config + "', text) @@ " + tsQuery + " ORDER BY score DESC LIMIT 30");
+        storedQuery = connection.prepareStatement("SELECT embedding_id, text, metadata, ts_rank_cd(text_tsv, query) "
+                + "AS score FROM " + TABLE + ", " + tsQuery + " AS query WHERE text_tsv @@ query AND "
+                + dataSetFilter + " ORDER BY score DESC LIMIT 30");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /** 原查询：每行实时计算 to_tsvector，按数据集过滤后全表扫描 */
+    @Benchmark
+    public int onTheFlyTsvector() throws SQLException {
+        String query = QUERIES[nextQuery++ % QUERIES.length];
+        onTheFlyQuery.setString(1, query);
+        for (int i = 0; i < DATA_SET_IDS.length; i++) {
+            onTheFlyQuery.setString(2 + i, DATA_SET_IDS[i]);
+        }
+        onTheFlyQuery.setString(5, query);
+        return count(onTheFlyQuery);
+    }
+
+    /** 新查询：text_tsv 列经 GIN 索引匹配 */
+    @Benchmark
+    public int storedTsvectorGin() throws SQLException {
+        storedQuery.setString(1, QUERIES[nextQuery++ % QUERIES.length]);
+        for (int i = 0; i < DATA_SET_IDS.length; i++) {
+            storedQuery.setString(2 + i, DATA_SET_IDS[i]);
+        }
+        return count(storedQuery);
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private String textSearchConfig() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COALESCE((SELECT cfgname FROM pg_ts_config "
+                        + "WHERE cfgname = 'chinese_cfg'), 'simple')")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private long rowCount() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+            resultSet.next();
+            if (!resultSet.getBoolean(1)) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + TABLE)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /** 在数据库端生成合成语料，词号按 random()^3 取值，小号词远比大号词常见 */
+    private void generateCorpus(String config) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (embedding_id uuid PRIMARY KEY, text text, metadata json, "
+                    + "text_tsv tsvector)");
+            statement.execute("INSERT INTO " + TABLE + " (embedding_id, text, metadata, text_tsv) "
+                    + "SELECT id, content, metadata, to_tsvector('" + config + "', content) FROM ("
+                    + "SELECT md5(g::text)::uuid AS id, "
+                    + "json_build_object('DATA_SET_ID', 'ds-' || (g % 200)) AS metadata, "
+                    + "(SELECT string_agg('w' || floor(" + VOCABULARY_SIZE + " * power(random(), 3))::int, ' ') "
+                    + "FROM generate_series(1, 60) WHERE g > 0) AS content "
+                    + "FROM generate_series(1, " + corpusSize + ") g) corpus");
+            statement.execute("CREATE INDEX ON " + TABLE + " USING gin (text_tsv)");
+            statement.execute("ANALYZE " + TABLE);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KeywordSearchBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dbench.jdbc.url=" + System.getProperty("bench.jdbc.url",
+                        "jdbc:postgresql://localhost:5432/agentx_bench"),
+                        "-Dbench.jdbc.user=" + System.getProperty("bench.jdbc.user", "postgres"),
+                        "-Dbench.jdbc.password=" + System.getProperty("bench.jdbc.password", "postgres"))
+                .build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package org.xhy.domain.token.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 会话Token索引测试 */
+public class TokenIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Test
+    public void prefixSumsCoverRanges() {
+        TokenIndex index = TokenIndex.of(messages(0, 10, 20, 30, 40));
+
+        assertEquals(100, index.getTotalTokens());
+        assertEquals(70, index.tokensFrom(2));
+        assertEquals(50, index.tokensBetween(1, 3));
+        assertEquals(0, index.tokensFrom(4));
+    }
+
+    /** 窗口起点与逐条累加最新消息的结果一致 */
+    @Test
+    public void windowStartMatchesLinearScan() {
+        TokenIndex index = TokenIndex.of(messages(0, 10, 20, 30, 40));
+
+        assertEquals(0, index.windowStart(100));
+        assertEquals(2, index.windowStart(70));
+        assertEquals(3, index.windowStart(69));
+        assertEquals(3, index.windowStart(40));
+        assertEquals(4, index.windowStart(39));
+        assertEquals(4, index.windowStart(-1));
+    }
+
+    @Test
+    public void unorderedMessagesAreSortedOnce() {
+        List<TokenMessage> messages = messages(0, 10, 20, 30, 40);
+        List<TokenMessage> shuffled = new ArrayList<>(messages);
+        Collections.reverse(shuffled);
+
+        assertEquals(messages, TokenIndex.of(shuffled).messages());
+    }
+
+    /** 追加和丢弃不影响已存在的索引 */
+    @Test
+    public void appendAndSliceKeepEarlierVersions() {
+        TokenIndex first = TokenIndex.of(messages(0, 10, 10, 20));
+        TokenIndex second = first.append(messages(3, 30));
+        TokenIndex branch = first.append(messages(3, 5));
+        TokenIndex sliced = second.slice(2).append(messages(4, 40));
+
+        assertEquals(40, first.getTotalTokens());
+        assertEquals(70, second.getTotalTokens());
+        assertEquals(45, branch.getTotalTokens());
+        assertEquals(90, sliced.getTotalTokens());
+        assertEquals(3, sliced.size());
+        assertEquals("m2", sliced.get(0).getId());
+        assertEquals("m4", sliced.get(2).getId());
+    }
+
+    /** 逐轮丢弃一条、追加一条，跨越多次压缩后前缀和仍与逐条累加一致 */
+    @Test
+    public void rollingWindowStaysConsistent() {
+        TokenIndex index = TokenIndex.of(messages(0, 1, 2, 3, 4, 5));
+        for (int turn = 5; turn < 200; turn++) {
+            index = index.slice(1).append(messages(turn, turn % 7));
+        }
+
+        int expected = 0;
+        for (int i = 0; i < index.size(); i++) {
+            expected += index.get(i).getBodyTokenCount();
+        }
+        assertEquals(5, index.size());
+        assertEquals("m195", index.get(0).getId());
+        assertEquals(expected, index.getTotalTokens());
+    }
+
+    @Test
+    public void earlierAppendedMessageTriggersRebuild() {
+        TokenIndex index = TokenIndex.of(messages(5, 10, 20)).append(messages(0, 1));
+
+        assertEquals("m0", index.get(0).getId());
+        assertEquals(31, index.getTotalTokens());
+    }
+
+    @Test
+    public void missingCountsAreTracked() {
+        List<TokenMessage> messages = messages(0, 10, 10, 10);
+        messages.get(1).setBodyTokenCount(null);
+        TokenIndex index = TokenIndex.of(messages);
+
+        assertEquals(1, index.getMissingCount());
+        assertEquals(20, index.getTotalTokens());
+        assertEquals(0, index.slice(2).getMissingCount());
+    }
+
+    /** 从 first 开始按分钟递增创建消息，ID为 m+序号 */
+    private static List<TokenMessage> messages(int first, int... bodyTokenCounts) {
+        List<TokenMessage> messages = new ArrayList<>();
+        for (int i = 0; i < bodyTokenCounts.length; i++) {
+            int number = first + i;
+            TokenMessage message = new TokenMessage("m" + number, "消息" + number, "USER", bodyTokenCounts[i],
+                    START.plusMinutes(number));
+            message.setBodyTokenCount(bodyTokenCounts[i]);
+            messages.add(message);
+        }
+        return messages;
+    }
+}
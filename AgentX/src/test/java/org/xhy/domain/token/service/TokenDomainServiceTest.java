@@ -0,0 +1,87 @@
+package org.xhy.domain.token.service;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.conversation.constant.Role;
+import org.xhy.domain.token.model.TokenMessage;
+import org.xhy.domain.token.model.TokenProcessResult;
+import org.xhy.domain.token.model.config.TokenOverflowConfig;
+import org.xhy.infrastructure.config.TokenizerProperties;
+import org.xhy.infrastructure.llm.tokenizer.TokenizerRegistry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Token领域服务测试：发送前补齐缺失的Token数并为固定部分预留窗口 */
+class TokenDomainServiceTest {
+
+    private final TokenDomainService tokenDomainService = new TokenDomainService(new TokenOverflowStrategyFactory(),
+            new TokenizerRegistry(disabled()));
+
+    /** 测试没有服务商用量的新消息按本地计数参与窗口计算，不再按0计 */
+    @Test
+    void testFillsMissingTokenCounts() {
+        List<TokenMessage> messages = new ArrayList<>();
+        messages.add(message("m1", "a".repeat(400), 0));
+        messages.add(message("m2", "b".repeat(400), 1));
+
+        TokenOverflowConfig config = TokenOverflowConfig.createSlidingWindowConfig(200, 0.0);
+        assertTrue(tokenDomainService.needsProcessing(messages, config));
+        // 词表不可用时按字符数估算：400个字符约100个Token，未识别的模型放大10%，再加上消息格式开销
+        assertEquals(113, messages.get(0).getBodyTokenCount());
+        assertEquals(113, messages.get(0).getTokenCount());
+
+        TokenProcessResult result = tokenDomainService.processMessages(messages, config);
+        assertEquals(List.of("m2"), result.getRetainedMessages().stream().map(TokenMessage::getId).toList());
+    }
+
+    /** 测试系统提示词、工具定义和用户消息占用的Token从滑动窗口中扣除 */
+    @Test
+    void testReservedTokensShrinkWindow() {
+        List<TokenMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TokenMessage message = message("m" + i, "", i);
+            message.setBodyTokenCount(30);
+            messages.add(message);
+        }
+        TokenOverflowConfig config = TokenOverflowConfig.createSlidingWindowConfig(100, 0.0);
+        assertFalse(tokenDomainService.needsProcessing(messages, config));
+
+        ToolSpecification tool = ToolSpecification.builder().name("search_docs").description("检索知识库中的文档").build();
+        int reserved = tokenDomainService.countPromptTokens("你是一个助手", List.of(tool), "你好", null);
+        assertTrue(reserved > tokenDomainService.countPromptTokens("你是一个助手", null, "你好", null));
+        config.setReservedTokens(reserved);
+
+        TokenProcessResult result = tokenDomainService.processMessages(messages, config);
+        assertTrue(result.isProcessed());
+        assertEquals((100 - reserved) / 30, result.getRetainedMessages().size());
+    }
+
+    /** 测试按预算选取检索结果 */
+    @Test
+    void testCountWithinBudget() {
+        List<String> documents = List.of("a".repeat(40), "b".repeat(40), "c".repeat(40));
+        // 未识别的模型按估算值放大10%：每个文档11个Token
+        assertEquals(2, tokenDomainService.countWithinBudget(documents, 30, "unknown-model"));
+        assertEquals(3, tokenDomainService.countWithinBudget(documents, 33, "unknown-model"));
+        assertEquals(0, tokenDomainService.countWithinBudget(documents, 5, "unknown-model"));
+    }
+
+    private static TokenMessage message(String id, String content, int minutes) {
+        TokenMessage message = new TokenMessage();
+        message.setId(id);
+        message.setRole(Role.USER.name());
+        message.setContent(content);
+        message.setCreatedAt(LocalDateTime.of(2025, 1, 1, 0, 0).plusMinutes(minutes));
+        return message;
+    }
+
+    private static TokenizerProperties disabled() {
+        TokenizerProperties properties = new TokenizerProperties();
+        properties.setEnabled(false);
+        return properties;
+    }
+}
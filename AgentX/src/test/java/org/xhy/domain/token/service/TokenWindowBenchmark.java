@@ -0,0 +1,145 @@
+package org.xhy.domain.token.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.token.model.TokenIndex;
+import org.xhy.domain.token.model.TokenMessage;
+import org.xhy.domain.token.model.TokenProcessResult;
+import org.xhy.domain.token.model.config.TokenOverflowConfig;
+import org.xhy.domain.token.service.impl.SlidingWindowTokenOverflowStrategy;
+import org.xhy.domain.token.service.impl.SummarizeTokenOverflowStrategy;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/** 滑动窗口选取耗时基准测试：对比每轮复制并排序消息列表后逐条累加，与在会话Token索引上二分查找窗口起点，单轮耗时随会话消息数的变化
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenWindowBenchmark {
+
+    /** 上下文窗口，约能放下最近四百条消息 */
+    private static final int MAX_TOKENS = 128000;
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Param({"1000", "5000", "20000"})
+    private int messageCount;
+
+    private List<TokenMessage> messages;
+
+    private TokenIndex index;
+
+    private TokenOverflowConfig config;
+
+    private SlidingWindowTokenOverflowStrategy slidingWindow;
+
+    private SummarizeTokenOverflowStrategy summarize;
+
+    /** 逐轮滑动的索引，每次调用追加一条消息并丢弃最早的一条 */
+    private TokenIndex rolling;
+
+    private int nextMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(newMessage(i, 20 + random.nextInt(600)));
+        }
+        index = TokenIndex.of(messages);
+        rolling = index;
+        nextMessage = messageCount;
+
+        config = TokenOverflowConfig.createSlidingWindowConfig(MAX_TOKENS, 0.1);
+        config.setSummaryThreshold(20);
+        slidingWindow = new SlidingWindowTokenOverflowStrategy(config);
+        summarize = new SummarizeTokenOverflowStrategy(config);
+    }
+
+    /** 原实现：复制后按时间倒序排序，从最新消息逐条累加 */
+    @Benchmark
+    public int sortedScanWindow() {
+        List<TokenMessage> sortedMessages = new ArrayList<>(messages);
+        Collections.sort(sortedMessages, Comparator.comparing(TokenMessage::getCreatedAt).reversed());
+        int availableTokens = MAX_TOKENS - (int) (MAX_TOKENS * 0.1);
+        List<TokenMessage> retainedMessages = new ArrayList<>();
+        int totalTokens = 0;
+        for (TokenMessage message : sortedMessages) {
+            if (totalTokens + message.getBodyTokenCount() > availableTokens) {
+                break;
+            }
+            retainedMessages.add(message);
+            totalTokens += message.getBodyTokenCount();
+        }
+        return retainedMessages.size();
+    }
+
+    /** 在索引上二分查找窗口起点 */
+    @Benchmark
+    public int indexWindow() {
+        TokenProcessResult result = slidingWindow.process(index, config);
+        return result.getRetainedMessages().size();
+    }
+
+    /** 原实现：摘要策略按时间排序后分割 */
+    @Benchmark
+    public int sortedSummarizeSplit() {
+        List<TokenMessage> sortedMessages = messages.stream().sorted(Comparator.comparing(TokenMessage::getCreatedAt))
+                .collect(Collectors.toList());
+        int split = sortedMessages.size() - config.getSummaryThreshold();
+        return new ArrayList<>(sortedMessages.subList(0, split)).size()
+                + new ArrayList<>(sortedMessages.subList(split, sortedMessages.size())).size();
+    }
+
+    /** 在索引上按位置分割 */
+    @Benchmark
+    public int indexSummarizeSplit() {
+        TokenProcessResult result = summarize.process(index, config);
+        return result.getMessagesToSummarize().size() + result.getRetainedMessages().size();
+    }
+
+    /** 每轮维护索引的开销：丢弃最早的一条消息并追加一条新消息 */
+    @Benchmark
+    public int indexAppendTurn() {
+        rolling = rolling.slice(1).append(Collections.singletonList(newMessage(nextMessage++, 300)));
+        return rolling.getTotalTokens();
+    }
+
+    private static TokenMessage newMessage(int number, int bodyTokenCount) {
+        TokenMessage message = new TokenMessage(UUID.randomUUID().toString(), "消息" + number,
+                number % 2 == 0 ? "USER" : "ASSISTANT", bodyTokenCount, START.plusSeconds(number));
+        message.setBodyTokenCount(bodyTokenCount);
+        return message;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenWindowBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -71,7 +71,7 @@ public class NoTokenOverflowStrategyTest {
     @Test
     public void process_withNullList_shouldReturnEmptyList() {
         // 执行处理
-        TokenProcessResult process = strategy.process(null, new TokenOverflowConfig());
+        TokenProcessResult process = strategy.process((List<TokenMessage>) null, new TokenOverflowConfig());
         List<TokenMessage> result = process.getRetainedMessages();
 
         // 验证结果
@@ -93,7 +93,7 @@ public class NoTokenOverflowStrategyTest {
         // 对各种情况进行测试
         assertFalse(strategy.needsProcessing(messages));
         assertFalse(strategy.needsProcessing(new ArrayList<>()));
-        assertFalse(strategy.needsProcessing(null));
+        assertFalse(strategy.needsProcessing((List<TokenMessage>) null));
     }
 
 }
\ No newline at end of file
@@ -13,6 +13,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,13 +48,11 @@ public class SummarizeTokenOverflowStrategyTest {
         // 验证结果
         assertNotNull(result, "结果不应为空");
 
-        // 消息数量应该是 原始消息数量减去超过阈值的消息数量 再加上1条摘要消息
-        int expectedSize = config.getSummaryThreshold() + 1; // 阈值 + 摘要
-        assertEquals(expectedSize, result.size(), "结果应该包含阈值数量的消息+1条摘要消息");
-
-        // 验证摘要消息
-        boolean hasSummaryMessage = result.stream().anyMatch(m -> "summary".equals(m.getRole()));
-        assertTrue(hasSummaryMessage, "结果应该包含摘要消息");
+        // 策略不再同步生成摘要：只保留阈值数量的最新消息，其余交给后台摘要器
+        assertEquals(config.getSummaryThreshold(), result.size(), "结果应该只包含阈值数量的最新消息");
+        assertTrue(process.isProcessed());
+        assertNull(process.getSummary(), "策略不应同步生成摘要");
+        assertEquals(messages.size() - config.getSummaryThreshold(), process.getMessagesToSummarize().size());
 
         // 验证是否正确保留了最新消息
         List<TokenMessage> sortedOriginal = new ArrayList<>(messages);
@@ -60,9 +61,7 @@ public class SummarizeTokenOverflowStrategyTest {
                 sortedOriginal.size());
 
         for (TokenMessage message : latestMessages) {
-            assertTrue(
-                    result.stream().anyMatch(m -> m.getId().equals(message.getId()) && !m.getRole().equals("summary")),
-                    "结果应该包含最新的原始消息");
+            assertTrue(result.stream().anyMatch(m -> m.getId().equals(message.getId())), "结果应该包含最新的原始消息");
         }
     }
 
@@ -96,14 +95,35 @@ public class SummarizeTokenOverflowStrategyTest {
         assertEquals(smallMessages, result, "应该返回原始列表");
     }
 
+    /** 测试同一策略实例被并发调用时结果互不影响 */
+    @Test
+    public void testConcurrentProcess() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int size = 21 + i % 20;
+                List<TokenMessage> input = createTestMessages(size, 100);
+                futures.add(executor.submit(() -> {
+                    TokenProcessResult result = strategy.process(input, new TokenOverflowConfig());
+                    return result.getRetainedMessages().size() == config.getSummaryThreshold()
+                            && result.getMessagesToSummarize().size() == size - config.getSummaryThreshold();
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(), "并发调用的处理结果应只取决于各自的输入");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /** 测试GetMessagesToSummarize方法 */
     @Test
     public void testGetMessagesToSummarize() {
-        // 先执行处理
-        strategy.process(messages, new TokenOverflowConfig());
-
-        // 获取需要摘要的消息
-        List<TokenMessage> messagesToSummarize = strategy.getMessagesToSummarize();
+        // 执行处理，需要摘要的消息通过处理结果返回
+        List<TokenMessage> messagesToSummarize = strategy.process(messages, new TokenOverflowConfig())
+                .getMessagesToSummarize();
 
         // 验证结果
         assertNotNull(messagesToSummarize, "需要摘要的消息列表不应为空");
@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.billing.strategy;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.product.constant.PricingConfigKeys;
+import org.xhy.domain.product.constant.UsageDataKeys;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 模型Token计费策略测试 */
+class ModelTokenStrategyTest {
+
+    private final ModelTokenStrategy strategy = new ModelTokenStrategy();
+
+    /** 测试命中和写入提示词缓存的输入Token按各自单价计费 */
+    @Test
+    void testCachedInputTokensUseCachedPrice() {
+        Map<String, Object> usage = Map.of(UsageDataKeys.INPUT_TOKENS, 1_000_000, UsageDataKeys.OUTPUT_TOKENS,
+                100_000, UsageDataKeys.CACHED_INPUT_TOKENS, 600_000, UsageDataKeys.CACHE_WRITE_INPUT_TOKENS, 100_000);
+        Map<String, Object> pricing = Map.of(PricingConfigKeys.INPUT_COST_PER_MILLION, 10,
+                PricingConfigKeys.OUTPUT_COST_PER_MILLION, 20, PricingConfigKeys.CACHED_INPUT_COST_PER_MILLION, 1,
+                PricingConfigKeys.CACHE_WRITE_COST_PER_MILLION, "12.5");
+
+        // 未缓存 300000*10 + 命中 600000*1 + 写入 100000*12.5 + 输出 100000*20，单位为每百万Token
+        assertEquals(0, new BigDecimal("6.85").compareTo(strategy.process(usage, pricing)));
+    }
+
+    /** 测试未配置缓存单价或没有缓存明细时按输入单价计费 */
+    @Test
+    void testFallsBackToInputPrice() {
+        Map<String, Object> pricing = Map.of(PricingConfigKeys.INPUT_COST_PER_MILLION, 10,
+                PricingConfigKeys.OUTPUT_COST_PER_MILLION, 20);
+
+        Map<String, Object> cached = Map.of(UsageDataKeys.INPUT_TOKENS, 1_000_000, UsageDataKeys.OUTPUT_TOKENS, 0,
+                UsageDataKeys.CACHED_INPUT_TOKENS, 600_000);
+        Map<String, Object> plain = Map.of(UsageDataKeys.INPUT_TOKENS, 1_000_000, UsageDataKeys.OUTPUT_TOKENS, 0);
+
+        assertEquals(0, BigDecimal.TEN.compareTo(strategy.process(cached, pricing)));
+        assertEquals(0, BigDecimal.TEN.compareTo(strategy.process(plain, pricing)));
+    }
+}
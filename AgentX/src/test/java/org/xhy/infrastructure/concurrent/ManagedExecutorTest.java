@@ -0,0 +1,117 @@
+package org.xhy.infrastructure.concurrent;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.auth.UserContext;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 有界线程池测试 */
+public class ManagedExecutorTest {
+
+    /** 任务中可读取提交线程的用户，执行结束后工作线程的用户被还原 */
+    @Test
+    public void userContextIsPropagatedAndReset() throws Exception {
+        ManagedExecutor executor = ManagedExecutor.platform("test-user", 1, 1, 10, 60, RejectionPolicy.ABORT,
+                List.of(new UserContextPropagator()));
+        AtomicReference<String> seen = new AtomicReference<>();
+        AtomicReference<String> after = new AtomicReference<>("unset");
+        try {
+            UserContext.setCurrentUserId("user-1");
+            executor.submit(() -> seen.set(UserContext.getCurrentUserId())).get(5, TimeUnit.SECONDS);
+            UserContext.clear();
+            executor.submit(() -> after.set(UserContext.getCurrentUserId())).get(5, TimeUnit.SECONDS);
+        } finally {
+            UserContext.clear();
+            executor.shutdownNow();
+        }
+
+        assertEquals("user-1", seen.get());
+        assertNull(after.get());
+    }
+
+    @Test
+    public void abortRejectsWhenFull() throws Exception {
+        ManagedExecutor executor = ManagedExecutor.platform("test-abort", 1, 1, 1, 60, RejectionPolicy.ABORT,
+                List.of());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+            }));
+            assertEquals(1L, executor.getRejectedCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void callerRunsOnSubmittingThreadWhenFull() throws Exception {
+        ManagedExecutor executor = ManagedExecutor.platform("test-caller", 1, 1, 1, 60, RejectionPolicy.CALLER_RUNS,
+                List.of());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+            executor.execute(() -> runner.set(Thread.currentThread()));
+
+            assertSame(Thread.currentThread(), runner.get());
+            assertEquals(1L, executor.getRejectedCount());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    /** 大量线程同时提交时线程数不超过上限，任务全部执行 */
+    @Test
+    public void concurrentSubmittersStayBounded() throws Exception {
+        ManagedExecutor executor = ManagedExecutor.platform("test-stress", 2, 4, 10, 60, RejectionPolicy.CALLER_RUNS,
+                List.of());
+        int submitters = 50;
+        int tasksPerSubmitter = 100;
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(submitters * tasksPerSubmitter);
+        try {
+            for (int i = 0; i < submitters; i++) {
+                Thread submitter = new Thread(() -> {
+                    await(start);
+                    for (int j = 0; j < tasksPerSubmitter; j++) {
+                        executor.execute(() -> {
+                            completed.incrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                });
+                submitter.setDaemon(true);
+                submitter.start();
+            }
+            start.countDown();
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(submitters * tasksPerSubmitter, completed.get());
+            assertTrue(executor.getLargestPoolSize() <= 4, executor.toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
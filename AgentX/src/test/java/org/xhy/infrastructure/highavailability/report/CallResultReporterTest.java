@@ -0,0 +1,253 @@
+package org.xhy.infrastructure.highavailability.report;
+
+import com.alibaba.fastjson2.JSON;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.HighAvailabilityProperties;
+import org.xhy.infrastructure.config.ResultReportProperties;
+import org.xhy.infrastructure.highavailability.client.HighAvailabilityGatewayClient;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultAggregate;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultBatchRequest;
+import org.xhy.infrastructure.highavailability.dto.request.ReportResultRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 调用结果批量上报测试：用本地桩HTTP服务验证聚合批量发送、网关故障重试、故障期间内存有界以及不支持批量接口时改为逐次上报 */
+public class CallResultReporterTest {
+
+    private HttpServer server;
+
+    /** 桩服务收到的批量请求 */
+    private final List<ReportResultBatchRequest> received = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /** 前多少次请求返回503 */
+    private volatile int failFirst;
+
+    /** 模拟没有批量上报接口的网关 */
+    private volatile boolean batchMissing;
+
+    /** 桩服务收到的逐次上报请求 */
+    private final List<ReportResultRequest> receivedSingle = new CopyOnWriteArrayList<>();
+
+    private ExecutorRegistry executorRegistry;
+
+    private HighAvailabilityGatewayClient client;
+
+    private CallResultReporter reporter;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/gateway/report-result/batch", exchange -> {
+            int index = requestCount.incrementAndGet();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            int status = batchMissing ? 404 : index <= failFirst ? 503 : 200;
+            if (status == 200) {
+                received.add(JSON.parseObject(body, ReportResultBatchRequest.class));
+            }
+            byte[] response = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.createContext("/api/gateway/report-result", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            receivedSingle.add(JSON.parseObject(body, ReportResultRequest.class));
+            byte[] response = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (reporter != null) {
+            reporter.destroy();
+        }
+        if (client != null) {
+            client.destroy();
+        }
+        if (executorRegistry != null) {
+            executorRegistry.destroy();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testAggregatesResultsIntoOneBatch() {
+        createReporter(batchProperties());
+
+        for (int i = 0; i < 1000; i++) {
+            String instance = "instance-" + (i % 3);
+            boolean success = i % 10 != 0;
+            reporter.record(result(instance, success, 50 + i % 400, success ? null : "Read timed out"));
+        }
+        reporter.flush();
+
+        assertEquals(1, requestCount.get(), "一个窗口的结果应只发送一次请求");
+        List<ReportResultAggregate> results = received.get(0).getResults();
+        assertEquals(3, results.size());
+        long total = results.stream().mapToLong(ReportResultAggregate::getTotalCount).sum();
+        long failures = results.stream().mapToLong(ReportResultAggregate::getFailureCount).sum();
+        assertEquals(1000, total);
+        assertEquals(100, failures);
+        for (ReportResultAggregate aggregate : results) {
+            long histogram = aggregate.getLatencyBucketCounts().stream().mapToLong(Long::longValue).sum();
+            assertEquals(aggregate.getTotalCount(), histogram, "直方图计数应等于调用次数");
+            assertEquals(aggregate.getFailureCount(), aggregate.getErrorTypes().get("TIMEOUT"));
+        }
+
+        reporter.flush();
+        assertEquals(1, requestCount.get(), "空窗口不应发送请求");
+    }
+
+    @Test
+    public void testRetriesUntilGatewayRecovers() throws InterruptedException {
+        ResultReportProperties properties = batchProperties();
+        properties.setOutageBackoffMs(200);
+        createReporter(properties);
+        failFirst = 2;
+
+        for (int i = 0; i < 100; i++) {
+            reporter.record(result("instance-1", true, 120, null));
+        }
+        reporter.flush();
+        assertEquals(1, reporter.getPendingBatchCount(), "失败的批次应保留等待重试");
+
+        // 暂停期间只结束窗口，不发送请求
+        reporter.flush();
+        assertEquals(1, requestCount.get());
+
+        for (int attempt = 0; attempt < 40 && reporter.getPendingBatchCount() > 0; attempt++) {
+            Thread.sleep(50);
+            reporter.flush();
+        }
+
+        assertEquals(3, requestCount.get(), "失败两次后第三次发送成功");
+        assertEquals(0, reporter.getPendingBatchCount());
+        assertEquals(100, received.get(0).getResults().get(0).getTotalCount());
+    }
+
+    @Test
+    public void testMemoryStaysBoundedDuringOutage() {
+        ResultReportProperties properties = batchProperties();
+        properties.setMaxInstances(10);
+        properties.setMaxBatchSize(5);
+        properties.setMaxPendingBatches(4);
+        properties.setOutageBackoffMs(60000);
+        createReporter(properties);
+        failFirst = Integer.MAX_VALUE;
+
+        for (int window = 0; window < 50; window++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                reporter.record(result("instance-" + i, i % 2 == 0, 300, "connection refused"));
+            }
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            assertTrue(elapsedMicros < 1_000_000, "网关故障不应阻塞记录: " + elapsedMicros + "μs");
+            reporter.flush();
+            assertTrue(reporter.getPendingBatchCount() <= 4, "积压批次应有上限");
+        }
+
+        assertEquals(1, requestCount.get(), "网关故障后应暂停发送");
+        assertEquals(50 * 990, reporter.getDroppedResultCount(), "窗口内超出实例上限的结果应被丢弃");
+        assertTrue(reporter.getDroppedBatchCount() > 0);
+    }
+
+    @Test
+    public void testFallsBackToSingleReportsWhenBatchEndpointMissing() throws InterruptedException {
+        createReporter(batchProperties());
+        batchMissing = true;
+
+        for (int i = 0; i < 10; i++) {
+            reporter.record(result("instance-1", true, 120, null));
+        }
+        reporter.flush();
+        assertEquals(1, requestCount.get());
+        assertEquals(0, reporter.getPendingBatchCount(), "批量接口不存在时不应保留批次重试");
+        assertFalse(reporter.isBatching(), "批量接口不存在时应改为逐次上报");
+
+        for (int i = 0; i < 5; i++) {
+            reporter.record(result("instance-2", false, 300, "Read timed out"));
+        }
+        for (int attempt = 0; attempt < 100 && receivedSingle.size() < 5; attempt++) {
+            Thread.sleep(20);
+        }
+        reporter.flush();
+
+        assertEquals(5, receivedSingle.size(), "改为逐次上报后每次调用应单独发送");
+        assertEquals("instance-2", receivedSingle.get(0).getInstanceId());
+        assertEquals(1, requestCount.get(), "改为逐次上报后不应再请求批量接口");
+    }
+
+    @Test
+    public void testBatchingDisabledByDefault() throws InterruptedException {
+        createReporter(new ResultReportProperties());
+
+        reporter.record(result("instance-1", true, 120, null));
+        for (int attempt = 0; attempt < 100 && receivedSingle.isEmpty(); attempt++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, receivedSingle.size());
+        assertEquals(0, requestCount.get());
+    }
+
+    @Test
+    public void testClassifiesErrors() {
+        assertEquals("TIMEOUT",
+                CallResultReporter.classifyError(null, "java.net.SocketTimeoutException: Read timed out"));
+        assertEquals("RATE_LIMIT", CallResultReporter.classifyError(null, "HTTP 429 Too Many Requests"));
+        assertEquals("AUTH", CallResultReporter.classifyError(null, "401 Unauthorized"));
+        assertEquals("QUOTA", CallResultReporter.classifyError("QUOTA", "anything"));
+        assertEquals("OTHER", CallResultReporter.classifyError(null, "模型返回内容为空"));
+    }
+
+    private void createReporter(ResultReportProperties reportProperties) {
+        HighAvailabilityProperties properties = new HighAvailabilityProperties();
+        properties.setEnabled(true);
+        properties.setGatewayUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        properties.setApiKey("test-key");
+        // 测试中手动触发flush
+        reportProperties.setFlushIntervalMs(3_600_000);
+        client = new HighAvailabilityGatewayClient(properties, reportProperties);
+        executorRegistry = new ExecutorRegistry(new ExecutorProperties(), List.of());
+        reporter = new CallResultReporter(properties, reportProperties, client, executorRegistry);
+    }
+
+    private static ResultReportProperties batchProperties() {
+        ResultReportProperties properties = new ResultReportProperties();
+        properties.setBatchEnabled(true);
+        return properties;
+    }
+
+    private static ReportResultRequest result(String instanceId, boolean success, long latencyMs,
+            String errorMessage) {
+        ReportResultRequest request = new ReportResultRequest();
+        request.setInstanceId(instanceId);
+        request.setBusinessId("model-" + instanceId);
+        request.setSuccess(success);
+        request.setLatencyMs(latencyMs);
+        request.setErrorMessage(errorMessage);
+        request.setCallTimestamp(System.currentTimeMillis());
+        return request;
+    }
+}
@@ -0,0 +1,98 @@
+package org.xhy.infrastructure.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.TurnJournalProperties;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 对话轮次写入日志测试：多个对话线程并发追加时的记录顺序、删除与之前入队记录的先后 */
+class TurnJournalTest {
+
+    private static final int TURNS = 8;
+
+    private static final int RECORDS_PER_TURN = 200;
+
+    @TempDir
+    Path journalDir;
+
+    private ExecutorRegistry executorRegistry;
+
+    private TurnJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        executorRegistry = new ExecutorRegistry(new ExecutorProperties(), Collections.emptyList());
+        journal = newJournal();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorRegistry.destroy();
+    }
+
+    /** 测试多个轮次并发追加时，批量写出后每个轮次的记录与追加顺序一致 */
+    @Test
+    void testConcurrentAppendsKeepPerTurnOrder() throws InterruptedException {
+        ExecutorService streams = Executors.newFixedThreadPool(TURNS);
+        CountDownLatch done = new CountDownLatch(TURNS);
+        for (int t = 0; t < TURNS; t++) {
+            String turnId = "turn-" + t;
+            streams.execute(() -> {
+                for (int i = 0; i < RECORDS_PER_TURN; i++) {
+                    journal.append(turnId, turnId + ":" + i);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        streams.shutdown();
+        journal.flush();
+
+        Map<String, List<String>> pending = newJournal().loadPending();
+        assertEquals(TURNS, pending.size());
+        for (int t = 0; t < TURNS; t++) {
+            String turnId = "turn-" + t;
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < RECORDS_PER_TURN; i++) {
+                expected.add(turnId + ":" + i);
+            }
+            assertEquals(expected, pending.get(turnId), "记录顺序应与追加顺序一致");
+        }
+    }
+
+    /** 测试提交紧跟在尚未写出的记录之后时，日志被删除且不会被之前的记录重新创建 */
+    @Test
+    void testCompleteAfterQueuedRecordsRemovesJournal() {
+        for (int i = 0; i < RECORDS_PER_TURN; i++) {
+            journal.append("committed", "record-" + i);
+            journal.append("running", "record-" + i);
+        }
+        journal.complete("committed");
+        journal.flush();
+
+        Map<String, List<String>> pending = newJournal().loadPending();
+        assertFalse(pending.containsKey("committed"), "已提交轮次的日志应被删除");
+        assertEquals(RECORDS_PER_TURN, pending.get("running").size(), "未提交轮次的记录应完整保留");
+    }
+
+    private TurnJournal newJournal() {
+        TurnJournalProperties properties = new TurnJournalProperties();
+        properties.setDirectory(journalDir.toString());
+        return new TurnJournal(properties, executorRegistry);
+    }
+}
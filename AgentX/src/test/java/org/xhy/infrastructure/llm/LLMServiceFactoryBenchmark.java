@@ -0,0 +1,89 @@
+package org.xhy.infrastructure.llm;
+
+import dev.langchain4j.model.chat.StreamingChatModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.domain.llm.model.config.ProviderConfig;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.LLMBulkheadProperties;
+import org.xhy.infrastructure.config.LLMClientProperties;
+import org.xhy.infrastructure.llm.bulkhead.ProviderBulkheads;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** LLM客户端获取开销基准测试：对比每次新建客户端与缓存复用客户端的单请求准备耗时
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LLMServiceFactoryBenchmark {
+
+    private LLMServiceFactory factory;
+    private ProviderEntity provider;
+    private ModelEntity model;
+
+    @Setup
+    public void setUp() {
+        factory = new LLMServiceFactory(new LLMClientProperties(),
+                new ProviderBulkheads(new LLMBulkheadProperties()),
+                new ExecutorRegistry(new ExecutorProperties(), List.of()));
+
+        ProviderConfig config = new ProviderConfig();
+        config.setApiKey("sk-benchmark");
+        config.setBaseUrl("http://127.0.0.1:1/v1");
+
+        provider = new ProviderEntity();
+        provider.setId("benchmark-provider");
+        provider.setProtocol(ProviderProtocol.OPENAI);
+        provider.setConfig(config);
+
+        model = new ModelEntity();
+        model.setId("benchmark-model");
+        model.setModelEndpoint("gpt-4o-mini");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.destroy();
+    }
+
+    /** 原有方式：每次请求构建新的客户端 */
+    @Benchmark
+    public StreamingChatModel newClientPerRequest() {
+        org.xhy.infrastructure.llm.config.ProviderConfig providerConfig = new org.xhy.infrastructure.llm.config.ProviderConfig(
+                provider.getConfig().getApiKey(), provider.getConfig().getBaseUrl(), model.getModelEndpoint(),
+                provider.getProtocol());
+        return LLMProviderService.getStream(provider.getProtocol(), providerConfig);
+    }
+
+    /** 新方式：从客户端注册表中复用 */
+    @Benchmark
+    public StreamingChatModel pooledClient() {
+        return factory.getStreamingClient(provider, model);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LLMServiceFactoryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,172 @@
+package org.xhy.infrastructure.llm.bulkhead;
+
+import dev.langchain4j.exception.HttpException;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.infrastructure.config.LLMBulkheadProperties;
+import org.xhy.infrastructure.exception.RateLimitException;
+import org.xhy.infrastructure.llm.mock.MockProvider;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 隔离舱测试：用本地慢速模拟服务商验证并发隔离和快速拒绝，用合成延迟验证上限自适应 */
+class AdaptiveBulkheadTest {
+
+    /** 测试慢服务商占满自己的额度后快速拒绝，不影响其他服务商 */
+    @Test
+    void testSlowProviderIsIsolated() throws InterruptedException {
+        LLMBulkheadProperties properties = new LLMBulkheadProperties();
+        properties.setMaxQueue(4);
+        properties.setMaxWaitMs(100);
+        properties.setLimits(Map.of("slow", 4));
+        ProviderBulkheads bulkheads = new ProviderBulkheads(properties);
+
+        MockProvider slow = MockProvider.withLatency(500);
+        MockProvider fast = MockProvider.withLatency(10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(48);
+        CountDownLatch done = new CountDownLatch(48);
+        AtomicLong maxRejectionMs = new AtomicLong();
+        for (int i = 0; i < 32; i++) {
+            executor.execute(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    call(bulkheads, "slow", slow);
+                } catch (RateLimitException e) {
+                    maxRejectionMs.accumulateAndGet(System.currentTimeMillis() - start, Math::max);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        AtomicInteger fastFailures = new AtomicInteger();
+        for (int i = 0; i < 16; i++) {
+            executor.execute(() -> {
+                try {
+                    for (int j = 0; j < 10; j++) {
+                        call(bulkheads, "fast", fast);
+                    }
+                } catch (RateLimitException e) {
+                    fastFailures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdownNow();
+
+        assertTrue(slow.getMaxConcurrency() <= 4, "慢服务商并发不应超过上限: " + slow.getMaxConcurrency());
+        assertTrue(slow.getCompleted() < 32, "超出额度的请求应被拒绝");
+        assertTrue(maxRejectionMs.get() < 400, "拒绝应在等待期限内快速返回: " + maxRejectionMs.get() + "ms");
+        assertEquals(0, fastFailures.get(), "慢服务商不应影响其他服务商");
+        assertEquals(160, fast.getCompleted());
+        assertEquals(0, bulkheads.get("slow", "gpt-4o").getInFlight(), "许可应全部归还");
+    }
+
+    /** 测试上限随上游容量收紧和放宽 */
+    @Test
+    void testLimitFollowsUpstreamCapacity() {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", 20, 2, 100, 0, 0, 1.5, 0.2, 0.9);
+
+        // 低负载预热，建立延迟基线
+        for (int round = 0; round < 20; round++) {
+            runRound(bulkhead, 5, 10);
+        }
+        double congested = 0;
+        for (int round = 0; round < 300; round++) {
+            int concurrency = runRound(bulkhead, Integer.MAX_VALUE, 10);
+            if (round >= 200) {
+                congested += concurrency;
+            }
+        }
+        double recovered = 0;
+        for (int round = 0; round < 200; round++) {
+            int concurrency = runRound(bulkhead, Integer.MAX_VALUE, 40);
+            if (round >= 100) {
+                recovered += concurrency;
+            }
+        }
+
+        congested /= 100;
+        recovered /= 100;
+        assertTrue(congested >= 8 && congested <= 14, "容量为10时并发应收敛到10附近: " + congested);
+        assertTrue(recovered > 15, "容量扩大后上限应放宽: " + recovered);
+    }
+
+    /** 测试上游过载或超时时上限按比例缩减，但不低于下限 */
+    @Test
+    void testOverloadShrinksLimit() {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", 20, 2, 100, 0, 0, 1.5, 0.2, 0.9);
+        for (int i = 0; i < 100; i++) {
+            bulkhead.tryAcquire(0).release(new HttpException(429, "rate limited"));
+        }
+        assertEquals(2, bulkhead.getLimit());
+
+        AdaptiveBulkhead.Permit permit = bulkhead.tryAcquire(0);
+        permit.release();
+        permit.release(new HttpException(503, "unavailable"));
+        assertEquals(0, bulkhead.getInFlight(), "重复归还应被忽略");
+    }
+
+    /** 测试失败分类：429、5xx、超时（含被包装的）视为过载，其他失败和取消不调整上限 */
+    @Test
+    void testOnlyOverloadFailuresBackOff() {
+        assertTrue(AdaptiveBulkhead.isOverload(new HttpException(429, "")));
+        assertTrue(AdaptiveBulkhead.isOverload(new HttpException(502, "")));
+        assertTrue(AdaptiveBulkhead.isOverload(new dev.langchain4j.exception.TimeoutException("timeout")));
+        assertTrue(AdaptiveBulkhead.isOverload(new RuntimeException(new SocketTimeoutException())));
+        assertFalse(AdaptiveBulkhead.isOverload(new HttpException(400, "bad request")));
+        assertFalse(AdaptiveBulkhead.isOverload(new HttpException(401, "unauthorized")));
+        assertFalse(AdaptiveBulkhead.isOverload(new IllegalArgumentException("invalid")));
+
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", 20, 2, 100, 0, 0, 1.5, 0.2, 0.9);
+        for (int i = 0; i < 100; i++) {
+            bulkhead.tryAcquire(0).release(new HttpException(400, "bad request"));
+            bulkhead.tryAcquire(0).abandon();
+        }
+        assertEquals(20, bulkhead.getLimit(), "与上游容量无关的失败不应缩减上限");
+    }
+
+    /** 在服务商的隔离舱内调用模拟服务商 */
+    private static void call(ProviderBulkheads bulkheads, String providerId, MockProvider mockProvider) {
+        ProviderEntity provider = new ProviderEntity();
+        provider.setId(providerId);
+        ModelEntity model = new ModelEntity();
+        model.setId(providerId + "-model");
+        model.setModelEndpoint("gpt-4o");
+        AdaptiveBulkhead.Permit permit = bulkheads.acquire(provider, model);
+        try {
+            mockProvider.call();
+        } finally {
+            permit.release();
+        }
+    }
+
+    /** 以最多 maxConcurrency 的并发跑一轮，上游超出 capacity 后延迟随排队线性增长 */
+    private int runRound(AdaptiveBulkhead bulkhead, int maxConcurrency, int capacity) {
+        List<AdaptiveBulkhead.Permit> permits = new ArrayList<>();
+        AdaptiveBulkhead.Permit permit;
+        while (permits.size() < maxConcurrency && (permit = bulkhead.tryAcquire(0)) != null) {
+            permits.add(permit);
+        }
+        int concurrency = permits.size();
+        long rtt = concurrency <= capacity ? 100 : 100 + 100L * (concurrency - capacity);
+        for (AdaptiveBulkhead.Permit p : permits) {
+            p.release(AdaptiveBulkhead.Outcome.SUCCESS, rtt);
+        }
+        return concurrency;
+    }
+}
@@ -0,0 +1,233 @@
+package org.xhy.infrastructure.llm.factory;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.sse.DefaultServerSentEventParser;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 可取消HTTP客户端测试
+ *
+ * 本地模拟服务端每20ms推送一个SSE事件，客户端收到若干事件后取消令牌，验证服务端检测到连接断开且客户端不再收到事件。 */
+class CancellableHttpClientTest {
+
+    private static final int TOTAL_EVENTS = 500;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService ioExecutor;
+    private ExecutorService streamExecutor;
+    private SharedHttpClientBuilder clientBuilder;
+
+    private final AtomicInteger eventsWritten = new AtomicInteger();
+    private final CountDownLatch serverSawDisconnect = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < TOTAL_EVENTS; i++) {
+                    out.write(("data: {\"token\":" + i + "}\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    eventsWritten.incrementAndGet();
+                    Thread.sleep(20);
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // 客户端关闭连接后写入失败
+                serverSawDisconnect.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+
+        ioExecutor = Executors.newFixedThreadPool(4);
+        streamExecutor = Executors.newFixedThreadPool(16);
+        clientBuilder = new SharedHttpClientBuilder(Duration.ofSeconds(5), Duration.ofMinutes(1), ioExecutor,
+                streamExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+        streamExecutor.shutdownNow();
+    }
+
+    @Test
+    void cancelClosesSocketAndStopsReading() throws Exception {
+        StreamCancellationToken token = new StreamCancellationToken();
+        AtomicInteger received = new AtomicInteger();
+        AtomicBoolean closedOrFailed = new AtomicBoolean(false);
+        CountDownLatch fiveEvents = new CountDownLatch(5);
+
+        ServerSentEventListener listener = new ServerSentEventListener() {
+            @Override
+            public void onEvent(ServerSentEvent event) {
+                received.incrementAndGet();
+                fiveEvents.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                closedOrFailed.set(true);
+            }
+
+            @Override
+            public void onClose() {
+                closedOrFailed.set(true);
+            }
+        };
+
+        StreamCancellationToken.runWith(token,
+                () -> clientBuilder.build().execute(request(), new DefaultServerSentEventParser(), listener));
+
+        assertTrue(fiveEvents.await(5, TimeUnit.SECONDS), "应先收到流式事件");
+        token.cancel();
+        int receivedAtCancel = received.get();
+
+        assertTrue(serverSawDisconnect.await(5, TimeUnit.SECONDS), "取消后服务端应检测到连接关闭");
+        Thread.sleep(200);
+
+        // 取消瞬间可能正有一个事件在回调中
+        assertTrue(received.get() <= receivedAtCancel + 1, "取消后不应继续读取事件");
+        assertTrue(eventsWritten.get() < TOTAL_EVENTS, "服务端不应写完全部事件");
+        assertFalse(closedOrFailed.get(), "取消不应回调onClose或onError");
+    }
+
+    @Test
+    void cancelledTokenSkipsFollowUpRequest() throws Exception {
+        StreamCancellationToken token = new StreamCancellationToken();
+        token.cancel();
+        AtomicInteger received = new AtomicInteger();
+
+        StreamCancellationToken.runWith(token,
+                () -> clientBuilder.build().execute(request(), new DefaultServerSentEventParser(),
+                        new ServerSentEventListener() {
+                            @Override
+                            public void onEvent(ServerSentEvent event) {
+                                received.incrementAndGet();
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                            }
+                        }));
+
+        Thread.sleep(200);
+        assertEquals(0, received.get());
+        assertEquals(0, eventsWritten.get(), "已取消的令牌不应发出请求");
+    }
+
+    @Test
+    void streamWithoutTokenCompletesNormally() throws Exception {
+        server.removeContext("/v1/chat/completions");
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("data: a\n\ndata: b\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch closed = new CountDownLatch(1);
+
+        StreamCancellationToken token = new StreamCancellationToken();
+        StreamCancellationToken.runWith(token,
+                () -> clientBuilder.build().execute(request(), new DefaultServerSentEventParser(),
+                        new ServerSentEventListener() {
+                            @Override
+                            public void onEvent(ServerSentEvent event) {
+                                received.incrementAndGet();
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                            }
+
+                            @Override
+                            public void onClose() {
+                                closed.countDown();
+                            }
+                        }));
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, received.get());
+    }
+
+    /** 同时进行的流多于IO线程数时，读取不占用IO线程，所有流都能读完 */
+    @Test
+    void concurrentStreamsBeyondIoThreadsComplete() throws Exception {
+        server.removeContext("/v1/chat/completions");
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 10; i++) {
+                    out.write(("data: " + i + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        int streams = 12;
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch closed = new CountDownLatch(streams);
+
+        for (int i = 0; i < streams; i++) {
+            // 不在会话中发起，使用请求独占的令牌
+            clientBuilder.build().execute(request(), new DefaultServerSentEventParser(),
+                    new ServerSentEventListener() {
+                        @Override
+                        public void onEvent(ServerSentEvent event) {
+                            received.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onError(Throwable throwable) {
+                        }
+
+                        @Override
+                        public void onClose() {
+                            closed.countDown();
+                        }
+                    });
+        }
+
+        assertTrue(closed.await(10, TimeUnit.SECONDS), "IO线程数为4时12个流都应读完");
+        assertEquals(streams * 10, received.get());
+    }
+
+    private HttpRequest request() {
+        return HttpRequest.builder().method(HttpMethod.POST)
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions")
+                .addHeader("Content-Type", "application/json").body("{\"stream\":true}").build();
+    }
+}
@@ -0,0 +1,210 @@
+package org.xhy.infrastructure.llm.hedging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.concurrent.TaskContextPropagator;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.LLMHedgingProperties;
+import org.xhy.infrastructure.llm.mock.MockProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 对冲请求测试：用注入延迟的本地模拟服务商验证尾延迟改善、预算限制和落败方取消 */
+class RequestHedgerTest {
+
+    /** 模拟追踪上下文，通过线程池的上下文传递带到对冲线程 */
+    private static final ThreadLocal<String> TRACE = new ThreadLocal<>();
+
+    private ExecutorRegistry executorRegistry;
+
+    @BeforeEach
+    void setUp() {
+        executorRegistry = new ExecutorRegistry(new ExecutorProperties(), List.of(new TaskContextPropagator() {
+            @Override
+            public Object capture() {
+                return TRACE.get();
+            }
+
+            @Override
+            public Object restore(Object captured) {
+                String previous = TRACE.get();
+                TRACE.set((String) captured);
+                return previous;
+            }
+
+            @Override
+            public void reset(Object previous) {
+                TRACE.set((String) previous);
+            }
+        }));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorRegistry.destroy();
+    }
+
+    /** 测试偶发慢请求时对冲显著降低p99 */
+    @Test
+    void testHedgingImprovesTailLatency() throws InterruptedException {
+        // 每50次调用有一次慢请求(2%)
+        IntPredicate slowEvery50 = i -> i % 50 == 25;
+
+        RequestHedger baseline = new RequestHedger(properties(false), executorRegistry);
+        MockProvider baselinePrimary = MockProvider.withLatency(20, 800, slowEvery50);
+        List<Long> baselineLatencies = run(baseline, baselinePrimary, MockProvider.withLatency(20), 400);
+
+        RequestHedger hedger = new RequestHedger(properties(true), executorRegistry);
+        MockProvider primary = MockProvider.withLatency(20, 800, slowEvery50);
+        MockProvider alternative = MockProvider.withLatency(20);
+        // 预热，积累延迟样本和对冲额度
+        run(hedger, primary, alternative, 40);
+        List<Long> hedgedLatencies = run(hedger, primary, alternative, 400);
+
+        long baselineP99 = percentile(baselineLatencies, 99);
+        long hedgedP99 = percentile(hedgedLatencies, 99);
+        assertTrue(baselineP99 >= 700, "未对冲时p99应为慢请求延迟: " + baselineP99 + "ms");
+        assertTrue(hedgedP99 < 300, "对冲后p99应明显下降: " + hedgedP99 + "ms, 未对冲: " + baselineP99 + "ms");
+
+        HedgeBudget budget = hedger.getBudget("model");
+        assertTrue(budget.getHedges() <= budget.getRequests() * 0.05 + 10, "对冲数应在预算内: " + budget.getHedges());
+        assertTrue(alternative.getCompleted() > 0, "应有对冲请求生效");
+        assertTrue(primary.getCancelled() > 0, "落败的主调用应被取消");
+    }
+
+    /** 测试对冲数量不超过预算 */
+    @Test
+    void testBudgetLimitsHedges() throws InterruptedException {
+        LLMHedgingProperties properties = properties(true);
+        properties.setMinSamples(1);
+        properties.setMinDelayMs(5);
+        properties.setMaxDelayMs(20);
+        properties.setMaxBudget(1);
+        RequestHedger hedger = new RequestHedger(properties, executorRegistry);
+        // 主调用一律超过对冲延迟，若不受预算限制则每次都会对冲
+        MockProvider primary = MockProvider.withLatency(80);
+        MockProvider alternative = MockProvider.withLatency(5);
+
+        run(hedger, primary, alternative, 200);
+
+        HedgeBudget budget = hedger.getBudget("model");
+        assertEquals(200, budget.getRequests());
+        assertTrue(budget.getHedges() <= 200 * 0.05 + 1, "对冲数超出预算: " + budget.getHedges());
+        assertTrue(budget.getHedges() >= 5, "预算内应发出对冲: " + budget.getHedges());
+    }
+
+    /** 测试一方失败时使用另一方的结果，没有对冲时失败直接抛出 */
+    @Test
+    void testFailureOfOneSideUsesOther() {
+        LLMHedgingProperties properties = properties(true);
+        properties.setMinSamples(1);
+        properties.setMaxBudget(1);
+        properties.setBudgetRatio(1);
+        RequestHedger hedger = new RequestHedger(properties, executorRegistry);
+        hedger.execute("model", () -> "warmup", () -> null);
+
+        // 主调用在对冲发出后失败，对冲请求稍后返回
+        RequestHedger.Outcome<String> outcome = hedger.execute("model", () -> {
+            sleep(100);
+            throw new IllegalStateException("primary failed");
+        }, () -> () -> {
+            sleep(200);
+            return "hedge";
+        });
+        assertEquals("hedge", outcome.getValue());
+        assertTrue(outcome.isHedgeWon());
+
+        assertThrows(IllegalStateException.class, () -> hedger.execute("model", () -> {
+            throw new IllegalStateException("primary failed");
+        }, () -> () -> "hedge"));
+    }
+
+    /** 测试主调用在调用线程执行，对冲请求在对冲线程执行并带上调用线程的上下文 */
+    @Test
+    void testPrimaryRunsOnCallerThreadAndHedgeKeepsContext() {
+        LLMHedgingProperties properties = properties(true);
+        properties.setMinSamples(1);
+        properties.setMaxBudget(1);
+        properties.setBudgetRatio(1);
+        RequestHedger hedger = new RequestHedger(properties, executorRegistry);
+        hedger.execute("model", () -> "warmup", () -> null);
+
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> primaryThread = new AtomicReference<>();
+        AtomicReference<String> hedgeTrace = new AtomicReference<>();
+        TRACE.set("trace-1");
+        try {
+            RequestHedger.Outcome<String> outcome = hedger.execute("model", () -> {
+                primaryThread.set(Thread.currentThread());
+                sleep(1000);
+                return "primary";
+            }, () -> () -> {
+                hedgeTrace.set(TRACE.get());
+                return "hedge";
+            });
+
+            assertEquals("hedge", outcome.getValue());
+            assertTrue(outcome.isHedgeWon());
+            assertSame(caller, primaryThread.get(), "主调用应在调用线程执行");
+            assertEquals("trace-1", hedgeTrace.get(), "对冲请求应带上调用线程的上下文");
+            assertFalse(Thread.currentThread().isInterrupted(), "对冲生效后不应残留中断标记");
+        } finally {
+            TRACE.remove();
+        }
+    }
+
+    private static LLMHedgingProperties properties(boolean enabled) {
+        LLMHedgingProperties properties = new LLMHedgingProperties();
+        properties.setEnabled(enabled);
+        properties.setMinDelayMs(50);
+        return properties;
+    }
+
+    /** 以8个并发线程执行调用，返回每次调用的延迟 */
+    private static List<Long> run(RequestHedger hedger, MockProvider primary, MockProvider alternative, int calls)
+            throws InterruptedException {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(calls);
+        for (int i = 0; i < calls; i++) {
+            executor.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    hedger.execute("model", primary::call, () -> alternative::call);
+                    latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        return latencies;
+    }
+
+    private static long percentile(List<Long> latencies, double percentile) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) Math.ceil(percentile / 100 * sorted.size()) - 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.xhy.infrastructure.llm.mock;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.xhy.domain.llm.model.ModelEntity;
+import org.xhy.domain.llm.model.ProviderEntity;
+import org.xhy.domain.llm.model.config.ProviderConfig;
+import org.xhy.infrastructure.concurrent.ExecutorRegistry;
+import org.xhy.infrastructure.config.ExecutorProperties;
+import org.xhy.infrastructure.config.LLMBulkheadProperties;
+import org.xhy.infrastructure.config.LLMClientProperties;
+import org.xhy.infrastructure.llm.LLMServiceFactory;
+import org.xhy.infrastructure.llm.bulkhead.ProviderBulkheads;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 基于模拟服务商的压测场景，输出吞吐量和延迟分位
+ *
+ * 运行方式：在IDE中执行 main 方法，参数为 键=值 形式：
+ * <ul>
+ * <li>mode=client（默认）：经 LLMServiceFactory 的流式客户端（含隔离舱）直接访问进程内模拟服务，无需数据库和中间件</li>
+ * <li>mode=app：向运行中的 AgentX 发送对话请求（/agents/sessions/chat），覆盖 ConversationAppService.chat、
+ * RAG 和工具调用流程。需以 LLM_CLIENT_MOCK_ENABLED=true 启动，先在管理后台创建 MOCK 协议的服务商和模型（模型标识写场景，如 mock?ttft=200&tps=50&tool=auto），
+ * 再把会话绑定到使用该模型的 Agent</li>
+ * </ul>
+ * 通用参数：concurrency（并发数，默认32）、requests（请求总数，默认500）、message（消息内容）。
+ * client 模式参数：model（场景，默认 mock?ttft=200&tps=50&tokens=100）。
+ * app 模式参数：url（默认 http://127.0.0.1:8088/api）、token（登录令牌）、sessions（会话ID，逗号分隔，按请求轮流使用）。 */
+public class MockLLMLoadScenario {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "500"));
+        String message = options.getOrDefault("message", "请简单介绍一下你自己");
+
+        Call call;
+        Runnable cleanup = () -> {
+        };
+        if ("app".equals(options.get("mode"))) {
+            call = appCall(options, message);
+        } else {
+            LLMClientProperties clientProperties = new LLMClientProperties();
+            clientProperties.setMockEnabled(true);
+            LLMServiceFactory factory = new LLMServiceFactory(clientProperties,
+                    new ProviderBulkheads(new LLMBulkheadProperties()),
+                    new ExecutorRegistry(new ExecutorProperties(), List.of()));
+            call = clientCall(factory, options.getOrDefault("model", "mock?ttft=200&tps=50&tokens=100"), message);
+            cleanup = factory::destroy;
+        }
+
+        Stats stats = run(call, concurrency, requests);
+        cleanup.run();
+        stats.print(concurrency);
+    }
+
+    /** 以固定并发执行指定次数的调用 */
+    private static Stats run(Call call, int concurrency, int requests) throws InterruptedException {
+        Stats stats = new Stats();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        AtomicInteger sequence = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            executor.execute(() -> {
+                try {
+                    stats.add(call.execute(sequence.getAndIncrement()));
+                } catch (Exception e) {
+                    stats.fail(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        stats.elapsedNanos = System.nanoTime() - start;
+        executor.shutdownNow();
+        return stats;
+    }
+
+    /** 直接使用流式客户端访问模拟服务 */
+    private static Call clientCall(LLMServiceFactory factory, String scenario, String message) {
+        ProviderConfig config = new ProviderConfig();
+        config.setApiKey("mock");
+        ProviderEntity provider = new ProviderEntity();
+        provider.setId("mock-provider");
+        provider.setProtocol(ProviderProtocol.MOCK);
+        provider.setConfig(config);
+        ModelEntity model = new ModelEntity();
+        model.setId("mock-model");
+        model.setModelEndpoint(scenario);
+        StreamingChatModel client = factory.getStreamingClient(provider, model);
+
+        return index -> {
+            long start = System.nanoTime();
+            AtomicLong firstToken = new AtomicLong();
+            AtomicInteger tokens = new AtomicInteger();
+            CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+            client.chat(List.of(UserMessage.from(message + " #" + index)), new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    firstToken.compareAndSet(0, System.nanoTime());
+                    tokens.incrementAndGet();
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    done.complete(completeResponse);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    done.completeExceptionally(error);
+                }
+            });
+            done.get(10, TimeUnit.MINUTES);
+            return new Sample(firstToken.get() - start, System.nanoTime() - start, tokens.get());
+        };
+    }
+
+    /** 向运行中的 AgentX 发送对话请求，以SSE事件计时 */
+    private static Call appCall(Map<String, String> options, String message) {
+        String url = options.getOrDefault("url", "http://127.0.0.1:8088/api") + "/agents/sessions/chat";
+        String token = options.getOrDefault("token", "");
+        String[] sessions = options.getOrDefault("sessions", "").split(",");
+        if (sessions.length == 0 || sessions[0].isBlank()) {
+            throw new IllegalArgumentException("app 模式需要 sessions 参数");
+        }
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+        return index -> {
+            String sessionId = sessions[index % sessions.length];
+            String body = "{\"message\":\"" + message.replace("\"", "\\\"") + " #" + index + "\",\"sessionId\":\""
+                    + sessionId + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url)).header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + token).POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            long start = System.nanoTime();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("HTTP " + response.statusCode());
+            }
+            long firstToken = 0;
+            int events = 0;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("data:") && line.length() > 5) {
+                        if (firstToken == 0) {
+                            firstToken = System.nanoTime();
+                        }
+                        events++;
+                    }
+                }
+            }
+            return new Sample(firstToken - start, System.nanoTime() - start, events);
+        };
+    }
+
+    private interface Call {
+        Sample execute(int index) throws Exception;
+    }
+
+    private record Sample(long firstTokenNanos, long totalNanos, int tokens) {
+    }
+
+    /** 汇总吞吐量和延迟分位 */
+    private static final class Stats {
+
+        private final List<Sample> samples = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile String lastError;
+        private long elapsedNanos;
+
+        void add(Sample sample) {
+            samples.add(sample);
+        }
+
+        void fail(Exception e) {
+            failures.incrementAndGet();
+            lastError = e.getMessage();
+        }
+
+        void print(int concurrency) {
+            double seconds = elapsedNanos / 1e9;
+            long tokens = samples.stream().mapToLong(Sample::tokens).sum();
+            System.out.printf("并发: %d, 成功: %d, 失败: %d, 耗时: %.2fs%n", concurrency, samples.size(), failures.get(),
+                    seconds);
+            System.out.printf("吞吐量: %.1f 请求/秒, %.1f Token/秒%n", samples.size() / seconds, tokens / seconds);
+            printPercentiles("首Token延迟", samples.stream().filter(s -> s.firstTokenNanos() > 0)
+                    .mapToLong(Sample::firstTokenNanos).sorted().toArray());
+            printPercentiles("总延迟", samples.stream().mapToLong(Sample::totalNanos).sorted().toArray());
+            if (lastError != null) {
+                System.out.println("最近一次错误: " + lastError);
+            }
+        }
+
+        private static void printPercentiles(String name, long[] sorted) {
+            if (sorted.length == 0) {
+                return;
+            }
+            System.out.printf("%s(ms): p50=%.1f p95=%.1f p99=%.1f max=%.1f%n", name, percentile(sorted, 50),
+                    percentile(sorted, 95), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.xhy.infrastructure.llm.mock;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.llm.config.ProviderConfig;
+import org.xhy.infrastructure.llm.factory.LLMProviderFactory;
+import org.xhy.infrastructure.llm.protocol.enums.ProviderProtocol;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 模拟服务商测试：通过真实的 OpenAI / Anthropic 客户端访问本地回环服务，验证流式输出节奏、错误注入和工具调用 */
+class MockLLMServerTest {
+
+    @BeforeAll
+    static void enableMock() {
+        LLMProviderFactory.setMockEnabled(true);
+    }
+
+    @AfterAll
+    static void disableMock() {
+        LLMProviderFactory.setMockEnabled(false);
+    }
+
+    /** 测试流式输出的首Token延迟和Token数符合场景 */
+    @Test
+    void testStreamingFollowsScenario() throws Exception {
+        StreamingChatModel model = LLMProviderFactory.getLLMProviderByStream(ProviderProtocol.MOCK,
+                config("mock?ttft=150&tps=200&tokens=20"));
+
+        long start = System.nanoTime();
+        AtomicLong firstTokenAt = new AtomicLong();
+        AtomicInteger partials = new AtomicInteger();
+        CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+        model.chat(List.of(UserMessage.from("hello")), new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                firstTokenAt.compareAndSet(0, System.nanoTime());
+                partials.incrementAndGet();
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                done.complete(completeResponse);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.completeExceptionally(error);
+            }
+        });
+        ChatResponse response = done.get(10, TimeUnit.SECONDS);
+
+        long ttftMs = TimeUnit.NANOSECONDS.toMillis(firstTokenAt.get() - start);
+        assertTrue(ttftMs >= 150 && ttftMs < 1000, "首Token延迟应接近场景设置: " + ttftMs + "ms");
+        assertEquals(20, partials.get());
+        assertEquals(20, response.tokenUsage().outputTokenCount());
+        assertFalse(response.aiMessage().text().isBlank());
+    }
+
+    /** 测试同一场景的回复内容可重复，两种协议的客户端均可使用 */
+    @Test
+    void testRepliesAreDeterministic() {
+        ChatModel openAi = LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK, config("mock?ttft=0&tps=0"));
+        ChatModel anthropic = LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK,
+                config("mock?ttft=0&tps=0&api=anthropic"));
+
+        String first = openAi.chat("same question");
+        String second = openAi.chat("same question");
+        assertEquals(first, second);
+        assertEquals(first, anthropic.chat("same question"));
+        assertNotEquals(first, openAi.chat("another question"));
+    }
+
+    /** 测试按请求序号注入错误，直接检查服务端返回的状态码，避免客户端重试的干扰 */
+    @Test
+    void testErrorInjection() throws Exception {
+        MockLLMServer server = new MockLLMServer().start(0, true);
+        HttpClient httpClient = HttpClient.newHttpClient();
+        String body = "{\"model\":\"mock?ttft=0&tps=0&errorEvery=3&errorStatus=429\","
+                + "\"messages\":[{\"role\":\"user\",\"content\":\"hello\"}]}";
+        List<Integer> statuses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(server.getBaseUrl() + "/chat/completions"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                statuses.add(httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+            }
+        } finally {
+            server.stop();
+        }
+        assertEquals(List.of(200, 200, 429, 200, 200, 429), statuses);
+        assertEquals(2, server.getErrorCount());
+
+        ChatModel alwaysFailing = LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK,
+                config("mock-down?ttft=0&tps=0&errorRate=1"));
+        assertThrows(RuntimeException.class, () -> alwaysFailing.chat("hello"));
+    }
+
+    /** 测试脚本化的工具调用：带工具的请求先返回工具调用，带工具结果的请求返回文本 */
+    @Test
+    void testScriptedToolCall() {
+        ChatModel model = LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK,
+                config("mock?ttft=0&tps=0&tool=auto&toolArgs=%7B%22city%22%3A%22Beijing%22%7D"));
+        ToolSpecification weather = ToolSpecification.builder().name("get_weather").description("查询天气").build();
+
+        ChatResponse response = model.chat(ChatRequest.builder().messages(UserMessage.from("天气如何"))
+                .toolSpecifications(weather).build());
+        assertTrue(response.aiMessage().hasToolExecutionRequests());
+        assertEquals("get_weather", response.aiMessage().toolExecutionRequests().get(0).name());
+        assertEquals("{\"city\":\"Beijing\"}", response.aiMessage().toolExecutionRequests().get(0).arguments());
+    }
+
+    /** 测试未开放 MOCK 协议时不创建客户端 */
+    @Test
+    void testMockRequiresOptIn() {
+        LLMProviderFactory.setMockEnabled(false);
+        try {
+            assertThrows(IllegalStateException.class,
+                    () -> LLMProviderFactory.getLLMProvider(ProviderProtocol.MOCK, config("mock?ttft=0&tps=0")));
+        } finally {
+            LLMProviderFactory.setMockEnabled(true);
+        }
+    }
+
+    private static ProviderConfig config(String model) {
+        return new ProviderConfig("mock", null, model, ProviderProtocol.MOCK);
+    }
+}
@@ -0,0 +1,209 @@
+package org.xhy.infrastructure.llm.mock;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.tool.ToolExecution;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/** 测试用进程内模拟服务商，不经过HTTP
+ *
+ * 作为 TokenStream 使用时按给定行为产生流式事件（直接失败、挂起无响应、正常输出），启动时记录绑定的取消令牌；
+ * 作为同步服务商使用时每次 {@link #call()} 按调用序号注入延迟并阻塞，并统计并发数、完成数和被中断取消的次数。
+ * 需要验证真实客户端的协议解析时使用 {@link MockLLMServer}。 */
+public class MockProvider implements TokenStream {
+
+    private final Consumer<MockProvider> behavior;
+
+    private final long latencyMs;
+
+    private final long slowLatencyMs;
+
+    /** 按调用序号判断是否为慢请求 */
+    private final IntPredicate slow;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private Consumer<String> partialResponseHandler;
+
+    private Consumer<ChatResponse> completeResponseHandler;
+
+    private Consumer<Throwable> errorHandler;
+
+    /** 启动时绑定的取消令牌 */
+    private volatile StreamCancellationToken token;
+
+    public MockProvider(Consumer<MockProvider> behavior) {
+        this(behavior, 0, 0, i -> false);
+    }
+
+    private MockProvider(Consumer<MockProvider> behavior, long latencyMs, long slowLatencyMs, IntPredicate slow) {
+        this.behavior = behavior;
+        this.latencyMs = latencyMs;
+        this.slowLatencyMs = slowLatencyMs;
+        this.slow = slow;
+    }
+
+    /** 同步调用固定耗时的服务商 */
+    public static MockProvider withLatency(long latencyMs) {
+        return new MockProvider(null, latencyMs, latencyMs, i -> false);
+    }
+
+    /** 同步调用偶发慢请求的服务商
+     * @param latencyMs 正常耗时
+     * @param slowLatencyMs 慢请求耗时
+     * @param slow 按调用序号（从0开始）判断是否为慢请求 */
+    public static MockProvider withLatency(long latencyMs, long slowLatencyMs, IntPredicate slow) {
+        return new MockProvider(null, latencyMs, slowLatencyMs, slow);
+    }
+
+    /** 启动后立即返回错误 */
+    public static MockProvider failing(String message) {
+        return new MockProvider(stream -> stream.fail(message));
+    }
+
+    /** 启动后不产生任何事件 */
+    public static MockProvider hanging() {
+        return new MockProvider(stream -> {
+        });
+    }
+
+    /** 启动后依次输出给定内容并正常结束 */
+    public static MockProvider healthy(String... replies) {
+        return new MockProvider(stream -> {
+            StreamCancellationToken.current().markResponded();
+            for (String reply : replies) {
+                stream.emit(reply);
+            }
+            stream.complete();
+        });
+    }
+
+    public void emit(String reply) {
+        partialResponseHandler.accept(reply);
+    }
+
+    public void complete() {
+        completeResponseHandler.accept(ChatResponse.builder().aiMessage(AiMessage.from("done")).build());
+    }
+
+    public void fail(String message) {
+        errorHandler.accept(new RuntimeException(message));
+    }
+
+    /** 同步调用，按注入的延迟阻塞，被中断时记为取消并抛出异常 */
+    public String call() {
+        long latency = slow.test(sequence.getAndIncrement()) ? slowLatencyMs : latencyMs;
+        maxConcurrency.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            cancelled.incrementAndGet();
+            throw new IllegalStateException("cancelled", e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        completed.incrementAndGet();
+        return "ok";
+    }
+
+    /** 同时进行的同步调用数峰值 */
+    public int getMaxConcurrency() {
+        return maxConcurrency.get();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    /** 被中断取消的同步调用数 */
+    public int getCancelled() {
+        return cancelled.get();
+    }
+
+    /** 启动时绑定的取消令牌，尚未启动时为null */
+    public StreamCancellationToken getToken() {
+        return token;
+    }
+
+    /** 等待流式调用启动 */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return started.await(timeout, unit);
+    }
+
+    @Override
+    public TokenStream onPartialResponse(Consumer<String> partialResponseHandler) {
+        this.partialResponseHandler = partialResponseHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onPartialReasoning(Consumer<String> partialReasoningHandler) {
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteReasoning(Consumer<String> completeReasoningHandler) {
+        return this;
+    }
+
+    @Override
+    public TokenStream onReasoningDetected(BiFunction<String, Object, Boolean> reasoningDetector, String s) {
+        return this;
+    }
+
+    @Override
+    public TokenStream onRetrieved(Consumer<List<Content>> contentHandler) {
+        return this;
+    }
+
+    @Override
+    public TokenStream onToolExecuted(Consumer<ToolExecution> toolExecuteHandler) {
+        return this;
+    }
+
+    @Override
+    public TokenStream onCompleteResponse(Consumer<ChatResponse> completeResponseHandler) {
+        this.completeResponseHandler = completeResponseHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    @Override
+    public TokenStream ignoreErrors() {
+        return this;
+    }
+
+    @Override
+    public void start() {
+        token = StreamCancellationToken.current();
+        if (behavior != null) {
+            behavior.accept(this);
+        }
+        started.countDown();
+    }
+}
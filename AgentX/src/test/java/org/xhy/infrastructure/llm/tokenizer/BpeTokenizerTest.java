@@ -0,0 +1,92 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.config.TokenizerProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** 本地BPE分词器测试 */
+class BpeTokenizerTest {
+
+    /** 测试按序号从小到大合并相邻字节对，结果与手工推导的 tiktoken 合并过程一致 */
+    @Test
+    void testMergesLowestRankFirst() {
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            ranks.put(String.valueOf((char) b), b);
+        }
+        String[] merges = {"ll", "he", "hell", "hello", " w", "or", "ld", " wor", " world"};
+        for (int i = 0; i < merges.length; i++) {
+            ranks.put(merges[i], 256 + i);
+        }
+        BpeTokenizer tokenizer = new BpeTokenizer(TokenizerEncoding.CL100K_BASE.getPattern(), ranks);
+
+        assertEquals(List.of(259, 264), tokenizer.encode("hello world"));
+        // hellos: ll -> he -> hell -> hello，剩下 s
+        assertEquals(List.of(259, (int) 's'), tokenizer.encode("hellos"));
+        // world 没有前导空格：or 先于 ld 合并，w 无法继续合并
+        assertEquals(List.of((int) 'w', 261, 262), tokenizer.encode("world"));
+        // 多字节字符按UTF-8字节计数
+        assertEquals("好".getBytes(StandardCharsets.UTF_8).length, tokenizer.countTokens("好"));
+        assertEquals(tokenizer.encode("hello world, hellos").size(), tokenizer.countTokens("hello world, hellos"));
+    }
+
+    /** 测试预分词与 tiktoken 的 cl100k 正则切分一致 */
+    @Test
+    void testPreTokenization() {
+        assertEquals(List.of("hello", " world"), split("hello world"));
+        assertEquals(List.of("I", "'m", " ", "123", "45"), split("I'm 12345"));
+        // 标点与其后的文字合为一个片段，与 " world" 的前导空格相同
+        assertEquals(List.of("你好", "，世界"), split("你好，世界"));
+        assertEquals(List.of("a", "\n\n", "b"), split("a\n\nb"));
+    }
+
+    /** 测试模型名到词表的对应关系 */
+    @Test
+    void testModelMapping() {
+        assertEquals(TokenizerEncoding.O200K_BASE, ModelTokenizer.forModel("gpt-4o-mini").getEncoding());
+        assertEquals(TokenizerEncoding.CL100K_BASE, ModelTokenizer.forModel("gpt-4-turbo").getEncoding());
+        assertEquals(TokenizerEncoding.O200K_BASE, ModelTokenizer.forModel("Qwen/Qwen2.5-72B-Instruct").getEncoding());
+        assertEquals(1.2, ModelTokenizer.forModel("claude-sonnet-4").getRatio());
+        assertSame(ModelTokenizer.DEFAULT, ModelTokenizer.forModel("unknown-model"));
+        assertEquals(12, ModelTokenizer.forModel("claude-sonnet-4").scale(10));
+    }
+
+    /** 测试与 tiktoken 公布的计数一致，词表不随仓库提供，类路径 tokenizer/ 下没有对应词表时跳过 */
+    @Test
+    void testKnownCounts() {
+        Optional<BpeTokenizer> cl100k = registry().getTokenizer(TokenizerEncoding.CL100K_BASE);
+        Optional<BpeTokenizer> o200k = registry().getTokenizer(TokenizerEncoding.O200K_BASE);
+        assumeTrue(cl100k.isPresent() || o200k.isPresent(), "类路径 tokenizer/ 下没有 tiktoken 词表");
+
+        cl100k.ifPresent(tokenizer -> {
+            assertEquals(List.of(15339, 1917), tokenizer.encode("hello world"));
+            assertEquals(6, tokenizer.countTokens("tiktoken is great!"));
+            assertEquals(6, tokenizer.countTokens("antidisestablishmentarianism"));
+            assertEquals(7, tokenizer.countTokens("2 + 2 = 4"));
+        });
+        o200k.ifPresent(tokenizer -> assertEquals(List.of(24912, 2375), tokenizer.encode("hello world")));
+    }
+
+    private static TokenizerRegistry registry() {
+        return new TokenizerRegistry(new TokenizerProperties());
+    }
+
+    private static List<String> split(String text) {
+        List<String> pieces = new ArrayList<>();
+        Matcher matcher = TokenizerEncoding.CL100K_BASE.getPattern().matcher(text);
+        while (matcher.find()) {
+            pieces.add(matcher.group());
+        }
+        return pieces;
+    }
+}
@@ -0,0 +1,87 @@
+package org.xhy.infrastructure.llm.tokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.token.service.TokenEstimator;
+import org.xhy.infrastructure.config.TokenizerProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/** 本地分词器计数耗时基准测试：对比BPE计数与按字符估算，典型消息的计数应在1毫秒以内
+ *
+ * 需要先把 tiktoken 词表放到 src/main/resources/tokenizer/ 下，或通过 -Dtokenizer.dir=词表目录 指定。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private static final String CHINESE = "请根据知识库中的文档，总结一下这个项目的部署步骤，并说明需要准备哪些环境变量。";
+
+    private static final String ENGLISH = "The quick brown fox jumps over the lazy dog. Please explain how the sliding "
+            + "window strategy keeps the most recent messages within the configured token budget. ";
+
+    private static final String CODE = "public int countTokens(String text) { return text == null ? 0 : "
+            + "tokenizer.countTokens(text); }\n";
+
+    @Param({"CL100K_BASE", "O200K_BASE"})
+    private TokenizerEncoding encoding;
+
+    /** 消息长度：short 约一句话，typical 约2KB的中英文混合回复 */
+    @Param({"short", "typical"})
+    private String size;
+
+    private BpeTokenizer tokenizer;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        TokenizerProperties properties = new TokenizerProperties();
+        properties.setVocabularyDir(System.getProperty("tokenizer.dir", ""));
+        tokenizer = new TokenizerRegistry(properties).getTokenizer(encoding)
+                .orElseThrow(() -> new IllegalStateException("未找到词表 " + encoding.getFileName()));
+
+        if ("short".equals(size)) {
+            text = CHINESE;
+        } else {
+            StringBuilder builder = new StringBuilder();
+            while (builder.length() < 2048) {
+                builder.append(CHINESE).append(ENGLISH).append(CODE);
+            }
+            text = builder.toString();
+        }
+    }
+
+    /** 本地BPE计数 */
+    @Benchmark
+    public int bpeCount() {
+        return tokenizer.countTokens(text);
+    }
+
+    /** 按字符估算，作为计数开销的下限参考 */
+    @Benchmark
+    public int charEstimate() {
+        return TokenEstimator.estimate(text);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TokenizerBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dtokenizer.dir=" + System.getProperty("tokenizer.dir", "")).build()).run();
+    }
+}
@@ -0,0 +1,168 @@
+package org.xhy.infrastructure.rag.cache;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.xhy.infrastructure.config.EmbeddingCacheProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 查询向量缓存测试 */
+public class QueryEmbeddingCacheTest {
+
+    private static final String MODEL = "https://api.example.com/v1|text-embedding-v3";
+
+    @Test
+    public void normalizeCollapsesWhitespaceAndWidth() {
+        assertEquals("如何 部署 AgentX?", QueryEmbeddingCache.normalize("  如何\t部署\n\n ＡｇｅｎｔＸ？ "));
+        assertEquals("Hello World", QueryEmbeddingCache.normalize("Hello World"));
+        assertEquals("", QueryEmbeddingCache.normalize(null));
+    }
+
+    /** 空白和全半角不同的同一问题只向量化一次，不同模型分开缓存 */
+    @Test
+    public void equivalentQuestionsShareOneEmbedding() {
+        QueryEmbeddingCache cache = newCache(1024 * 1024);
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        float[] first = cache.get(MODEL, "如何部署 AgentX", embedder);
+        float[] second = cache.get(MODEL, " 如何部署   ＡｇｅｎｔＸ\n", embedder);
+        cache.get("https://other.example.com|text-embedding-v3", "如何部署 AgentX", embedder);
+
+        assertArrayEquals(first, second);
+        assertEquals(List.of("如何部署 AgentX", "如何部署 AgentX"), embedder.texts);
+        assertEquals(1L, cache.getStats().hitCount());
+        assertEquals(2L, cache.getStats().missCount());
+    }
+
+    @Test
+    public void returnedVectorsAreCopies() {
+        QueryEmbeddingCache cache = newCache(1024 * 1024);
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        cache.get(MODEL, "问题", embedder)[0] = 100f;
+
+        assertEquals(1f, cache.get(MODEL, "问题", embedder)[0]);
+    }
+
+    /** 超出容量时淘汰最久未使用的向量 */
+    @Test
+    public void evictsLeastRecentlyUsedWhenFull() {
+        // 每条约 96 + 文本 + 4096 字节，容量只够三条
+        QueryEmbeddingCache cache = newCache(3 * 4400);
+        RecordingEmbedder embedder = new RecordingEmbedder(1024);
+
+        cache.get(MODEL, "q1", embedder);
+        cache.get(MODEL, "q2", embedder);
+        cache.get(MODEL, "q3", embedder);
+        cache.get(MODEL, "q1", embedder);
+        cache.get(MODEL, "q4", embedder);
+        embedder.texts.clear();
+        cache.get(MODEL, "q1", embedder);
+        cache.get(MODEL, "q2", embedder);
+
+        assertEquals(List.of("q2"), embedder.texts);
+        assertTrue(cache.size() <= 3);
+        assertTrue(cache.getStats().evictionCount() >= 1);
+    }
+
+    @Test
+    public void expiresAfterWrite() {
+        FakeTicker ticker = new FakeTicker();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(true, 1024 * 1024, Duration.ofMinutes(60), ticker);
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        cache.get(MODEL, "问题", embedder);
+        ticker.advance(59, TimeUnit.MINUTES);
+        cache.get(MODEL, "问题", embedder);
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.get(MODEL, "问题", embedder);
+
+        assertEquals(2, embedder.texts.size());
+    }
+
+    @Test
+    public void disabledCacheAlwaysEmbeds() {
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(false, 1024 * 1024, Duration.ofMinutes(60),
+                Ticker.systemTicker());
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        cache.get(MODEL, "问题", embedder);
+        cache.get(MODEL, "问题", embedder);
+
+        assertEquals(2, embedder.texts.size());
+        assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void embedderFailureIsNotCached() {
+        QueryEmbeddingCache cache = newCache(1024 * 1024);
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get(MODEL, "问题", text -> {
+            throw new IllegalArgumentException("服务不可用");
+        }));
+        cache.get(MODEL, "问题", embedder);
+
+        assertEquals(1, embedder.texts.size());
+    }
+
+    /** 命中和未命中次数注册到监控指标 */
+    @Test
+    public void statsAreExposedAsMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(new EmbeddingCacheProperties(), registry);
+        RecordingEmbedder embedder = new RecordingEmbedder(4);
+
+        cache.get(MODEL, "问题", embedder);
+        cache.get(MODEL, "问题", embedder);
+
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", QueryEmbeddingCache.METRICS_NAME)
+                .tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("cache", QueryEmbeddingCache.METRICS_NAME)
+                .tag("result", "miss").functionCounter().count());
+    }
+
+    private static QueryEmbeddingCache newCache(long maxBytes) {
+        return new QueryEmbeddingCache(true, maxBytes, Duration.ofMinutes(60), Ticker.systemTicker());
+    }
+
+    /** 记录被向量化的文本，向量各维为调用序号 */
+    private static final class RecordingEmbedder implements Function<String, float[]> {
+        private final int dimension;
+        private final List<String> texts = new ArrayList<>();
+
+        private RecordingEmbedder(int dimension) {
+            this.dimension = dimension;
+        }
+
+        @Override
+        public float[] apply(String text) {
+            texts.add(text);
+            float[] vector = new float[dimension];
+            Arrays.fill(vector, texts.size());
+            return vector;
+        }
+    }
+
+    private static final class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        private void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.xhy.infrastructure.rag.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 进程内HNSW索引测试 */
+public class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+
+    @Test
+    public void emptyIndexReturnsNothing() {
+        HnswIndex<String> index = new HnswIndex<>(16, 100, 0, 1);
+
+        assertTrue(index.search(new float[DIMENSION], 10, 50).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void exactMatchRanksFirstWithPayload() {
+        HnswIndex<String> index = new HnswIndex<>(8, 64, 100, 1);
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 100);
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(vectors[i], "v" + i);
+        }
+
+        List<HnswIndex.Neighbor<String>> result = index.search(scale(vectors[42], 3f), 5, 50);
+
+        assertEquals(5, result.size());
+        assertEquals("v42", result.get(0).payload());
+        assertEquals(1f, result.get(0).similarity(), 1e-5);
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).similarity() >= result.get(i).similarity());
+        }
+    }
+
+    @Test
+    public void kLargerThanSizeReturnsAll() {
+        HnswIndex<Integer> index = new HnswIndex<>(4, 16, 0, 1);
+        Random random = new Random(5);
+        for (float[] vector : randomVectors(random, 7)) {
+            index.add(vector, index.size());
+        }
+
+        assertEquals(7, index.search(randomVectors(random, 1)[0], 20, 5).size());
+    }
+
+    @Test
+    public void dimensionMismatchIsRejected() {
+        HnswIndex<String> index = new HnswIndex<>(4, 16, 0, 1);
+        index.add(new float[]{1, 0, 0}, "a");
+
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1, 0}, "b"));
+        assertThrows(IllegalArgumentException.class, () -> index.search(new float[]{1, 0}, 1, 10));
+    }
+
+    /** 聚簇数据上逐条追加构建，查询与数据同分布，recall@10 与暴力检索相比不低于0.95 */
+    @Test
+    public void recallAgainstBruteForce() {
+        Random random = new Random(11);
+        float[][] centroids = randomVectors(random, 16);
+        float[][] vectors = new float[3000][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = clusteredVector(random, centroids);
+        }
+        HnswIndex<Integer> index = new HnswIndex<>(16, 100, vectors.length, 7);
+        for (int i = 0; i < vectors.length; i++) {
+            index.add(vectors[i], i);
+        }
+
+        double recall = 0;
+        float[][] queries = new float[50][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = clusteredVector(random, centroids);
+        }
+        for (float[] query : queries) {
+            Set<Integer> truth = bruteForce(vectors, query, 10);
+            int hits = 0;
+            for (HnswIndex.Neighbor<Integer> neighbor : index.search(query, 10, 64)) {
+                if (truth.contains(neighbor.payload())) {
+                    hits++;
+                }
+            }
+            recall += hits / 10.0;
+        }
+        assertTrue(recall / queries.length >= 0.95, "recall@10 = " + recall / queries.length);
+    }
+
+    private static Set<Integer> bruteForce(float[][] vectors, float[] query, int k) {
+        Integer[] order = new Integer[vectors.length];
+        double[] similarities = new double[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            order[i] = i;
+            similarities[i] = cosine(vectors[i], query);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(similarities[b], similarities[a]));
+        return new HashSet<>(Arrays.asList(order).subList(0, k));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static float[] scale(float[] vector, float factor) {
+        float[] scaled = vector.clone();
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] *= factor;
+        }
+        return scaled;
+    }
+
+    private static float[] clusteredVector(Random random, float[][] centroids) {
+        float[] centroid = centroids[random.nextInt(centroids.length)];
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = centroid[d] + (float) random.nextGaussian() * 0.3f;
+        }
+        return vector;
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][DIMENSION];
+        for (float[] vector : vectors) {
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+}
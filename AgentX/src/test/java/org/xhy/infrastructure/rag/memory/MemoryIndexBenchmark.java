@@ -0,0 +1,244 @@
+package org.xhy.infrastructure.rag.memory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** 单个数据集的向量检索基准测试：对比进程内 HNSW 索引与 pgvector HNSW 索引
+ *
+ * 需要本地安装 pgvector 的 PostgreSQL，连接参数通过 -Dbench.jdbc.url、-Dbench.jdbc.user、-Dbench.jdbc.password 指定，
+ * 默认连接 localhost:5432/agentx_bench。两侧使用同一份合成语料：向量围绕 64 个簇心分布，以固定种子生成，
+ * 首次运行写入 bench_memory_index 表，表中行数与语料规模一致时直接复用。两侧的 HNSW 参数一致（m=16、ef_construction=200、ef_search=100）。
+ * 准备阶段以暴力检索结果为基准计算两侧的 recall@k 并打印，同时打印内存索引的构建耗时和占用，检索耗时由 JMH 统计。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryIndexBenchmark {
+
+    private static final String TABLE = "bench_memory_index";
+
+    private static final int CLUSTERS = 64;
+
+    private static final int TOP_K = 10;
+
+    private static final int EF_SEARCH = 100;
+
+    private static final int QUERIES = 200;
+
+    @Param({"20000", "100000"})
+    private int corpusSize;
+
+    @Param({"1024"})
+    private int dimension;
+
+    private float[][] corpus;
+
+    private List<float[]> queries;
+
+    private HnswIndex<Integer> memoryIndex;
+
+    private Connection connection;
+
+    private PreparedStatement pgvectorQuery;
+
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centroids[i] = gaussian(random, 1f, null);
+        }
+        corpus = new float[corpusSize][];
+        for (int i = 0; i < corpusSize; i++) {
+            corpus[i] = gaussian(random, 0.3f, centroids[random.nextInt(CLUSTERS)]);
+        }
+        queries = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(gaussian(random, 0.3f, centroids[random.nextInt(CLUSTERS)]));
+        }
+
+        long start = System.nanoTime();
+        memoryIndex = new HnswIndex<>(16, 200, corpusSize, 7);
+        for (int i = 0; i < corpusSize; i++) {
+            memoryIndex.add(corpus[i], i);
+        }
+        System.out.printf("%n内存索引构建 %d 条 %d 维向量耗时 %ds，占用约 %dMB%n", corpusSize, dimension,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), memoryIndex.estimatedBytes() >> 20);
+
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/agentx_bench"),
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"));
+        if (rowCount() != corpusSize) {
+            loadCorpus();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET hnsw.ef_search = " + EF_SEARCH);
+        }
+        pgvectorQuery = connection.prepareStatement(
+                "SELECT id FROM " + TABLE + " ORDER BY embedding <=> ?::vector LIMIT " + TOP_K);
+
+        printRecall();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int memoryHnsw() {
+        return memoryIndex.search(queries.get(nextQuery++ % QUERIES), TOP_K, EF_SEARCH).size();
+    }
+
+    @Benchmark
+    public int pgvectorHnsw() throws SQLException {
+        return searchPgvector(queries.get(nextQuery++ % QUERIES)).size();
+    }
+
+    private void printRecall() throws SQLException {
+        double memoryRecall = 0;
+        double pgvectorRecall = 0;
+        for (float[] query : queries) {
+            Set<Integer> truth = bruteForce(query);
+            Set<Integer> memoryResult = new HashSet<>();
+            for (HnswIndex.Neighbor<Integer> neighbor : memoryIndex.search(query, TOP_K, EF_SEARCH)) {
+                memoryResult.add(neighbor.payload());
+            }
+            memoryResult.retainAll(truth);
+            memoryRecall += (double) memoryResult.size() / TOP_K;
+            Set<Integer> pgvectorResult = new HashSet<>(searchPgvector(query));
+            pgvectorResult.retainAll(truth);
+            pgvectorRecall += (double) pgvectorResult.size() / TOP_K;
+        }
+        System.out.printf("recall@%d：内存索引 %.3f，pgvector %.3f%n", TOP_K, memoryRecall / QUERIES,
+                pgvectorRecall / QUERIES);
+    }
+
+    private List<Integer> searchPgvector(float[] query) throws SQLException {
+        pgvectorQuery.setString(1, Arrays.toString(query).replace(" ", ""));
+        List<Integer> ids = new ArrayList<>(TOP_K);
+        try (ResultSet resultSet = pgvectorQuery.executeQuery()) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    private Set<Integer> bruteForce(float[] query) {
+        Integer[] order = new Integer[corpusSize];
+        double[] similarities = new double[corpusSize];
+        for (int i = 0; i < corpusSize; i++) {
+            order[i] = i;
+            similarities[i] = cosine(corpus[i], query);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(similarities[b], similarities[a]));
+        return new HashSet<>(Arrays.asList(order).subList(0, TOP_K));
+    }
+
+    private long rowCount() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+            resultSet.next();
+            if (!resultSet.getBoolean(1)) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + TABLE)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void loadCorpus() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE EXTENSION IF NOT EXISTS vector");
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute(
+                    "CREATE TABLE " + TABLE + " (id integer PRIMARY KEY, embedding vector(" + dimension + "))");
+        }
+        try (PreparedStatement insert = connection
+                .prepareStatement("INSERT INTO " + TABLE + " (id, embedding) VALUES (?, ?::vector)")) {
+            for (int i = 0; i < corpusSize; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, Arrays.toString(corpus[i]).replace(" ", ""));
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX ON " + TABLE
+                    + " USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 200)");
+            statement.execute("ANALYZE " + TABLE);
+        }
+    }
+
+    /** 均值为 center（为空时为0）、标准差为 sigma 的高斯向量 */
+    private float[] gaussian(Random random, float sigma, float[] center) {
+        float[] vector = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            vector[d] = (center != null ? center[d] : 0) + (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MemoryIndexBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dbench.jdbc.url=" + System.getProperty("bench.jdbc.url",
+                        "jdbc:postgresql://localhost:5432/agentx_bench"),
+                        "-Dbench.jdbc.user=" + System.getProperty("bench.jdbc.user", "postgres"),
+                        "-Dbench.jdbc.password=" + System.getProperty("bench.jdbc.password", "postgres"))
+                .build()).run();
+    }
+}
@@ -0,0 +1,193 @@
+package org.xhy.infrastructure.rag.memory;
+
+import com.google.common.base.Ticker;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.constant.MetadataConstant;
+import org.xhy.infrastructure.config.MemoryIndexProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 进程内向量索引管理测试，构建任务在调用线程同步执行 */
+public class MemoryIndexManagerTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    private final StubSource source = new StubSource();
+
+    @Test
+    public void disabledNeverRoutesToMemory() {
+        MemoryIndexProperties properties = properties(1);
+        properties.setEnabled(false);
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties, Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+
+        assertFalse(manager.route(List.of("ds-1")));
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(0, source.scans);
+    }
+
+    /** 检索次数达到阈值时构建，下一次检索走内存索引 */
+    @Test
+    public void hotDatasetIsBuiltAndServed() {
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties(3), Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        source.add("ds-1", "e2", "f1", 0, 1);
+
+        assertFalse(manager.route(List.of("ds-1")));
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(0, source.scans);
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(1, source.scans);
+        assertTrue(manager.route(List.of("ds-1")));
+
+        List<EmbeddingMatch<TextSegment>> matches = manager.search(List.of("ds-1"), new float[]{1, 0}, 5, 0.6);
+        assertEquals(1, matches.size());
+        assertEquals("e1", matches.get(0).embeddingId());
+        assertEquals(1.0, matches.get(0).score(), 1e-6);
+        assertNull(manager.search(List.of("ds-1", "ds-2"), new float[]{1, 0}, 5, 0));
+    }
+
+    @Test
+    public void addedSegmentsJoinExistingIndexOnce() {
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties(1), Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        manager.route(List.of("ds-1"));
+
+        TextSegment segment = segment("f2", "new");
+        manager.onSegmentAdded("ds-1", "e2", new float[]{0, 1}, segment);
+        manager.onSegmentAdded("ds-1", "e2", new float[]{0, 1}, segment);
+
+        List<EmbeddingMatch<TextSegment>> matches = manager.search(List.of("ds-1"), new float[]{0, 1}, 5, 0);
+        assertEquals(2, matches.size());
+        assertEquals("e2", matches.get(0).embeddingId());
+    }
+
+    @Test
+    public void fileDeletionDropsIndexUntilRebuilt() {
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties(1), Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        source.add("ds-2", "e2", "f2", 1, 0);
+        manager.route(List.of("ds-1", "ds-2"));
+        assertEquals(2, manager.getIndexCount());
+
+        manager.invalidateFiles(List.of("f1"));
+
+        assertEquals(1, manager.getIndexCount());
+        assertNull(manager.search(List.of("ds-1"), new float[]{1, 0}, 5, 0));
+        assertNotNull(manager.search(List.of("ds-2"), new float[]{1, 0}, 5, 0));
+        assertFalse(manager.route(List.of("ds-1")));
+        assertTrue(manager.route(List.of("ds-1")));
+    }
+
+    /** 构建期间有写入时丢弃本次构建，避免缺少这条分片 */
+    @Test
+    public void writeDuringBuildDiscardsBuild() {
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties(1), Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        source.duringScan = () -> manager.onSegmentAdded("ds-1", "e2", new float[]{0, 1}, segment("f1", "late"));
+
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(0, manager.getIndexCount());
+
+        source.duringScan = null;
+        manager.route(List.of("ds-1"));
+        assertEquals(1, manager.getIndexCount());
+    }
+
+    @Test
+    public void oversizedDatasetIsSkipped() {
+        MemoryIndexProperties properties = properties(1);
+        properties.setMaxVectorsPerDataset(1);
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties, Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        source.add("ds-1", "e2", "f1", 0, 1);
+
+        assertFalse(manager.route(List.of("ds-1")));
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(0, source.scans);
+        assertEquals(0, manager.getIndexCount());
+    }
+
+    @Test
+    public void expiredIndexIsRebuilt() {
+        MemoryIndexManager manager = new MemoryIndexManager(source, properties(1), Runnable::run, ticker);
+        source.add("ds-1", "e1", "f1", 1, 0);
+        manager.route(List.of("ds-1"));
+        assertEquals(1, source.scans);
+
+        ticker.advance(31, TimeUnit.MINUTES);
+
+        assertFalse(manager.route(List.of("ds-1")));
+        assertEquals(2, source.scans);
+        assertTrue(manager.route(List.of("ds-1")));
+    }
+
+    private static MemoryIndexProperties properties(int minQueries) {
+        MemoryIndexProperties properties = new MemoryIndexProperties();
+        properties.setEnabled(true);
+        properties.setMinQueriesPerWindow(minQueries);
+        properties.setM(4);
+        properties.setEfConstruction(16);
+        properties.setEfSearch(16);
+        return properties;
+    }
+
+    private static TextSegment segment(String fileId, String text) {
+        Metadata metadata = new Metadata();
+        metadata.put(MetadataConstant.FILE_ID, fileId);
+        return TextSegment.from(text, metadata);
+    }
+
+    private static final class StubSource implements DatasetVectorSource {
+
+        private final Map<String, List<Object[]>> rows = new HashMap<>();
+
+        private int scans;
+
+        private Runnable duringScan;
+
+        void add(String datasetId, String embeddingId, String fileId, float... vector) {
+            rows.computeIfAbsent(datasetId, id -> new ArrayList<>())
+                    .add(new Object[]{embeddingId, vector, segment(fileId, "text of " + embeddingId)});
+        }
+
+        @Override
+        public long countVectors(String datasetId) {
+            return rows.getOrDefault(datasetId, List.of()).size();
+        }
+
+        @Override
+        public void forEachVector(String datasetId, VectorConsumer consumer) {
+            scans++;
+            for (Object[] row : rows.getOrDefault(datasetId, List.of())) {
+                consumer.accept((String) row[0], (float[]) row[1], (TextSegment) row[2]);
+            }
+            if (duringScan != null) {
+                duringScan.run();
+            }
+        }
+    }
+
+    private static final class FakeTicker extends Ticker {
+
+        private long nanos;
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.xhy.infrastructure.rag.store;
+
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import org.junit.jupiter.api.Test;
+import org.xhy.domain.rag.constant.MetadataConstant;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 数据集过滤条件识别测试 */
+public class DatasetFiltersTest {
+
+    @Test
+    public void isInOnDatasetKeyMapsToColumnValues() {
+        List<String> values = DatasetFilters.values(new IsIn(MetadataConstant.DATA_SET_ID, List.of("ds-1", "ds-2")),
+                MetadataConstant.DATA_SET_ID);
+
+        assertEquals(new HashSet<>(List.of("ds-1", "ds-2")), new HashSet<>(values));
+    }
+
+    @Test
+    public void isEqualToMapsToSingleValue() {
+        assertEquals(List.of("file-1"), DatasetFilters.values(new IsEqualTo(MetadataConstant.FILE_ID, "file-1"),
+                MetadataConstant.FILE_ID));
+    }
+
+    /** 其他键、其他比较方式和空条件都交给原存储处理 */
+    @Test
+    public void otherFiltersAreNotMapped() {
+        assertNull(DatasetFilters.values(new IsEqualTo(MetadataConstant.FILE_ID, "file-1"),
+                MetadataConstant.DATA_SET_ID));
+        assertNull(DatasetFilters.values(new IsNotEqualTo(MetadataConstant.DATA_SET_ID, "ds-1"),
+                MetadataConstant.DATA_SET_ID));
+        assertNull(DatasetFilters.values(null, MetadataConstant.DATA_SET_ID));
+    }
+
+    @Test
+    public void vectorLiteralMatchesPgvectorFormat() {
+        assertEquals("[0.5,-1.0,2.25]", DatasetFilters.toVectorLiteral(new float[]{0.5f, -1f, 2.25f}));
+        assertEquals("[]", DatasetFilters.toVectorLiteral(new float[0]));
+    }
+
+    @Test
+    public void vectorLiteralRoundTrips() {
+        float[] vector = {0.5f, -1f, 2.25f, 1.0E-7f};
+
+        assertArrayEquals(vector, DatasetFilters.parseVectorLiteral(DatasetFilters.toVectorLiteral(vector)));
+        assertArrayEquals(new float[]{1f, 2f}, DatasetFilters.parseVectorLiteral("[1, 2]"));
+        assertEquals(0, DatasetFilters.parseVectorLiteral("[]").length);
+    }
+
+    /** 余弦距离 0、1、2 分别对应分数 1、0.5、0 */
+    /** 零与负数都量化为0，与 binary_quantize 一致 */
+    @Test
+    public void binaryQuantizationKeepsPositiveSign() {
+        assertEquals("1001", DatasetFilters.toBitLiteral(new float[]{0.3f, -0.1f, 0f, 2f}));
+        assertEquals("", DatasetFilters.toBitLiteral(new float[0]));
+    }
+
+    @Test
+    public void cosineDistanceMapsToRelevanceScore() {
+        assertEquals(1.0, DatasetFilters.toScore(0), 1e-9);
+        assertEquals(0.5, DatasetFilters.toScore(1), 1e-9);
+        assertEquals(0.0, DatasetFilters.toScore(2), 1e-9);
+    }
+}
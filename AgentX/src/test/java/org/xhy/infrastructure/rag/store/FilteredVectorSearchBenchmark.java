@@ -0,0 +1,259 @@
+package org.xhy.infrastructure.rag.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** 按数据集过滤的近邻检索基准测试：对比 JSON 元数据过滤、dataset_id 列加 HNSW 迭代扫描、dataset_id 列精确扫描三种查询
+ *
+ * 需要本地安装 pgvector 0.8 及以上的 PostgreSQL，连接参数通过 -Dbench.jdbc.url、-Dbench.jdbc.user、-Dbench.jdbc.password 指定，
+ * 默认连接 localhost:5432/agentx_bench。首次运行在 bench_vector_store_ann 表中生成合成数据：向量围绕 64 个簇心分布，
+ * 分片按 Zipf 分布落在 200 个数据集中，既有大数据集也有只占全表千分之一的小数据集；表中行数与语料规模一致时直接复用。
+ * 准备阶段以精确扫描结果为基准计算各查询的 recall@k 并打印，耗时由 JMH 统计。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilteredVectorSearchBenchmark {
+
+    private static final String TABLE = "bench_vector_store_ann";
+
+    private static final int DIMENSION = 128;
+
+    private static final int CLUSTERS = 64;
+
+    private static final int DATA_SETS = 200;
+
+    private static final int TOP_K = 10;
+
+    /** 计算召回率的查询数 */
+    private static final int RECALL_QUERIES = 50;
+
+    @Param({"200000"})
+    private int corpusSize;
+
+    /** 查询的数据集：大、中、小 */
+    @Param({"ds-0", "ds-20", "ds-180"})
+    private String dataSetId;
+
+    private Connection connection;
+
+    private List<String> queries;
+
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/agentx_bench"),
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"));
+        if (rowCount() != corpusSize) {
+            generateCorpus();
+        }
+        Random random = new Random(7);
+        queries = new ArrayList<>();
+        for (int i = 0; i < RECALL_QUERIES; i++) {
+            queries.add(DatasetFilters.toVectorLiteral(randomVector(random)));
+        }
+        printRecall();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /** 原查询：按 JSON 元数据过滤，HNSW 先取 ef_search 个候选再过滤，小数据集常常取不满 */
+    @Benchmark
+    public int jsonMetadataFilter() throws SQLException {
+        return search(Strategy.JSON_METADATA, nextQuery()).size();
+    }
+
+    /** 新查询：按 dataset_id 列过滤，HNSW 迭代扫描直到取满结果 */
+    @Benchmark
+    public int columnIterativeScan() throws SQLException {
+        return search(Strategy.ITERATIVE_SCAN, nextQuery()).size();
+    }
+
+    /** 对照：关闭索引扫描，按 dataset_id 列精确计算距离 */
+    @Benchmark
+    public int columnExactScan() throws SQLException {
+        return search(Strategy.EXACT, nextQuery()).size();
+    }
+
+    private String nextQuery() {
+        return queries.get(nextQuery++ % queries.size());
+    }
+
+    private void printRecall() throws SQLException {
+        double jsonRecall = 0;
+        double iterativeRecall = 0;
+        for (String query : queries) {
+            Set<String> truth = new HashSet<>(search(Strategy.EXACT, query));
+            jsonRecall += recall(truth, search(Strategy.JSON_METADATA, query));
+            iterativeRecall += recall(truth, search(Strategy.ITERATIVE_SCAN, query));
+        }
+        System.out.printf("%n数据集 %s recall@%d：JSON元数据过滤 %.3f，dataset_id 列迭代扫描 %.3f%n", dataSetId, TOP_K,
+                jsonRecall / queries.size(), iterativeRecall / queries.size());
+    }
+
+    private static double recall(Set<String> truth, List<String> result) {
+        if (truth.isEmpty()) {
+            return 1;
+        }
+        int hits = 0;
+        for (String id : result) {
+            if (truth.contains(id)) {
+                hits++;
+            }
+        }
+        return (double) hits / truth.size();
+    }
+
+    private List<String> search(Strategy strategy, String query) throws SQLException {
+        String condition = strategy == Strategy.JSON_METADATA ? "(metadata ->> 'DATA_SET_ID') = ?" : "dataset_id = ?";
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL hnsw.ef_search = 100");
+            if (strategy == Strategy.ITERATIVE_SCAN) {
+                statement.execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+                statement.execute("SET LOCAL hnsw.max_scan_tuples = 20000");
+            } else if (strategy == Strategy.EXACT) {
+                statement.execute("SET LOCAL enable_indexscan = off");
+            }
+            List<String> ids = new ArrayList<>(TOP_K);
+            try (PreparedStatement select = connection.prepareStatement("SELECT embedding_id FROM " + TABLE
+                    + " WHERE " + condition + " ORDER BY embedding <=> ?::vector LIMIT " + TOP_K)) {
+                select.setString(1, dataSetId);
+                select.setString(2, query);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getString(1));
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private long rowCount() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+            resultSet.next();
+            if (!resultSet.getBoolean(1)) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + TABLE)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /** 在客户端生成向量，数据集号按 Zipf 分布取值，小号数据集远大于大号数据集 */
+    private void generateCorpus() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE EXTENSION IF NOT EXISTS vector");
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (embedding_id uuid PRIMARY KEY, embedding vector("
+                    + DIMENSION + "), metadata json, dataset_id varchar(64))");
+        }
+        double[] cumulative = new double[DATA_SETS];
+        double total = 0;
+        for (int i = 0; i < DATA_SETS; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centroids[i] = randomVector(random);
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE
+                + " (embedding_id, embedding, metadata, dataset_id) VALUES (md5(?)::uuid, ?::vector, ?::json, ?)")) {
+            for (int row = 0; row < corpusSize; row++) {
+                double pick = random.nextDouble() * total;
+                int dataSet = 0;
+                while (cumulative[dataSet] < pick) {
+                    dataSet++;
+                }
+                float[] centroid = centroids[random.nextInt(CLUSTERS)];
+                float[] vector = new float[DIMENSION];
+                for (int d = 0; d < DIMENSION; d++) {
+                    vector[d] = centroid[d] + (float) random.nextGaussian() * 0.3f;
+                }
+                String id = "ds-" + dataSet;
+                insert.setString(1, String.valueOf(row));
+                insert.setString(2, DatasetFilters.toVectorLiteral(vector));
+                insert.setString(3, "{\"DATA_SET_ID\":\"" + id + "\"}");
+                insert.setString(4, id);
+                insert.addBatch();
+                if (row % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX ON " + TABLE + " (dataset_id)");
+            statement.execute("CREATE INDEX ON " + TABLE + " USING hnsw (embedding vector_cosine_ops)");
+            statement.execute("ANALYZE " + TABLE);
+        }
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private enum Strategy {
+        JSON_METADATA, ITERATIVE_SCAN, EXACT
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FilteredVectorSearchBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dbench.jdbc.url=" + System.getProperty("bench.jdbc.url",
+                        "jdbc:postgresql://localhost:5432/agentx_bench"),
+                        "-Dbench.jdbc.user=" + System.getProperty("bench.jdbc.user", "postgres"),
+                        "-Dbench.jdbc.password=" + System.getProperty("bench.jdbc.password", "postgres"))
+                .build()).run();
+    }
+}
@@ -0,0 +1,253 @@
+package org.xhy.infrastructure.rag.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xhy.domain.rag.constant.VectorQuantization;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** 量化向量两阶段检索基准测试：对比原始向量、标量量化（半精度）、二值量化三种方式的召回率和耗时
+ *
+ * 需要本地安装 pgvector 0.8 及以上的 PostgreSQL，连接参数通过 -Dbench.jdbc.url、-Dbench.jdbc.user、-Dbench.jdbc.password 指定，
+ * 默认连接 localhost:5432/agentx_bench。首次运行在 bench_vector_store_quantized 表中生成合成数据：1024 维向量围绕 64 个簇心分布，
+ * 以 DatasetEmbeddingStore 的补写语句生成两种量化向量并建立与迁移脚本相同的三个 HNSW 索引；表中行数与语料规模一致时直接复用。
+ * 检索使用 DatasetEmbeddingStore 的检索语句，量化方式先在量化索引上取回 k × rescoreMultiplier 个候选，再以原始向量重新打分。
+ * 准备阶段以精确扫描结果为基准计算 recall@k，并打印各索引的大小，耗时由 JMH 统计。
+ *
+ * 运行方式：在IDE中直接执行 main 方法 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantizedVectorSearchBenchmark {
+
+    private static final String TABLE = "bench_vector_store_quantized";
+
+    private static final String DATA_SET_ID = "ds-0";
+
+    private static final int DIMENSION = 1024;
+
+    private static final int CLUSTERS = 64;
+
+    private static final int TOP_K = 10;
+
+    private static final int EF_SEARCH = 100;
+
+    /** 计算召回率的查询数 */
+    private static final int RECALL_QUERIES = 50;
+
+    @Param({"100000"})
+    private int corpusSize;
+
+    @Param({"NONE", "SCALAR", "BINARY"})
+    private VectorQuantization quantization;
+
+    /** 量化检索第一阶段的候选数倍数，不量化时不起作用 */
+    @Param({"2", "4", "8"})
+    private int rescoreMultiplier;
+
+    private Connection connection;
+
+    private List<String> queries;
+
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/agentx_bench"),
+                System.getProperty("bench.jdbc.user", "postgres"),
+                System.getProperty("bench.jdbc.password", "postgres"));
+        Random random = new Random(42);
+        float[][] centroids = new float[CLUSTERS][];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centroids[i] = gaussian(random, 1f, null);
+        }
+        if (rowCount() != corpusSize) {
+            generateCorpus(random, centroids);
+        }
+        Random queryRandom = new Random(7);
+        queries = new ArrayList<>(RECALL_QUERIES);
+        for (int i = 0; i < RECALL_QUERIES; i++) {
+            queries.add(DatasetFilters
+                    .toVectorLiteral(gaussian(queryRandom, 0.3f, centroids[queryRandom.nextInt(CLUSTERS)])));
+        }
+        printIndexSizes();
+        printRecall();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int search() throws SQLException {
+        return search(quantization, false, queries.get(nextQuery++ % queries.size())).size();
+    }
+
+    private void printRecall() throws SQLException {
+        double recall = 0;
+        for (String query : queries) {
+            Set<String> truth = new HashSet<>(search(VectorQuantization.NONE, true, query));
+            int hits = 0;
+            for (String id : search(quantization, false, query)) {
+                if (truth.contains(id)) {
+                    hits++;
+                }
+            }
+            recall += (double) hits / truth.size();
+        }
+        System.out.printf("%n%s（候选数倍数 %d）recall@%d：%.3f%n", quantization, rescoreMultiplier, TOP_K,
+                recall / queries.size());
+    }
+
+    private void printIndexSizes() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT indexrelid::regclass::text, "
+                        + "pg_size_pretty(pg_relation_size(indexrelid)) FROM pg_index WHERE indrelid = '" + TABLE
+                        + "'::regclass ORDER BY 1")) {
+            while (resultSet.next()) {
+                System.out.printf("%n索引 %s 大小 %s", resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+    }
+
+    /** 参数绑定顺序与 DatasetEmbeddingStore 一致，exact 为真时关闭索引扫描得到精确结果 */
+    private List<String> search(VectorQuantization mode, boolean exact, String query) throws SQLException {
+        int candidates = mode == VectorQuantization.NONE ? TOP_K : TOP_K * rescoreMultiplier;
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL hnsw.ef_search = " + Math.max(EF_SEARCH, candidates));
+            statement.execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+            if (exact) {
+                statement.execute("SET LOCAL enable_indexscan = off");
+            }
+            List<String> ids = new ArrayList<>(TOP_K);
+            try (PreparedStatement select = connection
+                    .prepareStatement(DatasetEmbeddingStore.searchSql(TABLE, mode, true))) {
+                int index = 1;
+                select.setString(index++, query);
+                select.setString(index++, DATA_SET_ID);
+                if (mode != VectorQuantization.NONE) {
+                    select.setString(index++, query);
+                    select.setInt(index++, candidates);
+                }
+                select.setInt(index, TOP_K);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getString("embedding_id"));
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private long rowCount() throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT to_regclass('" + TABLE + "') IS NOT NULL")) {
+            resultSet.next();
+            if (!resultSet.getBoolean(1)) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + TABLE)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /** 写入原始向量后用补写语句生成两种量化向量，最后建索引 */
+    private void generateCorpus(Random random, float[][] centroids) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE EXTENSION IF NOT EXISTS vector");
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (embedding_id uuid PRIMARY KEY, embedding vector("
+                    + DIMENSION + "), text text, metadata json, dataset_id varchar(64), embedding_sq halfvec("
+                    + DIMENSION + "), embedding_bq bit(" + DIMENSION + "))");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE
+                + " (embedding_id, embedding, dataset_id) VALUES (md5(?)::uuid, ?::vector, ?)")) {
+            for (int row = 0; row < corpusSize; row++) {
+                insert.setString(1, String.valueOf(row));
+                insert.setString(2, DatasetFilters
+                        .toVectorLiteral(gaussian(random, 0.3f, centroids[random.nextInt(CLUSTERS)])));
+                insert.setString(3, DATA_SET_ID);
+                insert.addBatch();
+                if (row % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        for (VectorQuantization mode : List.of(VectorQuantization.SCALAR, VectorQuantization.BINARY)) {
+            try (PreparedStatement update = connection
+                    .prepareStatement(DatasetEmbeddingStore.quantizeBatchSql(TABLE, mode))) {
+                update.setString(1, DATA_SET_ID);
+                int updated;
+                do {
+                    updated = update.executeUpdate();
+                } while (updated > 0);
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX ON " + TABLE + " (dataset_id)");
+            statement.execute("CREATE INDEX ON " + TABLE + " USING hnsw (embedding vector_cosine_ops)");
+            statement.execute("CREATE INDEX ON " + TABLE
+                    + " USING hnsw (embedding_sq halfvec_cosine_ops) WHERE embedding_sq IS NOT NULL");
+            statement.execute("CREATE INDEX ON " + TABLE
+                    + " USING hnsw (embedding_bq bit_hamming_ops) WHERE embedding_bq IS NOT NULL");
+            statement.execute("ANALYZE " + TABLE);
+        }
+    }
+
+    /** 均值为 center（为空时为0）、标准差为 sigma 的高斯向量 */
+    private static float[] gaussian(Random random, float sigma, float[] center) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (center != null ? center[d] : 0) + (float) random.nextGaussian() * sigma;
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QuantizedVectorSearchBenchmark.class.getSimpleName())
+                .jvmArgsAppend("-Dbench.jdbc.url=" + System.getProperty("bench.jdbc.url",
+                        "jdbc:postgresql://localhost:5432/agentx_bench"),
+                        "-Dbench.jdbc.user=" + System.getProperty("bench.jdbc.user", "postgres"),
+                        "-Dbench.jdbc.password=" + System.getProperty("bench.jdbc.password", "postgres"))
+                .build()).run();
+    }
+}
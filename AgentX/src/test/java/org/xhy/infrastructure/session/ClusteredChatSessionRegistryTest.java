@@ -0,0 +1,219 @@
+package org.xhy.infrastructure.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.xhy.application.conversation.service.ChatLatencyMetrics;
+import org.xhy.application.conversation.service.ChatSessionManager;
+import org.xhy.infrastructure.llm.StreamCancellationToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 集群会话注册表测试
+ *
+ * 用进程内的广播代理替代RabbitMQ：每个节点一个单线程投递队列，支持投递延迟和消息有效期，模拟多实例部署下的跨节点中断。 */
+class ClusteredChatSessionRegistryTest {
+
+    private static final long INTERRUPT_TIMEOUT_MILLIS = 500;
+
+    private StandInBroker broker;
+    private final List<ClusteredChatSessionRegistry> registries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        broker = new StandInBroker(10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registries.forEach(ClusteredChatSessionRegistry::shutdown);
+        broker.shutdown();
+    }
+
+    @Test
+    void interruptReachesOwningNode() throws Exception {
+        ClusteredChatSessionRegistry nodeA = node("node-a");
+        ClusteredChatSessionRegistry nodeB = node("node-b");
+        node("node-c");
+
+        Map<String, Boolean> interruptedOnA = new ConcurrentHashMap<>();
+        nodeA.setLocalInterruptHandler(sessionId -> interruptedOnA.put(sessionId, true) == null);
+
+        nodeA.register("s1");
+        awaitOwner(nodeB, "s1", "node-a");
+
+        long start = System.currentTimeMillis();
+        assertTrue(nodeB.interruptRemote("s1"));
+        long latency = System.currentTimeMillis() - start;
+
+        assertTrue(interruptedOnA.containsKey("s1"));
+        assertTrue(latency < INTERRUPT_TIMEOUT_MILLIS, "跨节点中断应在超时时间内确认，实际: " + latency + "ms");
+    }
+
+    @Test
+    void interruptUnknownSessionTimesOut() {
+        ClusteredChatSessionRegistry nodeA = node("node-a");
+        node("node-b");
+
+        long start = System.currentTimeMillis();
+        assertFalse(nodeA.interruptRemote("missing"));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < INTERRUPT_TIMEOUT_MILLIS + 300, "中断等待应受超时限制，实际: " + elapsed + "ms");
+    }
+
+    @Test
+    void lateJoinerReachesOwnerByBroadcast() {
+        ClusteredChatSessionRegistry nodeA = node("node-a");
+        nodeA.setLocalInterruptHandler("s1"::equals);
+        nodeA.register("s1");
+
+        // 节点C在会话登记之后加入，没有归属记录，中断以广播方式发出
+        ClusteredChatSessionRegistry nodeC = node("node-c");
+        assertNull(nodeC.getOwnerNode("s1"));
+        assertTrue(nodeC.interruptRemote("s1"));
+    }
+
+    @Test
+    void unregisterRemovesOwnershipOnOtherNodes() throws Exception {
+        ClusteredChatSessionRegistry nodeA = node("node-a");
+        ClusteredChatSessionRegistry nodeB = node("node-b");
+
+        nodeA.register("s1");
+        awaitOwner(nodeB, "s1", "node-a");
+
+        nodeA.unregister("s1");
+        awaitOwner(nodeB, "s1", null);
+    }
+
+    @Test
+    void expiredInterruptIsNotDelivered() {
+        ClusteredChatSessionRegistry nodeA = node("node-a");
+        ClusteredChatSessionRegistry nodeB = node("node-b");
+        Map<String, Boolean> interruptedOnA = new ConcurrentHashMap<>();
+        nodeA.setLocalInterruptHandler(sessionId -> interruptedOnA.put(sessionId, true) == null);
+        nodeA.register("s1");
+
+        // 投递延迟超过中断有效期，消息过期丢弃，请求方按超时返回
+        broker.setDeliveryDelayMillis(INTERRUPT_TIMEOUT_MILLIS + 200);
+        assertFalse(nodeB.interruptRemote("s1"));
+        sleep(INTERRUPT_TIMEOUT_MILLIS + 400);
+        assertFalse(interruptedOnA.containsKey("s1"));
+    }
+
+    @Test
+    void chatSessionManagerInterruptsAcrossNodes() throws Exception {
+        ChatSessionManager managerA = new ChatSessionManager(new ChatLatencyMetrics(new SimpleMeterRegistry()), node("node-a"));
+        ChatSessionManager managerB = new ChatSessionManager(new ChatLatencyMetrics(new SimpleMeterRegistry()), node("node-b"));
+
+        managerA.registerSession("s1", new SseEmitter(60000L));
+        StreamCancellationToken token = managerA.getCancellationToken("s1");
+        awaitOwner(registries.get(1), "s1", "node-a");
+
+        assertFalse(managerB.hasSession("s1"));
+        assertTrue(managerB.interruptSession("s1"));
+        assertFalse(managerA.hasSession("s1"));
+        assertTrue(token.isCancelled(), "归属节点应取消上游流");
+    }
+
+    private ClusteredChatSessionRegistry node(String nodeId) {
+        ClusteredChatSessionRegistry registry = new ClusteredChatSessionRegistry(nodeId, broker.channel(),
+                INTERRUPT_TIMEOUT_MILLIS, 60);
+        registries.add(registry);
+        return registry;
+    }
+
+    private void awaitOwner(ChatSessionRegistry registry, String sessionId, String expectedOwner) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            String owner = registry.getOwnerNode(sessionId);
+            if (expectedOwner == null ? owner == null : expectedOwner.equals(owner)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("归属未同步: sessionId=" + sessionId + ", expected=" + expectedOwner);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 进程内广播代理，替代RabbitMQ的fanout交换机 */
+    private static class StandInBroker {
+
+        private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+        private volatile long deliveryDelayMillis;
+
+        StandInBroker(long deliveryDelayMillis) {
+            this.deliveryDelayMillis = deliveryDelayMillis;
+        }
+
+        void setDeliveryDelayMillis(long deliveryDelayMillis) {
+            this.deliveryDelayMillis = deliveryDelayMillis;
+        }
+
+        SessionBroadcastChannel channel() {
+            return new SessionBroadcastChannel() {
+                private String nodeId;
+
+                @Override
+                public void subscribe(String nodeId, Consumer<SessionBroadcastMessage> consumer) {
+                    this.nodeId = nodeId;
+                    subscribers.put(nodeId, new Subscriber(consumer));
+                }
+
+                @Override
+                public void publish(SessionBroadcastMessage message, long ttlMillis) {
+                    long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+                    long delay = deliveryDelayMillis;
+                    subscribers.values().forEach(subscriber -> subscriber.deliver(message, delay, expiresAt));
+                }
+
+                @Override
+                public void close() {
+                    Subscriber subscriber = subscribers.remove(nodeId);
+                    if (subscriber != null) {
+                        subscriber.executor.shutdownNow();
+                    }
+                }
+            };
+        }
+
+        void shutdown() {
+            subscribers.values().forEach(subscriber -> subscriber.executor.shutdownNow());
+        }
+
+        private static class Subscriber {
+            private final Consumer<SessionBroadcastMessage> consumer;
+            private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+            Subscriber(Consumer<SessionBroadcastMessage> consumer) {
+                this.consumer = consumer;
+            }
+
+            void deliver(SessionBroadcastMessage message, long delayMillis, long expiresAt) {
+                executor.execute(() -> {
+                    sleep(delayMillis);
+                    if (System.currentTimeMillis() <= expiresAt) {
+                        consumer.accept(message);
+                    }
+                });
+            }
+        }
+    }
+}
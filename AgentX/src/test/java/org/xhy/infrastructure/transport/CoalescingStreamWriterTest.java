@@ -0,0 +1,159 @@
+package org.xhy.infrastructure.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xhy.application.conversation.dto.AgentChatResponse;
+import org.xhy.domain.conversation.constant.MessageType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Token合并发送测试，并对比长回复下逐Token发送与合并发送的事件数、线上字节数和CPU耗时 */
+public class CoalescingStreamWriterTest {
+
+    private ScheduledExecutorService scheduler;
+    private RecordingTransport transport;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        transport = new RecordingTransport();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testFirstTokenSentImmediately() {
+        CoalescingStreamWriter<List<AgentChatResponse>> writer = new CoalescingStreamWriter<>(transport,
+                transport.events, MessageType.TEXT, 10_000, 1 << 20, scheduler, Runnable::run);
+
+        writer.write("你好");
+        assertEquals(1, transport.events.size(), "首个Token应立即发送");
+
+        writer.write("，");
+        writer.write("世界");
+        assertEquals(1, transport.events.size(), "后续Token应被缓冲");
+
+        writer.flush();
+        assertEquals(2, transport.events.size());
+        assertEquals("，世界", transport.events.get(1).getContent());
+    }
+
+    @Test
+    public void testByteThresholdTriggersFlush() {
+        CoalescingStreamWriter<List<AgentChatResponse>> writer = new CoalescingStreamWriter<>(transport,
+                transport.events, MessageType.TEXT, 10_000, 8, scheduler, Runnable::run);
+
+        writer.write("a");
+        writer.write("bcdefgh");
+        assertEquals(1, transport.events.size());
+        writer.write("i");
+        assertEquals(2, transport.events.size(), "达到字节阈值后应立即发送");
+        assertEquals("bcdefghi", transport.events.get(1).getContent());
+    }
+
+    @Test
+    public void testTimeWindowFlushesIdleBuffer() throws InterruptedException {
+        CoalescingStreamWriter<List<AgentChatResponse>> writer = new CoalescingStreamWriter<>(transport,
+                transport.events, MessageType.TEXT, 20, 1 << 20, scheduler, Runnable::run);
+
+        writer.write("a");
+        writer.write("b");
+        Thread.sleep(200);
+        assertEquals(2, transport.events.size(), "时间窗口到期后应自动补发缓冲内容");
+    }
+
+    /** 长回复对比：事件数、线上字节数、CPU耗时 */
+    @Test
+    public void testCompareWithPerTokenSending() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            tokens.add(i % 10 == 0 ? "。\n" : "字");
+        }
+
+        RecordingTransport perTokenTransport = new RecordingTransport();
+        StreamMessageWriter perToken = perTokenTransport.createStreamWriter(perTokenTransport.events,
+                MessageType.TEXT);
+        long perTokenCpu = cpuTime(() -> tokens.forEach(perToken::write));
+
+        RecordingTransport coalescingTransport = new RecordingTransport();
+        CoalescingStreamWriter<List<AgentChatResponse>> coalescing = new CoalescingStreamWriter<>(
+                coalescingTransport, coalescingTransport.events, MessageType.TEXT, 30, 512, scheduler, Runnable::run);
+        long coalescingCpu = cpuTime(() -> {
+            tokens.forEach(coalescing::write);
+            coalescing.flush();
+        });
+
+        String perTokenContent = joinContent(perTokenTransport.events);
+        String coalescedContent = joinContent(coalescingTransport.events);
+        assertEquals(perTokenContent, coalescedContent, "合并发送不应改变内容");
+        assertTrue(coalescingTransport.events.size() < perTokenTransport.events.size() / 10);
+
+        System.out.printf("逐Token: 事件=%d, 字节=%d, CPU=%.2fms%n", perTokenTransport.events.size(),
+                wireBytes(perTokenTransport.events), perTokenCpu / 1e6);
+        System.out.printf("合并发送: 事件=%d, 字节=%d, CPU=%.2fms%n", coalescingTransport.events.size(),
+                wireBytes(coalescingTransport.events), coalescingCpu / 1e6);
+    }
+
+    private long cpuTime(Runnable runnable) {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        long start = bean.getCurrentThreadCpuTime();
+        runnable.run();
+        return bean.getCurrentThreadCpuTime() - start;
+    }
+
+    private String joinContent(List<AgentChatResponse> events) {
+        StringBuilder sb = new StringBuilder();
+        events.forEach(e -> sb.append(e.getContent()));
+        return sb.toString();
+    }
+
+    /** 按SSE格式 data:{json}\n\n 估算线上字节数 */
+    private long wireBytes(List<AgentChatResponse> events) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        long bytes = 0;
+        for (AgentChatResponse event : events) {
+            bytes += ("data:" + objectMapper.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    /** 记录发送事件的传输实现 */
+    private static class RecordingTransport implements MessageTransport<List<AgentChatResponse>> {
+
+        private final List<AgentChatResponse> events = new ArrayList<>();
+
+        @Override
+        public List<AgentChatResponse> createConnection(long timeout) {
+            return events;
+        }
+
+        @Override
+        public void sendMessage(List<AgentChatResponse> connection, AgentChatResponse streamChatResponse) {
+            connection.add(streamChatResponse);
+        }
+
+        @Override
+        public void sendEndMessage(List<AgentChatResponse> connection, AgentChatResponse streamChatResponse) {
+            connection.add(streamChatResponse);
+        }
+
+        @Override
+        public void completeConnection(List<AgentChatResponse> connection) {
+        }
+
+        @Override
+        public void handleError(List<AgentChatResponse> connection, Throwable error) {
+        }
+    }
+}
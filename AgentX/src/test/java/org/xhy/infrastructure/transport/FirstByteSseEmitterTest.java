@@ -0,0 +1,43 @@
+package org.xhy.infrastructure.transport;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** 首字节回调测试：控制器返回前发送的事件只是缓冲，连接被接管后才算写出 */
+class FirstByteSseEmitterTest {
+
+    @Test
+    void firesAfterBufferedEventIsHandedOver() throws Exception {
+        FirstByteSseEmitter emitter = new FirstByteSseEmitter(1000);
+        AtomicInteger calls = new AtomicInteger();
+        emitter.onFirstByte(calls::incrementAndGet);
+
+        emitter.send(SseEmitter.event().data("preparing"));
+        assertEquals(0, calls.get(), "连接返回前发送的事件只在内存中缓冲");
+
+        emitter.extendResponse(new ServletServerHttpResponse(new MockHttpServletResponse()));
+        assertEquals(1, calls.get());
+
+        emitter.send(SseEmitter.event().data("preparing"));
+        assertEquals(1, calls.get(), "只回调一次");
+    }
+
+    @Test
+    void waitsForFirstEventWhenHandedOverEmpty() throws Exception {
+        FirstByteSseEmitter emitter = new FirstByteSseEmitter(1000);
+        AtomicInteger calls = new AtomicInteger();
+        emitter.onFirstByte(calls::incrementAndGet);
+
+        emitter.extendResponse(new ServletServerHttpResponse(new MockHttpServletResponse()));
+        assertEquals(0, calls.get());
+
+        emitter.send(SseEmitter.event().data("preparing"));
+        assertEquals(1, calls.get());
+    }
+}
@@ -421,6 +421,16 @@ export function ChatPanel({ conversationId, isFunctionalAgent = false, agentName
       return;
     }
     
+    // 服务繁忙被拒绝，提示稍后重试
+    if (data.messageType === MessageType.RATE_LIMITED) {
+      toast({
+        title: "服务繁忙",
+        description: data.content || "请稍后重试",
+        variant: "destructive",
+      });
+      return;
+    }
+    
     // 获取消息类型，默认为TEXT
     const messageType = data.messageType as MessageType || MessageType.TEXT;
     
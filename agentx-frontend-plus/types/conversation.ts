@@ -23,6 +23,11 @@ export enum MessageType {
    */
   TEXT = "TEXT",
   
+  /**
+   * 服务繁忙被拒绝消息，可稍后重试
+   */
+  RATE_LIMITED = "RATE_LIMITED",
+  
   /**
    * 工具调用消息
    */
@@ -1,5 +1,6 @@
 -- 创建 pgvector 扩展（向量数据库支持）
 CREATE EXTENSION IF NOT EXISTS vector;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
 
 create table public.accounts (
                                  id character varying(64) primary key not null,
@@ -160,6 +161,7 @@ create table public.ai_rag_qa_dataset (
                                           icon character varying(64),
                                           description character varying(64),
                                           user_id character varying(64),
+                                          vector_quantization character varying(16) not null default 'NONE', -- 向量量化方式：NONE、SCALAR、BINARY
                                           created_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                           updated_at timestamp without time zone not null default CURRENT_TIMESTAMP,
                                           deleted_at timestamp without time zone
@@ -283,8 +285,12 @@ comment on column public.container_templates.deleted_at is '删除时间';
 create table public.context (
                                 id character varying(36) primary key not null, -- 上下文唯一ID
                                 session_id character varying(36) not null, -- 所属会话ID
-                                active_messages jsonb, -- 活跃消息ID列表，JSON数组格式
+                                active_messages jsonb, -- 已废弃，活跃消息改由context_messages记录
+                                window_start bigint, -- 活跃窗口起始序号
+                                next_ordinal bigint, -- 下一条追加消息的序号
                                 summary text, -- 历史消息摘要
+                                summary_message_id character varying(36), -- 位于活跃消息开头的摘要消息ID
+                                version bigint default 0, -- 上下文版本号
                                 created_at timestamp without time zone not null default CURRENT_TIMESTAMP, -- 创建时间
                                 updated_at timestamp without time zone not null default CURRENT_TIMESTAMP, -- 更新时间
                                 deleted_at timestamp without time zone -- 逻辑删除时间
@@ -293,12 +299,27 @@ create index idx_context_session_id on context using btree (session_id);
 comment on table public.context is '上下文实体类，管理会话的上下文窗口';
 comment on column public.context.id is '上下文唯一ID';
 comment on column public.context.session_id is '所属会话ID';
-comment on column public.context.active_messages is '活跃消息ID列表，JSON数组格式';
+comment on column public.context.active_messages is '已废弃：活跃消息改由 context_messages 记录，仅在迁移前写入的旧数据中存在';
+comment on column public.context.window_start is '活跃窗口起始序号，小于该序号的成员不再属于活跃消息';
+comment on column public.context.next_ordinal is '下一条追加消息的序号，为空表示尚未从active_messages迁移';
 comment on column public.context.summary is '历史消息摘要';
+comment on column public.context.summary_message_id is '位于活跃消息开头的摘要消息ID，不作为上下文成员记录';
+comment on column public.context.version is '上下文版本号，每次写入时更新，用于校验各节点的上下文缓存';
 comment on column public.context.created_at is '创建时间';
 comment on column public.context.updated_at is '更新时间';
 comment on column public.context.deleted_at is '逻辑删除时间';
 
+create table public.context_messages (
+                                context_id character varying(36) not null, -- 上下文ID
+                                ordinal bigint not null, -- 消息在上下文中的序号，只增不改
+                                message_id character varying(36) not null, -- 消息ID
+                                primary key (context_id, ordinal)
+);
+comment on table public.context_messages is '上下文成员表，按追加顺序记录上下文中的消息';
+comment on column public.context_messages.context_id is '上下文ID';
+comment on column public.context_messages.ordinal is '消息在上下文中的序号，只增不改';
+comment on column public.context_messages.message_id is '消息ID';
+
 create table public.document_unit (
                                       id character varying(64) primary key not null, -- 文件id
                                       file_id character varying(64), -- 文档ID
@@ -409,6 +430,7 @@ create table public.messages (
                                  message_type character varying(20) not null default 'TEXT', -- 消息类型
                                  token_count integer default 0, -- Token数量
                                  body_token_count INTEGER DEFAULT 0, -- 消息本体的token数量
+                                 cached_token_count integer default 0, -- 命中提示词缓存的输入token数量
                                  provider character varying(50), -- 服务提供商
                                  model character varying(50), -- 使用的模型
                                  metadata jsonb, -- 消息元数据，JSON格式
@@ -426,6 +448,7 @@ comment on column public.messages.content is '消息内容';
 comment on column public.messages.message_type is '消息类型';
 comment on column public.messages.token_count is 'Token数量';
 comment on column public.messages.body_token_count is '消息本体的token数量';
+comment on column public.messages.cached_token_count is '命中提示词缓存的输入token数量，包含在token_count中';
 comment on column public.messages.provider is '服务提供商';
 comment on column public.messages.model is '使用的模型';
 comment on column public.messages.metadata is '消息元数据，JSON格式';
@@ -1040,6 +1063,51 @@ comment on column public.users.created_at is '创建时间';
 comment on column public.users.updated_at is '更新时间';
 comment on column public.users.deleted_at is '逻辑删除时间';
 
+-- 向量存储表，启动时 PgVectorEmbeddingStore 按 VECTOR_DB_DIMENSION 建表，此处按默认维度预先建好以创建全文检索列
+create table public.vector_store (
+                                     embedding_id uuid primary key not null, -- 分片向量ID
+                                     embedding vector(1024), -- 分片向量
+                                     text text, -- 分片文本
+                                     metadata json, -- 分片元数据
+                                     text_tsv tsvector, -- 分片文本的全文检索向量，由触发器在写入时生成
+                                     dataset_id varchar(64), -- 分片所属数据集ID
+                                     file_id varchar(64), -- 分片所属文件ID
+                                     embedding_sq halfvec(1024), -- 标量量化的半精度向量，数据集设置为 SCALAR 时写入
+                                     embedding_bq bit(1024) -- 二值量化向量，数据集设置为 BINARY 时写入
+);
+create index idx_vector_store_dataset_file on vector_store (dataset_id, file_id);
+create index idx_vector_store_file_id on vector_store (file_id);
+create index idx_vector_store_dataset_text_tsv on vector_store using gin (dataset_id, text_tsv);
+create index idx_vector_store_embedding_hnsw on vector_store using hnsw (embedding vector_cosine_ops);
+create index idx_vector_store_embedding_sq_hnsw on vector_store using hnsw (embedding_sq halfvec_cosine_ops)
+    where embedding_sq is not null;
+create index idx_vector_store_embedding_bq_hnsw on vector_store using hnsw (embedding_bq bit_hamming_ops)
+    where embedding_bq is not null;
+comment on table public.vector_store is '向量存储表，保存文档分片的向量、文本和元数据';
+comment on column public.vector_store.text_tsv is '分片文本的全文检索向量，由触发器在写入时生成';
+comment on column public.vector_store.dataset_id is '分片所属数据集ID，与元数据中的 DATA_SET_ID 一致';
+comment on column public.vector_store.file_id is '分片所属文件ID，与元数据中的 FILE_ID 一致';
+comment on column public.vector_store.embedding_sq is '标量量化的半精度向量，只在数据集设置为 SCALAR 时写入';
+comment on column public.vector_store.embedding_bq is '二值量化向量，每维取符号位，只在数据集设置为 BINARY 时写入';
+
+-- 分词配置：优先使用中文分词配置 chinese_cfg，未安装时使用 simple，写入与查询使用同一配置
+create or replace function vector_store_ts_config() returns regconfig as $$
+    select coalesce((select c.oid::regconfig from pg_ts_config c where c.cfgname = 'chinese_cfg'),
+                    'simple'::regconfig);
+$$ language sql stable;
+
+create or replace function vector_store_text_tsv_trigger() returns trigger as $$
+begin
+    new.text_tsv := to_tsvector(vector_store_ts_config(), coalesce(new.text, ''));
+    new.dataset_id := coalesce(new.dataset_id, new.metadata ->> 'DATA_SET_ID');
+    new.file_id := coalesce(new.file_id, new.metadata ->> 'FILE_ID');
+    return new;
+end
+$$ language plpgsql;
+
+create trigger trg_vector_store_text_tsv before insert or update of text, metadata on vector_store
+    for each row execute function vector_store_text_tsv_trigger();
+
 
 
         -- 初始化认证配置数据